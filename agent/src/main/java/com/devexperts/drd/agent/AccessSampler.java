@@ -0,0 +1,106 @@
+/*
+ * DRD - Dynamic Data Race Detector for Java programs
+ *
+ * Copyright (C) 2002-2018 Devexperts LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devexperts.drd.agent;
+
+import com.devexperts.drd.agent.high_scale_lib.Counter;
+
+import java.util.Arrays;
+
+/**
+ * Per-thread adaptive sampler of field accesses by location, in the style of LiteRace. Cold locations are checked on
+ * every access; after each {@link #burst} checks sampling period of location is doubled, until it reaches
+ * {@link #maxPeriod}, so that hot loops are checked only once per period. Locations are kept in direct-mapped table:
+ * evicted location starts over as cold one, so collisions may only increase the number of checks.
+ * Not thread-safe. Should be used only by owner thread.
+ */
+public final class AccessSampler {
+    private static final int SIZE = 1024;
+    private static final int MASK = SIZE - 1;
+
+    /**
+     * Number of field accesses, that were checked
+     */
+    public static final Counter checkedCounter = new Counter();
+    /**
+     * Number of field accesses, that were skipped by sampler. Skips are counted on next check of location
+     */
+    public static final Counter skippedCounter = new Counter();
+    /**
+     * Number of times sampling period of some location was increased
+     */
+    public static final Counter backoffCounter = new Counter();
+    /**
+     * Number of times some location reached max sampling period
+     */
+    public static final Counter saturatedCounter = new Counter();
+
+    private final int burst;
+    private final int maxPeriod;
+    private final int[] locations = new int[SIZE];
+    private final int[] periods = new int[SIZE];
+    private final int[] countdowns = new int[SIZE];
+    private final int[] checks = new int[SIZE];
+
+    public AccessSampler(int burst, int maxPeriod) {
+        this.burst = burst;
+        this.maxPeriod = maxPeriod;
+        Arrays.fill(locations, -1);
+    }
+
+    /**
+     * @return true if access from specified location should be checked, false if it should be skipped
+     */
+    public boolean check(int location) {
+        final int index = location & MASK;
+        if (locations[index] != location) {
+            locations[index] = location;
+            periods[index] = 1;
+            countdowns[index] = 0;
+            checks[index] = 0;
+        } else if (countdowns[index] > 0) {
+            countdowns[index]--;
+            return false;
+        }
+        final int period = periods[index];
+        checkedCounter.increment();
+        if (period > 1) {
+            skippedCounter.add(period - 1);
+        }
+        if (++checks[index] >= burst && period < maxPeriod) {
+            checks[index] = 0;
+            final int newPeriod = (int) Math.min((long) period * 2, maxPeriod);
+            periods[index] = newPeriod;
+            backoffCounter.increment();
+            if (newPeriod == maxPeriod) {
+                saturatedCounter.increment();
+            }
+        }
+        countdowns[index] = periods[index] - 1;
+        return true;
+    }
+
+    /**
+     * @return current sampling period of location: 1 means, that every access is checked
+     */
+    int getPeriod(int location) {
+        final int index = location & MASK;
+        return locations[index] == location ? periods[index] : 1;
+    }
+}
@@ -33,6 +33,9 @@ public class AgentInitializer {
         DRDEntryPoint.setStatistics(new InternalStatistics());
         DRDEntryPoint.setDataProvider(new CachingDataProvider(transformation));
         DRDEntryPoint.setInterceptor(createInterceptor(transformation));
+        if (DRDProperties.runtimeSwitch) {
+            DetectionSwitchControl.install();
+        }
         //StackOverflowDetector.launch();
         new ThreadDumper(DRDProperties.getLogDir() + File.separatorChar + "thread-dumps.log", 20000L, 5000L).start();
         registerThreads();
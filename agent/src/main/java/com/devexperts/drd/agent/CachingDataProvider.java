@@ -23,11 +23,13 @@ import com.devexperts.drd.agent.clock.DataClock;
 import com.devexperts.drd.agent.core.ClocksStorage;
 import com.devexperts.drd.agent.core.CompositeKeysCache;
 import com.devexperts.drd.agent.core.HBDynamicHelper;
+import com.devexperts.drd.agent.core.VolatileClockFields;
 import com.devexperts.drd.bootstrap.*;
 
 public class CachingDataProvider implements DataProvider {
     private final CompositeKeysCache compositeKeysCache;
     private final HBDynamicHelper hbDynamicHelper;
+    private final VolatileClockFields volatileClockFields = new VolatileClockFields();
 
     public CachingDataProvider(ITransformation transformation) {
         this.compositeKeysCache = new CompositeKeysCache(transformation.getCompositeKeysManager());
@@ -55,6 +57,10 @@ public class CachingDataProvider implements DataProvider {
     }
 
     public ISyncClock getVolatileSyncClock(Object ref, int ownerId, int nameId) {
+        if (DRDProperties.volatileClockField) {
+            final ISyncClock fieldClock = volatileClockFields.getClock(ref, ownerId, nameId);
+            if (fieldClock != null) return fieldClock;
+        }
         VolatileWeakDisposableBillet wd = compositeKeysCache.getCachedVolatileWD(ref, ownerId, nameId);
         ISyncClock volatilesClock = ClocksStorage.getVolatilesClock(wd);
         if (volatilesClock == null) {
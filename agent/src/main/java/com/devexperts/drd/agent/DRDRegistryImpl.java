@@ -31,12 +31,14 @@ public class DRDRegistryImpl implements DRDRegistry {
     private final Indexer<String> classes = new Indexer<String>();
     private final Indexer<String> names = new Indexer<String>();
     private final Indexer<Location> locations = new Indexer<Location>();
+    private final StackTraceTable stackTraces = new StackTraceTable(DRDProperties.trackStackLimit);
     private final FastIntObjMap<AtomicInteger> dataClocksRegistry = new FastIntObjMap<AtomicInteger>();
     private final Set<Integer> instrumentedClasses = new NonBlockingSetInt();
     private final Set<Integer> enums = new NonBlockingSetInt();
     private final Set<Long> finalFields = new NonBlockingHashSet<Long>();
     private final Set<Long> volatileFields = new NonBlockingHashSet<Long>();
     private final Set<Long> fields = new NonBlockingHashSet<Long>();
+    private final Set<Long> confinedFields = new NonBlockingHashSet<Long>();
     private final FastIntObjMap<String> threads = new FastIntObjMap<String>();
     private final RaceHistory raceHistory;
 
@@ -88,6 +90,14 @@ public class DRDRegistryImpl implements DRDRegistry {
         return locations.get(id);
     }
 
+    public int registerStackTrace(StackTraceElement[] stackTrace) {
+        return stackTraces.register(stackTrace);
+    }
+
+    public StackTraceElement[] getStackTrace(int id) {
+        return stackTraces.get(id);
+    }
+
     public void registerDataClock(int ownerId) {
         AtomicInteger counter = dataClocksRegistry.get(ownerId);
         if (counter == null) {
@@ -138,6 +148,14 @@ public class DRDRegistryImpl implements DRDRegistry {
         return volatileFields.contains(IntUtils.concat(ownerId, fieldNameId));
     }
 
+    public void registerConfinedField(int ownerId, int fieldNameId) {
+        confinedFields.add(IntUtils.concat(ownerId, fieldNameId));
+    }
+
+    public boolean isConfined(int ownerId, int fieldNameId) {
+        return confinedFields.contains(IntUtils.concat(ownerId, fieldNameId));
+    }
+
     public void registerEnum(int ownerId) {
         enums.add(ownerId);
     }
@@ -159,4 +177,4 @@ public class DRDRegistryImpl implements DRDRegistry {
         Collections.sort(set);
         return set;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,144 @@
+/*
+ * DRD - Dynamic Data Race Detector for Java programs
+ *
+ * Copyright (C) 2002-2018 Devexperts LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devexperts.drd.agent;
+
+import com.devexperts.drd.bootstrap.DRDLogger;
+import com.devexperts.drd.bootstrap.DRDProperties;
+import com.devexperts.drd.bootstrap.DetectionSwitch;
+import com.devexperts.drd.bootstrap.FastByteBuffer;
+
+import javax.management.ObjectName;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Controls {@link DetectionSwitch} via JMX and control file, specified by {@link DRDProperties#getControlFile()}.
+ * Control file is polled for changes every second; each change replaces all rules, including ones set via JMX.
+ */
+public class DetectionSwitchControl implements DetectionSwitchControlMBean {
+    public static final String OBJECT_NAME = "com.devexperts.drd:type=DetectionSwitch";
+    private static final long CONTROL_FILE_PERIOD = 1000L;
+
+    /**
+     * Registers MBean and starts watching control file, if any
+     */
+    public static void install() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new DetectionSwitchControl(), new ObjectName(OBJECT_NAME));
+            DRDLogger.log("Detection switch is available via JMX as " + OBJECT_NAME);
+        } catch (Exception e) {
+            DRDLogger.error("Failed to register detection switch MBean", e);
+        }
+        final String file = DRDProperties.getControlFile();
+        if (file != null && file.length() > 0) {
+            final ControlFileWatcher watcher = new ControlFileWatcher(new File(file));
+            watcher.check();
+            watcher.start();
+        }
+    }
+
+    public String getRules() {
+        return DetectionSwitch.getRules();
+    }
+
+    public void setRules(String rules) {
+        DetectionSwitch.setRules(rules);
+    }
+
+    public void enable(String prefix) {
+        prepend('+', prefix);
+    }
+
+    public void disable(String prefix) {
+        prepend('-', prefix);
+    }
+
+    public void enableAll() {
+        DetectionSwitch.setRules("");
+    }
+
+    public void disableAll() {
+        DetectionSwitch.setRules("-*");
+    }
+
+    public boolean isEnabled(String className) {
+        return DetectionSwitch.isEnabled(className);
+    }
+
+    private static void prepend(char sign, String prefix) {
+        synchronized (DetectionSwitch.class) {
+            DetectionSwitch.setRules(sign + prefix + "\n" + DetectionSwitch.getRules());
+        }
+    }
+
+    private static class ControlFileWatcher extends Thread {
+        private final File file;
+        private long lastModified;
+        private long length;
+
+        ControlFileWatcher(File file) {
+            super("DRD-Control-File-Watcher");
+            this.file = file;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            DRDLogger.debug("Watching control file " + file);
+            try {
+                while (!interrupted()) {
+                    sleep(CONTROL_FILE_PERIOD);
+                    check();
+                }
+            } catch (InterruptedException e) {
+                //quit
+            }
+        }
+
+        /**
+         * Applies rules from control file, if it was changed since last check. Missing file means no rules.
+         */
+        void check() {
+            final long modified = file.lastModified();
+            final long size = file.length();
+            if (modified == lastModified && size == length) return;
+            lastModified = modified;
+            length = size;
+            try {
+                DetectionSwitch.setRules(modified == 0 ? "" : read());
+            } catch (Exception e) {
+                DRDLogger.error("Failed to apply control file " + file + ", rules are not changed", e);
+            }
+        }
+
+        private String read() throws IOException {
+            final FileInputStream in = new FileInputStream(file);
+            try {
+                final FastByteBuffer buf = new FastByteBuffer();
+                buf.readFrom(in);
+                return new String(buf.getBytes(), "UTF-8");
+            } finally {
+                in.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * DRD - Dynamic Data Race Detector for Java programs
+ *
+ * Copyright (C) 2002-2018 Devexperts LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devexperts.drd.agent;
+
+/**
+ * JMX interface of {@link com.devexperts.drd.bootstrap.DetectionSwitch}
+ */
+public interface DetectionSwitchControlMBean {
+    /**
+     * @return current rules, one per line
+     */
+    String getRules();
+
+    /**
+     * @param rules new rules, one per line: "+prefix" enables detection in classes with this prefix, "-prefix"
+     *              disables it, "*" matches all classes
+     */
+    void setRules(String rules);
+
+    /**
+     * Enables detection in classes with specified prefix, taking precedence over current rules
+     */
+    void enable(String prefix);
+
+    /**
+     * Disables detection in classes with specified prefix, taking precedence over current rules
+     */
+    void disable(String prefix);
+
+    /**
+     * Removes all rules, so that detection is enabled everywhere
+     */
+    void enableAll();
+
+    /**
+     * Replaces all rules with single one, that disables detection everywhere
+     */
+    void disableAll();
+
+    boolean isEnabled(String className);
+}
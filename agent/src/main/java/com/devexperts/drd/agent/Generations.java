@@ -19,41 +19,140 @@
 
 package com.devexperts.drd.agent;
 
-import com.devexperts.drd.agent.high_scale_lib.Counter;
-import com.devexperts.drd.agent.util.QuickSort;
+import com.devexperts.drd.agent.high_scale_lib.NonBlockingHashMapLong;
 
 import java.util.Arrays;
 
+/**
+ * Registry of dead threads. Each thread death increments generation, so that vector clocks are able to notice it
+ * and move frames of dead threads from slots to dead clock.<br/>
+ * Arrays {@link #dead}, {@link #deadSlots} and {@link #prevSlotDeaths} are indexed by generation, in which thread died;
+ * they may be longer than current generation, only first {@link #generation} elements are meaningful. They form
+ * append-only log of deaths: elements are never changed after generation is incremented, so deaths since any
+ * generation are read as suffix of the log in O(k) without copying.<br/>
+ * Dead thread is retired, when every live thread knows its whole history: it can't race with anybody anymore,
+ * so its frames may be dropped from all the clocks. Deaths before {@link #retiredGeneration} are retired.
+ */
 public class Generations {
     private static final long[] EMPTY_ARRAY = new long[0];
+    private static final int INIT_CAPACITY = 16;
+
     public static volatile int generation = 0;
-    public static volatile long[] dead = EMPTY_ARRAY;
-    public static volatile long[] sortedDead = EMPTY_ARRAY;
-    public static final Counter diffProfiler = new Counter();
-
-    public static synchronized void threadDied(long tid) {
-        dead = Arrays.copyOf(dead, dead.length + 1);
-        dead[dead.length - 1] = tid;
-        long[] newSortedDead = Arrays.copyOf(sortedDead, sortedDead.length + 1);
-        int insertIndex = -Arrays.binarySearch(newSortedDead, tid) - 1;
-        if (insertIndex < 0)
-            throw new IllegalStateException("Tid " + tid + " is already dead : " + Arrays.toString(newSortedDead));
-        ArrayUtils.insert(newSortedDead, insertIndex, tid, sortedDead.length);
-        sortedDead = newSortedDead; //atomic link update
-        generation++;
+    public static volatile long[] dead = new long[INIT_CAPACITY];
+    /**
+     * Slots, that dead threads occupied in {@link ThreadSlots}, in the same order as {@link #dead}; -1 if thread had no slot.
+     */
+    public static volatile int[] deadSlots = new int[INIT_CAPACITY];
+    /**
+     * Generation, in which previous owner of the same slot died, in the same order as {@link #dead}; -1 if there were no
+     * previous owner. If it is not less than generation of clock, frame in this slot belongs to the previous owner.
+     */
+    public static volatile int[] prevSlotDeaths = new int[INIT_CAPACITY];
+    /**
+     * Frame, that should be known about dead thread to be sure, that all its accesses happened before, in the same
+     * order as {@link #dead}.
+     */
+    public static volatile long[] requiredFrames = new long[INIT_CAPACITY];
+    public static volatile int retiredGeneration = 0;
+
+    private static final NonBlockingHashMapLong<Integer> deathGenerations = new NonBlockingHashMapLong<Integer>();
+    private static int[] lastSlotDeaths = new int[0];
+
+    /**
+     * Registers death of thread without any accesses to shared data.
+     */
+    public static void threadDied(long tid) {
+        threadDied(tid, 0);
+    }
+
+    /**
+     * @param tid           tid of dead thread
+     * @param requiredFrame frame of dead thread, after which it didn't access shared data
+     */
+    public static synchronized void threadDied(long tid, long requiredFrame) {
+        final int gen = generation;
+        if (deathGenerations.putIfAbsent(tid, Integer.valueOf(gen)) != null) {
+            throw new IllegalStateException("Tid " + tid + " is already dead");
+        }
+        //tid is unmapped before generation is incremented, see VectorClock#slotOf
+        final int slot = ThreadSlots.unmap(tid);
+        if (gen == dead.length) {
+            //arrays are replaced before generation increment, so readers always see arrays of sufficient length
+            dead = Arrays.copyOf(dead, gen * 2);
+            deadSlots = Arrays.copyOf(deadSlots, gen * 2);
+            prevSlotDeaths = Arrays.copyOf(prevSlotDeaths, gen * 2);
+            requiredFrames = Arrays.copyOf(requiredFrames, gen * 2);
+        }
+        requiredFrames[gen] = requiredFrame;
+        dead[gen] = tid;
+        deadSlots[gen] = slot;
+        prevSlotDeaths[gen] = -1;
+        if (slot >= 0) {
+            if (slot >= lastSlotDeaths.length) {
+                final int oldLength = lastSlotDeaths.length;
+                lastSlotDeaths = Arrays.copyOf(lastSlotDeaths, Math.max(slot + 1, oldLength * 2));
+                Arrays.fill(lastSlotDeaths, oldLength, lastSlotDeaths.length, -1);
+            }
+            prevSlotDeaths[gen] = lastSlotDeaths[slot];
+            lastSlotDeaths[slot] = gen;
+        }
+        generation = gen + 1;
+        //slot can be reused only when everybody is able to know, that its previous owner has died
+        if (slot >= 0) {
+            ThreadSlots.free(slot);
+        }
+    }
+
+    /**
+     * @return true iff specified thread died at specified generation or later, i.e. clocks of this generation
+     * may still hold its frame in its slot
+     */
+    public static boolean diedSince(long tid, int gen) {
+        final Integer deathGen = deathGenerations.get(tid);
+        return deathGen != null && deathGen >= gen;
+    }
+
+    public static boolean isDead(long tid) {
+        return deathGenerations.containsKey(tid);
+    }
+
+    /**
+     * @return true iff specified thread is dead and can't race with any live thread
+     */
+    public static boolean isRetired(long tid) {
+        return isRetired(tid, retiredGeneration);
+    }
+
+    /**
+     * @return true iff specified thread died before specified retired generation
+     */
+    public static boolean isRetired(long tid, int retiredGeneration) {
+        final Integer gen = deathGenerations.get(tid);
+        return gen != null && gen < retiredGeneration;
+    }
+
+    /**
+     * Moves retired generation forward. Should be called only when all live threads know required frames of all threads,
+     * that died before new retired generation.
+     */
+    public static synchronized void retire(int newRetiredGeneration) {
+        if (newRetiredGeneration > retiredGeneration) {
+            retiredGeneration = newRetiredGeneration;
+        }
     }
 
+    /**
+     * Allocates new array, so it is not used on hot paths: {@link com.devexperts.drd.agent.clock.VectorClock}
+     * reads deaths since its generation directly from {@link #dead} and {@link #deadSlots}.
+     *
+     * @param fromGen start generation
+     * @return tids of threads, that died since specified generation, sorted
+     */
     public static long[] getDiff(int fromGen) {
-        int gen = generation;
+        final int gen = generation;
         if (fromGen >= gen) return EMPTY_ARRAY;
-        //In fact, sortedDead link may already contain info about later generations, but it doesn't matter.
-        if (fromGen == 0) return sortedDead;
-        //TODO cache sorted subarrays somehow
-        //TODO WHY SORT each time?
-        diffProfiler.increment();
-        long[] res = new long[gen - fromGen];
-        System.arraycopy(dead, fromGen, res, 0, gen - fromGen);
-        QuickSort.sort(res);
+        final long[] res = Arrays.copyOfRange(dead, fromGen, gen);
+        Arrays.sort(res);
         return res;
     }
 }
@@ -19,17 +19,29 @@
 
 package com.devexperts.drd.agent;
 
-import com.devexperts.drd.bootstrap.AccessHistory;
-import com.devexperts.drd.bootstrap.DRDRegistry;
-import com.devexperts.drd.bootstrap.RaceHistory;
-import com.devexperts.drd.bootstrap.ThreadRaceInfo;
+import com.devexperts.drd.agent.core.ThreadContext;
+import com.devexperts.drd.agent.high_scale_lib.Counter;
+import com.devexperts.drd.bootstrap.*;
+
+import java.util.Arrays;
 
 public class RaceHistoryImpl implements RaceHistory {
+    /**
+     * Number of stack traces of tracked accesses, that were captured
+     */
+    public static final Counter stackCaptureCounter = new Counter();
+    /**
+     * Number of tracked accesses, that reused previously captured stack trace of the same location
+     */
+    public static final Counter stackReuseCounter = new Counter();
+
     private final RacesReportingHistory racesReportingHistory;
     private final AccessHistory accessHistory;
+    private final DRDRegistry registry;
 
     public RaceHistoryImpl(AccessHistory accessHistory, DRDRegistry registry) {
         this.accessHistory = accessHistory;
+        this.registry = registry;
         this.racesReportingHistory = new RacesReportingHistory(registry);
     }
 
@@ -42,8 +54,7 @@ public class RaceHistoryImpl implements RaceHistory {
     }
 
     public void trackForeignCall(Object o, int ownerId, int location) {
-        accessHistory.saveObjectAccess(o, ownerId, Thread.currentThread().getId(),
-                new ThreadRaceInfo(location, new Exception()));
+        accessHistory.saveObjectAccess(o, ownerId, Thread.currentThread().getId(), getRaceInfo(location));
     }
 
     public boolean shouldReportRace(int location, int raceLocation) {
@@ -52,7 +63,27 @@ public class RaceHistoryImpl implements RaceHistory {
 
 
     public void trackFieldAccesses(int ownerId, int nameId, int location) {
-        accessHistory.saveFieldAccess(ownerId, nameId, Thread.currentThread().getId(),
-                new ThreadRaceInfo(location, new Exception()));
+        accessHistory.saveFieldAccess(ownerId, nameId, Thread.currentThread().getId(), getRaceInfo(location));
+    }
+
+    /**
+     * Captures stack trace of current access only if {@link StackSampler} decides so. Captured stack trace is trimmed to
+     * {@link DRDProperties#trackStackDepth} frames and interned in registry.
+     */
+    private ThreadRaceInfo getRaceInfo(int location) {
+        final StackSampler sampler = ThreadContext.current().getStackSampler();
+        ThreadRaceInfo info = sampler.get(location);
+        if (info != null) {
+            stackReuseCounter.increment();
+            return info;
+        }
+        stackCaptureCounter.increment();
+        StackTraceElement[] stackTrace = ThreadUtils.removeTopDRDCalls(new Exception().getStackTrace());
+        if (stackTrace.length > DRDProperties.trackStackDepth) {
+            stackTrace = Arrays.copyOf(stackTrace, DRDProperties.trackStackDepth);
+        }
+        info = new ThreadRaceInfo(location, registry.registerStackTrace(stackTrace));
+        sampler.put(info);
+        return info;
     }
 }
@@ -0,0 +1,58 @@
+/*
+ * DRD - Dynamic Data Race Detector for Java programs
+ *
+ * Copyright (C) 2002-2018 Devexperts LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devexperts.drd.agent;
+
+import com.devexperts.drd.bootstrap.ThreadRaceInfo;
+
+/**
+ * Per-thread direct-mapped cache of tracked accesses by location. Stack trace of access is captured on first access
+ * from location and then on every {@link #rate}-th access; accesses in between reuse the last captured
+ * {@link ThreadRaceInfo}, so that hot tracked code doesn't walk the stack every time.
+ * Not thread-safe. Should be used only by owner thread.
+ */
+public final class StackSampler {
+    private static final int SIZE = 256;
+    private static final int MASK = SIZE - 1;
+
+    private final int rate;
+    private final int[] locations = new int[SIZE];
+    private final int[] hits = new int[SIZE];
+    private final ThreadRaceInfo[] infos = new ThreadRaceInfo[SIZE];
+
+    public StackSampler(int rate) {
+        this.rate = rate;
+    }
+
+    /**
+     * @return last captured info for location or null, if stack trace should be captured now
+     */
+    ThreadRaceInfo get(int location) {
+        final int index = location & MASK;
+        if (locations[index] != location || infos[index] == null) return null;
+        return ++hits[index] < rate ? infos[index] : null;
+    }
+
+    void put(ThreadRaceInfo info) {
+        final int index = info.location & MASK;
+        locations[index] = info.location;
+        hits[index] = 0;
+        infos[index] = info;
+    }
+}
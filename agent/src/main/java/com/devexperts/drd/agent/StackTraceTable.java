@@ -0,0 +1,106 @@
+/*
+ * DRD - Dynamic Data Race Detector for Java programs
+ *
+ * Copyright (C) 2002-2018 Devexperts LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devexperts.drd.agent;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Interns stack traces of tracked accesses and gives them ids. Keeps at most {@link #capacity} most recently interned
+ * stack traces: new stack trace evicts the oldest one, so that memory doesn't grow with number of distinct stacks.
+ * Id of evicted stack trace is never reused, so {@link #get} returns null for it instead of wrong stack trace.
+ * Lookup of known stack traces doesn't lock anything.
+ */
+class StackTraceTable {
+    private final int capacity;
+    private final ConcurrentHashMap<Key, Integer> ids = new ConcurrentHashMap<Key, Integer>();
+    /**
+     * Interned stack trace with id i is kept at i % capacity
+     */
+    private final AtomicReferenceArray<Key> keys;
+    private int lastId;
+
+    StackTraceTable(int capacity) {
+        this.capacity = capacity;
+        keys = new AtomicReferenceArray<Key>(capacity);
+    }
+
+    /**
+     * @return positive id of stack trace
+     */
+    int register(StackTraceElement[] stackTrace) {
+        final Key key = new Key(stackTrace);
+        final Integer id = ids.get(key);
+        return id != null ? id : registerImpl(key);
+    }
+
+    private synchronized int registerImpl(Key key) {
+        final Integer known = ids.get(key);
+        if (known != null) return known;
+        if (lastId == Integer.MAX_VALUE) {
+            //ids are exhausted, so this stack trace is lost
+            return 0;
+        }
+        final int id = ++lastId;
+        final int index = id % capacity;
+        final Key evicted = keys.get(index);
+        if (evicted != null) {
+            ids.remove(evicted);
+        }
+        key.id = id;
+        keys.set(index, key);
+        ids.put(key, id);
+        return id;
+    }
+
+    /**
+     * @return stack trace with specified id or null if it is unknown or was evicted
+     */
+    StackTraceElement[] get(int id) {
+        if (id <= 0) return null;
+        final Key key = keys.get(id % capacity);
+        return key != null && key.id == id ? key.stackTrace : null;
+    }
+
+    private static class Key {
+        final StackTraceElement[] stackTrace;
+        final int hash;
+        /**
+         * Assigned before key is published
+         */
+        int id;
+
+        Key(StackTraceElement[] stackTrace) {
+            this.stackTrace = stackTrace;
+            this.hash = Arrays.hashCode(stackTrace);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && hash == ((Key) o).hash && Arrays.equals(stackTrace, ((Key) o).stackTrace);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * DRD - Dynamic Data Race Detector for Java programs
+ *
+ * Copyright (C) 2002-2018 Devexperts LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devexperts.drd.agent;
+
+import com.devexperts.drd.agent.high_scale_lib.NonBlockingHashMapLong;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Maps tids of live threads to dense slot indices, so that live part of vector clock can be stored as plain array
+ * of frames indexed by slot.<br/>
+ * Dead thread is unmapped from its slot before {@link Generations#generation} is incremented for its death, and the slot
+ * is freed only after that, so any clock, that still holds frame of dead thread in this slot, would move it to dead clock
+ * before it could see the new owner.
+ * Free slots are reused starting from the lowest one to keep clocks short.
+ */
+public class ThreadSlots {
+    private static final NonBlockingHashMapLong<Integer> slots = new NonBlockingHashMapLong<Integer>();
+    private static final BitSet free = new BitSet();
+    private static volatile long[] tids = new long[16];
+    private static int slotsCount;
+
+    /**
+     * Allocates slot for specified thread; returns existing slot, if it has been already allocated.
+     *
+     * @param tid thread id
+     * @return slot of thread
+     */
+    public static synchronized int allocate(long tid) {
+        Integer existing = slots.get(tid);
+        if (existing != null) return existing;
+        int slot = free.nextSetBit(0);
+        if (slot >= 0) {
+            free.clear(slot);
+        } else {
+            slot = slotsCount++;
+            if (slot == tids.length) {
+                tids = Arrays.copyOf(tids, tids.length * 2);
+            }
+        }
+        tids[slot] = tid;
+        slots.put(tid, Integer.valueOf(slot));
+        return slot;
+    }
+
+    /**
+     * Unmaps dead thread from its slot, so that its tid is not resolved to the slot anymore. Slot stays occupied
+     * until {@link #free}, because clocks of previous generations may still hold frame of dead thread in it.
+     *
+     * @param tid thread id
+     * @return slot of thread or -1, if there were no slot for specified thread
+     */
+    static synchronized int unmap(long tid) {
+        Integer slot = slots.remove(tid);
+        return slot == null ? -1 : slot;
+    }
+
+    /**
+     * Makes slot of dead thread available for reuse. Should be called only after generation was incremented for
+     * its death.
+     *
+     * @param slot slot, that was unmapped from dead thread
+     */
+    static synchronized void free(int slot) {
+        tids[slot] = 0;
+        free.set(slot);
+    }
+
+    /**
+     * @param tid thread id
+     * @return slot of live thread or -1 if thread has no slot (it is dead or has never been registered)
+     */
+    public static int getSlot(long tid) {
+        Integer slot = slots.get(tid);
+        return slot == null ? -1 : slot;
+    }
+
+    /**
+     * @param slot slot
+     * @return tid of current owner of slot or 0 if slot is free
+     */
+    public static long getTid(int slot) {
+        long[] tids = ThreadSlots.tids;
+        return slot < tids.length ? tids[slot] : 0;
+    }
+
+    /**
+     * @return number of slots ever allocated, i.e. the maximum length of live part of vector clock
+     */
+    public static synchronized int getSlotsCount() {
+        return slotsCount;
+    }
+
+    /**
+     * @return number of slots, occupied by live threads
+     */
+    public static int getLiveCount() {
+        return slots.size();
+    }
+}
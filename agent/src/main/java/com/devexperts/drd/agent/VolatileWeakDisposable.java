@@ -21,15 +21,21 @@ package com.devexperts.drd.agent;
 
 import com.devexperts.drd.bootstrap.AbstractVolatileWeakDisposable;
 
+import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
 
 public class VolatileWeakDisposable extends WeakReference<Object> implements AbstractVolatileWeakDisposable {
+    /**
+     * Keys, whose referents were collected, so that their clocks may be disposed
+     */
+    public static final ReferenceQueue<Object> QUEUE = new ReferenceQueue<Object>();
+
     final int ownerId;
     final int nameId;
     final int hashcode;
 
     public VolatileWeakDisposable(Object referent, int ownerId, int nameId) {
-        super(referent);
+        super(referent, QUEUE);
         this.ownerId = ownerId;
         this.nameId = nameId;
         hashcode = 31 * (31 * ownerId + nameId) + System.identityHashCode(referent);
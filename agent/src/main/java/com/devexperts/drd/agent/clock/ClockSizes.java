@@ -0,0 +1,86 @@
+/*
+ * DRD - Dynamic Data Race Detector for Java programs
+ *
+ * Copyright (C) 2002-2018 Devexperts LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devexperts.drd.agent.clock;
+
+import com.devexperts.drd.agent.high_scale_lib.Counter;
+
+/**
+ * Total sizes of group of clocks, e.g. of clocks of one kind in {@link com.devexperts.drd.agent.core.ClocksStorage}.
+ * Clock is added when it is created and removed when it is disposed; meanwhile clock itself reports, how its sizes
+ * change, when it grows or inflates (see {@link VectorClock#getSizes()}). So totals are known without scanning clocks.
+ * Totals are approximate: clocks are not locked, when they are added or removed.
+ */
+public final class ClockSizes {
+    private final Counter count = new Counter();
+    private final Counter reserved = new Counter();
+    private final Counter real = new Counter();
+    private final Counter footprint = new Counter();
+
+    public void add(VectorClock clock) {
+        change(1, clock.getReservedSizeUnprotected(), clock.getRealSizeUnprotected(), clock.getFootprintUnprotected());
+    }
+
+    public void remove(VectorClock clock) {
+        change(-1, -clock.getReservedSizeUnprotected(), -clock.getRealSizeUnprotected(), -clock.getFootprintUnprotected());
+    }
+
+    public void add(DataClock clock) {
+        change(1, clock.getReservedSizeUnprotected(), clock.getRealSizeUnprotected(), clock.getFootprintUnprotected());
+    }
+
+    public void remove(DataClock clock) {
+        change(-1, -clock.getReservedSizeUnprotected(), -clock.getRealSizeUnprotected(), -clock.getFootprintUnprotected());
+    }
+
+    void change(int count, long reserved, long real, long footprint) {
+        if (count != 0) this.count.add(count);
+        if (reserved != 0) this.reserved.add(reserved);
+        if (real != 0) this.real.add(real);
+        if (footprint != 0) this.footprint.add(footprint);
+    }
+
+    /**
+     * @return number of clocks
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @return total number of frames, that clocks are able to store without resize
+     */
+    public long getReservedSize() {
+        return reserved.get();
+    }
+
+    /**
+     * @return total number of frames in use
+     */
+    public long getRealSize() {
+        return real.get();
+    }
+
+    /**
+     * @return approximate number of bytes, occupied by clocks
+     */
+    public long getFootprint() {
+        return footprint.get();
+    }
+}
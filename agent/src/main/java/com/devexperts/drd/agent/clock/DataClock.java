@@ -19,11 +19,13 @@
 
 package com.devexperts.drd.agent.clock;
 
-import com.devexperts.drd.bootstrap.DataRaceDescription;
 import com.devexperts.drd.agent.high_scale_lib.Counter;
 import com.devexperts.drd.bootstrap.DRDEntryPoint;
+import com.devexperts.drd.bootstrap.DRDLogger;
+import com.devexperts.drd.bootstrap.DataRaceDescription;
 import com.devexperts.drd.bootstrap.IDataClock;
 import com.devexperts.drd.bootstrap.IThreadClock;
+import com.devexperts.drd.bootstrap.UnsafeHolder;
 import com.devexperts.drd.bootstrap.stats.Counters;
 import com.devexperts.drd.bootstrap.stats.Processing;
 
@@ -33,38 +35,67 @@ import com.devexperts.drd.bootstrap.stats.Processing;
  * Instead of storing 2 arrays with clock of last write accessor and of last read accessors, optimised
  * <i>epoch-based</i> internal representation is used.
  * <p/>
+ * Write epoch and exclusive read epoch are packed into single longs (see {@link EpochUtils}), so that clock
+ * of exclusively accessed field takes only a few words and doesn't allocate any arrays. Vector clock of reads
+ * is allocated lazily in {@link Inflated} side object only when reads become shared
+ * (or when epoch doesn't fit into packed form).
+ * <p/>
+ * Accesses in the same epoch as previous access of the same kind ("read same epoch" and "write same epoch" rules)
+ * don't change state of the clock, so they are recognized via single volatile read of packed epoch
+ * and do not acquire lock. All other cases are processed under lock.
+ * <p/>
  * For more details please refer to
  * <a href='http://citeseer.ist.psu.edu/viewdoc/summary?doi=10.1.1.148.2759'>Flanagan & Freund's 2009 article</a>.
  */
 @SuppressWarnings({"ThrowableResultOfMethodCallIgnored", "UnusedDeclaration"})
-public class DataClock extends VectorClock implements IDataClock {
+public class DataClock implements IDataClock {
     public static final Counter sharedReadsCounter = new Counter();
+    public static final Counter sameEpochCounter = new Counter();
+    /**
+     * Counts accesses, whose epoch doesn't fit into packed form, see {@link EpochUtils#pack}
+     */
+    public static final Counter unpackableEpochCounter = new Counter();
 
-    private final int ownerId;
+    /**
+     * Approximate size of exclusive data clock: header, 5 ints/references and 2 longs, aligned by 8 bytes
+     */
+    public static final int EXCLUSIVE_FOOTPRINT = 48;
 
-    //write epoch
-    private long wTid;
-    private long wFrame;
-    private int wLocation;
+    private static final long lock_offset;
 
-    //read epoch
-    private long rTid;
-    private long rFrame;
-    private int rLocation;
+    static {
+        try {
+            lock_offset = UnsafeHolder.UNSAFE.objectFieldOffset(DataClock.class.getDeclaredField("lock"));
+        } catch (NoSuchFieldException e) {
+            e.printStackTrace();
+            DRDLogger.error(e);
+            throw new RuntimeException();
+        }
+    }
+
+    private final int ownerId;
 
-    private long[] rLocations;
-    private int rLocationsSize;
+    //this field is updated via Unsafe.xxxInt
+    @SuppressWarnings("FieldCanBeLocal")
+    private volatile int lock;
 
     /**
-     * Indicates if current read state is exclusive (than use read epoch) or shared (use "clock" array, declared in superclass)
+     * Packed write epoch: 0 if there were no writes, {@link EpochUtils#NONE} if it is stored in {@link #inflated}.
+     */
+    private volatile long wEpoch;
+    /**
+     * Packed exclusive read epoch: 0 if there were no reads, {@link EpochUtils#NONE} if reads are shared,
+     * i.e. stored in {@link #inflated}.
      */
-    private boolean exclusive;
+    private volatile long rEpoch;
+    private int wLocation;
+    private int rLocation;
+
+    private Inflated inflated;
 
     public DataClock(int ownerId) {
-        super(0);
         DRDEntryPoint.getRegistry().registerDataClock(ownerId);
         this.ownerId = ownerId;
-        exclusive = true;
     }
 
     @Override
@@ -79,48 +110,54 @@ public class DataClock extends VectorClock implements IDataClock {
      * @param tvc thread clock
      */
     public DataRaceDescription write(IThreadClock tvc, int location, boolean detectWWOnly) {
-        //TODO: immediately throw race if workingThread.get() != NO_WORKING_THREAD
-        long tid = tvc.getTid();
-        acquireLock(tid);
+        //TODO: immediately throw race if lock is taken
+        final long tid = tvc.getTid();
+        final long tCurrentFrame = tvc.currentFrame();
+        final long epoch = EpochUtils.pack(tid, tCurrentFrame);
+        if (epoch != EpochUtils.NONE && epoch == wEpoch) {
+            //write same epoch => nothing to check or update
+            sameEpochCounter.increment();
+            return null;
+        }
+        if (epoch == EpochUtils.NONE) {
+            unpackableEpochCounter.increment();
+        }
+        //same epoch accesses never reach this point, so it's enough to mark only first access in epoch
+        ((ThreadVectorClock) tvc).accessedInFrame = true;
+        acquireLock();
         try {
+            final long wTid = getWriteTid();
             if (wTid == tid) {
-                wFrame = tvc.currentFrame();
-                wLocation = location;
+                setWriteEpoch(tid, tCurrentFrame, epoch, location);
                 return null; //same thread => do nothing
             }
             // MSU 2018
-            if (wTid > 0 && wFrame >= tvc.getFrame(wTid)) {
+            if (wTid > 0 && getWriteFrame() >= tvc.getFrame(wTid)) {
                 //report write-write race
                 return null;//createRaceException(DataRaceDescription.AccessType.WRITE, DataRaceDescription.AccessType.WRITE, tvc, wTid, location, wLocation);
             }
-            if (exclusive) {
-                if (rTid > 0 && rTid != tid && rFrame >= tvc.getFrame(rTid) && !detectWWOnly) {
+            final long rEpoch = this.rEpoch;
+            if (rEpoch != EpochUtils.NONE) {
+                final long rTid = EpochUtils.tid(rEpoch);
+                if (rTid > 0 && rTid != tid && EpochUtils.frame(rEpoch) >= tvc.getFrame(rTid) && !detectWWOnly) {
                     //report write-read race;
                      // MSU 2018
                     return null;// createRaceException(DataRaceDescription.AccessType.WRITE, DataRaceDescription.AccessType.READ, tvc, rTid, location, rLocation);
                 }
-                //clear read epoch
-                rTid = 0;
-                rFrame = 0;
-                rLocation = 0;
             } else {
-                final long racingTid = VectorClockUtils.checkDataRace((ThreadVectorClock) tvc, this);
+                final long racingTid = VectorClockUtils.checkDataRace((ThreadVectorClock) tvc, inflated);
                 if (racingTid > 0 && !detectWWOnly) {
                     //report write-read race;
-                    final int locationIndex = VectorClockUtils.findTid(rLocations, racingTid, rLocationsSize) + 1;
-                    final int raceLocation = (int) rLocations[locationIndex];
+                    final int raceLocation = inflated.getReadLocation(racingTid);
                      // MSU 2018
                     return null;// createRaceException(DataRaceDescription.AccessType.WRITE, DataRaceDescription.AccessType.READ, tvc, racingTid, location, raceLocation);
                 }
-                size = 0;
-                clock = EMPTY_ARRAY;
-                rLocations = EMPTY_ARRAY;
-                rLocationsSize = 0;
-                exclusive = true;
+                inflated.clearReads();
             }
-            wTid = tid;
-            wFrame = tvc.currentFrame();
-            wLocation = location;
+            //clear read epoch
+            this.rEpoch = 0;
+            rLocation = 0;
+            setWriteEpoch(tid, tCurrentFrame, epoch, location);
             return null;
         } finally {
             releaseLock();
@@ -133,84 +170,53 @@ public class DataClock extends VectorClock implements IDataClock {
      * @param tvc thread clock
      */
     public DataRaceDescription read(IThreadClock tvc, int location, boolean detectWWOnly) {
-        //TODO: immediately throw race if workingThread.get() != NO_WORKING_THREAD and working thread is writing
-        long tid = tvc.getTid();
-        acquireLock(tid);
+        //TODO: immediately throw race if lock is taken and locking thread is writing
+        final long tid = tvc.getTid();
+        final long tCurrentFrame = tvc.currentFrame();
+        final long epoch = EpochUtils.pack(tid, tCurrentFrame);
+        if (epoch != EpochUtils.NONE && epoch == rEpoch) {
+            //read same epoch => nothing to check or update
+            sameEpochCounter.increment();
+            return null;
+        }
+        if (epoch == EpochUtils.NONE) {
+            unpackableEpochCounter.increment();
+        }
+        //same epoch accesses never reach this point, so it's enough to mark only first access in epoch
+        ((ThreadVectorClock) tvc).accessedInFrame = true;
+        acquireLock();
         try {
-            if (tid == rTid) {
-                rFrame = tvc.currentFrame();
+            final long rEpoch = this.rEpoch;
+            final long rTid = EpochUtils.tid(rEpoch);
+            if (rTid == tid && epoch != EpochUtils.NONE) {
+                this.rEpoch = epoch;
                 rLocation = location;
                 return null; //same thread => do nothing.
             }
-            if (wTid > 0 && wTid != tid && wFrame >= tvc.getFrame(wTid) && (tvc.getFrame2(wTid) < 0) && !detectWWOnly) {
+            final long wTid = getWriteTid();
+            if (wTid > 0 && wTid != tid && getWriteFrame() >= tvc.getFrame(wTid) && (tvc.getFrame2(wTid) < 0) && !detectWWOnly) {
                 //report read-write race
                 return createRaceException(DataRaceDescription.AccessType.READ, DataRaceDescription.AccessType.WRITE, tvc, wTid, location, wLocation);
             }
             //2 reads can't race => no more checks in this method
-            final long tCurrentFrame = tvc.currentFrame();
-            if (exclusive) {
-                if (rFrame <= tvc.getFrame(rTid)) {
-                    //clock of current thread happens-after epoch of last reader
-                    // => this read is exclusive for current thread. simply update read epoch
-                    rFrame = tCurrentFrame;
-                    rTid = tid;
-                    rLocation = location;
-                } else {
-                    //switch state to shared, init array of read clocks, clear read epoch.
-                    //Only ~ 0.1% calls are expected to reach this point
-                    exclusive = false;
-                    sharedReadsCounter.increment();
-                    clock = new long[4];
-                    size = 4;
-                    rLocations = new long[4];
-                    rLocationsSize = 4;
-                    //array should be sorted by tid asc(superclass invariant)
-                    if (tid < rTid) {
-                        clock[0] = tid;
-                        clock[1] = tCurrentFrame;
-                        clock[2] = rTid;
-                        clock[3] = rFrame;
-                        rLocations[0] = tid;
-                        rLocations[1] = location;
-                        rLocations[2] = rTid;
-                        rLocations[3] = rLocation;
-                    } else {
-                        clock[0] = rTid;
-                        clock[1] = rFrame;
-                        clock[2] = tid;
-                        clock[3] = tCurrentFrame;
-                        rLocations[0] = rTid;
-                        rLocations[1] = rLocation;
-                        rLocations[2] = tid;
-                        rLocations[3] = location;
-                    }
-                    //clear read epoch
-                    rTid = 0;
-                    rFrame = 0;
-                    rLocation = 0;
-                }
+            if (rEpoch == EpochUtils.NONE) {
+                inflated.setRead(tid, tCurrentFrame, location);
+            } else if (epoch != EpochUtils.NONE && EpochUtils.frame(rEpoch) <= tvc.getFrame(rTid)) {
+                //clock of current thread happens-after epoch of last reader
+                // => this read is exclusive for current thread. simply update read epoch
+                this.rEpoch = epoch;
+                rLocation = location;
             } else {
-                setFrame(tid, tCurrentFrame);
-                int index = VectorClockUtils.findTid(rLocations, tid, rLocationsSize);
-                if (index >= 0) {
-                    rLocations[index + 1] = location;
-                } else {
-                    final int insertIndex = -index - 2;
-                    if (rLocationsSize <= rLocations.length - 2) {
-                        //there is enough place in existing array
-                        VectorClockUtils.addFrameAndShift(rLocations, tid, location, insertIndex, rLocationsSize);
-                        rLocationsSize += 2;
-                    } else {
-                        sharedReadsCounter.increment();
-                        long[] rLoc = new long[rLocations.length * 2];
-                        System.arraycopy(rLocations, 0, rLoc, 0, insertIndex);
-                        rLoc[insertIndex] = tid;
-                        rLoc[insertIndex + 1] = location;
-                        System.arraycopy(rLocations, insertIndex, rLoc, insertIndex + 2, rLocations.length - insertIndex);
-                        rLocations = rLoc;
-                        rLocationsSize += 2;
-                    }
+                //switch state to shared, init clock of reads, clear read epoch.
+                //Only ~ 0.1% calls are expected to reach this point
+                sharedReadsCounter.increment();
+                final Inflated inflated = inflate();
+                if (rTid > 0) {
+                    inflated.setRead(rTid, EpochUtils.frame(rEpoch), rLocation);
                 }
+                inflated.setRead(tid, tCurrentFrame, location);
+                this.rEpoch = EpochUtils.NONE;
+                rLocation = 0;
             }
             return null;
         } finally {
@@ -218,61 +224,121 @@ public class DataClock extends VectorClock implements IDataClock {
         }
     }
 
-    @Override
     public int getRealSizeUnprotected() {
-        //4 longs: rTid, rFrame, wTid, wFrame
-        return size == 0 ? 4 : size;
+        //2 packed longs: rEpoch, wEpoch, and shared reads, if any
+        final Inflated inflated = this.inflated;
+        return inflated == null ? 2 : 2 + inflated.size;
     }
 
-    @Override
     public int getReservedSizeUnprotected() {
-        //4 longs: rTid, rFrame, wTid, wFrame
-        return clock.length == 0 ? 4 : clock.length;
+        //2 packed longs: rEpoch, wEpoch, and array of shared reads, if any
+        final Inflated inflated = this.inflated;
+        return inflated == null ? 2 : 2 + inflated.clock.length;
+    }
+
+    /**
+     * Clock reports changes of its sizes to returned object, when it inflates or deflates; its inflated part
+     * reports its growth by itself. Should be overridden by clocks, that are accounted in some {@link ClockSizes}.
+     *
+     * @return sizes, that account this clock, or null if this clock isn't accounted anywhere
+     */
+    protected ClockSizes getSizes() {
+        return null;
+    }
+
+    /**
+     * @return approximate number of bytes, occupied by this clock
+     */
+    public long getFootprintUnprotected() {
+        final Inflated inflated = this.inflated;
+        return inflated == null ? EXCLUSIVE_FOOTPRINT : EXCLUSIVE_FOOTPRINT + inflated.getFootprintUnprotected();
     }
 
     public long[] getReadFrames() {
-        if (exclusive) {
-            return new long[]{rTid, rFrame};
+        final long rEpoch = this.rEpoch;
+        final Inflated inflated = this.inflated;
+        if (rEpoch != EpochUtils.NONE || inflated == null) {
+            return new long[]{EpochUtils.tid(rEpoch), EpochUtils.frame(rEpoch)};
         } else {
-            long[] result = new long[size];
-            System.arraycopy(clock, 0, result, 0, size);
-            return result;
+            return inflated.getReadFrames();
         }
     }
 
     public long[] getWriteFrames() {
-        return new long[]{wTid, wFrame};
+        return new long[]{getWriteTid(), getWriteFrame()};
     }
 
     @Override
     public String toString() {
         final StringBuilder sb = new StringBuilder("{");
-        sb.append("W:[").append(wTid).append(":").append(wFrame).append("] ");
+        sb.append("W:[").append(getWriteTid()).append(":").append(getWriteFrame()).append("] ");
         sb.append("R:");
-        if (exclusive) sb.append("[").append(rTid).append(":").append(rFrame).append("]");
-        else {
-            for (int i = 0; i < size / 2; i++) {
-                sb.append("[").append(clock[2 * i]).append(":").append(clock[2 * i + 1]).append("]");
-            }
+        final long[] reads = getReadFrames();
+        for (int i = 0; i < reads.length / 2; i++) {
+            sb.append("[").append(reads[2 * i]).append(":").append(reads[2 * i + 1]).append("]");
         }
-        sb.append("; exclusive = ").append(exclusive);
+        sb.append("; exclusive = ").append(rEpoch != EpochUtils.NONE);
         sb.append("}");
         return sb.toString();
     }
 
-/*    public String detailedToString() {
-        StringBuilder sb = new StringBuilder();
-        sb.append("wTid = ").append(wTid).append("\n");
-        sb.append("wFrame = ").append(wFrame).append("\n");
-        sb.append("wLocation = ").append(wLocation).append("\n");
-        sb.append("rTid = ").append(rTid).append("\n");
-        sb.append("rFrame = ").append(rFrame).append("\n");
-        sb.append("rLocation = ").append(rLocation).append("\n");
-        sb.append("rLocations = ").append(Arrays.toString(rLocations)).append("\n");
-        sb.append("rLocationsSize = ").append(rLocationsSize).append("\n");
-        sb.append("exclusive = ").append(exclusive).append("\n");
-        return sb.toString();
-    }*/
+    private void acquireLock() {
+        while (!UnsafeHolder.UNSAFE.compareAndSwapInt(this, lock_offset, 0, 1)) {
+            VectorClock.yieldCounter.increment();
+            Thread.yield();
+        }
+    }
+
+    private void releaseLock() {
+        UnsafeHolder.UNSAFE.putOrderedInt(this, lock_offset, 0);
+    }
+
+    private long getWriteTid() {
+        final long wEpoch = this.wEpoch;
+        if (wEpoch == EpochUtils.NONE) {
+            final Inflated inflated = this.inflated;
+            return inflated == null ? 0 : inflated.wTid;
+        }
+        return EpochUtils.tid(wEpoch);
+    }
+
+    private long getWriteFrame() {
+        final long wEpoch = this.wEpoch;
+        if (wEpoch == EpochUtils.NONE) {
+            final Inflated inflated = this.inflated;
+            return inflated == null ? 0 : inflated.wFrame;
+        }
+        return EpochUtils.frame(wEpoch);
+    }
+
+    /**
+     * Should be called under lock
+     */
+    private void setWriteEpoch(long tid, long frame, long epoch, int location) {
+        if (epoch == EpochUtils.NONE) {
+            final Inflated inflated = inflate();
+            inflated.wTid = tid;
+            inflated.wFrame = frame;
+        } else if (rEpoch != EpochUtils.NONE && inflated != null) {
+            //neither reads nor write need side object anymore
+            inflated.removeSizes();
+            inflated = null;
+        }
+        wEpoch = epoch;
+        wLocation = location;
+    }
+
+    /**
+     * Should be called under lock
+     */
+    private Inflated inflate() {
+        Inflated inflated = this.inflated;
+        if (inflated == null) {
+            this.inflated = inflated = new Inflated(getSizes());
+            inflated.addSizes();
+        }
+        return inflated;
+    }
 
     private DataRaceDescription createRaceException(DataRaceDescription.AccessType currentAccess, DataRaceDescription.AccessType racingAccess, IThreadClock tvc, long racingTid, int location, int raceLocation) {
         if (DRDEntryPoint.getRegistry().getRaceHistory().shouldReportRace(location, raceLocation)) {
@@ -283,4 +349,90 @@ public class DataClock extends VectorClock implements IDataClock {
             return null;
         }
     }
+
+    /**
+     * Side part of data clock, that is allocated only when reads become shared.
+     * Stores vector clock of reads (in superclass) and locations of these reads indexed by slot in the same way.
+     * Locations of reads of dead threads are not kept. Also stores write epoch if it doesn't fit into packed form.
+     */
+    private static class Inflated extends VectorClock {
+        private static final int[] EMPTY_LOCATIONS = new int[0];
+        private final ClockSizes sizes;
+        private int[] rLocations = EMPTY_LOCATIONS;
+        private long wTid;
+        private long wFrame;
+
+        private Inflated(ClockSizes sizes) {
+            super(0);
+            this.sizes = sizes;
+        }
+
+        @Override
+        protected ClockSizes getSizes() {
+            return sizes;
+        }
+
+        void addSizes() {
+            if (sizes != null) {
+                sizes.change(0, clock.length, size, getFootprintUnprotected());
+            }
+        }
+
+        void removeSizes() {
+            if (sizes != null) {
+                sizes.change(0, -clock.length, -size, -getFootprintUnprotected());
+            }
+        }
+
+        void setRead(long tid, long frame, int location) {
+            final int slot = slotOf(tid);
+            if (slot < 0) {
+                //reader has already died
+                setFrame(tid, frame);
+                return;
+            }
+            setSlotFrame(slot, frame);
+            if (slot >= rLocations.length) {
+                int[] rLoc = new int[clock.length];
+                System.arraycopy(rLocations, 0, rLoc, 0, rLocations.length);
+                if (sizes != null) {
+                    sizes.change(0, 0, 0, locationsFootprint(rLoc) - locationsFootprint(rLocations));
+                }
+                rLocations = rLoc;
+            }
+            rLocations[slot] = location;
+        }
+
+        int getReadLocation(long tid) {
+            final int slot = slotOf(tid);
+            return slot >= 0 && slot < rLocations.length ? rLocations[slot] : 0;
+        }
+
+        long[] getReadFrames() {
+            final long[] live = getLiveFrames();
+            final long[] dead = deadClock;
+            if (dead.length == 0) return live;
+            final long[] res = new long[live.length + dead.length];
+            final int length = VectorClockUtils.mergeSortedClocks(live, live.length, dead, dead.length, res);
+            return length == res.length ? res : VectorClockUtils.copyOf(res, length);
+        }
+
+        void clearReads() {
+            removeSizes();
+            size = 0;
+            clock = EMPTY_ARRAY;
+            deadClock = EMPTY_ARRAY;
+            rLocations = EMPTY_LOCATIONS;
+            addSizes();
+        }
+
+        @Override
+        public long getFootprintUnprotected() {
+            return super.getFootprintUnprotected() + 24 + locationsFootprint(rLocations);
+        }
+
+        private static long locationsFootprint(int[] locations) {
+            return locations.length == 0 ? 0 : 16 + 4L * locations.length;
+        }
+    }
 }
@@ -0,0 +1,65 @@
+/*
+ * DRD - Dynamic Data Race Detector for Java programs
+ *
+ * Copyright (C) 2002-2018 Devexperts LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devexperts.drd.agent.clock;
+
+/**
+ * Packs <i>epoch</i> (pair of tid and frame) into single long, so that it could be stored in one word, published
+ * and compared with single volatile read/write.<br/>
+ * Upper {@link #TID_BITS} bits (except sign bit) hold tid, lower {@link #FRAME_BITS} bits hold frame.
+ * Tid is always positive, so 0 is never a packed epoch and may be used as "empty epoch" (decoded as tid 0, frame 0).
+ * If tid or frame doesn't fit, epoch is not packable and {@link #NONE} is returned instead - callers should
+ * store it in wide form then.
+ * <p/>
+ * Tids are assigned sequentially by JVM, so threads started after the first ~8M threads of the JVM don't fit
+ * and their accesses always take locked path of {@link DataClock}; such accesses are counted by
+ * {@link DataClock#unpackableEpochCounter}. Dense slots of {@link com.devexperts.drd.agent.ThreadSlots} can't be
+ * packed instead of tids: slot of dead thread is reused, and packed epoch has no generation to tell its owners apart.
+ */
+public class EpochUtils {
+    public static final long NONE = -1;
+
+    static final int TID_BITS = 23;
+    static final int FRAME_BITS = 64 - 1 - TID_BITS;
+    private static final long MAX_TID = (1L << TID_BITS) - 1;
+    private static final long MAX_FRAME = (1L << FRAME_BITS) - 1;
+
+    private EpochUtils() {
+    }
+
+    /**
+     * @param tid   thread id
+     * @param frame time frame of specified thread
+     * @return packed epoch or {@link #NONE} if tid or frame is out of range
+     */
+    public static long pack(long tid, long frame) {
+        if (tid <= 0 || tid > MAX_TID || frame < 0 || frame > MAX_FRAME) {
+            return NONE;
+        }
+        return (tid << FRAME_BITS) | frame;
+    }
+
+    public static long tid(long epoch) {
+        return epoch == NONE ? 0 : epoch >>> FRAME_BITS;
+    }
+
+    public static long frame(long epoch) {
+        return epoch == NONE ? 0 : epoch & MAX_FRAME;
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * DRD - Dynamic Data Race Detector for Java programs
+ *
+ * Copyright (C) 2002-2018 Devexperts LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devexperts.drd.agent.clock;
+
+import com.devexperts.drd.agent.high_scale_lib.Counter;
+import com.devexperts.drd.bootstrap.IDataClock;
+
+/**
+ * Per-thread direct-mapped cache of data clocks, that were already accessed by owner thread in its current frame.
+ * Only the first access to data clock in epoch matters: repeated read or write in the same frame can't reveal new race,
+ * and read after write in the same frame is covered by the write. Such accesses are filtered before touching shared
+ * data clock at all. Entries are stamped with frame, in which they were recorded, so that {@link ThreadVectorClock#tick()}
+ * invalidates the whole cache without clearing it.
+ * Not thread-safe. Should be used only by owner thread.
+ */
+public final class RedundantAccessFilter {
+    private static final int SIZE = 256;
+    private static final int MASK = SIZE - 1;
+    private static final int FLUSH_THRESHOLD = 1024;
+
+    /**
+     * Number of accesses, that were filtered as redundant. Updated in batches of {@link #FLUSH_THRESHOLD}
+     */
+    public static final Counter filteredCounter = new Counter();
+
+    private final IDataClock[] clocks = new IDataClock[SIZE];
+    private final long[] frames = new long[SIZE];
+    private final boolean[] writes = new boolean[SIZE];
+    private int pendingFiltered;
+
+    /**
+     * @param clock    accessed data clock
+     * @param location location of access, used as hash
+     * @param frame    current frame of owner thread
+     * @param write    true for write access, false for read access
+     * @return true if the same clock was already written, or read and access is read, in specified frame
+     */
+    public boolean isRedundant(IDataClock clock, int location, long frame, boolean write) {
+        final int index = location & MASK;
+        if (clocks[index] == clock && frames[index] == frame && (writes[index] || !write)) {
+            if (++pendingFiltered == FLUSH_THRESHOLD) {
+                filteredCounter.add(pendingFiltered);
+                pendingFiltered = 0;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Records access, that was fully processed by data clock
+     */
+    public void accessed(IDataClock clock, int location, long frame, boolean write) {
+        final int index = location & MASK;
+        if (clocks[index] == clock && frames[index] == frame) {
+            writes[index] |= write;
+        } else {
+            clocks[index] = clock;
+            frames[index] = frame;
+            writes[index] = write;
+        }
+    }
+}
@@ -75,33 +75,40 @@ public class SyncClock extends VectorClock implements ISyncClock {
         }
     }
 
+    /**
+     * Drops frames of retired threads from dead clock. May be called from any thread.
+     *
+     * @return approximate number of bytes reclaimed
+     */
+    public long compact() {
+        acquireLock(Thread.currentThread().getId());
+        try {
+            return compactDeadClock();
+        } finally {
+            releaseLock();
+        }
+    }
+
     private void loadToInternal(ThreadVectorClock tvc) {
         if (lastThread == tvc.tid && tvc.lastLock == this) {
             //optimize: do nothing
             optimisedAcquireProfiler.increment();
         } else {
             fullAcquireProfiler.increment();
-            tvc.checkGeneration();
-            checkGeneration();
             VectorClockUtils.load(this, tvc);
-            tvc.updateCachedIndex();
             tvc.lastLock = this;
         }
-        //VectorClockUtils.assureCompliant(this);
     }
 
     private void loadFromInternal(ThreadVectorClock tvc) {
         if (lastThread == tvc.tid) {
-            //optimize: load only current frame
+            //optimize: load only current frame. Slot of live thread can't change, so generation check is not needed
             optimisedReleaseProfiler.increment();
-            setFrame(tvc.tid, tvc.currentFrame());
+            setSlotFrame(tvc.index, tvc.currentFrame());
         } else {
             fullReleaseProfiler.increment();
-            tvc.checkGeneration();
-            checkGeneration();
             VectorClockUtils.load(tvc, this);
             lastThread = tvc.tid;
         }
-        //VectorClockUtils.assureCompliant(this);
     }
 }
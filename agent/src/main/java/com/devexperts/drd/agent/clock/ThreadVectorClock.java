@@ -19,33 +19,43 @@
 
 package com.devexperts.drd.agent.clock;
 
+import com.devexperts.drd.agent.Generations;
+import com.devexperts.drd.agent.ThreadSlots;
 import com.devexperts.drd.bootstrap.DRDLogger;
 import com.devexperts.drd.bootstrap.IThreadClock;
 
 /**
  * Thread vector clock. Not thread-safe. Should be used only by owner thread.
- * TODO: should be located directly inside java.lang.Thread class
+ * Kept in {@link com.devexperts.drd.agent.core.ThreadContext} of owner thread.
  * */
 public class ThreadVectorClock extends VectorClock implements IThreadClock {
     /**
      * Tid of owner thread
      */
     public final long tid;
-    private int index;
+    /**
+     * Slot of owner thread, see {@link ThreadSlots}
+     */
+    final int index;
     /**
      * Reference to last data clock that were merged from/to this thread clock
      */
     VectorClock lastLock = null;
+    /**
+     * True iff owner thread accessed shared data since last tick
+     */
+    boolean accessedInFrame;
 
     public static void init() {
         DRDLogger.log("Thread clock init at " + System.currentTimeMillis() + " !");
     }
 
     public ThreadVectorClock() {
-        clock[0] = tid = Thread.currentThread().getId();
-        clock[1] = 1;
-        size = 2;
-        index = 1;
+        tid = Thread.currentThread().getId();
+        index = ThreadSlots.allocate(tid);
+        //slot may have been freed by dead thread just now, so generation should be read only after allocation
+        generation = Generations.generation;
+        setSlotFrame(index, 1);
     }
 
     public long getTid() {
@@ -57,30 +67,19 @@ public class ThreadVectorClock extends VectorClock implements IThreadClock {
      */
     public void tick() {
         clock[index]++;
+        accessedInFrame = false;
     }
 
-    public long currentFrame() {
-        return clock[index];
-    }
-
-    @Override
-    protected void addFrame(int index, long tid, long frame) {
-        super.addFrame(index, tid, frame);
-        if (index <= this.index) {
-            this.index += 2;
-        }
-    }
-
-    void updateCachedIndex() {
-        index = VectorClockUtils.findTid(this, tid) + 1;
-        if (index < 0) throw new RuntimeException("index : " + index + " clock : " + this);
+    /**
+     * @return frame, that should be known about this thread by others, to be sure that all its data accesses
+     * happened before
+     */
+    public long getRequiredFrame() {
+        return accessedInFrame ? currentFrame() + 1 : currentFrame();
     }
 
-    @Override
-    public void checkGeneration() {
-        int gen = generation;
-        super.checkGeneration();
-        if (gen != generation) updateCachedIndex();
+    public long currentFrame() {
+        return clock[index];
     }
 
     @Override
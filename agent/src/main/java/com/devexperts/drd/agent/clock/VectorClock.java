@@ -20,6 +20,7 @@
 package com.devexperts.drd.agent.clock;
 
 import com.devexperts.drd.agent.Generations;
+import com.devexperts.drd.agent.ThreadSlots;
 import com.devexperts.drd.bootstrap.UnsafeHolder;
 import com.devexperts.drd.agent.high_scale_lib.Counter;
 import com.devexperts.drd.bootstrap.DRDLogger;
@@ -27,18 +28,24 @@ import com.devexperts.drd.bootstrap.IVectorClock;
 
 /**
  * Core class of detector, representing vector clock.<br/>
- * Clock are stored in an array clock[tid_1, frame_1, tid_2, frame_2, .., tid_(size/2), frame_(size/2), 0, .. 0]. <br/>
- * Initially size is 0, further it is stored in "size" field. Size is always even and &lt;= array length.<br/>
- * When array gets filled, it is resized (length of new array would be old length * 2).<br/>
- * <b>Array is always sorted by tid</b> - i.e, <code> for any i = 0.. (size/2 - 1) array[i] < array[i+2]</code>.
- * This fact is always used when searching for frame or merging two clock.
+ * Live part of clock is stored in an array clock[frame_0, frame_1, .., frame_(size-1), 0, .. 0], indexed by slots of live
+ * threads (see {@link ThreadSlots}). Frame 0 means, that nothing is known about thread. All frames starting from "size"
+ * are 0. When array gets filled, it is resized to fit number of slots.<br/>
+ * Frames of dead threads are stored in deadClock[tid_1, frame_1, tid_2, frame_2, ..], which is <b>always sorted by tid</b>
+ * and is never modified in place, because it is usually shared between many clocks.<br/>
+ * Slot-indexed live part is valid only for clock's generation: before comparing it with any other clock both of them
+ * should be brought to the same generation via {@link #checkGeneration()}.
  */
 @SuppressWarnings({"ThrowableResultOfMethodCallIgnored", "UnusedDeclaration"})
 public class VectorClock implements IVectorClock {
     /*public static final Profiler creationProfiler = new Profiler(100);
     public static final Profiler deathProfiler = new Profiler(100);*/
     private static final int NO_WORKING_THREAD = -1;
-    private static final int INIT_SIZE = 10;
+    private static final int INIT_SIZE = 8;
+    /**
+     * Approximate size of vector clock object itself: header, long, 4 ints/references, aligned by 8 bytes
+     */
+    private static final int OBJECT_FOOTPRINT = 40;
     private static final long workingThread_offset;
 
     public static final Counter resizeProfiler = new Counter();
@@ -62,24 +69,31 @@ public class VectorClock implements IVectorClock {
     @SuppressWarnings("FieldCanBeLocal")
     private volatile long workingThread = NO_WORKING_THREAD;
     /**
-     * Size is always even. For each i in 0.. clock.length/2 - 1 clock[2*i+1] is frame for thread with tid==clock[2*i]
+     * clock[slot] is frame for thread, that occupied this slot at clock's generation. All frames from size are 0.
      */
     long[] clock;
     int size;
     protected int generation;
     long[] deadClock;
+    /**
+     * {@link Generations#retiredGeneration} at the moment of last compaction of dead clock
+     */
+    int retiredGeneration;
 
     /**
      * Creates new clock of initial size.
      */
     public VectorClock() {
-        this(INIT_SIZE * 2);
+        this(INIT_SIZE);
     }
 
     protected VectorClock(int size) {
         clock = new long[size];
         this.size = 0;
         deadClock = EMPTY_ARRAY;
+        //empty clock knows nothing about slots of dead threads
+        generation = Generations.generation;
+        retiredGeneration = Generations.retiredGeneration;
     }
 
     /**
@@ -93,6 +107,7 @@ public class VectorClock implements IVectorClock {
         this.deadClock = vc.deadClock;
         System.arraycopy(vc.clock, 0, clock, 0, size);
         generation = vc.generation;
+        retiredGeneration = vc.retiredGeneration;
     }
 
     public int getRealSizeUnprotected() {
@@ -103,10 +118,51 @@ public class VectorClock implements IVectorClock {
         return clock.length;
     }
 
+    /**
+     * @return approximate number of bytes, occupied by this clock. Dead clock is not counted, because it is usually
+     * shared between many clocks.
+     */
+    public long getFootprintUnprotected() {
+        return OBJECT_FOOTPRINT + VectorClockUtils.arrayFootprint(clock);
+    }
+
+    /**
+     * Clock reports changes of its sizes to returned object. Should be overridden by clocks, that are accounted
+     * in some {@link ClockSizes}; it is called only when clock grows, so it doesn't slow down the common path.
+     *
+     * @return sizes, that account this clock, or null if this clock isn't accounted anywhere
+     */
+    protected ClockSizes getSizes() {
+        return null;
+    }
+
+    /**
+     * Should be called, when number of slots in use grows
+     */
+    void sizeChanged(int oldSize) {
+        final ClockSizes sizes = getSizes();
+        if (sizes != null) {
+            sizes.change(0, 0, size - oldSize, 0);
+        }
+    }
+
+    /**
+     * @return live frames as [tid_1, frame_1, tid_2, frame_2, ..] pairs sorted by tid
+     */
     public long[] getLiveFrames() {
-        long[] res = new long[size];
-        System.arraycopy(clock, 0, res, 0, size);
-        return res;
+        long[] res = new long[size * 2];
+        int length = 0;
+        for (int slot = 0; slot < size; slot++) {
+            long frame = clock[slot];
+            long tid = ThreadSlots.getTid(slot);
+            if (frame == 0 || tid == 0) continue;
+            int index = VectorClockUtils.findTid(res, tid, length);
+            if (index < 0) {
+                VectorClockUtils.addFrameAndShift(res, tid, frame, -index - 2, length);
+                length += 2;
+            }
+        }
+        return VectorClockUtils.copyOf(res, length);
     }
 
     public long[] getDeadFrames() {
@@ -120,16 +176,60 @@ public class VectorClock implements IVectorClock {
     }
 
     /**
-     * Sets frame for specified tid to specified value.
+     * May be called from any thread. Dead clock is never modified in place, so the result is either actual or
+     * underestimated frame.
+     *
+     * @param tid tid of dead thread
+     * @return frame of dead thread, known by this clock
+     */
+    public long getDeadFrameUnprotected(long tid) {
+        final long[] deadClock = this.deadClock;
+        final int index = VectorClockUtils.findTid(deadClock, tid, deadClock.length);
+        if (index >= 0) return deadClock[index + 1];
+        return Generations.isRetired(tid) ? Long.MAX_VALUE : 0;
+    }
+
+    /**
+     * Sets frame for specified tid to specified value. Frame of dead thread is stored in dead clock.
      *
      * @param tid   target thread id
      * @param frame frame to set
      */
     protected void setFrame(long tid, long frame) {
-        int index = VectorClockUtils.findTid(this, tid);
+        int slot = slotOf(tid);
+        if (slot >= 0) {
+            setSlotFrame(slot, frame);
+        } else {
+            setDeadFrame(tid, frame);
+        }
+    }
+
+    /**
+     * Sets frame for specified slot. Caller is responsible for slot being valid at clock's generation.
+     *
+     * @param slot  target slot
+     * @param frame frame to set
+     */
+    void setSlotFrame(int slot, long frame) {
+        if (slot >= size) {
+            ensureCapacity(slot + 1);
+            final int oldSize = size;
+            size = slot + 1;
+            sizeChanged(oldSize);
+        }
+        clock[slot] = frame;
+    }
+
+    private void setDeadFrame(long tid, long frame) {
+        int index = VectorClockUtils.findTid(deadClock, tid, deadClock.length);
         if (index >= 0) {
-            clock[index + 1] = frame;
-        } else addFrame(-index - 2, tid, frame);
+            if (deadClock[index + 1] >= frame) return;
+            deadClock = VectorClockUtils.copyOf(deadClock, deadClock.length);
+            deadClock[index + 1] = frame;
+        } else {
+            deadClock = VectorClockUtils.copyOf(deadClock, deadClock.length + 2);
+            VectorClockUtils.addFrameAndShift(deadClock, tid, frame, -index - 2, deadClock.length - 2);
+        }
     }
 
     /**
@@ -139,42 +239,63 @@ public class VectorClock implements IVectorClock {
      * @return frame for specified thread
      */
     public long getFrame(long tid) {
-        int index = VectorClockUtils.findTid(this, tid);
-        if (index >= 0) return clock[index + 1];
-        else {
-            index = VectorClockUtils.findTid(deadClock, tid, deadClock.length);
-            return index >= 0 ? deadClock[index + 1] : 0;
+        int slot = slotOf(tid);
+        if (slot >= 0) {
+            return slot < size ? clock[slot] : 0;
+        } else {
+            int index = VectorClockUtils.findTid(deadClock, tid, deadClock.length);
+            if (index >= 0) return deadClock[index + 1];
+            //whole history of retired thread is known to everybody
+            return Generations.isRetired(tid) ? Long.MAX_VALUE : 0;
         }
     }
 
     // MSU 2018
-/*     */   public int getFrame2(long tid)
-/*     */   {
-/* 158 */     return VectorClockUtils.findTid(this, tid);
-/* 159 */   } 
+    public int getFrame2(long tid) {
+        int slot = slotOf(tid);
+        return slot >= 0 && slot < size && clock[slot] != 0 ? slot : -1;
+    }
+
     /**
-     * Internal method for adding frame at specified index. Performs no checks of preserving internal invariants of clock.
-     * Typically index to insert is received via {@link VectorClockUtils#findTid}.
+     * Brings clock to actual generation and retrieves slot of specified thread.
+     * If generation didn't change while looking for slot, then frame in this slot (if any) belongs to the thread,
+     * and if thread has no slot, its frame (if any) is already in dead clock. The only exception is dying thread,
+     * that is already unmapped from its slot, but whose death is not yet published by generation: its frame is still
+     * in the slot, so generation increment is awaited.
      *
-     * @param index index at which insert tid and his frame
-     * @param tid   tid to insert
-     * @param frame frame to insert
+     * @param tid target thread id
+     * @return slot of specified thread or -1 if thread is dead or unknown
      */
-    protected void addFrame(int index, long tid, long frame) {
-        if (size <= clock.length - 2) {
-            //there is enough place in existing array
-            VectorClockUtils.addFrameAndShift(clock, tid, frame, index, size);
-            size += 2;
-        } else {
-            //resize
+    int slotOf(long tid) {
+        while (true) {
+            checkGeneration();
+            final int slot = ThreadSlots.getSlot(tid);
+            if (generation != Generations.generation) continue;
+            if (slot < 0 && Generations.diedSince(tid, generation)) {
+                Thread.yield();
+                continue;
+            }
+            return slot;
+        }
+    }
+
+    /**
+     * Assures, that internal array is able to store frames for specified number of slots.
+     *
+     * @param length required length
+     */
+    void ensureCapacity(int length) {
+        if (length > clock.length) {
             resizeProfiler.increment();
-            long[] cl = new long[clock.length * 2];
-            System.arraycopy(clock, 0, cl, 0, index);
-            cl[index] = tid;
-            cl[index + 1] = frame;
-            System.arraycopy(clock, index, cl, index + 2, clock.length - index);
+            int newLength = Math.max(length, ThreadSlots.getSlotsCount());
+            long[] cl = new long[Math.max(newLength, clock.length == 0 ? 4 : clock.length * 2)];
+            System.arraycopy(clock, 0, cl, 0, size);
+            final ClockSizes sizes = getSizes();
+            if (sizes != null) {
+                sizes.change(0, cl.length - clock.length, 0,
+                        VectorClockUtils.arrayFootprint(cl) - VectorClockUtils.arrayFootprint(clock));
+            }
             clock = cl;
-            size += 2;
         }
     }
 
@@ -193,71 +314,80 @@ public class VectorClock implements IVectorClock {
     }
 
 
-    private void incrementGeneration(long tid) {
-        int cacheIndex = VectorClockUtils.findTid(clock, tid, size);
-        if (cacheIndex > 0) {
-            long frame = clock[cacheIndex + 1];
-            VectorClockUtils.removeFrameAndShift(clock, cacheIndex, size);
-            size -= 2;
-            int insertIndex = -VectorClockUtils.findTid(deadClock, tid, deadClock.length) - 2;
-            if (insertIndex >= 0) {
-                deadClock = VectorClockUtils.copyOf(deadClock, deadClock.length + 2);
-                VectorClockUtils.addFrameAndShift(deadClock, tid, frame, insertIndex, deadClock.length - 2);
-            }
-        }
-        generation++;
-    }
-
     protected void checkGeneration() {
         int newGen = Generations.generation;
         if (generation == newGen) return;
         if (generation == 0) {
             zeroGenCounter.increment();
         }
+        final long[] dead = Generations.dead;
+        final int[] deadSlots = Generations.deadSlots;
         if (generation == newGen - 1) {
             //optimise for case of generation increment
             lightGenerationUpdateCounter.increment();
-            incrementGeneration(Generations.dead[generation]);
+            final int slot = deadSlots[generation];
+            if (slot >= 0 && slot < size && clock[slot] != 0) {
+                final long frame = clock[slot];
+                clock[slot] = 0;
+                moveToDeadClock(new long[]{dead[generation], frame}, 2);
+            }
+            generation = newGen;
+            compactDeadClock();
             return;
         }
         hardGenerationUpdateCounter.increment();
-        /*TODO: optimise -"toCache" array is redundant*/
-        long[] diff = Generations.getDiff(generation);
-        long[] toCache = new long[diff.length * 2];
-        int i = 0;
-        int j = 0;
+        final int[] prevSlotDeaths = Generations.prevSlotDeaths;
+        long[] toCache = null;
         int index = 0;
-        int iMax = size;
-        int jMax = diff.length;
-        while (i < iMax && j < jMax) {
-            if (clock[i] > diff[j]) j++;
-            else if (clock[i] < diff[j]) {
-                i += 2;
-            } else {
-                toCache[index++] = clock[i];
-                clock[i++] = 0;
-                toCache[index++] = clock[i];
-                clock[i++] = 0;
-                j++;
+        //Deaths since our generation are the suffix of append-only log, so they are read in place in chronological order.
+        //Slot could be reused several times since our generation, but we can hold only frame of its first dead owner:
+        //we can't know about next owners without passing through the generation, where first one died.
+        for (int gen = generation; gen < newGen; gen++) {
+            final int slot = deadSlots[gen];
+            if (slot < 0 || slot >= size || clock[slot] == 0 || prevSlotDeaths[gen] >= generation) continue;
+            if (toCache == null) {
+                toCache = new long[Math.min(newGen - gen, size) * 2];
             }
+            toCache[index++] = dead[gen];
+            toCache[index++] = clock[slot];
+            clock[slot] = 0;
+        }
+        if (index > 2) {
+            //only moved frames are sorted, usually there are few of them
+            VectorClockUtils.sortByTid(toCache, index);
         }
         if (index > 0) {
-            deadResizeProfiler.increment();
-            size = VectorClockUtils.removeZeros(clock);
-            long[] newDeadClock = new long[deadClock.length + index];
-            int newLength = VectorClockUtils.mergeSortedClocks(deadClock, deadClock.length, toCache, index, newDeadClock);
-            if (newLength != newDeadClock.length) {
-                //ouch
-                String msg = "We were merging deadclock of length " + deadClock.length + "(" + VectorClockUtils.toString(deadClock) +
-                        ") and toCache clock of length = " + toCache.length + "(" + VectorClockUtils.toString(toCache) +
-                        ") expecting result of length " + newDeadClock.length + " but received result of length " + newLength + ": " +
-                        VectorClockUtils.toString(newDeadClock);
-                throw new IllegalStateException(msg);
-            }
-            deadClock = newDeadClock;
+            moveToDeadClock(toCache, index);
         }
-        //VectorClockUtils.assureCompliant(this);
         generation = newGen;
+        compactDeadClock();
+    }
+
+    /**
+     * Drops frames of retired threads from dead clock, if some threads were retired since last compaction.
+     *
+     * @return approximate number of bytes reclaimed
+     */
+    long compactDeadClock() {
+        final int retired = Generations.retiredGeneration;
+        if (retiredGeneration == retired) return 0;
+        retiredGeneration = retired;
+        final long[] oldDeadClock = deadClock;
+        deadClock = VectorClockUtils.compact(oldDeadClock, retired);
+        return 8L * (oldDeadClock.length - deadClock.length);
+    }
+
+    /**
+     * Merges frames of dead threads, that were already removed from slots, to dead clock
+     */
+    private void moveToDeadClock(long[] toCache, int length) {
+        deadResizeProfiler.increment();
+        while (size > 0 && clock[size - 1] == 0) {
+            size--;
+        }
+        long[] newDeadClock = new long[deadClock.length + length];
+        int newLength = VectorClockUtils.mergeSortedClocks(deadClock, deadClock.length, toCache, length, newDeadClock);
+        deadClock = newLength == newDeadClock.length ? newDeadClock : VectorClockUtils.copyOf(newDeadClock, newLength);
     }
 
     /**
@@ -265,8 +395,10 @@ public class VectorClock implements IVectorClock {
      */
     public String toString() {
         final StringBuilder sb = new StringBuilder("Live: ");
-        for (int i = 0; i < size / 2; i++) {
-            sb.append("[").append(clock[2 * i]).append(":").append(clock[2 * i + 1]).append("]");
+        for (int i = 0; i < size; i++) {
+            if (clock[i] != 0) {
+                sb.append("[").append(i).append(":").append(clock[i]).append("]");
+            }
         }
         sb.append(" size = ").append(size).append("; ");
         sb.append("Dead: ");
@@ -19,8 +19,13 @@
 
 package com.devexperts.drd.agent.clock;
 
+import com.devexperts.drd.agent.Generations;
+import com.devexperts.drd.agent.ThreadSlots;
 import com.devexperts.drd.agent.high_scale_lib.Counter;
 import com.devexperts.drd.bootstrap.DRDLogger;
+import com.devexperts.drd.bootstrap.IVectorClock;
+
+import java.util.Arrays;
 
 public class VectorClockUtils {
     public static final Counter cachedCounter = new Counter();
@@ -30,8 +35,24 @@ public class VectorClockUtils {
     public static final Counter liveAllocCounter = new Counter();
     public static final Counter liveNotAllocCounter = new Counter();
 
+    public static final Counter compactionCounter = new Counter();
+    public static final Counter compactionCachedCounter = new Counter();
+    public static final Counter compactedFramesCounter = new Counter();
+
+    /**
+     * Max length (in longs, i.e. twice number of pairs) of [tid, frame] pairs, that are sorted by insertion sort
+     */
+    private static final int INSERTION_SORT_THRESHOLD = 32;
+
     /**
-     * Checks if two clock contains same tids and same frames for them
+     * Last compaction of dead clock. Dead clocks are usually shared between many clocks,
+     * so the same array is compacted against the same retired generation many times in a row.
+     */
+    private static volatile Compaction lastCompaction =
+            new Compaction(IVectorClock.EMPTY_ARRAY, 0, IVectorClock.EMPTY_ARRAY);
+
+    /**
+     * Checks if two clock contains same frames for same slots
      */
     static boolean same(VectorClock vc1, VectorClock vc2) {
         if (vc1.size != vc2.size) {
@@ -44,12 +65,12 @@ public class VectorClockUtils {
     }
 
     /**
-     * Searches vector clock for the specified tid using the
-     * binary search algorithm. Assumes, that internal array of clock is always sorted by tids.
-     * If it is not sorted, the results are undefined.
+     * Searches sorted [tid, frame] pairs for the specified tid using the binary search algorithm.
+     * If array is not sorted by tids, the results are undefined.
      *
-     * @param vc  clock
+     * @param clock pairs of [tid, frame]
      * @param tid the tid to be searched for
+     * @param to length of meaningful part of array
      * @return index of the search key, if it is contained in the array;
      * otherwise, <tt>(-(<i>insertion point</i>) - 2)</tt>.  The
      * <i>insertion point</i> is defined as the point at which the
@@ -59,10 +80,6 @@ public class VectorClockUtils {
      * that this guarantees that the return value will be &gt;= 0 if
      * and only if the key is found.
      */
-    static int findTid(VectorClock vc, long tid) {
-        return findTid(vc.clock, tid, vc.size);
-    }
-
     static int findTid(long[] clock, long tid, int to) {
         int low = 0;
         int high = to - 2;
@@ -111,9 +128,19 @@ public class VectorClockUtils {
         return zeroIndex == -1 ? clock.length : zeroIndex;
     }
 
+    /**
+     * Brings both clocks to the same (actual) generation, so that their slots belong to the same threads.
+     * Both clocks should be protected from concurrent modification.
+     */
+    static void alignGenerations(VectorClock vc1, VectorClock vc2) {
+        do {
+            vc1.checkGeneration();
+            vc2.checkGeneration();
+        } while (vc1.generation != vc2.generation);
+    }
+
     static void load(VectorClock from, VectorClock to) {
-        //TODO refactor. It works miraculously :)
-        removeFrames(to, from.deadClock);
+        alignGenerations(from, to);
         loadLiveComponents(from, to);
         if (from.deadClock != to.deadClock) {
             if (!checkIn(to.deadClock, from.deadClock)) {
@@ -131,75 +158,94 @@ public class VectorClockUtils {
         }
     }
 
-    static void removeFrames(VectorClock vc, long[] toRemove) {
-        long[] clock = vc.clock;
-        int i = 0, j = 0;
-        int size = clock.length;
-        while (i < size && j < toRemove.length) {
-            if (clock[i] == 0) {
-                break; //we've reached end
-            }
-            if (clock[i] > toRemove[j]) j += 2;
-            else if (clock[i] < toRemove[j]) i += 2;
-            else {
-                clock[i++] = 0;
-                clock[i++] = 0;
-                j += 2;
+    /**
+     * @param tvc current thread clock
+     * @param fvc field clock
+     * @return tid of thread, that races with current one and whose info is stored in fvc, or -1 if there is no race
+     */
+    static long checkDataRace(ThreadVectorClock tvc, VectorClock fvc) {
+        alignGenerations(tvc, fvc);
+        final long[] tClock = tvc.clock;
+        final long[] fClock = fvc.clock;
+        final int tSize = tvc.size;
+        for (int slot = 0, fSize = fvc.size; slot < fSize; slot++) {
+            final long frame = fClock[slot];
+            if (frame != 0 && slot != tvc.index && (slot >= tSize || tClock[slot] <= frame)) {
+                return ThreadSlots.getTid(slot);
             }
         }
-        vc.size = removeZeros(clock);
+        final long[] dead = fvc.deadClock;
+        for (int i = 0; i < dead.length; i += 2) {
+            final int index = findTid(tvc.deadClock, dead[i], tvc.deadClock.length);
+            if (index < 0 ? !Generations.isRetired(dead[i]) : tvc.deadClock[index + 1] <= dead[i + 1]) return dead[i];
+        }
+        return -1;
     }
 
     /**
-     * @param tvc current thread clock
-     * @param fvc field clock
-     * @return true iff tvc races with some other thread, whose info is stored in fvc
+     * Removes frames of retired threads from dead clock.
+     *
+     * @param deadClock dead clock, it is not modified
+     * @param retiredGeneration {@link Generations#retiredGeneration} to compact against
+     * @return new dead clock or the same one, if there is nothing to remove
      */
-    static long checkDataRace(VectorClock tvc, VectorClock fvc) {
-        long currentTid = Thread.currentThread().getId();
-        int i = 0, j = 0;
-        while (i < tvc.size && j < fvc.size) {
-            long ftid = fvc.clock[j];
-            while (i < tvc.size && ftid > tvc.clock[i]) {
-                i += 2;
+    static long[] compact(long[] deadClock, int retiredGeneration) {
+        if (deadClock.length == 0) return deadClock;
+        final Compaction last = lastCompaction;
+        if (last.deadClock == deadClock && last.retiredGeneration == retiredGeneration) {
+            compactionCachedCounter.increment();
+            return last.result;
+        }
+        final long[] res = new long[deadClock.length];
+        int retained = 0;
+        for (int i = 0; i < deadClock.length; i += 2) {
+            if (!Generations.isRetired(deadClock[i], retiredGeneration)) {
+                res[retained++] = deadClock[i];
+                res[retained++] = deadClock[i + 1];
             }
-            if (i == tvc.size) return ftid;
-            long ttid = tvc.clock[i];
-            if (ftid < ttid) return ftid;
-            if (ttid == ftid && ttid != currentTid && tvc.clock[i + 1] <= fvc.clock[j + 1]) return ftid;
-            j += 2;
         }
-        return -1;
+        if (retained == deadClock.length) return deadClock;
+        final long[] trimmed = retained == 0 ? IVectorClock.EMPTY_ARRAY : Arrays.copyOf(res, retained);
+        compactionCounter.increment();
+        compactedFramesCounter.add((deadClock.length - retained) / 2);
+        lastCompaction = new Compaction(deadClock, retiredGeneration, trimmed);
+        return trimmed;
     }
 
-    private static void loadLiveComponents(VectorClock from, VectorClock to) {
-        int newTidsFramesCount = getNewTidsFramesCount(from.clock, from.size, to.clock, to.size);
-        final int newSize = to.size + newTidsFramesCount;
-        if (newSize < to.clock.length) {
-            mergeInto(from.clock, from.size, to.clock, to.size, newTidsFramesCount);
-            liveNotAllocCounter.increment();
-/*            if (!verifyClocks(to.clock, newSize)) {
-                throw new RuntimeException("Failed merge into : " + toString(to.clock) + " size : " + newSize);
-            }*/
-        } else {
-            liveAllocCounter.increment();
-            long[] newClock = new long[getNewLength(newSize)];
-            //DRDLogger.error(from + " merge to " + to + "; new size : " + newClock.length);
-            mergeSortedClocks(from.clock, from.size, to.clock, to.size, newClock);
-            to.clock = newClock;
-/*            if (!verifyClocks(to.clock, newSize)) {
-                throw new RuntimeException("Failed merge : " + toString(to.clock) + " size : " + newSize);
-            }*/
+    private static class Compaction {
+        final long[] deadClock;
+        final int retiredGeneration;
+        final long[] result;
+
+        Compaction(long[] deadClock, int retiredGeneration, long[] result) {
+            this.deadClock = deadClock;
+            this.retiredGeneration = retiredGeneration;
+            this.result = result;
         }
-        to.size = newSize;
-        //DRDLogger.error(to);
     }
 
-    private static int getNewLength(int size) {
-        if (size < 5) {
-            return size * 2;
+    /**
+     * Merges live frames slot by slot. Clocks should be of the same generation.
+     */
+    private static void loadLiveComponents(VectorClock from, VectorClock to) {
+        final int fromSize = from.size;
+        if (fromSize > to.clock.length) {
+            liveAllocCounter.increment();
+            to.ensureCapacity(fromSize);
+        } else {
+            liveNotAllocCounter.increment();
+        }
+        final long[] fromClock = from.clock;
+        final long[] toClock = to.clock;
+        //plain loop without branches, so that JIT is able to unroll and vectorize it
+        for (int i = 0; i < fromSize; i++) {
+            toClock[i] = Math.max(fromClock[i], toClock[i]);
+        }
+        final int toSize = to.size;
+        if (fromSize > toSize) {
+            to.size = fromSize;
+            to.sizeChanged(toSize);
         }
-        return size + 4;
     }
 
     public static int mergeSortedClocks(long[] cl1, int length1, long[] cl2, int length2, long[] res) {
@@ -308,27 +354,72 @@ public class VectorClockUtils {
         return i == iMax;
     }
 
-    static long[] copyOf(long[] array, int length) {
-        long[] copy = new long[length];
-        System.arraycopy(array, 0, copy, 0, length < array.length ? length : array.length);
-        return copy;
+    /**
+     * @return approximate number of bytes, occupied by array; 0 for empty arrays, since they are usually shared
+     */
+    static long arrayFootprint(long[] array) {
+        return array.length == 0 ? 0 : 16 + 8L * array.length;
+    }
+
+    /**
+     * Sorts [tid, frame] pairs by tid: insertion sort for short arrays, merge sort otherwise.
+     *
+     * @param pairs  pairs of [tid, frame] with distinct tids
+     * @param length length of meaningful part of array
+     */
+    static void sortByTid(long[] pairs, int length) {
+        if (length <= INSERTION_SORT_THRESHOLD) {
+            insertionSortByTid(pairs, 0, length);
+        } else {
+            mergeSortByTid(pairs, new long[length], 0, length);
+        }
     }
 
-    static void assureCompliant(VectorClock vc) {
-        if (vc.deadClock == null || vc.deadClock.length == 0) {
+    private static void mergeSortByTid(long[] pairs, long[] buffer, int from, int to) {
+        if (to - from <= INSERTION_SORT_THRESHOLD) {
+            insertionSortByTid(pairs, from, to);
             return;
         }
-        int i = 0;
-        int j = 0;
-        int size = vc.size;
-        int size2 = vc.deadClock.length;
-        while (i < size && j < size2) {
-            if (vc.clock[i] < vc.deadClock[j]) i += 2;
-            else if (vc.clock[i] > vc.deadClock[j]) j += 2;
-            else throw new IllegalStateException("Clock not compliant : " + vc);
+        final int mid = from + ((to - from) >>> 2 << 1);
+        mergeSortByTid(pairs, buffer, from, mid);
+        mergeSortByTid(pairs, buffer, mid, to);
+        int i = from, j = mid, k = from;
+        while (i < mid && j < to) {
+            if (pairs[i] <= pairs[j]) {
+                buffer[k++] = pairs[i++];
+                buffer[k++] = pairs[i++];
+            } else {
+                buffer[k++] = pairs[j++];
+                buffer[k++] = pairs[j++];
+            }
+        }
+        System.arraycopy(pairs, i, buffer, k, mid - i);
+        k += mid - i;
+        System.arraycopy(pairs, j, buffer, k, to - j);
+        System.arraycopy(buffer, from, pairs, from, to - from);
+    }
+
+    private static void insertionSortByTid(long[] pairs, int from, int to) {
+        for (int i = from + 2; i < to; i += 2) {
+            final long tid = pairs[i];
+            final long frame = pairs[i + 1];
+            int j = i - 2;
+            while (j >= from && pairs[j] > tid) {
+                pairs[j + 2] = pairs[j];
+                pairs[j + 3] = pairs[j + 1];
+                j -= 2;
+            }
+            pairs[j + 2] = tid;
+            pairs[j + 3] = frame;
         }
     }
 
+    static long[] copyOf(long[] array, int length) {
+        long[] copy = new long[length];
+        System.arraycopy(array, 0, copy, 0, length < array.length ? length : array.length);
+        return copy;
+    }
+
     static String toString(long[] a) {
         StringBuilder sb = new StringBuilder("[");
         if (a.length > 0) {
@@ -22,13 +22,18 @@ package com.devexperts.drd.agent.core;
 import com.devexperts.drd.agent.*;
 import com.devexperts.drd.agent.clock.*;
 import com.devexperts.drd.agent.high_scale_lib.Counter;
-import com.devexperts.drd.agent.util.ConcurrentWeakHashMap;
+import com.devexperts.drd.agent.race.RaceWriter;
+import com.devexperts.drd.agent.util.ConcurrentWeakIdentityMap;
 import com.devexperts.drd.agent.util.LongHashMap;
+import com.devexperts.drd.agent.util.LongHashSet;
+import com.devexperts.drd.agent.util.LongIterator;
 import com.devexperts.drd.agent.util.LongMap;
 import com.devexperts.drd.bootstrap.*;
 
 import java.lang.management.ManagementFactory;
 import java.lang.management.MemoryUsage;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
@@ -41,12 +46,10 @@ public class ClocksStorage {
     private static final long STATS_GATHER_FREQUENCY = 1000L * 60L; //once in 1 min
     private static final long NANO_TO_MILLIS = 1000000L;
 
-    private static final VectorClocksManager synClocksManager = new VectorClocksManager(
-            new ConcurrentWeakHashMap<Object, SyncClock>(IdentityComparison.INSTANCE));
-    private static final ManualSyncClockManager manualSynClocksManager = new ManualSyncClockManager();
-    private static final ManualSyncClockManager volatileClocksManager = new ManualSyncClockManager();
-    private static final DataClockManager foreignClocksManager = new DataClockManager(
-            new ConcurrentWeakHashMap<Object, DataClock>(IdentityComparison.INSTANCE));
+    private static final VectorClocksManager synClocksManager = new VectorClocksManager();
+    private static final ManualSyncClockManager manualSynClocksManager = new ManualSyncClockManager(DisposableReference.QUEUE);
+    private static final ManualSyncClockManager volatileClocksManager = new ManualSyncClockManager(VolatileWeakDisposable.QUEUE);
+    private static final DataClockManager foreignClocksManager = new DataClockManager();
     /**
      * Map to store thread's vector clocks for specific needs:
      * <ol>
@@ -57,43 +60,70 @@ public class ClocksStorage {
      * </ol>
      */
     private static final LongMap<SyncClock> threadBoundaryClocks = new LongHashMap<SyncClock>();
+    /**
+     * Clocks of live threads by tid. Used only to find out, which dead threads are known to everybody.
+     */
+    private static final ConcurrentHashMap<Long, ThreadVectorClock> liveThreadClocks = new ConcurrentHashMap<Long, ThreadVectorClock>();
+    /**
+     * Number of sync clocks, that were created in hidden fields of instrumented classes
+     */
+    private static final Counter fieldSynClocksCounter = new Counter();
     private static AtomicInteger threadClocksCount = new AtomicInteger(0);
     private static long lastStatsGatherTime = 0;
 
-    //real thread's vector clocks
-    private static ThreadLocal<ThreadVectorClock> threadClocks = new ThreadLocal<ThreadVectorClock>() {
-        protected ThreadVectorClock initialValue() {
-            final ThreadVectorClock tvc = new ThreadVectorClock();
-            final Thread thread = Thread.currentThread();
+    private static volatile long[] drdThreads = new long[0];
+
+    /**
+     * Registers internal DRD thread, that never gets thread clock. Should be called before thread is started.
+     */
+    public static void registerDrdThread(Thread thread) {
+        synchronized (ClocksStorage.class) {
+            final int length = drdThreads.length;
+            long[] drdThreadsCopy = new long[length + 1];
+            System.arraycopy(drdThreads, 0, drdThreadsCopy, 0, length);
             final long tid = thread.getId();
-            for (long l : drdThreads) {
-                if (l == tid) {
-                    DRDLogger.log("Do not create tvc for drd thread id = " + l);
-                    return null;
-                }
-            }
-            loadIntoThreadClock(tvc, tid);
-            if (DRDProperties.soutEnabled) {
-                DRDLogger.log("Thread clock for " + thread + " id = " + tid +
-                        " created : " + tvc + " Total thread clocks count : " + threadClocksCount.incrementAndGet());
-            }
-            return tvc;
+            drdThreadsCopy[length] = tid;
+            drdThreads = drdThreadsCopy;
+            DRDLogger.log("1 more DRD thread : " + tid);
         }
-    };
+    }
 
-    private static volatile long[] drdThreads = new long[0];
+    private static boolean isDrdThread(long tid) {
+        for (long l : drdThreads) {
+            if (l == tid) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Creates clock of current thread. Called once per thread from {@link ThreadContext#getThreadClock()}.
+     *
+     * @return clock of current thread or null, if current thread is DRD internal one
+     */
+    static ThreadVectorClock createThreadClock() {
+        final Thread thread = Thread.currentThread();
+        final long tid = thread.getId();
+        if (isDrdThread(tid)) {
+            DRDLogger.log("Do not create tvc for drd thread id = " + tid);
+            return null;
+        }
+        final ThreadVectorClock tvc = new ThreadVectorClock();
+        loadIntoThreadClock(tvc, tid);
+        //thread should become visible as live before its parent's clock is removed
+        liveThreadClocks.put(tid, tvc);
+        synchronized (threadBoundaryClocks) {
+            threadBoundaryClocks.remove(tid);
+        }
+        if (DRDProperties.soutEnabled) {
+            DRDLogger.log("Thread clock for " + thread + " id = " + tid +
+                    " created : " + tvc + " Total thread clocks count : " + threadClocksCount.incrementAndGet());
+        }
+        return tvc;
+    }
 
     private static String clearManualSynClocksManager(ManualSyncClockManager manager) {
         long time = System.nanoTime();
-        int disposedCounter = 0;
-        Iterator<Map.Entry<WeakDisposable, SyncClock>> it = manager.clocks.entrySet().iterator();
-        for (; it.hasNext(); ) {
-            Map.Entry<WeakDisposable, SyncClock> next = it.next();
-            if (next.getKey().canDelete()) {
-                it.remove();
-                disposedCounter++;
-            }
-        }
+        final int disposedCounter = manager.expungeStaleEntries();
         StringBuilder sb = new StringBuilder();
         sb.append(manager.clocks.size()).append(" (");
         final long created = manager.newClockCounter.estimateGetAndReset();
@@ -111,21 +141,13 @@ public class ClocksStorage {
                 Thread thread = new Thread(r);
                 thread.setDaemon(true);
                 thread.setName("DRD-stats-collector " + id++);
-                synchronized (ClocksStorage.class) {
-                    final int length = drdThreads.length;
-                    long[] drdThreadsCopy = new long[length + 1];
-                    System.arraycopy(drdThreads, 0, drdThreadsCopy, 0, length);
-                    final long tid = thread.getId();
-                    drdThreadsCopy[length] = tid;
-                    drdThreads = drdThreadsCopy;
-                    DRDLogger.log("1 more DRD thread : " + tid);
-                }
+                registerDrdThread(thread);
                 return thread;
             }
         });
         final Runnable r = new Runnable() {
             public void run() {
-                Stats.gather();
+                Stats.gather(DeadClocksCompaction.run());
             }
         };
         executor.scheduleAtFixedRate(r, STATS_GATHER_DELAY, STATS_GATHER_FREQUENCY, TimeUnit.MILLISECONDS);
@@ -145,15 +167,23 @@ public class ClocksStorage {
         if (DRDProperties.soutEnabled) {
             DRDLogger.log("Thread " + Thread.currentThread().getId() + " forks thread " + tid);
         }
-        storeCurrentThreadClock(tid);
+        //DRD thread would never load boundary clock, and it would prevent dead threads from retirement forever
+        if (!isDrdThread(tid)) {
+            storeCurrentThreadClock(tid);
+        }
     }
 
     public static void onDie() {
-        ThreadVectorClock tvc = getThreadClock();
+        final ThreadContext context = ThreadContext.current();
+        final ThreadVectorClock tvc = context.getThreadClock();
         if (tvc != null) {
-            Generations.threadDied(tvc.tid);
-            final Thread thread = Thread.currentThread();
-            storeCurrentThreadClock(thread.getId());
+            final long requiredFrame = tvc.getRequiredFrame();
+            //clock should be stored before thread's slot is released
+            storeCurrentThreadClock(tvc.tid);
+            Generations.threadDied(tvc.tid, requiredFrame);
+            liveThreadClocks.remove(tvc.tid);
+            //slot may be reused by another thread, so dying thread shouldn't tick its clock anymore
+            context.clearThreadClock();
         }
     }
 
@@ -195,10 +225,25 @@ public class ClocksStorage {
     }
 
     public static ThreadVectorClock getThreadClock() {
-        return threadClocks.get();
+        return ThreadContext.current().getThreadClock();
     }
 
+    /**
+     * Returns clock of monitor of specified object. Should be called only by thread, that owns the monitor.
+     * Clocks of instrumented classes are kept in their hidden fields, other clocks are kept in weak identity map.
+     */
     public static SyncClock getSynClock(Object ref) {
+        if (ref instanceof SyncClocked) {
+            final SyncClocked owner = (SyncClocked) ref;
+            SyncClock clock = (SyncClock) owner.$drd$getSyncClock();
+            if (clock == null) {
+                //monitor is owned by current thread, so nobody can set clock concurrently
+                clock = new SyncClock();
+                owner.$drd$setSyncClock(clock);
+                fieldSynClocksCounter.increment();
+            }
+            return clock;
+        }
         return synClocksManager.getClock(-1, ref);
     }
 
@@ -222,10 +267,38 @@ public class ClocksStorage {
         return foreignClocksManager.getClock(ownerId, ref);
     }
 
+    /**
+     * Clocks by composite keys. Keys weakly reference their components; references are enqueued to {@link #queue},
+     * when components are collected, so that clocks are disposed for O(number of collected keys).
+     */
     private static class ManualSyncClockManager {
         private final ConcurrentHashMap<WeakDisposable, SyncClock> clocks = new ConcurrentHashMap<WeakDisposable, SyncClock>();
         private final Counter newClockCounter = new Counter();
         final Counter profiler = new Counter();
+        final ClockSizes sizes = new ClockSizes();
+        private final ReferenceQueue<Object> queue;
+
+        ManualSyncClockManager(ReferenceQueue<Object> queue) {
+            this.queue = queue;
+        }
+
+        /**
+         * @return number of disposed clocks
+         */
+        int expungeStaleEntries() {
+            int disposed = 0;
+            Reference<?> ref;
+            while ((ref = queue.poll()) != null) {
+                //composite key may be enqueued several times, if several its components are collected
+                final WeakDisposable key = ref instanceof DisposableReference ? ((DisposableReference) ref).owner : (WeakDisposable) ref;
+                final SyncClock clock = clocks.remove(key);
+                if (clock != null) {
+                    sizes.remove(clock);
+                    disposed++;
+                }
+            }
+            return disposed;
+        }
 
         public SyncClock getClock(WeakDisposable o) {
             profiler.increment();
@@ -233,71 +306,103 @@ public class ClocksStorage {
         }
 
         public SyncClock getClockSupposingTheyAreAbsent(WeakDisposable o) {
-            SyncClock clock = new SyncClock();
+            SyncClock clock = new AccountedSyncClock(sizes);
             SyncClock old = clocks.putIfAbsent(o, clock);
             if (old != null) {
                 clock = old;
-            } else newClockCounter.increment();
+            } else {
+                newClockCounter.increment();
+                sizes.add(clock);
+            }
             return clock;
         }
     }
 
-    private static abstract class AbstractClocksManager<T extends VectorClock> {
-        final Counter newClockForNothingProfiler = new Counter();
-        final Counter newClockProfiler = new Counter();
-        final ConcurrentWeakHashMap<Object, T> clocks;
+    private static abstract class AbstractClocksManager<T> implements ConcurrentWeakIdentityMap.ValueFactory<T> {
+        final ConcurrentWeakIdentityMap<T> clocks = new ConcurrentWeakIdentityMap<T>(this);
+        final Counter newClockForNothingProfiler = clocks.newValueForNothingCounter;
+        final Counter newClockProfiler = clocks.newValueCounter;
         final Counter profiler = new Counter();
-
-        private AbstractClocksManager(ConcurrentWeakHashMap<Object, T> map) {
-            if (map.size() > 0) throw new IllegalStateException("map should be empty");
-            this.clocks = map;
-        }
+        final ClockSizes sizes = new ClockSizes();
 
         public T getClock(int ownerId, Object ref) {
             profiler.increment();
-            T clock = clocks.get(ref);
-            if (clock == null) {
-                clock = createNewClock(ownerId);
-                T old = clocks.putIfAbsent(ref, clock);
-                if (old != null) {
-                    newClockForNothingProfiler.increment();
-                    clock = old;
-                } else newClockProfiler.increment();
-            }
-            return clock;
+            return clocks.getOrCreate(ref, ownerId);
         }
 
         public int getClocksCount() {
             return clocks.size();
         }
 
+        public T create(int ownerId) {
+            return createNewClock(ownerId);
+        }
+
         protected abstract T createNewClock(int ownerId);
     }
 
     private static class VectorClocksManager extends AbstractClocksManager<SyncClock> {
-        private VectorClocksManager(ConcurrentWeakHashMap<Object, SyncClock> map) {
-            super(map);
-        }
 
         @Override
         protected SyncClock createNewClock(int ownerId) {
-            return new SyncClock();
+            final SyncClock clock = new AccountedSyncClock(sizes);
+            sizes.add(clock);
+            return clock;
+        }
+
+        public void dispose(SyncClock clock) {
+            sizes.remove(clock);
         }
     }
 
     private static class DataClockManager extends AbstractClocksManager<DataClock> {
-        private DataClockManager(ConcurrentWeakHashMap<Object, DataClock> map) {
-            super(map);
+        @Override
+        protected DataClock createNewClock(int ownerId) {
+            final DataClock clock = new AccountedDataClock(ownerId, sizes);
+            sizes.add(clock);
+            return clock;
+        }
+
+        public void dispose(DataClock clock) {
+            sizes.remove(clock);
+        }
+    }
+
+    /**
+     * Sync clock, that reports its growth to sizes of its manager
+     */
+    private static class AccountedSyncClock extends SyncClock {
+        private final ClockSizes sizes;
+
+        AccountedSyncClock(ClockSizes sizes) {
+            this.sizes = sizes;
         }
 
         @Override
-        protected DataClock createNewClock(int ownerId) {
-            return new DataClock(ownerId);
+        protected ClockSizes getSizes() {
+            return sizes;
+        }
+    }
+
+    /**
+     * Data clock, that reports its inflation to sizes of its manager
+     */
+    private static class AccountedDataClock extends DataClock {
+        private final ClockSizes sizes;
+
+        AccountedDataClock(int ownerId, ClockSizes sizes) {
+            super(ownerId);
+            this.sizes = sizes;
+        }
+
+        @Override
+        protected ClockSizes getSizes() {
+            return sizes;
         }
     }
 
     private static class Stats {
-        public static void gather() {
+        public static void gather(String deadClocksCompactionReport) {
             try {
                 StringBuilder sb = new StringBuilder();
                 sb.append("\n\n+++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++");
@@ -307,120 +412,38 @@ public class ClocksStorage {
                 }
                 lastStatsGatherTime = time;
                 sb.append("\n").append(ManagementFactory.getThreadMXBean().getThreadCount()).append(" active threads.");
+                sb.append("\n").append(ThreadSlots.getLiveCount()).append(" thread slots occupied of ")
+                        .append(ThreadSlots.getSlotsCount()).append(" allocated.");
                 final MemoryUsage heapMemoryUsage = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
                 sb.append("\nMemory usage: ").append(heapMemoryUsage.toString()).append(".");
-                long realSize = 0;
-                long reservedSize = 0;
-                int deadSize = 0;
-                Map<Integer, MutableInteger> realBySize = new TreeMap<Integer, MutableInteger>();
-                Map<Integer, MutableInteger> reservedBySize = new TreeMap<Integer, MutableInteger>();
-
                 sb.append("\nContract clocks: ");
                 sb.append(clearManualSynClocksManager(manualSynClocksManager));
                 sb.append("\n\tHits : ").append(manualSynClocksManager.profiler.estimateGetAndReset()).append(".");
-                for (VectorClock clock : manualSynClocksManager.clocks.values()) {
-                    int size = clock.getRealSizeUnprotected();
-                    MutableInteger mi = realBySize.get(size);
-                    if (mi == null) {
-                        mi = new MutableInteger();
-                        realBySize.put(size, mi);
-                    }
-                    mi.value++;
-                    realSize += size;
-                    size = clock.getReservedSizeUnprotected();
-                    mi = reservedBySize.get(size);
-                    if (mi == null) {
-                        mi = new MutableInteger();
-                        reservedBySize.put(size, mi);
-                    }
-                    mi.value++;
-                    reservedSize += size;
-                    deadSize += clock.getDeadClockSize();
-                }
-                sb.append("\n\tApprox total reserved size: ").append(reservedSize).append("; real size : ").append(realSize);
-                sb.append(". Dead threads clocks size: ").append(deadSize).append(".");
-
-                realSize = 0;
-                reservedSize = 0;
-                deadSize = 0;
-                realBySize.clear();
-                reservedBySize.clear();
+                appendSizes(sb, manualSynClocksManager.sizes);
 
+                sb.append("\nVolatile clocks in fields of instrumented classes: ")
+                        .append(VolatileClockFields.createdCounter.estimateGetAndReset()).append(" created.");
                 sb.append("\nVolatile clocks: ");
                 sb.append(clearManualSynClocksManager(volatileClocksManager));
                 sb.append("\n\tHits : ").append(volatileClocksManager.profiler.estimateGetAndReset()).append(".");
-
-                for (VectorClock clock : volatileClocksManager.clocks.values()) {
-                    int size = clock.getRealSizeUnprotected();
-                    MutableInteger mi = realBySize.get(size);
-                    if (mi == null) {
-                        mi = new MutableInteger();
-                        realBySize.put(size, mi);
-                    }
-                    mi.value++;
-                    realSize += size;
-                    size = clock.getReservedSizeUnprotected();
-                    mi = reservedBySize.get(size);
-                    if (mi == null) {
-                        mi = new MutableInteger();
-                        reservedBySize.put(size, mi);
-                    }
-                    mi.value++;
-                    reservedSize += size;
-                    deadSize += clock.getDeadClockSize();
-                }
-                sb.append("\n\tApprox total reserved size: ").append(reservedSize).append("; real size : ").append(realSize);
-                sb.append(". Dead threads clocks size: ").append(deadSize).append(".");
-
-                realSize = 0;
-                reservedSize = 0;
-                deadSize = 0;
+                appendSizes(sb, volatileClocksManager.sizes);
 
                 sb.append("\nSyn clocks: ").append(synClocksManager.getClocksCount());
                 long created = synClocksManager.newClockProfiler.estimateGetAndReset();
-                int disposed = synClocksManager.clocks.getWeakClearedCount();
+                int disposed = synClocksManager.clocks.expungeStaleEntries();
                 sb.append(" ( + ").append(created).append(" - ").append(disposed).append(" = ").append(created - disposed);
                 sb.append("). New clock for nothing : ").append(synClocksManager.newClockForNothingProfiler.estimateGetAndReset()).append(".");
                 sb.append("\n\tHits : ").append(synClocksManager.profiler.estimateGetAndReset()).append(".");
+                sb.append("\n\tCreated in fields of instrumented classes : ").append(fieldSynClocksCounter.estimateGetAndReset()).append(".");
+                appendSizes(sb, synClocksManager.sizes);
 
-                for (VectorClock clock : synClocksManager.clocks.values()) {
-                    int size = clock.getRealSizeUnprotected();
-                    MutableInteger mi = realBySize.get(size);
-                    if (mi == null) {
-                        mi = new MutableInteger();
-                        realBySize.put(size, mi);
-                    }
-                    mi.value++;
-                    realSize += size;
-                    size = clock.getReservedSizeUnprotected();
-                    mi = reservedBySize.get(size);
-                    if (mi == null) {
-                        mi = new MutableInteger();
-                        reservedBySize.put(size, mi);
-                    }
-                    mi.value++;
-                    reservedSize += size;
-                    deadSize += clock.getDeadClockSize();
-                }
-                sb.append("\n\tApprox total reserved size : ").append(reservedSize).append("; real size : ").append(realSize);
-                sb.append(". Dead threads clocks size : ").append(deadSize).append(".");
                 sb.append("\nForeign clocks: ").append(foreignClocksManager.getClocksCount());
                 created = foreignClocksManager.newClockProfiler.estimateGetAndReset();
-                disposed = foreignClocksManager.clocks.getWeakClearedCount();
+                disposed = foreignClocksManager.clocks.expungeStaleEntries();
                 sb.append(" ( + ").append(created).append(" - ").append(disposed).append(" = ").append(created - disposed);
                 sb.append("). New clock for nothing : ").append(foreignClocksManager.newClockForNothingProfiler.estimateGetAndReset()).append(".");
-
-                sb.append("\n\tHits : ").append(foreignClocksManager.profiler.estimateGetAndReset());
-
-                for (VectorClock clock : foreignClocksManager.clocks.values()) {
-                    int size = clock.getRealSizeUnprotected();
-                    realSize += size;
-                    size = clock.getReservedSizeUnprotected();
-                    reservedSize += size;
-                    deadSize += clock.getDeadClockSize();
-                }
-                sb.append("\n\tApprox total reserved size: ").append(reservedSize).append("; real size : ").append(realSize);
-                sb.append(". Dead threads clocks size: ").append(deadSize);
+                sb.append("\n\tHits : ").append(foreignClocksManager.profiler.estimateGetAndReset()).append(".");
+                appendSizes(sb, foreignClocksManager.sizes);
 
                 sb.append("\n\nVector clock counters: ");
                 sb.append("\n\tNew array allocations for live clocks: ").append(VectorClockUtils.liveAllocCounter.estimateGetAndReset());
@@ -437,11 +460,26 @@ public class ClocksStorage {
                         .append(SyncClock.optimisedReleaseProfiler.estimateGetAndReset()).append(" optimized vs ")
                         .append(SyncClock.fullReleaseProfiler.estimateGetAndReset()).append(" full releases. ")
                         .append(SyncClock.twoWayProfiler.estimateGetAndReset()).append(" two-way merges. ");
-                sb.append("\nDiff was calculated ").append(Generations.diffProfiler.estimateGetAndReset()).append(" times.");
+                sb.append("\nGeneration: ").append(Generations.generation).append(".");
+                sb.append("\n\tDead clocks compaction: ").append(deadClocksCompactionReport);
+                sb.append("\n\tDead clocks compacted lazily: ").append(VectorClockUtils.compactionCounter.estimateGetAndReset())
+                        .append(" (").append(VectorClockUtils.compactionCachedCounter.estimateGetAndReset()).append(" cached), ")
+                        .append(VectorClockUtils.compactedFramesCounter.estimateGetAndReset()).append(" frames dropped.");
                 sb.append("\n\tShared reads in data clock occurred ").append(DataClock.sharedReadsCounter.estimateGetAndReset()).append(" times.");
+                sb.append("\n\tSame epoch accesses to data clock without lock: ").append(DataClock.sameEpochCounter.estimateGetAndReset()).append(".");
+                sb.append("\n\tData clock accesses with unpackable epoch: ").append(DataClock.unpackableEpochCounter.estimateGetAndReset()).append(".");
+                sb.append("\n\tRedundant accesses filtered in thread: ").append(RedundantAccessFilter.filteredCounter.estimateGetAndReset()).append(".");
                 sb.append("\n\tVC total live resizes: ").append(VectorClock.resizeProfiler.estimateGetAndReset());
                 sb.append(", total dead resizes: ").append(VectorClock.deadResizeProfiler.estimateGetAndReset()).append(".");
                 sb.append("\n\tYield counter : ").append(VectorClock.yieldCounter.estimateGetAndReset()).append(".");
+                sb.append("\nRaces: ").append(RaceWriter.enqueuedCounter.estimateGetAndReset()).append(" queued, ")
+                        .append(RaceWriter.writtenCounter.estimateGetAndReset()).append(" written in ")
+                        .append(RaceWriter.batchCounter.estimateGetAndReset()).append(" batches, ")
+                        .append(RaceWriter.droppedCounter.estimateGetAndReset()).append(" dropped; ")
+                        .append(RaceWriter.backpressureCounter.estimateGetAndReset()).append(" times queue was full.");
+                sb.append("\nTracked accesses: ").append(RaceHistoryImpl.stackCaptureCounter.estimateGetAndReset())
+                        .append(" stack traces captured, ").append(RaceHistoryImpl.stackReuseCounter.estimateGetAndReset())
+                        .append(" reused.");
                 sb.append(DRDEntryPoint.getStatistics().dumpAndClear());
                 sb.append(DRDEntryPoint.getStatistics().dumpFieldAccesses());
                 int limit = DRDProperties.dataClockHistogramLimit;
@@ -454,7 +492,9 @@ public class ClocksStorage {
                     }
                     counter += entry.count;
                 }
-                sb.append("--------------------Total: ").append(counter).append("------------------------\n\n");
+                sb.append("--------------------Total: ").append(counter).append("------------------------\n");
+                sb.append("Approx bytes per exclusive data clock: ").append(DataClock.EXCLUSIVE_FOOTPRINT)
+                        .append(", total: ").append((long) counter * DataClock.EXCLUSIVE_FOOTPRINT).append(".\n\n");
                 sb.append("\n\nStats gathered in ").append((System.nanoTime() - time) / NANO_TO_MILLIS).append(" ms").append(".");
                 sb.append("\n+++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++\n");
                 DRDLogger.log(sb.toString());
@@ -463,5 +503,115 @@ public class ClocksStorage {
                 DRDLogger.error("Error in stats gathering : ", e);
             }
         }
+
+        /**
+         * Appends total sizes of clocks of some kind. Sizes are counted incrementally, when clocks are created,
+         * grow and are disposed, so clocks are not scanned
+         */
+        private static void appendSizes(StringBuilder sb, ClockSizes sizes) {
+            final long count = sizes.getCount();
+            final long footprint = sizes.getFootprint();
+            sb.append("\n\tApprox total reserved size: ").append(sizes.getReservedSize())
+                    .append("; real size : ").append(sizes.getRealSize()).append(".");
+            sb.append("\n\tApprox footprint: ").append(footprint).append(" bytes, ")
+                    .append(count == 0 ? 0 : footprint / count).append(" bytes per clock.");
+        }
+    }
+
+    /**
+     * Retires dead threads, whose whole history is known by all live threads (see {@link Generations#retiredGeneration}),
+     * and drops their frames from dead clocks of sync clocks. Runs incrementally in stats collector thread; clocks,
+     * that are not stored here, are compacted lazily on next generation check.
+     */
+    private static class DeadClocksCompaction {
+        private static final int MAX_RETIRED_PER_RUN = 100000;
+        /**
+         * Retired generation, that was checked during previous run. Threads, forked concurrently with the check,
+         * may be missed, so new generation is retired only when it is confirmed by the next run.
+         */
+        private static int candidate;
+
+        static String run() {
+            if (!DRDProperties.deadClockCompaction) return "disabled.";
+            final long time = System.nanoTime();
+            final int oldRetired = Generations.retiredGeneration;
+            final int newCandidate = findRetiredGeneration(oldRetired);
+            Generations.retire(Math.min(candidate, newCandidate));
+            candidate = newCandidate;
+            final int retired = Generations.retiredGeneration;
+            long reclaimed = 0;
+            int compacted = 0;
+            if (retired > oldRetired) {
+                for (SyncClock clock : synClocksManager.clocks.values()) {
+                    reclaimed += compact(clock);
+                    compacted++;
+                }
+                for (SyncClock clock : manualSynClocksManager.clocks.values()) {
+                    reclaimed += compact(clock);
+                    compacted++;
+                }
+                for (SyncClock clock : volatileClocksManager.clocks.values()) {
+                    reclaimed += compact(clock);
+                    compacted++;
+                }
+            }
+            return new StringBuilder().append(retired - oldRetired).append(" threads retired, ")
+                    .append(retired).append(" of ").append(Generations.generation).append(" dead threads retired in total; ")
+                    .append(compacted).append(" sync clocks compacted, approx ").append(reclaimed).append(" bytes reclaimed in ")
+                    .append((System.nanoTime() - time) / NANO_TO_MILLIS).append(" ms.").toString();
+        }
+
+        private static long compact(SyncClock clock) {
+            return clock == null ? 0 : clock.compact();
+        }
+
+        /**
+         * @return generation, before which all dead threads are known by all live threads and by parent clocks
+         * of threads, that are not started yet
+         */
+        private static int findRetiredGeneration(int retired) {
+            final List<VectorClock> knowledge = new ArrayList<VectorClock>();
+            //threads should be enumerated after their clocks, otherwise just started thread could be taken for dead one
+            final List<Map.Entry<Long, ThreadVectorClock>> entries =
+                    new ArrayList<Map.Entry<Long, ThreadVectorClock>>(liveThreadClocks.entrySet());
+            final ThreadGroup root = ThreadUtils.getRootThreadGroup();
+            final Thread[] threads = new Thread[root.activeCount() * 2 + 16];
+            final int count = root.enumerate(threads, true);
+            final LongHashSet aliveTids = new LongHashSet();
+            for (int i = 0; i < count; i++) {
+                aliveTids.add(threads[i].getId());
+            }
+            //if array was too small, some threads may be missed, so don't forget anybody
+            final boolean allEnumerated = count < threads.length;
+            for (Map.Entry<Long, ThreadVectorClock> entry : entries) {
+                if (allEnumerated && !aliveTids.contains(entry.getKey())) {
+                    //thread has died without notification
+                    liveThreadClocks.remove(entry.getKey(), entry.getValue());
+                } else {
+                    knowledge.add(entry.getValue());
+                }
+            }
+            synchronized (threadBoundaryClocks) {
+                for (LongIterator it = threadBoundaryClocks.longKeySet().longIterator(); it.hasNext(); ) {
+                    final long tid = it.nextLong();
+                    if (!Generations.isDead(tid)) {
+                        knowledge.add(threadBoundaryClocks.get(tid));
+                    }
+                }
+            }
+            //thread could start and remove its parent clock after we've looked through live clocks
+            knowledge.addAll(liveThreadClocks.values());
+            final long[] dead = Generations.dead;
+            final long[] requiredFrames = Generations.requiredFrames;
+            final int limit = Math.min(Generations.generation, retired + MAX_RETIRED_PER_RUN);
+            for (; retired < limit; retired++) {
+                final long tid = dead[retired];
+                final long requiredFrame = requiredFrames[retired];
+                for (VectorClock clock : knowledge) {
+                    if (clock.getDeadFrameUnprotected(tid) < requiredFrame) return retired;
+                }
+            }
+            return retired;
+        }
     }
 }
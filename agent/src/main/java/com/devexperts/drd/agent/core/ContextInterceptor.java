@@ -0,0 +1,122 @@
+/*
+ * DRD - Dynamic Data Race Detector for Java programs
+ *
+ * Copyright (C) 2002-2018 Devexperts LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devexperts.drd.agent.core;
+
+import com.devexperts.drd.bootstrap.AbstractWeakDisposable;
+import com.devexperts.drd.bootstrap.DRDInterceptor;
+import com.devexperts.drd.bootstrap.IDataClock;
+import com.devexperts.drd.bootstrap.ISyncClock;
+
+/**
+ * Interceptor, that receives {@link ThreadContext} of current thread along with event, so that callers, which have
+ * already fetched the context (e.g. {@link GuardedInterceptor}), don't look it up once again.
+ * Methods of {@link DRDInterceptor} fetch the context themselves.
+ */
+public abstract class ContextInterceptor implements DRDInterceptor {
+    public abstract void beforeWait(ThreadContext context, Object o, int callerId, boolean print);
+
+    public abstract void afterWait(ThreadContext context, Object o, int callerId, boolean print);
+
+    public abstract void beforeVolatileWrite(ThreadContext context, Object ref, int ownerId, int nameId, int callerId, int callerNameId, boolean print);
+
+    public abstract void beforeVolatileClockWrite(ThreadContext context, ISyncClock clock, int callerId, int callerNameId, boolean print);
+
+    public abstract void beforeManualSyncSend(ThreadContext context, AbstractWeakDisposable o, int callerId, int callerNameId, boolean print);
+
+    public abstract void beforeMonitorExit(ThreadContext context, Object o, int callerId, int callerNameId, boolean print);
+
+    public abstract void afterVolatileRead(ThreadContext context, Object ref, int ownerId, int nameId, int callerId, int callerNameId, boolean print);
+
+    public abstract void afterVolatileClockRead(ThreadContext context, ISyncClock clock, int callerId, int callerNameId, boolean print);
+
+    public abstract void afterManualSyncReceive(ThreadContext context, AbstractWeakDisposable o, int callerId, int callerNameId, boolean print);
+
+    public abstract void afterManualSyncFullHB(ThreadContext context, AbstractWeakDisposable o, int callerId, int callerNameId, boolean print);
+
+    public abstract void afterMonitorEnter(ThreadContext context, Object o, int callerId, int callerNameId, boolean print);
+
+    public abstract void afterRead(ThreadContext context, IDataClock clock, int location, boolean track, boolean print);
+
+    public abstract void afterWrite(ThreadContext context, IDataClock clock, int location, boolean track, boolean print);
+
+    public abstract void afterForeignRead(ThreadContext context, Object o, int callerId, int location, boolean track, boolean print, boolean detectWWOnly);
+
+    public abstract void beforeForeignWrite(ThreadContext context, Object o, int callerId, int location, boolean track, boolean print, boolean detectWWOnly);
+
+    public void beforeWait(Object o, int callerId, boolean print) {
+        beforeWait(ThreadContext.current(), o, callerId, print);
+    }
+
+    public void afterWait(Object o, int callerId, boolean print) {
+        afterWait(ThreadContext.current(), o, callerId, print);
+    }
+
+    public void beforeVolatileWrite(Object ref, int ownerId, int nameId, int callerId, int callerNameId, boolean print) {
+        beforeVolatileWrite(ThreadContext.current(), ref, ownerId, nameId, callerId, callerNameId, print);
+    }
+
+    public void beforeVolatileClockWrite(ISyncClock clock, int callerId, int callerNameId, boolean print) {
+        beforeVolatileClockWrite(ThreadContext.current(), clock, callerId, callerNameId, print);
+    }
+
+    public void beforeManualSyncSend(AbstractWeakDisposable o, int callerId, int callerNameId, boolean print) {
+        beforeManualSyncSend(ThreadContext.current(), o, callerId, callerNameId, print);
+    }
+
+    public void beforeMonitorExit(Object o, int callerId, int callerNameId, boolean print) {
+        beforeMonitorExit(ThreadContext.current(), o, callerId, callerNameId, print);
+    }
+
+    public void afterVolatileRead(Object ref, int ownerId, int nameId, int callerId, int callerNameId, boolean print) {
+        afterVolatileRead(ThreadContext.current(), ref, ownerId, nameId, callerId, callerNameId, print);
+    }
+
+    public void afterVolatileClockRead(ISyncClock clock, int callerId, int callerNameId, boolean print) {
+        afterVolatileClockRead(ThreadContext.current(), clock, callerId, callerNameId, print);
+    }
+
+    public void afterManualSyncReceive(AbstractWeakDisposable o, int callerId, int callerNameId, boolean print) {
+        afterManualSyncReceive(ThreadContext.current(), o, callerId, callerNameId, print);
+    }
+
+    public void afterManualSyncFullHB(AbstractWeakDisposable o, int callerId, int callerNameId, boolean print) {
+        afterManualSyncFullHB(ThreadContext.current(), o, callerId, callerNameId, print);
+    }
+
+    public void afterMonitorEnter(Object o, int callerId, int callerNameId, boolean print) {
+        afterMonitorEnter(ThreadContext.current(), o, callerId, callerNameId, print);
+    }
+
+    public void afterRead(IDataClock clock, int location, boolean track, boolean print) {
+        afterRead(ThreadContext.current(), clock, location, track, print);
+    }
+
+    public void afterWrite(IDataClock clock, int location, boolean track, boolean print) {
+        afterWrite(ThreadContext.current(), clock, location, track, print);
+    }
+
+    public void afterForeignRead(Object o, int callerId, int location, boolean track, boolean print, boolean detectWWOnly) {
+        afterForeignRead(ThreadContext.current(), o, callerId, location, track, print, detectWWOnly);
+    }
+
+    public void beforeForeignWrite(Object o, int callerId, int location, boolean track, boolean print, boolean detectWWOnly) {
+        beforeForeignWrite(ThreadContext.current(), o, callerId, location, track, print, detectWWOnly);
+    }
+}
@@ -20,18 +20,17 @@
 package com.devexperts.drd.agent.core;
 
 /**
- * Per-thread guard containing of lock and counting semaphore.
+ * Per-thread guard containing of lock and counting semaphore. State is stored in {@link ThreadContext}.
  */
 public class Guard {
     public static final Guard INSTANCE = new Guard();
     public static final int AVAILABLE = 0;
     public static final int LOCKED_SOFT = 1;
-    private final ThreadLocal<Lock> locks = new ThreadLocal<Lock>() {
-        @Override
-        protected Lock initialValue() {
-            return new Lock();
-        }
-    };
+    /**
+     * Status, that is not obtained yet: instrumented code initializes its local copy of status with this value and
+     * obtains actual status only before the first instrumented instruction
+     */
+    public static final int UNKNOWN = -1;
 
     private Guard() {}
 
@@ -46,32 +45,30 @@ public class Guard {
      * </b>
      */
     public int status() {
-        return locks.get().state;
+        return ThreadContext.current().guardState;
     }
 
     /**
      * locks-soft guard by current thread and returns updated status
      */
     public int lockSoft() {
-        Lock lock = locks.get();
-        lock.state |= 1;
-        return lock.state;
+        ThreadContext context = ThreadContext.current();
+        context.guardState |= 1;
+        return context.guardState;
     }
 
     /**
      * unlocks-soft guard by current thread and returns updated status
      */
     public int unlockSoft() {
-        Lock lock = locks.get();
-        lock.state &= ~1;
-        return lock.state;
+        return ThreadContext.current().unlockSoft();
     }
 
     /**
      * checks if guard is locked-soft
      */
     public boolean isLockedSoft() {
-        return (locks.get().state & 1) == 1;
+        return (ThreadContext.current().guardState & 1) == 1;
     }
 
     /**
@@ -80,33 +77,27 @@ public class Guard {
      * @return if guard soft-locked state was changed (i.e. if initially guard was unlocked-soft)
      */
     public boolean lockSoftIfUnlocked() {
-        Lock lock = locks.get();
-        if ((lock.state & 1) == 1) {
-            return false;
-        } else {
-            locks.get().state |= 1;
-            return true;
-        }
+        return ThreadContext.current().lockSoftIfUnlocked();
     }
 
     /**
      * locks-hard this guard by current thread and returns updated status
      */
     public int lockHard() {
-        Lock lock = locks.get();
-        lock.state += 2;
-        return lock.state;
+        ThreadContext context = ThreadContext.current();
+        context.guardState += 2;
+        return context.guardState;
     }
 
     /**
      * unlocks-hard this guard by current thread and returns updated status
      */
     public int unlockHard() {
-        Lock lock = locks.get();
-        if (lock.state >= 2) {
-            lock.state -= 2;
+        ThreadContext context = ThreadContext.current();
+        if (context.guardState >= 2) {
+            context.guardState -= 2;
         }
-        return lock.state;
+        return context.guardState;
     }
 
     /**
@@ -114,13 +105,8 @@ public class Guard {
      */
     @Override
     public String toString() {
-        Lock lock = locks.get();
-        return ((lock.state & 1) == 1 ? "Soft-locked" : "Not soft-locked") + ", hard-locked " + (lock.state >> 1) +
+        ThreadContext context = ThreadContext.current();
+        return ((context.guardState & 1) == 1 ? "Soft-locked" : "Not soft-locked") + ", hard-locked " + (context.guardState >> 1) +
                 " times @ " + Thread.currentThread();
     }
-
-    private static class Lock {
-        //last bit is for soft-locking, other bits are for counting hard-locking
-        int state;
-    }
 }
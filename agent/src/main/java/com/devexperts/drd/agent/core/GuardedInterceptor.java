@@ -26,12 +26,13 @@ import com.devexperts.drd.bootstrap.*;
  * if call processing requires usage of instrumented data structures.
  * <p/>
  * Implemented via lock-like try-finally blocks: raise flag -> call super -> release, if it was released initially.
+ * Context of current thread is fetched once per event and passed to delegate.
  */
 public class GuardedInterceptor implements DRDInterceptor {
-    private final DRDInterceptor delegate;
+    private final ContextInterceptor delegate;
     private final Guard guard = Guard.INSTANCE;
 
-    public GuardedInterceptor(DRDInterceptor delegate) {
+    public GuardedInterceptor(ContextInterceptor delegate) {
         this.delegate = delegate;
         boolean locked = guard.isLockedSoft();
         //INIT internals
@@ -46,158 +47,197 @@ public class GuardedInterceptor implements DRDInterceptor {
     }
 
     public void beforeWait(Object o, int callerId, boolean print) {
-        boolean raised = guard.lockSoftIfUnlocked();
+        final ThreadContext context = ThreadContext.current();
+        final boolean raised = context.lockSoftIfUnlocked();
         try {
-            delegate.beforeWait(o, callerId, print);
+            delegate.beforeWait(context, o, callerId, print);
         } finally {
             if (raised) {
-                guard.unlockSoft();
+                context.unlockSoft();
             }
         }
     }
 
     public void afterWait(Object o, int callerId, boolean print) {
-        boolean raised = guard.lockSoftIfUnlocked();
+        final ThreadContext context = ThreadContext.current();
+        final boolean raised = context.lockSoftIfUnlocked();
         try {
-            delegate.afterWait(o, callerId, print);
+            delegate.afterWait(context, o, callerId, print);
         } finally {
             if (raised) {
-                guard.unlockSoft();
+                context.unlockSoft();
             }
         }
     }
 
     public void beforeVolatileWrite(Object ref, int ownerId, int nameId, int callerId, int callerNameId, boolean print) {
-        boolean raised = guard.lockSoftIfUnlocked();
+        final ThreadContext context = ThreadContext.current();
+        final boolean raised = context.lockSoftIfUnlocked();
         try {
-            delegate.beforeVolatileWrite(ref, ownerId, nameId, callerId, callerNameId, print);
+            delegate.beforeVolatileWrite(context, ref, ownerId, nameId, callerId, callerNameId, print);
         } finally {
             if (raised) {
-                guard.unlockSoft();
+                context.unlockSoft();
+            }
+        }
+    }
+
+    public void beforeVolatileClockWrite(ISyncClock clock, int callerId, int callerNameId, boolean print) {
+        final ThreadContext context = ThreadContext.current();
+        final boolean raised = context.lockSoftIfUnlocked();
+        try {
+            delegate.beforeVolatileClockWrite(context, clock, callerId, callerNameId, print);
+        } finally {
+            if (raised) {
+                context.unlockSoft();
             }
         }
     }
 
     public void beforeManualSyncSend(AbstractWeakDisposable o, int callerId, int callerNameId, boolean print) {
-        boolean raised = guard.lockSoftIfUnlocked();
+        final ThreadContext context = ThreadContext.current();
+        final boolean raised = context.lockSoftIfUnlocked();
         try {
-            delegate.beforeManualSyncSend(o, callerId, callerNameId, print);
+            delegate.beforeManualSyncSend(context, o, callerId, callerNameId, print);
         } finally {
             if (raised) {
-                guard.unlockSoft();
+                context.unlockSoft();
             }
         }
     }
 
     public void beforeMonitorExit(Object o, int callerId, int callerNameId, boolean print) {
-        boolean raised = guard.lockSoftIfUnlocked();
+        final ThreadContext context = ThreadContext.current();
+        final boolean raised = context.lockSoftIfUnlocked();
         try {
-            delegate.beforeMonitorExit(o, callerId, callerNameId, print);
+            delegate.beforeMonitorExit(context, o, callerId, callerNameId, print);
         } finally {
             if (raised) {
-                guard.unlockSoft();
+                context.unlockSoft();
             }
         }
     }
 
     public void afterVolatileRead(Object ref, int ownerId, int nameId, int callerId, int callerNameId, boolean print) {
-        boolean raised = guard.lockSoftIfUnlocked();
+        final ThreadContext context = ThreadContext.current();
+        final boolean raised = context.lockSoftIfUnlocked();
+        try {
+            delegate.afterVolatileRead(context, ref, ownerId, nameId, callerId, callerNameId, print);
+        } finally {
+            if (raised) {
+                context.unlockSoft();
+            }
+        }
+    }
+
+    public void afterVolatileClockRead(ISyncClock clock, int callerId, int callerNameId, boolean print) {
+        final ThreadContext context = ThreadContext.current();
+        final boolean raised = context.lockSoftIfUnlocked();
         try {
-            delegate.afterVolatileRead(ref, ownerId, nameId, callerId, callerNameId, print);
+            delegate.afterVolatileClockRead(context, clock, callerId, callerNameId, print);
         } finally {
             if (raised) {
-                guard.unlockSoft();
+                context.unlockSoft();
             }
         }
     }
 
     public void afterManualSyncReceive(AbstractWeakDisposable o, int callerId, int callerNameId, boolean print) {
-        boolean raised = guard.lockSoftIfUnlocked();
+        final ThreadContext context = ThreadContext.current();
+        final boolean raised = context.lockSoftIfUnlocked();
         try {
-            delegate.afterManualSyncReceive(o, callerId, callerNameId, print);
+            delegate.afterManualSyncReceive(context, o, callerId, callerNameId, print);
         } finally {
             if (raised) {
-                guard.unlockSoft();
+                context.unlockSoft();
             }
         }
     }
 
     public void afterManualSyncFullHB(AbstractWeakDisposable o, int callerId, int callerNameId, boolean print) {
-        boolean raised = guard.lockSoftIfUnlocked();
+        final ThreadContext context = ThreadContext.current();
+        final boolean raised = context.lockSoftIfUnlocked();
         try {
-            delegate.afterManualSyncFullHB(o, callerId, callerNameId, print);
+            delegate.afterManualSyncFullHB(context, o, callerId, callerNameId, print);
         } finally {
             if (raised) {
-                guard.unlockSoft();
+                context.unlockSoft();
             }
         }
     }
 
     public void afterMonitorEnter(Object o, int callerId, int callerNameId, boolean print) {
-        boolean raised = guard.lockSoftIfUnlocked();
+        final ThreadContext context = ThreadContext.current();
+        final boolean raised = context.lockSoftIfUnlocked();
         try {
-            delegate.afterMonitorEnter(o, callerId, callerNameId, print);
+            delegate.afterMonitorEnter(context, o, callerId, callerNameId, print);
         } finally {
             if (raised) {
-                guard.unlockSoft();
+                context.unlockSoft();
             }
         }
     }
 
     public void afterRead(IDataClock clock, int location, boolean track, boolean print) {
-        boolean raised = guard.lockSoftIfUnlocked();
+        final ThreadContext context = ThreadContext.current();
+        final boolean raised = context.lockSoftIfUnlocked();
         try {
-            delegate.afterRead(clock, location, track, print);
+            delegate.afterRead(context, clock, location, track, print);
         } finally {
             if (raised) {
-                guard.unlockSoft();
+                context.unlockSoft();
             }
         }
     }
 
     public void afterWrite(IDataClock clock, int location, boolean track, boolean print) {
-        boolean raised = guard.lockSoftIfUnlocked();
+        final ThreadContext context = ThreadContext.current();
+        final boolean raised = context.lockSoftIfUnlocked();
         try {
-            delegate.afterWrite(clock, location, track, print);
+            delegate.afterWrite(context, clock, location, track, print);
         } finally {
             if (raised) {
-                guard.unlockSoft();
+                context.unlockSoft();
             }
         }
     }
 
     public void afterForeignRead(Object o, int callerId, int location, boolean track, boolean print, boolean detectWWOnly) {
-        boolean raised = guard.lockSoftIfUnlocked();
+        final ThreadContext context = ThreadContext.current();
+        final boolean raised = context.lockSoftIfUnlocked();
         try {
-            delegate.afterForeignRead(o, callerId, location, track, print, detectWWOnly);
+            delegate.afterForeignRead(context, o, callerId, location, track, print, detectWWOnly);
         } finally {
             if (raised) {
-                guard.unlockSoft();
+                context.unlockSoft();
             }
         }
     }
 
     public void beforeForeignWrite(Object o, int callerId, int location, boolean track, boolean print, boolean detectWWOnly) {
-        boolean raised = guard.lockSoftIfUnlocked();
+        final ThreadContext context = ThreadContext.current();
+        final boolean raised = context.lockSoftIfUnlocked();
         try {
-            delegate.beforeForeignWrite(o, callerId, location, track, print, detectWWOnly);
+            delegate.beforeForeignWrite(context, o, callerId, location, track, print, detectWWOnly);
         } finally {
             if (raised) {
-                guard.unlockSoft();
+                context.unlockSoft();
             }
         }
     }
 
     public int status() {
-        return guard.status();
+        return ThreadContext.current().guardState;
     }
 
     public int lockSoft() {
-        return guard.lockSoft();
+        final ThreadContext context = ThreadContext.current();
+        context.guardState |= 1;
+        return context.guardState;
     }
 
     public int unlockSoft() {
-        return guard.unlockSoft();
+        return ThreadContext.current().unlockSoft();
     }
 
     public int lockHard() {
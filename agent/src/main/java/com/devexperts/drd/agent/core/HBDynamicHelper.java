@@ -20,6 +20,7 @@
 package com.devexperts.drd.agent.core;
 
 import com.devexperts.drd.agent.high_scale_lib.NonBlockingHashMap;
+import com.devexperts.drd.bootstrap.BlackHole;
 import com.devexperts.drd.bootstrap.DRDLogger;
 import com.devexperts.drd.bootstrap.IHBManager;
 
@@ -39,6 +40,10 @@ public class HBDynamicHelper {
 
     public HBDynamicHelper(IHBManager hbManager) {
         this.hbManager = hbManager;
+        //init internals: loading key classes on first match would transform them while inside instrumented code,
+        //which is the case when JDK classes are already instrumented, e.g. after attach to running JVM
+        reusableKeys.get().setFields(Object.class, 0);
+        BlackHole.BLACK_HOLE.print(new Key(Object.class, 0));
     }
 
     public boolean matches(Class c, String methodName, int vertexId) {
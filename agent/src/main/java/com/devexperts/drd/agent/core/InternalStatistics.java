@@ -19,10 +19,12 @@
 
 package com.devexperts.drd.agent.core;
 
+import com.devexperts.drd.agent.AccessSampler;
 import com.devexperts.drd.agent.high_scale_lib.Counter;
 import com.devexperts.drd.agent.high_scale_lib.NonBlockingHashMap;
 import com.devexperts.drd.agent.high_scale_lib.NonBlockingHashSet;
 import com.devexperts.drd.bootstrap.BlackHole;
+import com.devexperts.drd.bootstrap.DRDProperties;
 import com.devexperts.drd.bootstrap.stats.Counters;
 import com.devexperts.drd.bootstrap.stats.Processing;
 import com.devexperts.drd.bootstrap.stats.Statistics;
@@ -55,10 +57,12 @@ public class InternalStatistics implements Statistics {
     private final Counter ignoreConstructorCounter = new Counter();
     private final Counter ignoreFinalCounter = new Counter();
     private final Counter ignoreErrorCounter = new Counter();
+    private final Counter ignoreConfinedCounter = new Counter();
 
     private final Set<String> lockedSoft = new NonBlockingHashSet<String>();
     private final Set<String> lockedHard = new NonBlockingHashSet<String>();
     private final Counter totalMethodsTransformed = new Counter();
+    private final Counter totalConfinedFields = new Counter();
 
     private NonBlockingHashMap<String, Gauge> fieldAccesses = new NonBlockingHashMap<String, Gauge>();
 
@@ -80,6 +84,10 @@ public class InternalStatistics implements Statistics {
         totalMethodsTransformed.increment();
     }
 
+    public void confinedFields(int count) {
+        totalConfinedFields.add(count);
+    }
+
     public void trackFieldAccess(String description, boolean write) {
         Gauge g = fieldAccesses.get(description);
         if (g == null) {
@@ -181,6 +189,9 @@ public class InternalStatistics implements Statistics {
             case 5:
                 ignoreErrorCounter.increment();
                 break;
+            case 6:
+                ignoreConfinedCounter.increment();
+                break;
             default:
                 throw new IllegalArgumentException("Unexpected ordinal : " + ordinal);
         }
@@ -206,11 +217,26 @@ public class InternalStatistics implements Statistics {
         sb.append(ignoreConstructorCounter.getAndReset()).append(" IGNORE_CONSTRUCTOR\n");
         sb.append(ignoreFinalCounter.getAndReset()).append(" IGNORE_FINAL\n");
         sb.append(ignoreErrorCounter.getAndReset()).append(" IGNORE_ERROR\n");
+        sb.append(ignoreConfinedCounter.getAndReset()).append(" IGNORE_CONFINED\n");
+        sb.append("Fields proven confined all time: ").append(totalConfinedFields.get()).append(".\n");
+        appendSampling(sb);
         sb.append("Locked all time soft/hard (if available) ").append(lockedSoft.size()).append("/").append(lockedHard.size())
                 .append(" of total ").append(totalMethodsTransformed.get()).append(" methods.\n");
         return sb.append("\n==============================================================================").toString();
     }
 
+    private static void appendSampling(StringBuilder sb) {
+        if (!DRDProperties.fieldSampling) return;
+        final long checked = AccessSampler.checkedCounter.estimateGetAndReset();
+        final long skipped = AccessSampler.skippedCounter.estimateGetAndReset();
+        final long total = checked + skipped;
+        sb.append("Field access sampling: ").append(checked).append(" checked, ").append(skipped).append(" skipped, sample rate ")
+                .append(total == 0 ? 100 : checked * 100 / total).append("%; ")
+                .append(AccessSampler.backoffCounter.estimateGetAndReset()).append(" back-offs, ")
+                .append(AccessSampler.saturatedCounter.estimateGetAndReset()).append(" locations reached max period ")
+                .append(DRDProperties.fieldSamplingMaxPeriod).append(".\n");
+    }
+
     private static void append(String entity, Gauge gauge, StringBuilder sb) {
         sb.append(entity).append(": ");
         gauge.dumpAndReset(sb);
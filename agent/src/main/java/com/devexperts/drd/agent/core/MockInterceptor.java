@@ -20,15 +20,15 @@
 package com.devexperts.drd.agent.core;
 
 import com.devexperts.drd.bootstrap.AbstractWeakDisposable;
-import com.devexperts.drd.bootstrap.DRDInterceptor;
 import com.devexperts.drd.bootstrap.IDataClock;
+import com.devexperts.drd.bootstrap.ISyncClock;
 
-public class MockInterceptor implements DRDInterceptor {
-    public void beforeWait(Object o, int callerId, boolean print) {
+public class MockInterceptor extends ContextInterceptor {
+    public void beforeWait(ThreadContext context, Object o, int callerId, boolean print) {
 
     }
 
-    public void afterWait(Object o, int callerId, boolean print) {
+    public void afterWait(ThreadContext context, Object o, int callerId, boolean print) {
 
     }
 
@@ -44,47 +44,55 @@ public class MockInterceptor implements DRDInterceptor {
 
     }
 
-    public void beforeVolatileWrite(Object ref, int ownerId, int nameId, int callerId, int callerNameId, boolean print) {
+    public void beforeVolatileWrite(ThreadContext context, Object ref, int ownerId, int nameId, int callerId, int callerNameId, boolean print) {
 
     }
 
-    public void beforeManualSyncSend(AbstractWeakDisposable o, int callerId, int callerNameId, boolean print) {
+    public void beforeVolatileClockWrite(ThreadContext context, ISyncClock clock, int callerId, int callerNameId, boolean print) {
 
     }
 
-    public void beforeMonitorExit(Object o, int callerId, int callerNameId, boolean print) {
+    public void beforeManualSyncSend(ThreadContext context, AbstractWeakDisposable o, int callerId, int callerNameId, boolean print) {
 
     }
 
-    public void afterVolatileRead(Object ref, int ownerId, int nameId, int callerId, int callerNameId, boolean print) {
+    public void beforeMonitorExit(ThreadContext context, Object o, int callerId, int callerNameId, boolean print) {
 
     }
 
-    public void afterManualSyncReceive(AbstractWeakDisposable o, int callerId, int callerNameId, boolean print) {
+    public void afterVolatileRead(ThreadContext context, Object ref, int ownerId, int nameId, int callerId, int callerNameId, boolean print) {
 
     }
 
-    public void afterManualSyncFullHB(AbstractWeakDisposable o, int callerId, int callerNameId, boolean print) {
+    public void afterVolatileClockRead(ThreadContext context, ISyncClock clock, int callerId, int callerNameId, boolean print) {
 
     }
 
-    public void afterMonitorEnter(Object o, int callerId, int callerNameId, boolean print) {
+    public void afterManualSyncReceive(ThreadContext context, AbstractWeakDisposable o, int callerId, int callerNameId, boolean print) {
 
     }
 
-    public void afterRead(IDataClock clock, int location, boolean track, boolean print) {
+    public void afterManualSyncFullHB(ThreadContext context, AbstractWeakDisposable o, int callerId, int callerNameId, boolean print) {
 
     }
 
-    public void afterWrite(IDataClock clock, int location, boolean track, boolean print) {
+    public void afterMonitorEnter(ThreadContext context, Object o, int callerId, int callerNameId, boolean print) {
 
     }
 
-    public void afterForeignRead(Object o, int callerId, int location, boolean track, boolean print, boolean detectWWOnly) {
+    public void afterRead(ThreadContext context, IDataClock clock, int location, boolean track, boolean print) {
 
     }
 
-    public void beforeForeignWrite(Object o, int callerId, int location, boolean track, boolean print, boolean detectWWOnly) {
+    public void afterWrite(ThreadContext context, IDataClock clock, int location, boolean track, boolean print) {
+
+    }
+
+    public void afterForeignRead(ThreadContext context, Object o, int callerId, int location, boolean track, boolean print, boolean detectWWOnly) {
+
+    }
+
+    public void beforeForeignWrite(ThreadContext context, Object o, int callerId, int location, boolean track, boolean print, boolean detectWWOnly) {
 
     }
 
@@ -0,0 +1,128 @@
+/*
+ * DRD - Dynamic Data Race Detector for Java programs
+ *
+ * Copyright (C) 2002-2018 Devexperts LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devexperts.drd.agent.core;
+
+import com.devexperts.drd.agent.AccessSampler;
+import com.devexperts.drd.agent.StackSampler;
+import com.devexperts.drd.agent.clock.RedundantAccessFilter;
+import com.devexperts.drd.agent.clock.ThreadVectorClock;
+import com.devexperts.drd.bootstrap.DRDProperties;
+
+/**
+ * Per-thread state: guard, thread clock, access filter and samplers.
+ * Not thread-safe. Should be used only by owner thread.
+ */
+public final class ThreadContext {
+    private static final ThreadLocal<ThreadContext> contexts = new ThreadLocal<ThreadContext>() {
+        @Override
+        protected ThreadContext initialValue() {
+            return new ThreadContext();
+        }
+    };
+
+    /**
+     * Guard state, see {@link Guard#status()}: last bit is for soft-locking, other bits are for counting hard-locking
+     */
+    int guardState;
+    private ThreadVectorClock threadClock;
+    private boolean threadClockInitialized;
+    private StackSampler stackSampler;
+    private AccessSampler accessSampler;
+    private RedundantAccessFilter accessFilter;
+
+    private ThreadContext() {}
+
+    /**
+     * @return context of current thread
+     */
+    public static ThreadContext current() {
+        return contexts.get();
+    }
+
+    /**
+     * locks-soft guard
+     *
+     * @return if guard soft-locked state was changed (i.e. if initially guard was unlocked-soft)
+     */
+    public boolean lockSoftIfUnlocked() {
+        if ((guardState & 1) == 1) {
+            return false;
+        }
+        guardState |= 1;
+        return true;
+    }
+
+    /**
+     * unlocks-soft guard and returns updated status
+     */
+    public int unlockSoft() {
+        guardState &= ~1;
+        return guardState;
+    }
+
+    /**
+     * @return clock of owner thread, lazily created on first request; null for DRD internal threads and dead threads
+     */
+    public ThreadVectorClock getThreadClock() {
+        if (!threadClockInitialized) {
+            threadClockInitialized = true;
+            threadClock = ClocksStorage.createThreadClock();
+        }
+        return threadClock;
+    }
+
+    /**
+     * @return sampler of stack traces of tracked accesses, lazily created on first request
+     */
+    public StackSampler getStackSampler() {
+        if (stackSampler == null) {
+            stackSampler = new StackSampler(DRDProperties.trackStackSampleRate);
+        }
+        return stackSampler;
+    }
+
+    /**
+     * @return sampler of field accesses, lazily created on first request
+     */
+    public AccessSampler getAccessSampler() {
+        if (accessSampler == null) {
+            accessSampler = new AccessSampler(DRDProperties.fieldSamplingBurst, DRDProperties.fieldSamplingMaxPeriod);
+        }
+        return accessSampler;
+    }
+
+    /**
+     * @return filter of redundant field accesses, lazily created on first request
+     */
+    public RedundantAccessFilter getAccessFilter() {
+        if (accessFilter == null) {
+            accessFilter = new RedundantAccessFilter();
+        }
+        return accessFilter;
+    }
+
+    /**
+     * Detaches clock from dying thread, so that it wouldn't be ticked anymore
+     */
+    void clearThreadClock() {
+        threadClockInitialized = true;
+        threadClock = null;
+    }
+}
@@ -20,8 +20,10 @@
 package com.devexperts.drd.agent.core;
 
 import com.devexperts.drd.bootstrap.DataRaceDescription;
+import com.devexperts.drd.agent.AccessSampler;
 import com.devexperts.drd.agent.ThreadUtils;
 import com.devexperts.drd.agent.clock.DataClock;
+import com.devexperts.drd.agent.clock.RedundantAccessFilter;
 import com.devexperts.drd.agent.clock.ThreadVectorClock;
 import com.devexperts.drd.agent.race.RaceReporter;
 import com.devexperts.drd.bootstrap.*;
@@ -30,14 +32,23 @@ import com.devexperts.drd.bootstrap.*;
  * Vector clock-based implementation of {@link com.devexperts.drd.bootstrap.DRDInterceptor}, that processes all significant application events.
  * Can't be used directly, use {@link GuardedInterceptor} instead.
  */
-public class VerboseVectorClockInterceptor implements DRDInterceptor {
+public class VerboseVectorClockInterceptor extends ContextInterceptor {
+    /**
+     * If true, field accesses are sampled per location, see {@link AccessSampler}. Synchronization events are always processed.
+     */
+    private static final boolean FIELD_SAMPLING = DRDProperties.fieldSampling;
+    /**
+     * If true, repeated field accesses in the same frame are filtered, see {@link RedundantAccessFilter}
+     */
+    private static final boolean ACCESS_FILTER = DRDProperties.redundantAccessFilter;
+
     private final DRDRegistry registry = DRDEntryPoint.getRegistry();
     private final RaceReporter raceReporter = new RaceReporter(registry);
     private final DataProvider dataProvider = DRDEntryPoint.getDataProvider();
 
-    public void beforeWait(Object o, int callerId, boolean print) {
+    public void beforeWait(ThreadContext context, Object o, int callerId, boolean print) {
         //check(caller);
-        ThreadVectorClock threadClock = getCurrentThreadClock();
+        ThreadVectorClock threadClock = context.getThreadClock();
         if (threadClock == null) return;
         final ISyncClock synClock = ClocksStorage.getSynClock(o);
         doBeforeMonitorExit(threadClock, synClock);
@@ -47,9 +58,9 @@ public class VerboseVectorClockInterceptor implements DRDInterceptor {
         }
     }
 
-    public void afterWait(Object o, int callerId, boolean print) {
+    public void afterWait(ThreadContext context, Object o, int callerId, boolean print) {
         //check(caller);
-        ThreadVectorClock threadClock = getCurrentThreadClock();
+        ThreadVectorClock threadClock = context.getThreadClock();
         if (threadClock == null) return;
         final ISyncClock synClock = ClocksStorage.getSynClock(o);
         doAfterMonitorEnter(threadClock, synClock);
@@ -74,9 +85,9 @@ public class VerboseVectorClockInterceptor implements DRDInterceptor {
         ClocksStorage.onDie();
     }
 
-    public void afterMonitorEnter(Object o, int callerId, int callerNameId, boolean print) {
+    public void afterMonitorEnter(ThreadContext context, Object o, int callerId, int callerNameId, boolean print) {
         //check(caller);
-        ThreadVectorClock threadClock = getCurrentThreadClock();
+        ThreadVectorClock threadClock = context.getThreadClock();
         if (threadClock == null) return;
         final ISyncClock synClock = ClocksStorage.getSynClock(o);
         doAfterMonitorEnter(threadClock, synClock);
@@ -86,9 +97,9 @@ public class VerboseVectorClockInterceptor implements DRDInterceptor {
         }
     }
 
-    public void afterManualSyncReceive(AbstractWeakDisposable o, int callerId, int callerNameId, boolean print) {
+    public void afterManualSyncReceive(ThreadContext context, AbstractWeakDisposable o, int callerId, int callerNameId, boolean print) {
         //check(caller);
-        ThreadVectorClock threadClock = getCurrentThreadClock();
+        ThreadVectorClock threadClock = context.getThreadClock();
         if (threadClock == null) return;
         final ISyncClock manualSynClock = getManualSyncClock(o);
         doAfterMonitorEnter(threadClock, manualSynClock);
@@ -99,9 +110,9 @@ public class VerboseVectorClockInterceptor implements DRDInterceptor {
         }
     }
 
-    public void afterManualSyncFullHB(AbstractWeakDisposable o, int callerId, int callerNameId, boolean print) {
+    public void afterManualSyncFullHB(ThreadContext context, AbstractWeakDisposable o, int callerId, int callerNameId, boolean print) {
         //check(caller);
-        final ThreadVectorClock threadClock = getCurrentThreadClock();
+        final ThreadVectorClock threadClock = context.getThreadClock();
         if (threadClock == null) return;
         threadClock.tick();
         final ISyncClock manualSynClock = getManualSyncClock(o);
@@ -113,10 +124,10 @@ public class VerboseVectorClockInterceptor implements DRDInterceptor {
         }
     }
 
-    public void afterVolatileRead(Object ref, int ownerId, int nameId, int callerId, int callerNameId, boolean print) {
+    public void afterVolatileRead(ThreadContext context, Object ref, int ownerId, int nameId, int callerId, int callerNameId, boolean print) {
         //check(caller);
         //check(owner);
-        final ThreadVectorClock threadClock = getCurrentThreadClock();
+        final ThreadVectorClock threadClock = context.getThreadClock();
         if (threadClock == null) return;
         ISyncClock volatilesClock = dataProvider.getVolatileSyncClock(ref, ownerId, nameId);
         doAfterMonitorEnter(threadClock, volatilesClock);
@@ -126,6 +137,16 @@ public class VerboseVectorClockInterceptor implements DRDInterceptor {
         }
     }
 
+    public void afterVolatileClockRead(ThreadContext context, ISyncClock clock, int callerId, int callerNameId, boolean print) {
+        final ThreadVectorClock threadClock = context.getThreadClock();
+        if (threadClock == null) return;
+        doAfterMonitorEnter(threadClock, clock);
+        if (print) {
+            DRDLogger.log("Thread " + threadClock.tid + " read volatile in " + extractCall(callerId, callerNameId)
+                    + "() with vc " + clock + ". TC: " + threadClock);
+        }
+    }
+
     private ISyncClock getManualSyncClock(AbstractWeakDisposable o) {
         ISyncClock clock = ClocksStorage.getManualSynClock(o);
         if (clock == null) {
@@ -138,9 +159,9 @@ public class VerboseVectorClockInterceptor implements DRDInterceptor {
         synClock.loadTo(threadClock);
     }
 
-    public void beforeMonitorExit(Object o, int callerId, int callerNameId, boolean print) {
+    public void beforeMonitorExit(ThreadContext context, Object o, int callerId, int callerNameId, boolean print) {
         //check(caller);
-        final ThreadVectorClock threadClock = getCurrentThreadClock();
+        final ThreadVectorClock threadClock = context.getThreadClock();
         if (threadClock == null) return;
         final ISyncClock synClock = ClocksStorage.getSynClock(o);
         doBeforeMonitorExit(threadClock, synClock);
@@ -150,9 +171,9 @@ public class VerboseVectorClockInterceptor implements DRDInterceptor {
         }
     }
 
-    public void beforeManualSyncSend(AbstractWeakDisposable o, int callerId, int callerNameId, boolean print) {
+    public void beforeManualSyncSend(ThreadContext context, AbstractWeakDisposable o, int callerId, int callerNameId, boolean print) {
         //check(caller);
-        final ThreadVectorClock threadClock = getCurrentThreadClock();
+        final ThreadVectorClock threadClock = context.getThreadClock();
         if (threadClock == null) return;
         final ISyncClock manualSynClock = getManualSyncClock(o);
         doBeforeMonitorExit(threadClock, manualSynClock);
@@ -163,10 +184,10 @@ public class VerboseVectorClockInterceptor implements DRDInterceptor {
         }
     }
 
-    public void beforeVolatileWrite(Object ref, int ownerId, int nameId, int callerId, int callerNameId, boolean print) {
+    public void beforeVolatileWrite(ThreadContext context, Object ref, int ownerId, int nameId, int callerId, int callerNameId, boolean print) {
         //check(caller);
         //check(owner);
-        final ThreadVectorClock threadClock = getCurrentThreadClock();
+        final ThreadVectorClock threadClock = context.getThreadClock();
         if (threadClock == null) return;
         ISyncClock volatilesClock = dataProvider.getVolatileSyncClock(ref, ownerId, nameId);
         doBeforeMonitorExit(threadClock, volatilesClock);
@@ -176,15 +197,29 @@ public class VerboseVectorClockInterceptor implements DRDInterceptor {
         }
     }
 
+    public void beforeVolatileClockWrite(ThreadContext context, ISyncClock clock, int callerId, int callerNameId, boolean print) {
+        final ThreadVectorClock threadClock = context.getThreadClock();
+        if (threadClock == null) return;
+        doBeforeMonitorExit(threadClock, clock);
+        if (print) {
+            DRDLogger.log("Thread " + threadClock.tid + " writes volatile in " + extractCall(callerId, callerNameId)
+                    + "() with vc " + clock + ". TC: " + threadClock);
+        }
+    }
+
     private void doBeforeMonitorExit(ThreadVectorClock threadClock, ISyncClock synClock) {
         threadClock.tick();
         synClock.loadFrom(threadClock);
     }
 
     //TODO copy/pastes: read-write, afterForeignRead-beforeForeignWrite
-    public void afterRead(IDataClock clock, int location, boolean track, boolean print) {
-        final ThreadVectorClock threadClock = getCurrentThreadClock();
+    public void afterRead(ThreadContext context, IDataClock clock, int location, boolean track, boolean print) {
+        if (FIELD_SAMPLING && !track && !print && !context.getAccessSampler().check(location)) return;
+        final ThreadVectorClock threadClock = context.getThreadClock();
         if (threadClock == null) return;
+        final RedundantAccessFilter filter = ACCESS_FILTER && !track && !print ? context.getAccessFilter() : null;
+        final long frame = threadClock.currentFrame();
+        if (filter != null && filter.isRedundant(clock, location, frame, false)) return;
         StringBuilder msg = null;
         if (print) {
             Location l = registry.getLocation(location);
@@ -196,6 +231,9 @@ public class VerboseVectorClockInterceptor implements DRDInterceptor {
         if (race != null) {
             reportFieldRace(race);
         }
+        if (filter != null) {
+            filter.accessed(clock, location, frame, false);
+        }
         if (print) {
             msg.append(" ---> VC: ").append(clock);
             DRDLogger.log(msg.toString());
@@ -212,9 +250,13 @@ public class VerboseVectorClockInterceptor implements DRDInterceptor {
                 registry.getRaceHistory().getFieldAccess(l.targetOwnerId, l.targetNameId, race.racingTid));
     }
 
-    public void afterWrite(IDataClock clock, int location, boolean track, boolean print) {
-        final ThreadVectorClock threadClock = getCurrentThreadClock();
+    public void afterWrite(ThreadContext context, IDataClock clock, int location, boolean track, boolean print) {
+        if (FIELD_SAMPLING && !track && !print && !context.getAccessSampler().check(location)) return;
+        final ThreadVectorClock threadClock = context.getThreadClock();
         if (threadClock == null) return;
+        final RedundantAccessFilter filter = ACCESS_FILTER && !track && !print ? context.getAccessFilter() : null;
+        final long frame = threadClock.currentFrame();
+        if (filter != null && filter.isRedundant(clock, location, frame, true)) return;
         StringBuilder msg = null;
         if (print) {
             Location l = registry.getLocation(location);
@@ -226,6 +268,9 @@ public class VerboseVectorClockInterceptor implements DRDInterceptor {
         if (race != null) {
             reportFieldRace(race);
         }
+        if (filter != null) {
+            filter.accessed(clock, location, frame, true);
+        }
         if (print) {
             msg.append(" ---> VC: ").append(clock);
             DRDLogger.log(msg.toString());
@@ -236,8 +281,8 @@ public class VerboseVectorClockInterceptor implements DRDInterceptor {
         }
     }
 
-    public void afterForeignRead(Object o, int callerId, int location, boolean track, boolean print, boolean detectWWOnly) {
-        final ThreadVectorClock threadClock = getCurrentThreadClock();
+    public void afterForeignRead(ThreadContext context, Object o, int callerId, int location, boolean track, boolean print, boolean detectWWOnly) {
+        final ThreadVectorClock threadClock = context.getThreadClock();
         if (threadClock == null) return;
         final DataClock fvc = ClocksStorage.getForeignClock(callerId, o);
         StringBuilder msg = null;
@@ -267,8 +312,8 @@ public class VerboseVectorClockInterceptor implements DRDInterceptor {
         }
     }
 
-    public void beforeForeignWrite(Object o, int callerId, int location, boolean track, boolean print, boolean detectWWOnly) {
-        final ThreadVectorClock threadClock = getCurrentThreadClock();
+    public void beforeForeignWrite(ThreadContext context, Object o, int callerId, int location, boolean track, boolean print, boolean detectWWOnly) {
+        final ThreadVectorClock threadClock = context.getThreadClock();
         if (threadClock == null) return;
         final DataClock fvc = ClocksStorage.getForeignClock(callerId, o);
         StringBuilder msg = null;
@@ -291,10 +336,6 @@ public class VerboseVectorClockInterceptor implements DRDInterceptor {
         }
     }
 
-    private ThreadVectorClock getCurrentThreadClock() {
-        return ClocksStorage.getThreadClock();
-    }
-
     public int status() {
         throw new UnsupportedOperationException();
     }
@@ -0,0 +1,127 @@
+/*
+ * DRD - Dynamic Data Race Detector for Java programs
+ *
+ * Copyright (C) 2002-2018 Devexperts LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devexperts.drd.agent.core;
+
+import com.devexperts.drd.agent.clock.SyncClock;
+import com.devexperts.drd.agent.high_scale_lib.Counter;
+import com.devexperts.drd.agent.high_scale_lib.NonBlockingHashMapLong;
+import com.devexperts.drd.bootstrap.*;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+/**
+ * Clocks of volatile fields, that are kept in hidden companion fields of instrumented classes (see
+ * {@link DataProvider#VOLATILE_CLOCK_SUFFIX}). Accessing classes, that were transformed after declaring class, read
+ * companion field directly and come here only to create the clock. Other accesses find companion field once per
+ * volatile field by reflection and then access it via Unsafe, so that all accesses to the same volatile field use
+ * the same clock, no matter how accessing class was instrumented.
+ */
+public class VolatileClockFields {
+    /**
+     * Number of volatile clocks, that were created in companion fields
+     */
+    public static final Counter createdCounter = new Counter();
+    private static final Accessor NO_FIELD = new Accessor(null, null, 0);
+
+    private final NonBlockingHashMapLong<Accessor> accessors = new NonBlockingHashMapLong<Accessor>();
+
+    /**
+     * @param ref     owner of instance field or class of static field
+     * @param ownerId id of class, that declares volatile field
+     * @param nameId  id of volatile field name
+     * @return clock of volatile field or null, if it isn't kept in companion field
+     */
+    public SyncClock getClock(Object ref, int ownerId, int nameId) {
+        final long key = IntUtils.concat(ownerId, nameId);
+        Accessor accessor = accessors.get(key);
+        if (accessor == null) {
+            accessor = findAccessor(ref, ownerId, nameId);
+            final Accessor old = accessors.putIfAbsent(key, accessor);
+            if (old != null) {
+                accessor = old;
+            }
+        }
+        return accessor.getClock(ref);
+    }
+
+    private static Accessor findAccessor(Object ref, int ownerId, int nameId) {
+        final DRDRegistry registry = DRDEntryPoint.getRegistry();
+        final String owner = registry.getClassName(ownerId).replace('/', '.');
+        Class c = ref instanceof Class ? (Class) ref : ref.getClass();
+        while (c != null && !c.getName().equals(owner)) {
+            c = c.getSuperclass();
+        }
+        if (c == null) return NO_FIELD;
+        Guard.INSTANCE.lockHard();
+        try {
+            final Field field = c.getDeclaredField(registry.getFieldOrMethodName(nameId) + DataProvider.VOLATILE_CLOCK_SUFFIX);
+            if (Modifier.isStatic(field.getModifiers())) {
+                return new Accessor(c, UnsafeHolder.UNSAFE.staticFieldBase(field), UnsafeHolder.UNSAFE.staticFieldOffset(field));
+            } else {
+                return new Accessor(c, null, UnsafeHolder.UNSAFE.objectFieldOffset(field));
+            }
+        } catch (NoSuchFieldException e) {
+            return NO_FIELD;
+        } finally {
+            Guard.INSTANCE.unlockHard();
+        }
+    }
+
+    /**
+     * Companion field of volatile field of particular class
+     */
+    private static class Accessor {
+        final Class declaringClass;
+        /**
+         * Base of static field or null for instance field
+         */
+        final Object staticBase;
+        final long offset;
+
+        Accessor(Class declaringClass, Object staticBase, long offset) {
+            this.declaringClass = declaringClass;
+            this.staticBase = staticBase;
+            this.offset = offset;
+        }
+
+        SyncClock getClock(Object ref) {
+            final Object base;
+            if (staticBase != null) {
+                if (ref != declaringClass) return null;
+                base = staticBase;
+            } else {
+                //class with the same name may be loaded by another class loader
+                if (declaringClass == null || !declaringClass.isInstance(ref)) return null;
+                base = ref;
+            }
+            SyncClock clock = (SyncClock) UnsafeHolder.UNSAFE.getObjectVolatile(base, offset);
+            if (clock == null) {
+                final SyncClock newClock = new SyncClock();
+                if (UnsafeHolder.UNSAFE.compareAndSwapObject(base, offset, null, newClock)) {
+                    createdCounter.increment();
+                    return newClock;
+                }
+                clock = (SyncClock) UnsafeHolder.UNSAFE.getObjectVolatile(base, offset);
+            }
+            return clock;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * DRD - Dynamic Data Race Detector for Java programs
+ *
+ * Copyright (C) 2002-2018 Devexperts LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devexperts.drd.agent.race;
+
+import com.devexperts.drd.bootstrap.DataRaceDescription;
+import com.devexperts.drd.bootstrap.ThreadRaceInfo;
+
+/**
+ * Compact snapshot of detected race, that is captured by racing thread and formatted later by {@link RaceWriter}.
+ * Clocks are copied, because they change after race is reported; stack trace is kept unresolved in throwable.
+ */
+final class RaceRecord {
+    final long time;
+    final DataRaceDescription.RaceTarget target;
+    final DataRaceDescription.AccessType currentAccess;
+    final DataRaceDescription.AccessType racingAccess;
+    final int currentLocationId;
+    final int racingLocationId;
+    final long currentTid;
+    final String currentThreadName;
+    final long racingTid;
+    final long[] targetReadFrames;
+    final long[] targetWriteFrames;
+    final long[] threadLiveFrames;
+    final long[] threadDeadFrames;
+    final Throwable currentStack;
+    final ThreadRaceInfo racingThreadInfo;
+
+    RaceRecord(DataRaceDescription.RaceTarget target, DataRaceDescription race, ThreadRaceInfo racingThreadInfo) {
+        final Thread thread = Thread.currentThread();
+        this.time = System.currentTimeMillis();
+        this.target = target;
+        this.currentAccess = race.currentAccess;
+        this.racingAccess = race.racingAccess;
+        this.currentLocationId = race.currentLocationId;
+        this.racingLocationId = race.racingLocationId;
+        this.currentTid = thread.getId();
+        this.currentThreadName = thread.getName();
+        this.racingTid = race.racingTid;
+        this.targetReadFrames = race.targetVC.getReadFrames();
+        this.targetWriteFrames = race.targetVC.getWriteFrames();
+        this.threadLiveFrames = race.currentThreadVC.getLiveFrames();
+        this.threadDeadFrames = race.currentThreadVC.getDeadFrames();
+        this.currentStack = new Throwable();
+        this.racingThreadInfo = racingThreadInfo;
+    }
+}
@@ -26,61 +26,60 @@ import com.devexperts.drd.race.AccessType;
 import com.devexperts.drd.race.CodeLine;
 import com.devexperts.drd.race.RaceTargetType;
 import com.devexperts.drd.race.impl.*;
-import com.devexperts.drd.race.io.RaceIO;
-import com.devexperts.drd.race.io.RaceIOException;
 
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
-import java.io.IOException;
 import java.util.Date;
 
+/**
+ * Reports races asynchronously: racing thread only captures {@link RaceRecord}, that is formatted and written
+ * by {@link RaceWriter}.
+ */
 public class RaceReporter {
     private static final StackTraceElement[] NO_STACKTRACE = new StackTraceElement[0];
     private DRDRegistry registry;
+    private final RaceWriter writer;
 
     public RaceReporter(DRDRegistry registry) {
         this.registry = registry;
+        this.writer = new RaceWriter(this);
+    }
+
+    public void reportRace(DataRaceDescription.RaceTarget target, DataRaceDescription race, ThreadRaceInfo racingThreadInfo) {
+        writer.offer(new RaceRecord(target, race, racingThreadInfo));
     }
 
-    public synchronized void reportRace(DataRaceDescription.RaceTarget target, DataRaceDescription race, ThreadRaceInfo racingThreadInfo) {
+    /**
+     * Called by {@link RaceWriter} thread
+     */
+    RaceImpl createRace(RaceRecord record) {
         RaceImpl r = new RaceImpl();
-        r.setTime(new Date());
-        RaceTargetType raceTargetType = convertRaceTarget(target);
+        r.setTime(new Date(record.time));
+        RaceTargetType raceTargetType = convertRaceTarget(record.target);
         r.setRaceTargetType(raceTargetType);
 
-        AccessImpl currentAccess = createAccess(race.currentLocationId, raceTargetType);
-        currentAccess.setAccessType(convertAccessType(race.currentAccess));
-        currentAccess.setTid(Thread.currentThread().getId());
-        currentAccess.setThreadName(Thread.currentThread().getName());
-        currentAccess.setTargetClock(new DataClockImpl(race.targetVC.getReadFrames(), race.targetVC.getWriteFrames()));
-        currentAccess.setThreadClock(new ThreadClockImpl(race.currentThreadVC.getLiveFrames(), race.currentThreadVC.getDeadFrames()));
-        currentAccess.setStackTrace(new StackTrace(ThreadUtils.removeTopDRDCalls(Thread.currentThread().getStackTrace())));
+        AccessImpl currentAccess = createAccess(record.currentLocationId, raceTargetType);
+        currentAccess.setAccessType(convertAccessType(record.currentAccess));
+        currentAccess.setTid(record.currentTid);
+        currentAccess.setThreadName(record.currentThreadName);
+        currentAccess.setTargetClock(new DataClockImpl(record.targetReadFrames, record.targetWriteFrames));
+        currentAccess.setThreadClock(new ThreadClockImpl(record.threadLiveFrames, record.threadDeadFrames));
+        currentAccess.setStackTrace(new StackTrace(ThreadUtils.removeTopDRDCalls(record.currentStack.getStackTrace())));
         r.setCurrentAccess(currentAccess);
 
-        AccessImpl racingAccess = createAccess(race.racingLocationId, raceTargetType);
-        racingAccess.setAccessType(convertAccessType(race.racingAccess));
-        racingAccess.setTid(race.racingTid);
-        racingAccess.setThreadName(registry.getThreadName(race.racingTid));
+        AccessImpl racingAccess = createAccess(record.racingLocationId, raceTargetType);
+        racingAccess.setAccessType(convertAccessType(record.racingAccess));
+        racingAccess.setTid(record.racingTid);
+        racingAccess.setThreadName(registry.getThreadName(record.racingTid));
         racingAccess.setTargetClock(null); //not available
         racingAccess.setThreadClock(null); //not available
-        if (racingThreadInfo != null) {
-            racingAccess.setStackTrace(new StackTrace(ThreadUtils.removeTopDRDCalls(racingThreadInfo.exception.getStackTrace())));
+        final StackTraceElement[] racingStackTrace = record.racingThreadInfo == null ? null :
+                registry.getStackTrace(record.racingThreadInfo.stackTraceId);
+        if (racingStackTrace != null) {
+            racingAccess.setStackTrace(new StackTrace(racingStackTrace));
         } else {
             racingAccess.setStackTrace(new StackTrace(NO_STACKTRACE)); //not available
         }
         r.setRacingAccess(racingAccess);
-        try {
-            FileOutputStream out = new FileOutputStream(DRDLogger.racesFile, true);
-            RaceIO.write(r, out);
-            DRDLogger.log("Race detected and logged to " + DRDLogger.racesFile.getName());
-            out.close();
-        } catch (RaceIOException e) {
-            DRDLogger.error("Failed to write race\n" + r, e);
-        } catch (FileNotFoundException e) {
-            DRDLogger.error("Failed to write race: file " + DRDLogger.racesFile.getName() + " not found.\n" + r, e);
-        } catch (IOException e) {
-            DRDLogger.error("Failed to write race\n" + r, e);
-        }
+        return r;
     }
 
     private AccessImpl createAccess(int location, RaceTargetType raceTargetType) {
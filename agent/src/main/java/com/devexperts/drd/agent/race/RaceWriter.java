@@ -0,0 +1,189 @@
+/*
+ * DRD - Dynamic Data Race Detector for Java programs
+ *
+ * Copyright (C) 2002-2018 Devexperts LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devexperts.drd.agent.race;
+
+import com.devexperts.drd.agent.core.ClocksStorage;
+import com.devexperts.drd.agent.high_scale_lib.Counter;
+import com.devexperts.drd.bootstrap.DRDLogger;
+import com.devexperts.drd.bootstrap.DRDProperties;
+import com.devexperts.drd.race.impl.RaceImpl;
+import com.devexperts.drd.race.io.RaceIO;
+import com.devexperts.drd.race.io.RaceIOException;
+
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Writes races to {@link DRDLogger#racesFile} in background DRD thread. Racing threads only put {@link RaceRecord}
+ * to bounded queue; records are formatted and appended to file in batches, so that file is opened once per batch.
+ * If queue is full, racing thread waits for at most {@link DRDProperties#raceQueueWaitMillis}, then race is dropped.
+ */
+public class RaceWriter implements Runnable {
+    private static final int BATCH_SIZE = 256;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long BACKPRESSURE_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    /**
+     * Number of races, that were put to queue
+     */
+    public static final Counter enqueuedCounter = new Counter();
+    /**
+     * Number of races, that were dropped, because queue remained full
+     */
+    public static final Counter droppedCounter = new Counter();
+    /**
+     * Number of races, whose threads had to wait for free space in queue
+     */
+    public static final Counter backpressureCounter = new Counter();
+    /**
+     * Number of races, that were written to file
+     */
+    public static final Counter writtenCounter = new Counter();
+    /**
+     * Number of batches, that were written to file
+     */
+    public static final Counter batchCounter = new Counter();
+
+    private final RaceReporter reporter;
+    private final ConcurrentLinkedQueue<RaceRecord> queue = new ConcurrentLinkedQueue<RaceRecord>();
+    /**
+     * Number of records in queue including ones, that are being added. Bounds the queue.
+     */
+    private final AtomicInteger size = new AtomicInteger();
+    private final int capacity = DRDProperties.raceQueueCapacity;
+    private final long maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(DRDProperties.raceQueueWaitMillis);
+    private final Thread thread;
+
+    RaceWriter(RaceReporter reporter) {
+        this.reporter = reporter;
+        thread = new Thread(this, "DRD-race-writer");
+        thread.setDaemon(true);
+        ClocksStorage.registerDrdThread(thread);
+        thread.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            public void run() {
+                flush();
+            }
+        }));
+    }
+
+    /**
+     * Called by racing thread
+     *
+     * @return false, if race was dropped
+     */
+    boolean offer(RaceRecord record) {
+        int n = size.getAndIncrement();
+        if (n >= capacity) {
+            size.decrementAndGet();
+            backpressureCounter.increment();
+            LockSupport.unpark(thread);
+            final long deadline = System.nanoTime() + maxWaitNanos;
+            while (true) {
+                n = size.get();
+                if (n < capacity) {
+                    if (size.compareAndSet(n, n + 1)) break;
+                } else if (System.nanoTime() - deadline >= 0) {
+                    droppedCounter.increment();
+                    return false;
+                } else {
+                    LockSupport.parkNanos(BACKPRESSURE_PARK_NANOS);
+                }
+            }
+        }
+        queue.add(record);
+        enqueuedCounter.increment();
+        if (n == 0) {
+            LockSupport.unpark(thread);
+        }
+        return true;
+    }
+
+    public void run() {
+        while (true) {
+            try {
+                if (!writeBatch()) {
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                }
+            } catch (Throwable e) {
+                DRDLogger.error("Error in race writer : ", e);
+            }
+        }
+    }
+
+    /**
+     * Writes all queued races; called at shutdown
+     */
+    void flush() {
+        try {
+            //noinspection StatementWithEmptyBody
+            while (writeBatch()) ;
+        } catch (Throwable e) {
+            DRDLogger.error("Error in race writer : ", e);
+        }
+    }
+
+    /**
+     * Synchronized, because both writer thread and shutdown hook may write races
+     *
+     * @return false, if queue was empty
+     */
+    private synchronized boolean writeBatch() {
+        final List<RaceImpl> races = new ArrayList<RaceImpl>();
+        RaceRecord record;
+        while (races.size() < BATCH_SIZE && (record = queue.poll()) != null) {
+            size.decrementAndGet();
+            races.add(reporter.createRace(record));
+        }
+        if (races.isEmpty()) return false;
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(DRDLogger.racesFile, true);
+            for (RaceImpl r : races) {
+                try {
+                    RaceIO.write(r, out);
+                    writtenCounter.increment();
+                } catch (RaceIOException e) {
+                    DRDLogger.error("Failed to write race\n" + r, e);
+                }
+            }
+            batchCounter.increment();
+            DRDLogger.log(races.size() + (races.size() == 1 ? " race" : " races") + " detected and logged to " + DRDLogger.racesFile.getName());
+        } catch (FileNotFoundException e) {
+            DRDLogger.error("Failed to write " + races.size() + " races: file " + DRDLogger.racesFile.getName() + " not found.", e);
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    DRDLogger.error("Failed to close " + DRDLogger.racesFile.getName(), e);
+                }
+            }
+        }
+        return true;
+    }
+}
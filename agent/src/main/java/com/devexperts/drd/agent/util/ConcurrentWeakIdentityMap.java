@@ -0,0 +1,373 @@
+/*
+ * DRD - Dynamic Data Race Detector for Java programs
+ *
+ * Copyright (C) 2002-2018 Devexperts LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devexperts.drd.agent.util;
+
+import com.devexperts.drd.agent.high_scale_lib.Counter;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * Concurrent map with weak keys compared by identity, which creates values lazily.
+ * <ul>
+ * <li>Keys are spread between shards; each shard is an open-addressing table with linear probing.</li>
+ * <li>Lookups don't lock anything. New entries are inserted by CAS on empty slot, then value is created by
+ * the thread, that has inserted the entry, so that threads, which lost race for the same key,
+ * don't allocate values for nothing.</li>
+ * <li>Entries are never removed one by one: cleared keys are noticed via {@link ReferenceQueue} and dropped
+ * altogether during rehash of shard, which is the only operation, that locks shard.</li>
+ * </ul>
+ * Null keys are not supported.
+ *
+ * @param <V> type of values
+ */
+public class ConcurrentWeakIdentityMap<V> {
+    private static final int SHARDS_BITS = 6;
+    private static final int SHARDS = 1 << SHARDS_BITS;
+    private static final int INIT_CAPACITY = 16;
+    /**
+     * Number of yields to wait for value, that is being created by another thread, before creating it on one's own
+     */
+    private static final int SPINS = 64;
+    /**
+     * Marks slots of table, that is being rehashed
+     */
+    private static final Entry MOVED = new Entry<Object>(null, 0, null);
+    @SuppressWarnings("unchecked")
+    private static final AtomicReferenceFieldUpdater<Entry, Object> VALUE_UPDATER =
+            AtomicReferenceFieldUpdater.newUpdater(Entry.class, Object.class, "value");
+
+    /**
+     * Number of values created
+     */
+    public final Counter newValueCounter = new Counter();
+    /**
+     * Number of values, that were created and thrown away, because another thread has created value for the same
+     * key concurrently
+     */
+    public final Counter newValueForNothingCounter = new Counter();
+    private final ValueFactory<V> factory;
+    private final Shard<V>[] shards;
+
+    @SuppressWarnings("unchecked")
+    public ConcurrentWeakIdentityMap(ValueFactory<V> factory) {
+        this.factory = factory;
+        shards = new Shard[SHARDS];
+        for (int i = 0; i < SHARDS; i++) {
+            shards[i] = new Shard<V>();
+        }
+    }
+
+    /**
+     * @return value, associated with key, or null if there is no such value yet
+     */
+    public V get(Object key) {
+        final int hash = hash(key);
+        final Shard<V> shard = shards[hash >>> (32 - SHARDS_BITS)];
+        AtomicReferenceArray<Entry<V>> table = shard.table;
+        int mask = table.length() - 1;
+        int i = hash & mask;
+        for (int probes = 0; probes <= mask; probes++) {
+            final Entry<V> e = table.get(i);
+            if (e == null) {
+                return null;
+            } else if (e == MOVED) {
+                table = shard.awaitRehash(table);
+                mask = table.length() - 1;
+                i = hash & mask;
+                probes = -1;
+            } else {
+                if (e.hash == hash && e.get() == key) {
+                    return e.value;
+                }
+                i = (i + 1) & mask;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns value, associated with key. If there is no such value, creates it with {@link ValueFactory}.
+     *
+     * @param param parameter to be passed to {@link ValueFactory#create(int)}
+     */
+    public V getOrCreate(Object key, int param) {
+        final int hash = hash(key);
+        final Shard<V> shard = shards[hash >>> (32 - SHARDS_BITS)];
+        Entry<V> newEntry = null;
+        AtomicReferenceArray<Entry<V>> table = shard.table;
+        retry:
+        while (true) {
+            final int mask = table.length() - 1;
+            int i = hash & mask;
+            for (int probes = 0; probes <= mask; probes++) {
+                Entry<V> e = table.get(i);
+                if (e == null) {
+                    if (shard.used.get() >= table.length() - (table.length() >> 2)) {
+                        table = shard.rehash(table);
+                        continue retry;
+                    }
+                    if (newEntry == null) {
+                        newEntry = new Entry<V>(key, hash, shard.queue);
+                    }
+                    if (table.compareAndSet(i, null, newEntry)) {
+                        shard.used.incrementAndGet();
+                        return createValue(newEntry, param);
+                    }
+                    e = table.get(i);
+                }
+                if (e == MOVED) {
+                    table = shard.awaitRehash(table);
+                    continue retry;
+                }
+                if (e.hash == hash && e.get() == key) {
+                    final V value = e.value;
+                    return value != null ? value : awaitValue(e, param);
+                }
+                i = (i + 1) & mask;
+            }
+            table = shard.rehash(table);
+        }
+    }
+
+    private V awaitValue(Entry<V> e, int param) {
+        V value;
+        for (int i = 0; i < SPINS; i++) {
+            Thread.yield();
+            if ((value = e.value) != null) return value;
+        }
+        //creator may have failed, so don't wait forever
+        return createValue(e, param);
+    }
+
+    @SuppressWarnings("unchecked")
+    private V createValue(Entry<V> e, int param) {
+        final V value = factory.create(param);
+        if (VALUE_UPDATER.compareAndSet(e, null, value)) {
+            newValueCounter.increment();
+            return value;
+        }
+        newValueForNothingCounter.increment();
+        factory.dispose(value);
+        return e.value;
+    }
+
+    /**
+     * Polls cleared keys and rehashes shards, in which they make up more than half of occupied slots.
+     * Rehash also happens, when shard is full, so it's enough to call this method from time to time, e.g. when
+     * gathering statistics.
+     *
+     * @return number of keys, that were cleared since the previous call
+     */
+    public int expungeStaleEntries() {
+        int cleared = 0;
+        for (Shard<V> shard : shards) {
+            int count = 0;
+            Reference<?> ref;
+            while ((ref = shard.queue.poll()) != null) {
+                count++;
+                @SuppressWarnings("unchecked")
+                final V value = ((Entry<V>) ref).value;
+                if (value != null) {
+                    factory.dispose(value);
+                }
+            }
+            if (count > 0) {
+                cleared += count;
+                if (shard.stale.addAndGet(count) * 2 > shard.used.get()) {
+                    shard.rehash(shard.table);
+                }
+            }
+        }
+        return cleared;
+    }
+
+    /**
+     * @return approximate number of entries, since cleared keys are noticed lazily
+     */
+    public int size() {
+        int size = 0;
+        for (Shard<V> shard : shards) {
+            size += Math.max(0, shard.used.get() - shard.stale.get());
+        }
+        return size;
+    }
+
+    /**
+     * @return weakly consistent view of values with live keys
+     */
+    public Iterable<V> values() {
+        return new Iterable<V>() {
+            public Iterator<V> iterator() {
+                return new ValuesIterator();
+            }
+        };
+    }
+
+    private static int hash(Object key) {
+        //multiplicative hashing spreads identity hash codes both to shard (high bits) and slot (low bits)
+        final int h = System.identityHashCode(key) * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    public interface ValueFactory<V> {
+        V create(int param);
+
+        /**
+         * Called for value, whose key was cleared (see {@link #expungeStaleEntries()}), or which was created
+         * for nothing.
+         */
+        void dispose(V value);
+    }
+
+    private static class Entry<V> extends WeakReference<Object> {
+        final int hash;
+        volatile V value;
+
+        Entry(Object key, int hash, ReferenceQueue<Object> queue) {
+            super(key, queue);
+            this.hash = hash;
+        }
+    }
+
+    private static class Shard<V> {
+        final ReferenceQueue<Object> queue = new ReferenceQueue<Object>();
+        /**
+         * Number of occupied slots in current table, including ones with cleared keys
+         */
+        final AtomicInteger used = new AtomicInteger();
+        /**
+         * Approximate number of cleared keys in current table
+         */
+        final AtomicInteger stale = new AtomicInteger();
+        volatile AtomicReferenceArray<Entry<V>> table = new AtomicReferenceArray<Entry<V>>(INIT_CAPACITY);
+
+        /**
+         * Freezes all slots of table, then copies entries with live keys to new table, sized for twice as many entries.
+         *
+         * @return actual table of this shard
+         */
+        @SuppressWarnings("unchecked")
+        synchronized AtomicReferenceArray<Entry<V>> rehash(AtomicReferenceArray<Entry<V>> old) {
+            if (table != old) return table;
+            final int length = old.length();
+            final Entry<V>[] live = new Entry[length];
+            int count = 0;
+            for (int i = 0; i < length; i++) {
+                Entry<V> e;
+                do {
+                    e = old.get(i);
+                } while (!old.compareAndSet(i, e, MOVED));
+                if (e != null && e.get() != null) {
+                    live[count++] = e;
+                }
+            }
+            int capacity = INIT_CAPACITY;
+            while (capacity < count * 2) {
+                capacity <<= 1;
+            }
+            final AtomicReferenceArray<Entry<V>> newTable = new AtomicReferenceArray<Entry<V>>(capacity);
+            final int mask = capacity - 1;
+            for (int k = 0; k < count; k++) {
+                int i = live[k].hash & mask;
+                while (newTable.get(i) != null) {
+                    i = (i + 1) & mask;
+                }
+                newTable.set(i, live[k]);
+            }
+            used.set(count);
+            stale.set(0);
+            table = newTable;
+            return newTable;
+        }
+
+        /**
+         * Waits until rehash of specified table is over. Slots are marked as moved only under lock of shard.
+         *
+         * @return actual table of this shard
+         */
+        AtomicReferenceArray<Entry<V>> awaitRehash(AtomicReferenceArray<Entry<V>> old) {
+            synchronized (this) {
+                return table;
+            }
+        }
+
+        /**
+         * @return copy of current table. Table can't be rehashed meanwhile, so there are no moved slots in copy
+         */
+        synchronized Object[] snapshot() {
+            final AtomicReferenceArray<Entry<V>> table = this.table;
+            final Object[] res = new Object[table.length()];
+            for (int i = 0; i < res.length; i++) {
+                res[i] = table.get(i);
+            }
+            return res;
+        }
+    }
+
+    private class ValuesIterator implements Iterator<V> {
+        private int shard = 0;
+        private Object[] entries = new Object[0];
+        private int index = 0;
+        private V next;
+
+        ValuesIterator() {
+            advance();
+        }
+
+        @SuppressWarnings("unchecked")
+        private void advance() {
+            next = null;
+            while (next == null) {
+                if (index == entries.length) {
+                    if (shard == SHARDS) return;
+                    entries = shards[shard++].snapshot();
+                    index = 0;
+                    continue;
+                }
+                final Entry<V> e = (Entry<V>) entries[index++];
+                if (e != null && e.get() != null) {
+                    next = e.value;
+                }
+            }
+        }
+
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        public V next() {
+            if (next == null) throw new NoSuchElementException();
+            final V res = next;
+            advance();
+            return res;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
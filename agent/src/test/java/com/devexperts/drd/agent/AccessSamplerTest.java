@@ -0,0 +1,64 @@
+/*
+ * DRD - Dynamic Data Race Detector for Java programs
+ *
+ * Copyright (C) 2002-2018 Devexperts LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devexperts.drd.agent;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AccessSamplerTest {
+    @Test
+    public void testColdLocationIsFullyChecked() {
+        final AccessSampler sampler = new AccessSampler(4, 8);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(sampler.check(5));
+        }
+        assertEquals(1, sampler.getPeriod(5));
+    }
+
+    @Test
+    public void testBackOff() {
+        final AccessSampler sampler = new AccessSampler(2, 4);
+        assertTrue(sampler.check(5));
+        assertTrue(sampler.check(5));
+        assertEquals(2, sampler.getPeriod(5));
+        assertFalse(sampler.check(5));
+        assertTrue(sampler.check(5));
+        assertFalse(sampler.check(5));
+        assertTrue(sampler.check(5));
+        assertEquals(4, sampler.getPeriod(5));
+        int checked = 0;
+        for (int i = 0; i < 400; i++) {
+            if (sampler.check(5)) checked++;
+        }
+        assertEquals(100, checked);
+        assertEquals(4, sampler.getPeriod(5));
+    }
+
+    @Test
+    public void testCollisionResetsLocation() {
+        final AccessSampler sampler = new AccessSampler(1, 16);
+        assertTrue(sampler.check(1));
+        assertEquals(2, sampler.getPeriod(1));
+        assertTrue(sampler.check(1025));
+        assertEquals(1, sampler.getPeriod(1));
+        assertTrue(sampler.check(1));
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * DRD - Dynamic Data Race Detector for Java programs
+ *
+ * Copyright (C) 2002-2018 Devexperts LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devexperts.drd.agent;
+
+import com.devexperts.drd.agent.util.ConcurrentWeakIdentityMap;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ConcurrentWeakIdentityMapTest {
+    private final AtomicInteger created = new AtomicInteger();
+    private final AtomicInteger disposed = new AtomicInteger();
+    private final ConcurrentWeakIdentityMap<int[]> map = new ConcurrentWeakIdentityMap<int[]>(
+            new ConcurrentWeakIdentityMap.ValueFactory<int[]>() {
+                public int[] create(int param) {
+                    created.incrementAndGet();
+                    return new int[]{param};
+                }
+
+                public void dispose(int[] value) {
+                    disposed.incrementAndGet();
+                }
+            });
+
+    @Test
+    public void testGetOrCreate() {
+        final Object[] keys = new Object[10000];
+        final int[][] values = new int[keys.length][];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = new String("key");
+            Assert.assertNull(map.get(keys[i]));
+            values[i] = map.getOrCreate(keys[i], i);
+            Assert.assertEquals(i, values[i][0]);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            Assert.assertSame(values[i], map.getOrCreate(keys[i], -1));
+            Assert.assertSame(values[i], map.get(keys[i]));
+        }
+        Assert.assertEquals(keys.length, created.get());
+        Assert.assertEquals(keys.length, map.size());
+        int count = 0;
+        for (int[] ignored : map.values()) {
+            count++;
+        }
+        Assert.assertEquals(keys.length, count);
+    }
+
+    @Test
+    public void testConcurrentCreation() throws InterruptedException {
+        final Object[] keys = new Object[1000];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = new Object();
+        }
+        final int threadsCount = 8;
+        final int[][][] results = new int[threadsCount][keys.length][];
+        final CountDownLatch start = new CountDownLatch(1);
+        final Thread[] threads = new Thread[threadsCount];
+        for (int t = 0; t < threadsCount; t++) {
+            final int[][] result = results[t];
+            threads[t] = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < keys.length; i++) {
+                        result[i] = map.getOrCreate(keys[i], i);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (int i = 0; i < keys.length; i++) {
+            for (int t = 0; t < threadsCount; t++) {
+                Assert.assertSame(results[0][i], results[t][i]);
+            }
+        }
+        Assert.assertEquals(keys.length, map.newValueCounter.get());
+        Assert.assertEquals(created.get(), keys.length + map.newValueForNothingCounter.get());
+        Assert.assertEquals(created.get(), keys.length + disposed.get());
+    }
+
+    @Test
+    public void testWeakness() throws InterruptedException {
+        Object[] keys = new Object[1000];
+        for (int i = 0; i < keys.length; i++) {
+            map.getOrCreate(keys[i] = new Object(), i);
+        }
+        final Object survivor = keys[0];
+        keys = null;
+        int cleared = 0;
+        for (int attempt = 0; attempt < 10 && cleared < 999; attempt++) {
+            System.gc();
+            Thread.sleep(50);
+            cleared += map.expungeStaleEntries();
+        }
+        Assert.assertEquals(999, cleared);
+        Assert.assertEquals(999, disposed.get());
+        Assert.assertEquals(1, map.size());
+        Assert.assertEquals(0, map.getOrCreate(survivor, -1)[0]);
+    }
+}
@@ -19,10 +19,25 @@
 
 package com.devexperts.drd.agent;
 
+import com.devexperts.drd.agent.clock.SyncClock;
+import com.devexperts.drd.agent.clock.ThreadVectorClock;
+import com.devexperts.drd.agent.clock.VectorClock;
 import org.junit.Assert;
+import org.junit.FixMethodOrder;
 import org.junit.Test;
+import org.junit.runners.MethodSorters;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+//testGenerations expects that no thread has died yet
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
 public class GenerationsTest {
+    private static final int DEATHS = 500;
+
     @Test
     public void testGenerations() {
         //test threadDied & getDiff
@@ -39,6 +54,24 @@ public class GenerationsTest {
         Assert.assertArrayEquals(Generations.getDiff(1), new long[]{3, 8, 9});
         Assert.assertArrayEquals(Generations.getDiff(2), new long[]{3, 9});
         Assert.assertArrayEquals(Generations.getDiff(3), new long[]{9});
+        //test retirement
+        Assert.assertFalse(Generations.isRetired(1));
+        Generations.retire(2);
+        Assert.assertTrue(Generations.isRetired(1));
+        Assert.assertTrue(Generations.isRetired(8));
+        Assert.assertFalse(Generations.isRetired(3));
+        Assert.assertFalse(Generations.isRetired(100));
+        Generations.retire(1);
+        Assert.assertEquals(2, Generations.retiredGeneration);
+        final VectorClock vc = new VectorClock();
+        Assert.assertEquals(Long.MAX_VALUE, vc.getDeadFrameUnprotected(8));
+        Assert.assertEquals(0, vc.getDeadFrameUnprotected(3));
+        try {
+            Generations.threadDied(8);
+            Assert.fail("Thread can't die twice");
+        } catch (IllegalStateException e) {
+            //expected
+        }
 
 /*        //test getFrame
         Assert.assertEquals(Generations.getDeadFrame(1, 0), 0);
@@ -58,4 +91,86 @@ public class GenerationsTest {
         Assert.assertFalse(Generations.isDead(new int[]{1 << 3 | 1 << 8}, 1));
         Assert.assertFalse(Generations.isDead(new int[]{1 << 2}, 8));*/
     }
+
+    @Test
+    public void testGetFrameOfDyingThread() throws InterruptedException {
+        for (int i = 0; i < DEATHS; i++) {
+            //clock, that knows frame of thread, which is going to die
+            final SyncClock clock = new SyncClock();
+            final ThreadVectorClock[] dying = new ThreadVectorClock[1];
+            final Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    dying[0] = new ThreadVectorClock();
+                    dying[0].tick();
+                    clock.loadFrom(dying[0]);
+                }
+            });
+            thread.start();
+            thread.join();
+            final long tid = dying[0].tid;
+            final long frame = dying[0].currentFrame();
+            final AtomicLong lastSeen = new AtomicLong(frame);
+            final AtomicLong reads = new AtomicLong();
+            final Thread reader = new Thread(new Runnable() {
+                public void run() {
+                    //frame should be found both in slot and in dead clock, whenever death is registered
+                    while (reads.incrementAndGet() < 1000 || !Generations.isDead(tid)) {
+                        final long f = clock.getFrame(tid);
+                        if (f < frame) {
+                            lastSeen.set(f);
+                            return;
+                        }
+                    }
+                    lastSeen.set(clock.getFrame(tid));
+                }
+            });
+            reader.start();
+            Generations.threadDied(tid, dying[0].getRequiredFrame());
+            reader.join();
+            Assert.assertEquals("Frame of thread " + tid + " is lost on its death", frame, lastSeen.get());
+        }
+    }
+
+    @Test
+    public void testHardGenerationUpdate() throws InterruptedException {
+        final int threads = 40;
+        final SyncClock clock = new SyncClock();
+        final long[] tids = new long[threads];
+        final long[] frames = new long[threads];
+        for (int i = 0; i < threads; i++) {
+            final ThreadVectorClock[] tvc = new ThreadVectorClock[1];
+            final int ticks = i;
+            final Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    tvc[0] = new ThreadVectorClock();
+                    for (int j = 0; j < ticks; j++) {
+                        tvc[0].tick();
+                    }
+                    clock.loadFrom(tvc[0]);
+                }
+            });
+            thread.start();
+            thread.join();
+            tids[i] = tvc[0].tid;
+            frames[i] = tvc[0].currentFrame();
+        }
+        //deaths in order, that differs from order of tids
+        final List<Integer> order = new ArrayList<Integer>();
+        for (int i = 0; i < threads; i++) {
+            order.add(i);
+        }
+        Collections.shuffle(order, new Random(1));
+        for (int i : order) {
+            Generations.threadDied(tids[i], frames[i]);
+        }
+        //all frames are moved to dead clock at once, which is sorted by tid
+        for (int i = 0; i < threads; i++) {
+            Assert.assertEquals(frames[i], clock.getFrame(tids[i]));
+        }
+        final long[] deadFrames = clock.getDeadFrames();
+        Assert.assertEquals(threads * 2, deadFrames.length);
+        for (int i = 2; i < deadFrames.length; i += 2) {
+            Assert.assertTrue(deadFrames[i - 2] < deadFrames[i]);
+        }
+    }
 }
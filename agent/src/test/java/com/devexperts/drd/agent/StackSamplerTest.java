@@ -0,0 +1,58 @@
+/*
+ * DRD - Dynamic Data Race Detector for Java programs
+ *
+ * Copyright (C) 2002-2018 Devexperts LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devexperts.drd.agent;
+
+import com.devexperts.drd.bootstrap.ThreadRaceInfo;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class StackSamplerTest {
+    @Test
+    public void testSampling() {
+        final StackSampler sampler = new StackSampler(3);
+        assertNull(sampler.get(5));
+        final ThreadRaceInfo info = new ThreadRaceInfo(5, 1);
+        sampler.put(info);
+        assertSame(info, sampler.get(5));
+        assertSame(info, sampler.get(5));
+        assertNull(sampler.get(5));
+        final ThreadRaceInfo next = new ThreadRaceInfo(5, 2);
+        sampler.put(next);
+        assertSame(next, sampler.get(5));
+    }
+
+    @Test
+    public void testCollision() {
+        final StackSampler sampler = new StackSampler(100);
+        sampler.put(new ThreadRaceInfo(1, 1));
+        final ThreadRaceInfo info = new ThreadRaceInfo(257, 2);
+        sampler.put(info);
+        assertNull(sampler.get(1));
+        assertSame(info, sampler.get(257));
+    }
+
+    @Test
+    public void testNoSampling() {
+        final StackSampler sampler = new StackSampler(1);
+        sampler.put(new ThreadRaceInfo(7, 1));
+        assertNull(sampler.get(7));
+    }
+}
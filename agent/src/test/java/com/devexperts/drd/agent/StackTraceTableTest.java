@@ -0,0 +1,63 @@
+/*
+ * DRD - Dynamic Data Race Detector for Java programs
+ *
+ * Copyright (C) 2002-2018 Devexperts LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devexperts.drd.agent;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class StackTraceTableTest {
+    @Test
+    public void testInterning() {
+        final StackTraceTable table = new StackTraceTable(4);
+        final int id = table.register(stack("a", 1));
+        Assert.assertTrue(id > 0);
+        Assert.assertEquals(id, table.register(stack("a", 1)));
+        Assert.assertArrayEquals(stack("a", 1), table.get(id));
+        Assert.assertFalse(id == table.register(stack("a", 2)));
+        Assert.assertNull(table.get(0));
+        Assert.assertNull(table.get(100));
+    }
+
+    @Test
+    public void testEviction() {
+        final StackTraceTable table = new StackTraceTable(4);
+        final int[] ids = new int[10];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = table.register(stack("m", i));
+        }
+        for (int i = 0; i < ids.length; i++) {
+            if (i < ids.length - 4) {
+                Assert.assertNull(table.get(ids[i]));
+            } else {
+                Assert.assertArrayEquals(stack("m", i), table.get(ids[i]));
+            }
+        }
+        //evicted stack trace is interned again with new id
+        final int id = table.register(stack("m", 0));
+        Assert.assertTrue(id > ids[ids.length - 1]);
+        Assert.assertArrayEquals(stack("m", 0), table.get(id));
+        Assert.assertNull(table.get(ids[ids.length - 4]));
+    }
+
+    private static StackTraceElement[] stack(String method, int line) {
+        return new StackTraceElement[]{new StackTraceElement("Foo", method, "Foo.java", line),
+                new StackTraceElement("Bar", "run", "Bar.java", 1)};
+    }
+}
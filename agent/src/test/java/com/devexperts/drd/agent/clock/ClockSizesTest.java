@@ -0,0 +1,112 @@
+/*
+ * DRD - Dynamic Data Race Detector for Java programs
+ *
+ * Copyright (C) 2002-2018 Devexperts LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devexperts.drd.agent.clock;
+
+import com.devexperts.drd.agent.AccessHistoryImpl;
+import com.devexperts.drd.agent.DRDRegistryImpl;
+import com.devexperts.drd.agent.core.InternalStatistics;
+import com.devexperts.drd.bootstrap.DRDEntryPoint;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class ClockSizesTest {
+    private final ClockSizes sizes = new ClockSizes();
+
+    @BeforeClass
+    public static void setUp() {
+        if (DRDEntryPoint.getRegistry() == null) {
+            DRDEntryPoint.setRegistry(new DRDRegistryImpl(new AccessHistoryImpl()));
+            DRDEntryPoint.setStatistics(new InternalStatistics());
+        }
+    }
+
+    @Test
+    public void testVectorClockGrowth() {
+        final SyncClock clock = new SyncClock() {
+            @Override
+            protected ClockSizes getSizes() {
+                return sizes;
+            }
+        };
+        sizes.add(clock);
+        assertSizes(1, clock.getReservedSizeUnprotected(), clock.getRealSizeUnprotected(), clock.getFootprintUnprotected());
+        for (int slot = 0; slot < 20; slot += 3) {
+            clock.setSlotFrame(slot, slot + 1);
+            assertSizes(1, clock.getReservedSizeUnprotected(), clock.getRealSizeUnprotected(), clock.getFootprintUnprotected());
+        }
+        final VectorClock bigger = new VectorClock();
+        bigger.setSlotFrame(100, 1);
+        VectorClockUtils.load(bigger, clock);
+        Assert.assertEquals(101, clock.getRealSizeUnprotected());
+        assertSizes(1, clock.getReservedSizeUnprotected(), clock.getRealSizeUnprotected(), clock.getFootprintUnprotected());
+        sizes.remove(clock);
+        assertSizes(0, 0, 0, 0);
+    }
+
+    @Test
+    public void testDataClockInflation() throws InterruptedException {
+        final ThreadVectorClock t1 = createThreadClock();
+        final ThreadVectorClock t2 = createThreadClock();
+        //writer clock should belong to current thread
+        final ThreadVectorClock t3 = new ThreadVectorClock();
+        final DataClock clock = new DataClock(1) {
+            @Override
+            protected ClockSizes getSizes() {
+                return sizes;
+            }
+        };
+        sizes.add(clock);
+        assertSizes(1, 2, 2, DataClock.EXCLUSIVE_FOOTPRINT);
+        Assert.assertNull(clock.read(t1, 1, false));
+        Assert.assertNull(clock.read(t2, 2, false));
+        Assert.assertNull(clock.read(t3, 3, false));
+        Assert.assertTrue(clock.getReservedSizeUnprotected() > 2);
+        assertSizes(1, clock.getReservedSizeUnprotected(), clock.getRealSizeUnprotected(), clock.getFootprintUnprotected());
+        //all readers happen-before writer => clock deflates
+        t1.tick();
+        t3.setFrame(t1.tid, t1.currentFrame());
+        t2.tick();
+        t3.setFrame(t2.tid, t2.currentFrame());
+        Assert.assertNull(clock.write(t3, 4, false));
+        assertSizes(1, 2, 2, DataClock.EXCLUSIVE_FOOTPRINT);
+        sizes.remove(clock);
+        assertSizes(0, 0, 0, 0);
+    }
+
+    private void assertSizes(long count, long reserved, long real, long footprint) {
+        Assert.assertEquals(count, sizes.getCount());
+        Assert.assertEquals(reserved, sizes.getReservedSize());
+        Assert.assertEquals(real, sizes.getRealSize());
+        Assert.assertEquals(footprint, sizes.getFootprint());
+    }
+
+    private static ThreadVectorClock createThreadClock() throws InterruptedException {
+        final ThreadVectorClock[] result = new ThreadVectorClock[1];
+        final Thread thread = new Thread(new Runnable() {
+            public void run() {
+                result[0] = new ThreadVectorClock();
+            }
+        });
+        thread.start();
+        thread.join();
+        return result[0];
+    }
+}
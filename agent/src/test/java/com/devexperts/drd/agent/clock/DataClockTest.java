@@ -0,0 +1,115 @@
+/*
+ * DRD - Dynamic Data Race Detector for Java programs
+ *
+ * Copyright (C) 2002-2018 Devexperts LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devexperts.drd.agent.clock;
+
+import com.devexperts.drd.agent.AccessHistoryImpl;
+import com.devexperts.drd.agent.DRDRegistryImpl;
+import com.devexperts.drd.agent.core.InternalStatistics;
+import com.devexperts.drd.bootstrap.DRDEntryPoint;
+import com.devexperts.drd.bootstrap.DRDRegistry;
+import com.devexperts.drd.bootstrap.DataRaceDescription;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class DataClockTest {
+    @BeforeClass
+    public static void setUp() {
+        if (DRDEntryPoint.getRegistry() == null) {
+            DRDEntryPoint.setRegistry(new DRDRegistryImpl(new AccessHistoryImpl()));
+            DRDEntryPoint.setStatistics(new InternalStatistics());
+        }
+    }
+
+    @Test
+    public void testExclusive() throws InterruptedException {
+        final ThreadVectorClock t1 = createThreadClock();
+        final ThreadVectorClock t2 = createThreadClock();
+        final DataClock clock = new DataClock(1);
+        Assert.assertNull(clock.write(t1, 1, false));
+        Assert.assertArrayEquals(new long[]{t1.tid, 1}, clock.getWriteFrames());
+        //same epoch
+        Assert.assertNull(clock.write(t1, 2, false));
+        Assert.assertNull(clock.read(t1, 3, false));
+        Assert.assertArrayEquals(new long[]{t1.tid, 1}, clock.getReadFrames());
+        //t1 -> t2 happens-before
+        loadTo(t1, t2);
+        Assert.assertNull(clock.read(t2, 4, false));
+        Assert.assertArrayEquals(new long[]{t2.tid, 1}, clock.getReadFrames());
+        Assert.assertEquals(DataClock.EXCLUSIVE_FOOTPRINT, clock.getFootprintUnprotected());
+    }
+
+    @Test
+    public void testReadWriteRace() throws InterruptedException {
+        final ThreadVectorClock t1 = createThreadClock();
+        final ThreadVectorClock t2 = createThreadClock();
+        final DRDRegistry registry = DRDEntryPoint.getRegistry();
+        final int owner = registry.registerClassName("Foo");
+        final int field = registry.registerFieldOrMethodName("bar");
+        final int writeLocation = registry.registerLocation(owner, field, owner, registry.registerFieldOrMethodName("set"), 1);
+        final int readLocation = registry.registerLocation(owner, field, owner, registry.registerFieldOrMethodName("get"), 2);
+        final DataClock clock = new DataClock(owner);
+        Assert.assertNull(clock.write(t1, writeLocation, false));
+        final DataRaceDescription race = clock.read(t2, readLocation, false);
+        Assert.assertNotNull(race);
+        Assert.assertEquals(t1.tid, race.racingTid);
+        Assert.assertEquals(writeLocation, race.racingLocationId);
+    }
+
+    @Test
+    public void testSharedReads() throws InterruptedException {
+        final ThreadVectorClock t1 = createThreadClock();
+        final ThreadVectorClock t2 = createThreadClock();
+        //writer clock should belong to current thread
+        final ThreadVectorClock t3 = new ThreadVectorClock();
+        final DataClock clock = new DataClock(1);
+        Assert.assertNull(clock.read(t1, 1, false));
+        Assert.assertNull(clock.read(t2, 2, false));
+        Assert.assertNull(clock.read(t3, 3, false));
+        final long[] reads = clock.getReadFrames();
+        Assert.assertEquals(6, reads.length);
+        Assert.assertTrue(clock.getFootprintUnprotected() > DataClock.EXCLUSIVE_FOOTPRINT);
+        //all readers happen-before writer => clock becomes exclusive again
+        loadTo(t1, t3);
+        loadTo(t2, t3);
+        Assert.assertNull(clock.write(t3, 4, false));
+        Assert.assertArrayEquals(new long[]{0, 0}, clock.getReadFrames());
+        Assert.assertArrayEquals(new long[]{t3.tid, t3.currentFrame()}, clock.getWriteFrames());
+        Assert.assertEquals(DataClock.EXCLUSIVE_FOOTPRINT, clock.getFootprintUnprotected());
+    }
+
+    private static void loadTo(ThreadVectorClock from, ThreadVectorClock to) {
+        //emulates release by "from" and subsequent acquire by "to"
+        from.tick();
+        to.setFrame(from.tid, from.currentFrame());
+    }
+
+    private static ThreadVectorClock createThreadClock() throws InterruptedException {
+        final ThreadVectorClock[] result = new ThreadVectorClock[1];
+        final Thread thread = new Thread(new Runnable() {
+            public void run() {
+                result[0] = new ThreadVectorClock();
+            }
+        });
+        thread.start();
+        thread.join();
+        return result[0];
+    }
+}
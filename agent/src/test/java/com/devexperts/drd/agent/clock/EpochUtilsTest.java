@@ -0,0 +1,48 @@
+/*
+ * DRD - Dynamic Data Race Detector for Java programs
+ *
+ * Copyright (C) 2002-2018 Devexperts LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devexperts.drd.agent.clock;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class EpochUtilsTest {
+    @Test
+    public void testPack() {
+        long[] tids = {1, 2, 17, 1000, (1L << EpochUtils.TID_BITS) - 1};
+        long[] frames = {0, 1, 42, Integer.MAX_VALUE, (1L << EpochUtils.FRAME_BITS) - 1};
+        for (long tid : tids) {
+            for (long frame : frames) {
+                long epoch = EpochUtils.pack(tid, frame);
+                Assert.assertTrue(epoch != EpochUtils.NONE);
+                Assert.assertEquals(tid, EpochUtils.tid(epoch));
+                Assert.assertEquals(frame, EpochUtils.frame(epoch));
+            }
+        }
+        Assert.assertTrue(EpochUtils.pack(1, 2) != EpochUtils.pack(2, 1));
+    }
+
+    @Test
+    public void testNotPackable() {
+        Assert.assertEquals(EpochUtils.NONE, EpochUtils.pack(0, 1));
+        Assert.assertEquals(EpochUtils.NONE, EpochUtils.pack(1L << EpochUtils.TID_BITS, 1));
+        Assert.assertEquals(EpochUtils.NONE, EpochUtils.pack(1, 1L << EpochUtils.FRAME_BITS));
+        Assert.assertEquals(EpochUtils.NONE, EpochUtils.pack(1, -1));
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * DRD - Dynamic Data Race Detector for Java programs
+ *
+ * Copyright (C) 2002-2018 Devexperts LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devexperts.drd.agent.clock;
+
+import com.devexperts.drd.agent.AccessHistoryImpl;
+import com.devexperts.drd.agent.DRDRegistryImpl;
+import com.devexperts.drd.agent.core.InternalStatistics;
+import com.devexperts.drd.bootstrap.DRDEntryPoint;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RedundantAccessFilterTest {
+    @BeforeClass
+    public static void setUp() {
+        if (DRDEntryPoint.getRegistry() == null) {
+            DRDEntryPoint.setRegistry(new DRDRegistryImpl(new AccessHistoryImpl()));
+            DRDEntryPoint.setStatistics(new InternalStatistics());
+        }
+    }
+
+    @Test
+    public void testSameFrame() {
+        final RedundantAccessFilter filter = new RedundantAccessFilter();
+        final DataClock clock = new DataClock(1);
+        assertFalse(filter.isRedundant(clock, 3, 1, false));
+        filter.accessed(clock, 3, 1, false);
+        assertTrue(filter.isRedundant(clock, 3, 1, false));
+        assertFalse(filter.isRedundant(clock, 3, 1, true));
+        filter.accessed(clock, 3, 1, true);
+        assertTrue(filter.isRedundant(clock, 3, 1, true));
+        assertTrue(filter.isRedundant(clock, 3, 1, false));
+    }
+
+    @Test
+    public void testTickInvalidates() {
+        final RedundantAccessFilter filter = new RedundantAccessFilter();
+        final DataClock clock = new DataClock(1);
+        filter.accessed(clock, 3, 1, true);
+        assertFalse(filter.isRedundant(clock, 3, 2, false));
+        assertFalse(filter.isRedundant(clock, 3, 2, true));
+    }
+
+    @Test
+    public void testOtherClock() {
+        final RedundantAccessFilter filter = new RedundantAccessFilter();
+        filter.accessed(new DataClock(1), 3, 1, true);
+        final DataClock other = new DataClock(1);
+        assertFalse(filter.isRedundant(other, 3, 1, false));
+        filter.accessed(other, 259, 1, false);
+        assertTrue(filter.isRedundant(other, 3, 1, false));
+    }
+}
@@ -19,41 +19,39 @@
 
 package com.devexperts.drd.agent.clock;
 
+import com.devexperts.drd.agent.ThreadSlots;
 import org.junit.Assert;
 import org.junit.Test;
 
 import java.util.Random;
 
 public class VectorClockTest {
+    /**
+     * Fake tids for tests, they never clash with tids of real threads
+     */
+    static final long FAKE_TID = 1L << 40;
+
     private final Random random = new Random();
 
     @Test
     public void testCreateRandomVC() {
-        for (int i = 1; i < 1000; i++) {
-            int maxTid = random.nextInt(i * 2) + 1;
+        for (int i = 1; i < 200; i++) {
             int maxFrame = i * i;
-            final VectorClock vc = createRandomVC(i, maxTid, maxFrame);
-            if (vc == null) {
-                Assert.assertTrue(maxTid < i);
-            } else {
-                Assert.assertTrue(vc.size == i * 2);
-                for (int j = 0; j < vc.size; j += 2) {
-                    Assert.assertTrue(vc.clock[j] <= maxTid);
-                    Assert.assertTrue(vc.clock[j + 1] <= maxFrame);
-                }
+            final long[] frames = new long[i];
+            final VectorClock vc = createRandomVC(frames, maxFrame);
+            for (int j = 0; j < i; j++) {
+                Assert.assertEquals(frames[j], vc.getFrame(FAKE_TID + j));
             }
+            Assert.assertTrue(vc.size <= ThreadSlots.getSlotsCount());
+            Assert.assertEquals(0, vc.getDeadClockSize());
         }
     }
 
     @Test
     public void testCopy() {
-        for (int i = 1; i < 1000; i++) {
-            int maxTid = random.nextInt(i * 2) + 1;
-            int maxFrame = i * i;
-            final VectorClock vc = createRandomVC(i, maxTid, maxFrame);
-            if (vc != null) {
-                Assert.assertTrue(VectorClockUtils.same(vc, new VectorClock(vc)));
-            }
+        for (int i = 1; i < 200; i++) {
+            final VectorClock vc = createRandomVC(new long[i], i * i);
+            Assert.assertTrue(VectorClockUtils.same(vc, new VectorClock(vc)));
         }
     }
 
@@ -61,46 +59,61 @@ public class VectorClockTest {
     public void testAddTid() {
         final VectorClock vc = new VectorClock();
         Assert.assertEquals(vc.size, 0);
-        for (int i = 1; i < 10000; i++) {
-            vc.setFrame(i, i * 2);
-            Assert.assertEquals(vc.size, i * 2);
-            Assert.assertEquals(vc.getFrame(i), i * 2);
+        for (int i = 1; i < 1000; i++) {
+            final long tid = FAKE_TID + i;
+            final int slot = ThreadSlots.allocate(tid);
+            vc.setFrame(tid, i * 2);
+            Assert.assertTrue(vc.size > slot);
+            Assert.assertEquals(vc.clock[slot], i * 2);
+            Assert.assertEquals(vc.getFrame(tid), i * 2);
         }
+        Assert.assertEquals(0, vc.getDeadClockSize());
+    }
+
+    @Test
+    public void testDeadTid() {
+        final VectorClock vc = new VectorClock();
+        final long tid = FAKE_TID - 1;
+        vc.setFrame(tid, 5);
+        Assert.assertEquals(0, vc.size);
+        Assert.assertArrayEquals(new long[]{tid, 5}, vc.getDeadFrames());
+        Assert.assertEquals(5, vc.getFrame(tid));
+        Assert.assertEquals(-1, vc.getFrame2(tid));
+        final long[] deadClock = vc.deadClock;
+        vc.setFrame(tid, 7);
+        Assert.assertEquals(7, vc.getFrame(tid));
+        //dead clock is shared between clocks and should never be modified in place
+        Assert.assertArrayEquals(new long[]{tid, 5}, deadClock);
     }
 
     @Test
     public void testTick() {
+        final ThreadVectorClock tvc = new ThreadVectorClock();
+        final long tid = Thread.currentThread().getId();
+        Assert.assertEquals(tvc.index, ThreadSlots.getSlot(tid));
+        Assert.assertEquals(1, tvc.currentFrame());
+        final VectorClock vc = createRandomVC(new long[10], 100);
+        VectorClockUtils.load(vc, tvc);
         for (int i = 2; i < 200; i++) {
-            int maxTid = i + 1;
-            int maxFrame = i * i;
-            final long tid = Thread.currentThread().getId();
-            final VectorClock vc = createRandomVC(i, maxTid, maxFrame);
-            if (vc != null && vc.getFrame(tid) > 0) {
-                final ThreadVectorClock tvc = new ThreadVectorClock();
-                for (int j = 0; j < vc.size / 2; j++) {
-                    tvc.setFrame(vc.clock[2 * j], vc.clock[2 * j + 1]);
-                }
-                tvc.tick();
-                Assert.assertEquals(vc.size, tvc.size);
-                for (int j = 0; j < vc.size; j += 2) {
-                    Assert.assertEquals(vc.clock[j], tvc.clock[j]);
-                    Assert.assertEquals(vc.clock[j + 1], vc.clock[j] == tid ? tvc.clock[j + 1] - 1 : tvc.clock[j + 1]);
-                }
-            }
+            tvc.tick();
+            Assert.assertEquals(i, tvc.currentFrame());
+            Assert.assertEquals(i, tvc.getFrame(tid));
+        }
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals(vc.getFrame(FAKE_TID + i), tvc.getFrame(FAKE_TID + i));
         }
     }
 
-    protected VectorClock createRandomVC(int length, int maxTid, int maxFrame) {
+    /**
+     * Creates clock with random frames for threads FAKE_TID .. FAKE_TID + frames.length - 1
+     */
+    protected VectorClock createRandomVC(long[] frames, int maxFrame) {
         final VectorClock vc = new VectorClock();
-        if (maxTid < length) {
-            return null;
-        }
-        for (int i = 0; i < length; i++) {
-            int tid;
-            do {
-                tid = random.nextInt(maxTid) + 1;
-            } while (VectorClockUtils.findTid(vc, tid) >= 0);
-            vc.setFrame(tid, random.nextInt(maxFrame + 1));
+        for (int i = 0; i < frames.length; i++) {
+            final long tid = FAKE_TID + i;
+            ThreadSlots.allocate(tid);
+            frames[i] = random.nextInt(maxFrame) + 1;
+            vc.setFrame(tid, frames[i]);
         }
         return vc;
     }
@@ -19,6 +19,7 @@
 
 package com.devexperts.drd.agent.clock;
 
+import com.devexperts.drd.agent.ThreadSlots;
 import org.junit.Test;
 
 import java.util.Random;
@@ -26,33 +27,29 @@ import java.util.Random;
 import static org.junit.Assert.*;
 
 public class VectorClockUtilsTest {
+    /**
+     * Fake tids of dead threads for tests, they never get slots
+     */
+    private static final long FAKE_DEAD_TID = 1L << 41;
+
     private final Random random = new Random();
 
     @Test
     public void testCreateRandomClock() {
-        for (int i = 1; i < 1000; i++) {
-            int maxTid = random.nextInt(i * 2) + 1;
-            int maxFrame = i * i;
-            final VectorClock vc = createRandomClock(i, maxTid, maxFrame);
-            if (vc == null) {
-                assertTrue(maxTid < i);
-            } else {
-                assertTrue(vc.size == i * 2);
-                long prev = -1;
-                for (int j = 0; j < vc.size; j += 2) {
-                    assertTrue(vc.clock[j] <= maxTid);
-                    assertTrue(vc.clock[j + 1] <= maxFrame);
-                    assertTrue(prev < vc.clock[j]);
-                    prev = vc.clock[j];
-                }
+        for (int i = 1; i < 200; i++) {
+            final VectorClock vc = createRandomClock(i, i * i);
+            assertTrue(vc.size <= ThreadSlots.getSlotsCount());
+            for (int j = 0; j < i; j++) {
+                final long frame = vc.getFrame(VectorClockTest.FAKE_TID + j);
+                assertTrue(frame > 0 && frame <= i * i);
             }
         }
     }
 
     @Test
     public void testBinarySearch() {
-        assertEquals(-2, VectorClockUtils.findTid(new VectorClock(), 3));
-        assertEquals(0, VectorClockUtils.findTid(create(new long[]{1, 2, 0, 0, 0, 0, 0, 0}, 2), 1));
+        assertEquals(-2, VectorClockUtils.findTid(new long[0], 3, 0));
+        assertEquals(0, VectorClockUtils.findTid(new long[]{1, 2, 0, 0, 0, 0, 0, 0}, 1, 2));
 
         final Random rnd = new Random();
         int size = 2 * (rnd.nextInt(10) + 10);
@@ -62,18 +59,15 @@ public class VectorClockUtilsTest {
             clock[i] = last += (rnd.nextInt(5) + 2);
             clock[i + 1] = rnd.nextInt(100);
         }
-        VectorClock vc = new VectorClock();
-        vc.clock = clock;
-        vc.size = size;
         for (int i = 0; i < size; i += 2) {
-            int index = VectorClockUtils.findTid(vc, clock[i]);
+            int index = VectorClockUtils.findTid(clock, clock[i], size);
             assertEquals(i, index);
         }
-        assertEquals(-2, VectorClockUtils.findTid(vc, clock[0] - 1));
+        assertEquals(-2, VectorClockUtils.findTid(clock, clock[0] - 1, size));
         for (int i = 0; i < size - 2; i += 2) {
-            assertEquals(-i - 4, VectorClockUtils.findTid(vc, (clock[i] + clock[i + 2]) / 2));
+            assertEquals(-i - 4, VectorClockUtils.findTid(clock, (clock[i] + clock[i + 2]) / 2, size));
         }
-        assertEquals(-size - 2, VectorClockUtils.findTid(vc, clock[size - 2] + 1));
+        assertEquals(-size - 2, VectorClockUtils.findTid(clock, clock[size - 2] + 1, size));
     }
 
     @Test
@@ -103,6 +97,25 @@ public class VectorClockUtilsTest {
         assertArrayEquals(clock, new long[]{1, 2, 10, 11, 23, 24});
     }
 
+    @Test
+    public void testSortByTid() {
+        for (int pairs = 0; pairs < 100; pairs++) {
+            final long[] clock = new long[pairs * 2 + 2];
+            for (int i = 0; i < pairs; i++) {
+                clock[2 * i] = FAKE_DEAD_TID + random.nextInt(1000) * 1000 + i;
+                clock[2 * i + 1] = clock[2 * i] * 3;
+            }
+            VectorClockUtils.sortByTid(clock, pairs * 2);
+            for (int i = 0; i < pairs; i++) {
+                if (i > 0) {
+                    assertTrue(clock[2 * i - 2] < clock[2 * i]);
+                }
+                assertEquals(clock[2 * i] * 3, clock[2 * i + 1]);
+            }
+            assertEquals(0, clock[pairs * 2]);
+        }
+    }
+
     @Test
     public void testCheckIn() {
         long[] c1 = new long[0];
@@ -133,67 +146,55 @@ public class VectorClockUtilsTest {
         VectorClockUtils.load(vc2, vc1);
         assertTrue(sameClock(cl2, vc1));
         assertTrue(sameClock(cl2, vc2));
-        cl1 = new long[]{-4, 16, 1, 5, 3, 2, 6, 14, 9, 1, 12, 22};
+        cl1 = new long[]{16, 1, 5, 2, 6, 14, 9, 1, 12, 22, 0, 3};
         vc1.clock = cl1;
-        vc1.size = cl1.length;
+        vc1.size = cl1.length - 1;
         VectorClockUtils.load(vc1, vc2);
-        assertTrue(VectorClockUtils.same(create(new long[]{-4, 16, 1, 5, 3, 4, 5, 6, 6, 14, 7, 8, 9, 10, 12, 22}), vc2));
+        assertTrue(VectorClockUtils.same(create(new long[]{16, 2, 5, 4, 6, 14, 9, 8, 12, 22, 0}), vc2));
+    }
+
+    @Test
+    public void testMergeDeadClocks() {
+        VectorClock vc1 = create(new long[]{1, 2}, 2);
+        VectorClock vc2 = create(new long[]{3, 1, 4}, 3);
+        vc1.deadClock = new long[]{FAKE_DEAD_TID, 5, FAKE_DEAD_TID + 2, 7};
+        VectorClockUtils.load(vc1, vc2);
+        assertTrue(sameClock(new long[]{3, 2, 4}, vc2));
+        assertSame(vc1.deadClock, vc2.deadClock);
+        vc2.deadClock = new long[]{FAKE_DEAD_TID + 1, 3, FAKE_DEAD_TID + 2, 9};
+        VectorClockUtils.load(vc1, vc2);
+        assertArrayEquals(new long[]{FAKE_DEAD_TID, 5, FAKE_DEAD_TID + 1, 3, FAKE_DEAD_TID + 2, 9}, vc2.deadClock);
+        assertArrayEquals(new long[]{FAKE_DEAD_TID, 5, FAKE_DEAD_TID + 2, 7}, vc1.deadClock);
     }
 
     @Test
     public void testDataRaceCheck() {
-        final int currentTid = (int) Thread.currentThread().getId();
-        long[] tclock = new long[(currentTid + 5) * 2];
-        for (int i = 0; i < currentTid + 5; i++) {
-            tclock[i * 2] = i;
-            tclock[i * 2 + 1] = i * i;
+        final ThreadVectorClock tvc = new ThreadVectorClock();
+        final int currentSlot = tvc.index;
+        final int length = currentSlot + 5;
+        for (int i = 0; i < length; i++) {
+            if (i != currentSlot) tvc.setSlotFrame(i, i * i + 1);
         }
-        VectorClock tvc = create(tclock);
-
-        long[] vclock = new long[(currentTid + 5) * 2];
-        for (int i = 0; i < currentTid + 5; i++) {
-            vclock[i * 2] = tclock[i * 2];
-            vclock[i * 2 + 1] = tclock[i * 2 + 1] - 1;
+        final VectorClock fvc = new VectorClock();
+        for (int i = 0; i < length; i++) {
+            fvc.setSlotFrame(i, tvc.clock[i] - 1);
         }
-        VectorClock fvc = create(vclock);
         assertEquals(-1, VectorClockUtils.checkDataRace(tvc, fvc));
-        vclock[currentTid * 2 + 1]++;
+        fvc.clock[currentSlot] += 5;
+        assertEquals(-1, VectorClockUtils.checkDataRace(tvc, fvc));
+        fvc.clock[currentSlot + 3]++;
+        assertEquals(ThreadSlots.getTid(currentSlot + 3), VectorClockUtils.checkDataRace(tvc, fvc));
+        fvc.clock[currentSlot + 3]--;
+        tvc.clock[currentSlot + 4] = 0;
+        tvc.size--;
+        assertEquals(ThreadSlots.getTid(currentSlot + 4), VectorClockUtils.checkDataRace(tvc, fvc));
+        tvc.setSlotFrame(currentSlot + 4, fvc.clock[currentSlot + 4] + 1);
+        assertEquals(-1, VectorClockUtils.checkDataRace(tvc, fvc));
+        //reads of dead threads
+        fvc.deadClock = new long[]{FAKE_DEAD_TID, 3};
+        assertEquals(FAKE_DEAD_TID, VectorClockUtils.checkDataRace(tvc, fvc));
+        tvc.deadClock = new long[]{FAKE_DEAD_TID, 4};
         assertEquals(-1, VectorClockUtils.checkDataRace(tvc, fvc));
-        vclock[(currentTid + 3) * 2 + 1]++;
-        assertEquals(currentTid + 3, VectorClockUtils.checkDataRace(tvc, fvc));
-        vclock[(currentTid + 3) * 2 + 1]--;
-        tclock[(currentTid + 4) * 2] = 0;
-        tclock[(currentTid + 4) * 2 + 1] = 0;
-        tvc.size -= 2;
-        assertEquals(currentTid + 4, VectorClockUtils.checkDataRace(tvc, fvc));
-    }
-
-    @Test
-    public void testRemoveFrames() {
-        long[] clock = new long[]{1, 10, 2, 20, 3, 30, 4, 40, 5, 50};
-        VectorClock vc = new VectorClock();
-        vc.clock = clock;
-        vc.size = 10;
-        long[] remove = new long[0];
-        VectorClockUtils.removeFrames(vc, remove);
-        assertArrayEquals(clock, new long[]{1, 10, 2, 20, 3, 30, 4, 40, 5, 50});
-        assertSame(vc.size, 10);
-        remove = new long[]{7, 12};
-        VectorClockUtils.removeFrames(vc, remove);
-        assertArrayEquals(clock, new long[]{1, 10, 2, 20, 3, 30, 4, 40, 5, 50});
-        assertSame(vc.size, 10);
-        remove = new long[]{3, 35, 5, 12, 7, 20};
-        VectorClockUtils.removeFrames(vc, remove);
-        assertArrayEquals(clock, new long[]{1, 10, 2, 20, 4, 40, 0, 0, 0, 0});
-        assertSame(vc.size, 6);
-        remove = new long[]{1, 35, 2, 12, 3, 20};
-        VectorClockUtils.removeFrames(vc, remove);
-        assertArrayEquals(clock, new long[]{4, 40, 0, 0, 0, 0, 0, 0, 0, 0});
-        assertSame(vc.size, 2);
-        remove = new long[]{1, 35, 2, 12, 3, 20, 4, 50};
-        VectorClockUtils.removeFrames(vc, remove);
-        assertArrayEquals(clock, new long[]{0, 0, 0, 0, 0, 0, 0, 0, 0, 0});
-        assertSame(vc.size, 0);
     }
 
     @Test
@@ -319,17 +320,11 @@ public class VectorClockUtilsTest {
         return vc;
     }
 
-    private VectorClock createRandomClock(int length, int maxTid, int maxFrame) {
-        if (maxTid < length) return null;
+    private VectorClock createRandomClock(int length, int maxFrame) {
         final VectorClock vc = new VectorClock();
         for (int i = 0; i < length; i++) {
-            long tid;
-            int index;
-            do {
-                tid = random.nextInt(maxTid) + 1;
-                index = VectorClockUtils.findTid(vc, tid);
-            } while (index >= 0);
-            vc.addFrame(-index - 2, tid, random.nextInt(maxFrame) + 1);
+            final long tid = VectorClockTest.FAKE_TID + i;
+            vc.setSlotFrame(ThreadSlots.allocate(tid), random.nextInt(maxFrame) + 1);
         }
         return vc;
     }
@@ -0,0 +1,92 @@
+/*
+ * DRD - Dynamic Data Race Detector for Java programs
+ *
+ * Copyright (C) 2002-2018 Devexperts LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devexperts.drd.agent.clock;
+
+import com.devexperts.drd.agent.ThreadSlots;
+
+/**
+ * Creates clocks for benchmarks. Clocks of "many threads" are emulated with fake tids, that get slots in
+ * {@link ThreadSlots}, but never run, so that clock sizes don't depend on number of cores.
+ */
+class ClockFactory {
+    /**
+     * Fake tids of emulated threads; they are out of range of real tids
+     */
+    static final long FAKE_TID = 1L << 40;
+
+    /**
+     * @param threads number of emulated threads
+     * @param frame   frame of each emulated thread
+     * @return clock, that knows specified frame of each emulated thread
+     */
+    static VectorClock createClock(int threads, long frame) {
+        final VectorClock vc = new VectorClock();
+        fill(vc, threads, frame);
+        return vc;
+    }
+
+    /**
+     * @param threads number of emulated threads
+     * @param frame   frame of each emulated thread
+     * @return clock of current thread, that knows specified frame of each emulated thread
+     */
+    static ThreadVectorClock createThreadClock(int threads, long frame) {
+        final ThreadVectorClock tvc = new ThreadVectorClock();
+        fill(tvc, threads, frame);
+        return tvc;
+    }
+
+    /**
+     * @return clock of new thread, that has already terminated. Its death is not registered in
+     * {@link com.devexperts.drd.agent.Generations}, so it stays live for the detector.
+     */
+    static ThreadVectorClock createForeignThreadClock() throws InterruptedException {
+        final ThreadVectorClock[] result = new ThreadVectorClock[1];
+        final Thread thread = new Thread(new Runnable() {
+            public void run() {
+                result[0] = new ThreadVectorClock();
+            }
+        });
+        thread.start();
+        thread.join();
+        return result[0];
+    }
+
+    /**
+     * @param threads number of dead threads
+     * @param first   tid of first dead thread
+     * @param step    difference between tids of consecutive dead threads
+     * @return dead clock [tid_1, frame_1, tid_2, frame_2, ..] sorted by tid
+     */
+    static long[] createDeadClock(int threads, long first, long step) {
+        final long[] deadClock = new long[threads * 2];
+        for (int i = 0; i < threads; i++) {
+            deadClock[2 * i] = first + i * step;
+            deadClock[2 * i + 1] = i + 1;
+        }
+        return deadClock;
+    }
+
+    private static void fill(VectorClock vc, int threads, long frame) {
+        for (int i = 0; i < threads; i++) {
+            vc.setSlotFrame(ThreadSlots.allocate(FAKE_TID + i), frame);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * DRD - Dynamic Data Race Detector for Java programs
+ *
+ * Copyright (C) 2002-2018 Devexperts LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devexperts.drd.agent.clock;
+
+import com.devexperts.drd.benchmarks.DRDEnvironment;
+import com.devexperts.drd.bootstrap.DRDEntryPoint;
+import com.devexperts.drd.bootstrap.DataRaceDescription;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link DataClock#read} and {@link DataClock#write} in their main states:
+ * <ul>
+ * <li>same epoch: repeated access in the same frame, recognized without lock;</li>
+ * <li>exclusive: each access is in the new frame of the same thread, processed under lock with packed epochs;</li>
+ * <li>shared: reads of the field, that has already been read by several threads, update inflated read clock;</li>
+ * <li>contended: shared reads of the same clock from 4 threads at once.</li>
+ * </ul>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DataClockBenchmark {
+    private static final int READERS = 4;
+    private static final String OWNER = "com.devexperts.drd.benchmarks.Data";
+    private static final String FIELD = "value";
+
+    private ThreadVectorClock tvc;
+    private DataClock exclusive;
+    private DataClock shared;
+    private int location;
+
+    @Setup
+    public void setUp() throws InterruptedException {
+        DRDEnvironment.init();
+        location = DRDEnvironment.registerLocation(OWNER, FIELD);
+        //state is set up by the thread, that runs benchmark, so this is its own clock
+        tvc = new ThreadVectorClock();
+        exclusive = new DataClock(DRDEntryPoint.getRegistry().registerClassName(OWNER));
+        exclusive.write(tvc, location, false);
+        exclusive.read(tvc, location, false);
+        shared = createSharedClock();
+    }
+
+    @Benchmark
+    public DataRaceDescription readSameEpoch() {
+        return exclusive.read(tvc, location, false);
+    }
+
+    @Benchmark
+    public DataRaceDescription writeSameEpoch() {
+        return exclusive.write(tvc, location, false);
+    }
+
+    @Benchmark
+    public DataRaceDescription readExclusive() {
+        tvc.tick();
+        return exclusive.read(tvc, location, false);
+    }
+
+    @Benchmark
+    public DataRaceDescription writeExclusive() {
+        tvc.tick();
+        return exclusive.write(tvc, location, false);
+    }
+
+    @Benchmark
+    public DataRaceDescription readShared() {
+        tvc.tick();
+        return shared.read(tvc, location, false);
+    }
+
+    @Benchmark
+    @Threads(READERS)
+    public DataRaceDescription readContended(SharedClock state) {
+        tvc.tick();
+        return state.clock.read(tvc, location, false);
+    }
+
+    /**
+     * @return clock of field, that has been read by {@link #READERS} other threads
+     */
+    private static DataClock createSharedClock() throws InterruptedException {
+        final DataClock clock = new DataClock(DRDEntryPoint.getRegistry().registerClassName(OWNER));
+        final int location = DRDEnvironment.registerLocation(OWNER, FIELD);
+        for (int i = 0; i < READERS; i++) {
+            clock.read(ClockFactory.createForeignThreadClock(), location, false);
+        }
+        return clock;
+    }
+
+    @State(Scope.Benchmark)
+    public static class SharedClock {
+        DataClock clock;
+
+        @Setup
+        public void setUp() throws InterruptedException {
+            DRDEnvironment.init();
+            clock = createSharedClock();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * DRD - Dynamic Data Race Detector for Java programs
+ *
+ * Copyright (C) 2002-2018 Devexperts LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devexperts.drd.agent.clock;
+
+import com.devexperts.drd.agent.Generations;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures generation update of vector clock, i.e. moving frames of threads, that died since clock's generation,
+ * from slots to dead clock. Clock knows frames of given number of threads, that have all died since its generation:
+ * single death is processed by light update, more deaths are read from the log of {@link Generations} by hard update.
+ * Each operation updates fresh copy of the same clock, cost of copy is measured separately.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GenerationUpdateBenchmark {
+    @Param({"1", "16", "256"})
+    public int deaths;
+
+    private VectorClock outdated;
+    private VectorClock updated;
+
+    @Setup
+    public void setUp() {
+        outdated = ClockFactory.createClock(deaths, 1);
+        for (int i = 0; i < deaths; i++) {
+            Generations.threadDied(ClockFactory.FAKE_TID + i);
+        }
+        updated = new VectorClock(outdated);
+        updated.checkGeneration();
+    }
+
+    @Benchmark
+    public VectorClock copy() {
+        return new VectorClock(updated);
+    }
+
+    @Benchmark
+    public VectorClock copyAndUpdate() {
+        final VectorClock vc = new VectorClock(outdated);
+        vc.checkGeneration();
+        return vc;
+    }
+}
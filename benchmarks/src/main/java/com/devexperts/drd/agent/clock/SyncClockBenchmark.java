@@ -0,0 +1,77 @@
+/*
+ * DRD - Dynamic Data Race Detector for Java programs
+ *
+ * Copyright (C) 2002-2018 Devexperts LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devexperts.drd.agent.clock;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures acquire ({@link SyncClock#loadTo}) and release ({@link SyncClock#loadFrom}) of sync clock by thread,
+ * which knows about given number of other live threads. "Full" benchmarks reset the state, that lets repeated
+ * operations of the same thread skip merging clocks, so that each operation merges whole clocks;
+ * "repeated" benchmarks take the shortcut.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SyncClockBenchmark {
+    @Param({"8", "64", "512"})
+    public int threads;
+
+    private ThreadVectorClock tvc;
+    private SyncClock sync;
+
+    @Setup
+    public void setUp() {
+        tvc = ClockFactory.createThreadClock(threads, 1);
+        sync = new SyncClock(ClockFactory.createClock(threads, 2));
+        //make current thread the last one, that released and acquired this clock
+        sync.loadFrom(tvc);
+        sync.loadTo(tvc);
+    }
+
+    @Benchmark
+    public void loadToFull() {
+        tvc.lastLock = null;
+        sync.loadTo(tvc);
+    }
+
+    @Benchmark
+    public void loadToRepeated() {
+        sync.loadTo(tvc);
+    }
+
+    @Benchmark
+    public void loadFromFull() {
+        sync.lastThread = 0;
+        tvc.tick();
+        sync.loadFrom(tvc);
+    }
+
+    @Benchmark
+    public void loadFromRepeated() {
+        tvc.tick();
+        sync.loadFrom(tvc);
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * DRD - Dynamic Data Race Detector for Java programs
+ *
+ * Copyright (C) 2002-2018 Devexperts LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devexperts.drd.agent.clock;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures merging of vector clocks, that know about given number of threads:
+ * <ul>
+ * <li>{@link VectorClockUtils#load}: slot-by-slot merge of live frames, i.e. full acquire or release;</li>
+ * <li>{@link VectorClockUtils#mergeSortedClocks}: merge of clocks of dead threads, that are sorted by tid
+ * and overlap by half;</li>
+ * <li>{@link VectorClockUtils#checkDataRace}: comparison of thread clock with clock of shared reads.</li>
+ * </ul>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VectorClockUtilsBenchmark {
+    @Param({"8", "64", "512"})
+    public int threads;
+
+    private VectorClock from;
+    private VectorClock to;
+    private ThreadVectorClock tvc;
+    private long[] deadClock1;
+    private long[] deadClock2;
+    private long[] mergedDeadClock;
+
+    @Setup
+    public void setUp() {
+        from = ClockFactory.createClock(threads, 2);
+        to = ClockFactory.createClock(threads, 1);
+        //thread clock is ahead of field clock, so that race check has to scan whole clock
+        tvc = ClockFactory.createThreadClock(threads, 3);
+        //tid offsets 0, 2, 4, .. and threads, threads + 2, ..: second half of the first clock overlaps first half of the second
+        deadClock1 = ClockFactory.createDeadClock(threads, ClockFactory.FAKE_TID, 2);
+        deadClock2 = ClockFactory.createDeadClock(threads, ClockFactory.FAKE_TID + threads, 2);
+        mergedDeadClock = new long[deadClock1.length + deadClock2.length];
+    }
+
+    @Benchmark
+    public VectorClock load() {
+        VectorClockUtils.load(from, to);
+        return to;
+    }
+
+    @Benchmark
+    public int mergeDeadClocks() {
+        return VectorClockUtils.mergeSortedClocks(deadClock1, deadClock1.length, deadClock2, deadClock2.length,
+                mergedDeadClock);
+    }
+
+    @Benchmark
+    public long checkDataRace() {
+        return VectorClockUtils.checkDataRace(tvc, from);
+    }
+}
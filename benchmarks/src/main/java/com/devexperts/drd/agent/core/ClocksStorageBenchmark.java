@@ -0,0 +1,94 @@
+/*
+ * DRD - Dynamic Data Race Detector for Java programs
+ *
+ * Copyright (C) 2002-2018 Devexperts LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devexperts.drd.agent.core;
+
+import com.devexperts.drd.agent.clock.SyncClock;
+import com.devexperts.drd.bootstrap.ISyncClock;
+import com.devexperts.drd.bootstrap.SyncClocked;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures lookup of monitor clock via {@link ClocksStorage#getSynClock} for given number of distinct monitors,
+ * that are used in turn:
+ * <ul>
+ * <li>field: monitors of instrumented classes, that keep clock in hidden field;</li>
+ * <li>map: other monitors, whose clocks are kept in weak identity map.</li>
+ * </ul>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClocksStorageBenchmark {
+    @Param({"1", "1024", "65536"})
+    public int monitors;
+
+    private Object[] fieldMonitors;
+    private Object[] mapMonitors;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        fieldMonitors = new Object[monitors];
+        mapMonitors = new Object[monitors];
+        for (int i = 0; i < monitors; i++) {
+            fieldMonitors[i] = new Clocked();
+            mapMonitors[i] = new Object();
+            //create clocks beforehand, so that only lookups are measured
+            ClocksStorage.getSynClock(fieldMonitors[i]);
+            ClocksStorage.getSynClock(mapMonitors[i]);
+        }
+    }
+
+    @Benchmark
+    public SyncClock field() {
+        return ClocksStorage.getSynClock(fieldMonitors[nextIndex()]);
+    }
+
+    @Benchmark
+    public SyncClock map() {
+        return ClocksStorage.getSynClock(mapMonitors[nextIndex()]);
+    }
+
+    private int nextIndex() {
+        final int i = next;
+        next = i + 1 == monitors ? 0 : i + 1;
+        return i;
+    }
+
+    /**
+     * Emulates class, that got hidden clock field from DRD transformer
+     */
+    private static class Clocked implements SyncClocked {
+        private ISyncClock clock;
+
+        public ISyncClock $drd$getSyncClock() {
+            return clock;
+        }
+
+        public void $drd$setSyncClock(ISyncClock clock) {
+            this.clock = clock;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * DRD - Dynamic Data Race Detector for Java programs
+ *
+ * Copyright (C) 2002-2018 Devexperts LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devexperts.drd.agent.core;
+
+import com.devexperts.drd.agent.clock.DataClock;
+import com.devexperts.drd.benchmarks.DRDEnvironment;
+import com.devexperts.drd.bootstrap.DRDEntryPoint;
+import com.devexperts.drd.bootstrap.DRDInterceptor;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures cost of interceptor calls, that instrumented code makes:
+ * <ul>
+ * <li>mock: field read reported to no-op interceptor directly and via {@link GuardedInterceptor}, the difference
+ * is overhead of the guard itself;</li>
+ * <li>monitor: enter and exit of the same monitor with {@link VerboseVectorClockInterceptor};</li>
+ * <li>read/write: repeated access of the same field in the same frame with {@link VerboseVectorClockInterceptor}.</li>
+ * </ul>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GuardedInterceptorBenchmark {
+    private static final String OWNER = "com.devexperts.drd.benchmarks.Intercepted";
+
+    private DRDInterceptor mock;
+    private DRDInterceptor guardedMock;
+    private DRDInterceptor guarded;
+    private final Object monitor = new Object();
+    private DataClock clock;
+    private int callerId;
+    private int callerNameId;
+    private int location;
+
+    @Setup
+    public void setUp() {
+        DRDEnvironment.init();
+        mock = new MockInterceptor();
+        guardedMock = new GuardedInterceptor(new MockInterceptor());
+        guarded = new GuardedInterceptor(new VerboseVectorClockInterceptor());
+        callerId = DRDEntryPoint.getRegistry().registerClassName(OWNER);
+        callerNameId = DRDEntryPoint.getRegistry().registerFieldOrMethodName("run");
+        location = DRDEnvironment.registerLocation(OWNER, "value");
+        clock = new DataClock(callerId);
+        guarded.afterWrite(clock, location, false, false);
+        guarded.afterRead(clock, location, false, false);
+    }
+
+    @Benchmark
+    public void mockDirect() {
+        mock.afterRead(clock, location, false, false);
+    }
+
+    @Benchmark
+    public void mockGuarded() {
+        guardedMock.afterRead(clock, location, false, false);
+    }
+
+    @Benchmark
+    public void monitorEnterExit() {
+        guarded.afterMonitorEnter(monitor, callerId, callerNameId, false);
+        guarded.beforeMonitorExit(monitor, callerId, callerNameId, false);
+    }
+
+    @Benchmark
+    public void readSameFrame() {
+        guarded.afterRead(clock, location, false, false);
+    }
+
+    @Benchmark
+    public void writeSameFrame() {
+        guarded.afterWrite(clock, location, false, false);
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * DRD - Dynamic Data Race Detector for Java programs
+ *
+ * Copyright (C) 2002-2018 Devexperts LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devexperts.drd.benchmarks;
+
+import com.devexperts.drd.agent.AccessHistoryImpl;
+import com.devexperts.drd.agent.DRDRegistryImpl;
+import com.devexperts.drd.agent.core.InternalStatistics;
+import com.devexperts.drd.bootstrap.DRDEntryPoint;
+import com.devexperts.drd.bootstrap.DRDRegistry;
+
+/**
+ * Installs DRD registry and statistics, that are normally installed by agent on startup.
+ */
+public class DRDEnvironment {
+    public static synchronized void init() {
+        if (DRDEntryPoint.getRegistry() == null) {
+            DRDEntryPoint.setRegistry(new DRDRegistryImpl(new AccessHistoryImpl()));
+            DRDEntryPoint.setStatistics(new InternalStatistics());
+        }
+    }
+
+    /**
+     * Registers access to specified field from method of its owner class. Should be called after {@link #init()}.
+     *
+     * @return id of location
+     */
+    public static int registerLocation(String owner, String field) {
+        final DRDRegistry registry = DRDEntryPoint.getRegistry();
+        final int ownerId = registry.registerClassName(owner);
+        return registry.registerLocation(ownerId, registry.registerFieldOrMethodName(field),
+                ownerId, registry.registerFieldOrMethodName("run"), 1);
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * DRD - Dynamic Data Race Detector for Java programs
+ *
+ * Copyright (C) 2002-2018 Devexperts LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devexperts.drd.benchmarks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Measures end-to-end slowdown of example programs of tests module under DRD. Each example is launched in separate JVM
+ * given number of times without agent and with agent; slowdown is the ratio of median wall-clock times, including
+ * JVM startup and agent initialization. Should be launched from the root of the project after full build:
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar com.devexperts.drd.benchmarks.ExamplesSlowdown [runs] [example ...]
+ * </pre>
+ * All examples are run, if none is specified. Results are printed and written in JSON to
+ * <code>benchmarks/target/slowdown.json</code>, so that they can be tracked between releases along with
+ * JMH results (<code>java -jar benchmarks/target/benchmarks.jar -rf json</code>).
+ * <p/>
+ * Paths may be overridden with system properties: <code>drd.benchmarks.agent</code> (agent jar),
+ * <code>drd.benchmarks.config.dir</code> (DRD config directory) and <code>drd.benchmarks.result</code>
+ * (result file).
+ */
+public class ExamplesSlowdown {
+    private static final String EXAMPLES_PACKAGE = "com.devexperts.drd.tests.examples";
+    private static final String EXAMPLES_PATH = "./tests/target/classes".replace("/", File.separator);
+    private static final String LOG_DIRECTORY = "./benchmarks/target/slowdown-logs".replace("/", File.separator);
+    private static final String AGENT_PATH = System.getProperty("drd.benchmarks.agent", "./bin/target/drd_agent.jar");
+    private static final String CONFIG_DIR = System.getProperty("drd.benchmarks.config.dir", "./tests/found_configs/1");
+    private static final String RESULT_PATH = System.getProperty("drd.benchmarks.result", "./benchmarks/target/slowdown.json");
+    private static final int DEFAULT_RUNS = 3;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        final int runs = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_RUNS;
+        final List<String> examples = args.length > 1 ? Arrays.asList(args).subList(1, args.length) : findExamples();
+        if (!new File(AGENT_PATH).isFile()) {
+            System.err.println("Agent not found: " + AGENT_PATH + ". Build the project first.");
+            System.exit(1);
+        }
+        final List<Result> results = new ArrayList<Result>();
+        for (String example : examples) {
+            final Result result = new Result(example,
+                    median(example, runs, false), median(example, runs, true));
+            System.out.println(result);
+            results.add(result);
+        }
+        writeJson(results, runs);
+        System.out.println("Results are written to " + new File(RESULT_PATH).getCanonicalPath());
+    }
+
+    private static List<String> findExamples() {
+        final File dir = new File(EXAMPLES_PATH, EXAMPLES_PACKAGE.replace(".", File.separator));
+        final File[] files = dir.listFiles();
+        if (files == null) {
+            throw new IllegalStateException("Examples not found in " + dir + ". Build the project first.");
+        }
+        final List<String> examples = new ArrayList<String>();
+        for (File file : files) {
+            if (new File(file, "TestRunner.class").isFile()) {
+                examples.add(file.getName());
+            }
+        }
+        Collections.sort(examples);
+        return examples;
+    }
+
+    /**
+     * @return median wall-clock time of example in milliseconds or -1, if any run failed
+     */
+    private static long median(String example, int runs, boolean agent) throws IOException, InterruptedException {
+        final long[] times = new long[runs];
+        for (int i = 0; i < runs; i++) {
+            times[i] = run(example, agent);
+            if (times[i] < 0) return -1;
+        }
+        Arrays.sort(times);
+        return times[runs / 2];
+    }
+
+    private static long run(String example, boolean agent) throws IOException, InterruptedException {
+        final File logDir = new File(LOG_DIRECTORY, example + (agent ? "-drd" : "-baseline"));
+        if (!logDir.isDirectory() && !logDir.mkdirs()) {
+            throw new IOException("Can't create log directory " + logDir);
+        }
+        final List<String> command = new ArrayList<String>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        if (agent) {
+            command.add("-javaagent:" + AGENT_PATH);
+            command.add("-Ddrd.config.dir=" + new File(CONFIG_DIR).getCanonicalPath());
+            command.add("-Ddrd.log.dir=" + logDir.getCanonicalPath());
+        }
+        command.add("-cp");
+        command.add(EXAMPLES_PATH);
+        command.add(EXAMPLES_PACKAGE + "." + example + ".TestRunner");
+        final ProcessBuilder builder = new ProcessBuilder(command);
+        builder.redirectErrorStream(true);
+        builder.redirectOutput(new File(logDir, "output.log"));
+        final long start = System.nanoTime();
+        final int exitCode = builder.start().waitFor();
+        final long time = (System.nanoTime() - start) / 1000000;
+        if (exitCode != 0) {
+            System.err.println("Run of " + example + " failed with exit code " + exitCode + ": " + command);
+            return -1;
+        }
+        return time;
+    }
+
+    private static void writeJson(List<Result> results, int runs) throws IOException {
+        final File file = new File(RESULT_PATH);
+        final File dir = file.getAbsoluteFile().getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Can't create directory " + dir);
+        }
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8")) {
+            writer.write("{\n");
+            writer.write("  \"runs\": " + runs + ",\n");
+            writer.write("  \"results\": [\n");
+            for (int i = 0; i < results.size(); i++) {
+                final Result r = results.get(i);
+                writer.write(String.format(Locale.US,
+                        "    {\"example\": \"%s\", \"baselineMillis\": %d, \"drdMillis\": %d, \"slowdown\": %.3f}%s\n",
+                        r.example, r.baselineMillis, r.drdMillis, r.slowdown(), i + 1 < results.size() ? "," : ""));
+            }
+            writer.write("  ]\n");
+            writer.write("}\n");
+        }
+    }
+
+    private static class Result {
+        final String example;
+        final long baselineMillis;
+        final long drdMillis;
+
+        Result(String example, long baselineMillis, long drdMillis) {
+            this.example = example;
+            this.baselineMillis = baselineMillis;
+            this.drdMillis = drdMillis;
+        }
+
+        /**
+         * @return ratio of times with and without agent or -1, if some run failed
+         */
+        double slowdown() {
+            return baselineMillis <= 0 || drdMillis < 0 ? -1 : (double) drdMillis / baselineMillis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%-30s baseline %,8d ms, drd %,8d ms, slowdown %8.2f",
+                    example, baselineMillis, drdMillis, slowdown());
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * DRD - Dynamic Data Race Detector for Java programs
+ *
+ * Copyright (C) 2002-2018 Devexperts LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devexperts.drd.transformer.instrument.app;
+
+import com.devexperts.drd.benchmarks.DRDEnvironment;
+import com.devexperts.drd.transformer.instrument.ClassInfoCache;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Measures time to instrument a single class to detect sync events and races, i.e. the whole
+ * {@link ApplicationTransformer#transformApplicationClass} pipeline. Each invocation transforms the next class
+ * of the corpus:
+ * <ul>
+ * <li>jdk: classes of java.util and its subpackages from rt.jar;</li>
+ * <li>app: classes of DRD transformer itself, as an example of application code.</li>
+ * </ul>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 10, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class TransformBenchmark {
+    private static final int MAX_CORPUS_SIZE = 2000;
+
+    @Param({"jdk", "app"})
+    public String corpus;
+
+    private ApplicationTransformer transformer;
+    private ClassLoader loader;
+    private final List<String> names = new ArrayList<>();
+    private final List<byte[]> classes = new ArrayList<>();
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException, URISyntaxException {
+        DRDEnvironment.init();
+        loader = getClass().getClassLoader();
+        transformer = new ApplicationTransformer(null, new ClassInfoCache());
+        if (corpus.equals("jdk")) {
+            loadCorpus(Object.class, "java/util/");
+        } else {
+            loadCorpus(ApplicationTransformer.class, "com/devexperts/drd/transformer/");
+        }
+        if (names.isEmpty()) {
+            throw new IllegalStateException("Corpus '" + corpus + "' is empty");
+        }
+    }
+
+    @Benchmark
+    public byte[] transformClass() {
+        final int i = next;
+        next = i + 1 == names.size() ? 0 : i + 1;
+        return transformer.transformApplicationClass(names.get(i), classes.get(i), TransformationMode.DETECT_RACES, loader);
+    }
+
+    /**
+     * Loads classes with specified prefix from jar or directory, that contains specified class
+     */
+    private void loadCorpus(Class<?> sample, String prefix) throws IOException, URISyntaxException {
+        final URL url = sample.getResource(sample.getSimpleName() + ".class");
+        if (url.getProtocol().equals("jar")) {
+            final JarFile jar = ((JarURLConnection) url.openConnection()).getJarFile();
+            for (Enumeration<JarEntry> e = jar.entries(); e.hasMoreElements() && names.size() < MAX_CORPUS_SIZE; ) {
+                final JarEntry entry = e.nextElement();
+                if (entry.getName().startsWith(prefix) && entry.getName().endsWith(".class")) {
+                    try (InputStream in = jar.getInputStream(entry)) {
+                        add(entry.getName(), in);
+                    }
+                }
+            }
+        } else if (url.getProtocol().equals("file")) {
+            final String path = new File(url.toURI()).getPath().replace(File.separatorChar, '/');
+            final File root = new File(path.substring(0, path.length() - sample.getName().length() - ".class".length()));
+            loadDirectory(root, new File(root, prefix), prefix);
+        } else {
+            throw new IllegalStateException("Unsupported class location " + url);
+        }
+    }
+
+    private void loadDirectory(File root, File dir, String prefix) throws IOException {
+        final File[] files = dir.listFiles();
+        if (files == null) return;
+        for (File file : files) {
+            if (names.size() >= MAX_CORPUS_SIZE) return;
+            if (file.isDirectory()) {
+                loadDirectory(root, file, prefix + file.getName() + "/");
+            } else if (file.getName().endsWith(".class")) {
+                try (InputStream in = file.toURI().toURL().openStream()) {
+                    add(prefix + file.getName(), in);
+                }
+            }
+        }
+    }
+
+    private void add(String resource, InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) > 0) {
+            out.write(buffer, 0, read);
+        }
+        names.add(resource.substring(0, resource.length() - ".class".length()));
+        classes.add(out.toByteArray());
+    }
+}
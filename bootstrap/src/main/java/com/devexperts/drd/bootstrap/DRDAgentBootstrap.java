@@ -21,7 +21,6 @@ package com.devexperts.drd.bootstrap;
 
 import java.io.InputStream;
 import java.lang.instrument.Instrumentation;
-import java.lang.instrument.UnmodifiableClassException;
 import java.lang.reflect.Constructor;
 import java.net.URL;
 import java.util.*;
@@ -47,9 +46,28 @@ public class DRDAgentBootstrap {
     private static final Map<String, List<String>> skipped = new HashMap<String, List<String>>();
 
     public static void premain(String options, Instrumentation ins) throws Exception {
+        start(ins, false);
+    }
+
+    /**
+     * Entry point for attaching to running JVM. Already loaded classes can't get fields for data clocks, so
+     * races are detected only in classes, loaded after attach, while synchronization is tracked in all classes.
+     */
+    public static void agentmain(String options, Instrumentation ins) throws Exception {
+        start(ins, true);
+    }
+
+    private static synchronized void start(Instrumentation ins, boolean attach) {
+        if (transformation != null) {
+            DRDLogger.log("DRD is already started, repeated " + (attach ? "attach" : "start") + " ignored");
+            return;
+        }
         new Throwable("Fake").printStackTrace(BlackHole.BLACK_HOLE);
         try {
             DRDLogger.setLogDir(DRDProperties.getLogDir());
+            if (attach) {
+                DRDLogger.log("Attaching to running JVM ...");
+            }
             DRDLogger.log(DRDProperties.dumpSettings());
             DRDLogger.debug("Executing bootstrap sequence ...");
             rootClassLoader = obtainRootClassLoader();
@@ -91,7 +109,7 @@ public class DRDAgentBootstrap {
             } else {
                 DRDLogger.log("7-9/9. DEBUG MODE: Application transformer not installed");
             }
-            finish();
+            finish(attach);
         } catch (Throwable e) {
             e.printStackTrace();
         }
@@ -99,32 +117,28 @@ public class DRDAgentBootstrap {
 
     private static void retransform2(Instrumentation ins) {
         Class[] classes = ins.getAllLoadedClasses();
+        List<Class> toRetransform = new ArrayList<Class>(classes.length);
         for (Class clazz : classes) {
             if (clazz.isArray()) continue; //ignore arrays
-            try {
-                ins.retransformClasses(clazz);
-            } catch (UnmodifiableClassException e) {
-                DRDLogger.error("Failed to retransform " + clazz.getName(), e);
-            }
+            toRetransform.add(clazz);
         }
+        new Retransformer(ins).retransform("System retransformation", toRetransform);
     }
 
     private static void retransform(Instrumentation ins) {
         Class[] classes = ins.getAllLoadedClasses();
+        List<Class> toRetransform = new ArrayList<Class>(classes.length);
         for (Class clazz : classes) {
             String name = clazz.getName();
             if (clazz.isArray()) continue; //ignore arrays
             if (clazz == ClassLoader.class) continue; //retransformed earlier
             if (RetransformFilter.INSTANCE.accept(name)) {
-                try {
-                    ins.retransformClasses(clazz);
-                } catch (UnmodifiableClassException e) {
-                    DRDLogger.error("Failed to retransform " + name, e);
-                }
+                toRetransform.add(clazz);
             } else {
                 CollectionUtils.put(getGrouper(name), name, skipped);
             }
         }
+        new Retransformer(ins).retransform("Application retransformation", toRetransform);
         StringBuilder sb = new StringBuilder("Post-retransformation done. Skipped:\n");
         for (Map.Entry<String, List<String>> entry : skipped.entrySet()) {
             sb.append(entry.getKey()).append(": ").append(entry.getValue().size()).append("\n");
@@ -141,12 +155,18 @@ public class DRDAgentBootstrap {
         return fromIndex < 0 ? name : name.substring(0, fromIndex);
     }
 
-    private static void finish() {
+    private static void finish(boolean attach) {
         String version = Package.getPackage("com.devexperts.drd.bootstrap").getImplementationVersion();
         DRDLogger.log("\n\n=====================================================\n" +
-                "DRD " + (version == null ? "version unknown" : version) + " started it's work\n" +
+                "DRD " + (version == null ? "version unknown" : version) + " started it's work" +
+                (attach ? " (attached to running JVM)" : "") + "\n" +
                 "Java " + System.getProperty("java.version") + " from " + System.getProperty("java.home") +
                 "\n=====================================================\n");
+        DRDLogger.log(transformation.dumpStatistics());
+        if (attach && Thread.getDefaultUncaughtExceptionHandler() != null) {
+            //do not replace handler of running application
+            return;
+        }
         Thread.setDefaultUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
             public void uncaughtException(Thread t, Throwable e) {
                 System.err.println("Unhandled exception in thread " + t.getName() + "(tid=" + t.getId() + ").");
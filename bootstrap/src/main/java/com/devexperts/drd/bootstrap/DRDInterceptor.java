@@ -65,6 +65,13 @@ public interface DRDInterceptor {
      */
     public void beforeVolatileWrite(Object ref, int ownerId, int nameId, int callerId, int callerNameId, boolean print);
 
+    /**
+     * To be invoked before writing volatile variable, whose clock is already kept in its companion field
+     *
+     * @param clock clock of volatile variable, see {@link DataProvider#VOLATILE_CLOCK_SUFFIX}
+     */
+    public void beforeVolatileClockWrite(ISyncClock clock, int callerId, int callerNameId, boolean print);
+
     /**
      * To be invoked before manual synchronization send
      *
@@ -84,6 +91,13 @@ public interface DRDInterceptor {
      */
     public void afterVolatileRead(Object ref, int ownerId, int nameId, int callerId, int callerNameId, boolean print);
 
+    /**
+     * To be invoked after reading volatile variable, whose clock is already kept in its companion field
+     *
+     * @param clock clock of volatile variable, see {@link DataProvider#VOLATILE_CLOCK_SUFFIX}
+     */
+    public void afterVolatileClockRead(ISyncClock clock, int callerId, int callerNameId, boolean print);
+
     /**
      * To be invoked after manual synchronization receive
      *
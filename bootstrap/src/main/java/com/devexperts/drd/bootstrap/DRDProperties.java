@@ -25,6 +25,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.Enumeration;
 import java.util.Properties;
+import java.util.TreeSet;
 
 public class DRDProperties {
     public enum LoggingLevel {
@@ -53,6 +54,25 @@ public class DRDProperties {
     public static final Metrics metrics;
     public static final int dataClockHistogramLimit;
     public static final boolean reportForeignRaces;
+    public static final boolean deadClockCompaction;
+    public static final boolean syncClockField;
+    public static final boolean volatileClockField;
+    public static final int raceQueueCapacity;
+    public static final int raceQueueWaitMillis;
+    public static final int trackStackSampleRate;
+    public static final int trackStackDepth;
+    public static final int trackStackLimit;
+    public static final boolean fieldSampling;
+    public static final boolean redundantAccessFilter;
+    public static final boolean confinedFieldAnalysis;
+    public static final boolean dataClockTable;
+    public static final boolean hbInlineCache;
+    public static final boolean lazyGuardStatus;
+    public static final boolean runtimeSwitch;
+    public static final int retransformBatchSize;
+    public static final int retransformThreads;
+    public static final int fieldSamplingBurst;
+    public static final int fieldSamplingMaxPeriod;
 
     static {
         properties = new Properties(System.getProperties());
@@ -85,6 +105,25 @@ public class DRDProperties {
         racesGrouping = RacesGrouping.valueOf(getStringProperty("drd.races.grouping", "CALL_CLASS_AND_METHOD"));
         debugTransformMode = DebugTransformMode.valueOf(getStringProperty("drd.debug.transform.mode", "APPLICATION"));
         metrics = Metrics.valueOf(getStringProperty("drd.internal.metrics", "FULL"));
+        deadClockCompaction = getBooleanProperty("drd.dead.clock.compaction", true);
+        syncClockField = getBooleanProperty("drd.sync.clock.field", true);
+        volatileClockField = getBooleanProperty("drd.volatile.clock.field", true);
+        raceQueueCapacity = Math.max(1, getIntProperty("drd.race.queue.capacity", 1024));
+        raceQueueWaitMillis = Math.max(0, getIntProperty("drd.race.queue.wait.millis", 10));
+        trackStackSampleRate = Math.max(1, getIntProperty("drd.track.stack.sample.rate", 1));
+        trackStackDepth = Math.max(1, getIntProperty("drd.track.stack.depth", 64));
+        trackStackLimit = Math.max(1, getIntProperty("drd.track.stack.limit", 8192));
+        fieldSampling = getBooleanProperty("drd.field.sampling", false);
+        redundantAccessFilter = getBooleanProperty("drd.redundant.access.filter", true);
+        confinedFieldAnalysis = getBooleanProperty("drd.confined.field.analysis", true);
+        dataClockTable = getBooleanProperty("drd.data.clock.table", false);
+        hbInlineCache = getBooleanProperty("drd.hb.inline.cache", true);
+        lazyGuardStatus = getBooleanProperty("drd.lazy.guard.status", true);
+        runtimeSwitch = getBooleanProperty("drd.runtime.switch", false);
+        retransformBatchSize = Math.max(1, getIntProperty("drd.retransform.batch.size", 256));
+        retransformThreads = Math.max(1, getIntProperty("drd.retransform.threads", Runtime.getRuntime().availableProcessors()));
+        fieldSamplingBurst = Math.max(1, getIntProperty("drd.field.sampling.burst", 16));
+        fieldSamplingMaxPeriod = Math.max(1, getIntProperty("drd.field.sampling.max.period", 1024));
     }
 
     static String dumpSettings() {
@@ -96,6 +135,25 @@ public class DRDProperties {
         sb.append("data_clock_histogram_size = ").append(dataClockHistogramLimit).append("\n");
         sb.append("internal_profiling_enabled = ").append(profilingEnabled).append("\n");
         sb.append("internal_metrics = ").append(metrics).append("\n");
+        sb.append("dead_clock_compaction = ").append(deadClockCompaction).append("\n");
+        sb.append("sync_clock_field = ").append(syncClockField).append("\n");
+        sb.append("volatile_clock_field = ").append(volatileClockField).append("\n");
+        sb.append("race_queue_capacity = ").append(raceQueueCapacity).append("\n");
+        sb.append("race_queue_wait_millis = ").append(raceQueueWaitMillis).append("\n");
+        sb.append("track_stack_sample_rate = ").append(trackStackSampleRate).append("\n");
+        sb.append("track_stack_depth = ").append(trackStackDepth).append("\n");
+        sb.append("track_stack_limit = ").append(trackStackLimit).append("\n");
+        sb.append("field_sampling = ").append(fieldSampling).append("\n");
+        sb.append("redundant_access_filter = ").append(redundantAccessFilter).append("\n");
+        sb.append("confined_field_analysis = ").append(confinedFieldAnalysis).append("\n");
+        sb.append("data_clock_table = ").append(dataClockTable).append("\n");
+        sb.append("hb_inline_cache = ").append(hbInlineCache).append("\n");
+        sb.append("lazy_guard_status = ").append(lazyGuardStatus).append("\n");
+        sb.append("runtime_switch = ").append(runtimeSwitch).append("\n");
+        sb.append("retransform_batch_size = ").append(retransformBatchSize).append("\n");
+        sb.append("retransform_threads = ").append(retransformThreads).append("\n");
+        sb.append("field_sampling_burst = ").append(fieldSamplingBurst).append("\n");
+        sb.append("field_sampling_max_period = ").append(fieldSamplingMaxPeriod).append("\n");
         return sb.append("-------------------------------------------------------").toString();
     }
 
@@ -147,6 +205,33 @@ public class DRDProperties {
         return properties.getProperty("drd.transformed.files.dir", null);
     }
 
+    /**
+     * @return directory of persistent cache of transformed classes, or null if cache is disabled
+     */
+    public static String getTransformationCacheDir() {
+        return getMostRelevantProperty("drd.transformation.cache.dir");
+    }
+
+    /**
+     * @return file with rules of {@link DetectionSwitch}, that is watched for changes, or null if there is no such file
+     */
+    public static String getControlFile() {
+        return getMostRelevantProperty("drd.control.file");
+    }
+
+    /**
+     * @return all DRD settings from settings file and command line except log directory, sorted by key
+     */
+    public static String dumpAllSettings() {
+        StringBuilder sb = new StringBuilder();
+        for (String key : new TreeSet<String>(properties.stringPropertyNames())) {
+            if (key.startsWith("drd.") && !key.equals("drd.log.dir")) {
+                sb.append(key).append('=').append(properties.getProperty(key)).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
     public static String getConfigDir() {
         return properties.getProperty("drd.config.dir", DEFAULT_CONFIG_DIR);
     }
@@ -38,6 +38,17 @@ public interface DRDRegistry {
 
     Location getLocation(int id);
 
+    /**
+     * Interns stack trace, so that equal stack traces share the same id. Number of interned stack traces is limited
+     * by {@link DRDProperties#trackStackLimit}, the oldest ones are evicted.
+     */
+    int registerStackTrace(StackTraceElement[] stackTrace);
+
+    /**
+     * @return interned stack trace or null if it was evicted
+     */
+    StackTraceElement[] getStackTrace(int id);
+
     void registerDataClock(int ownerId);
 
     void unregisterDataClock(int ownerId);
@@ -58,6 +69,13 @@ public interface DRDRegistry {
 
     boolean isVolatile(int ownerId, int fieldNameId);
 
+    /**
+     * Registers field, on which no race can be detected, so that accesses to it are not instrumented
+     */
+    void registerConfinedField(int ownerId, int fieldNameId);
+
+    boolean isConfined(int ownerId, int fieldNameId);
+
     void registerEnum(int ownerId);
 
     boolean isEnum(int ownerId);
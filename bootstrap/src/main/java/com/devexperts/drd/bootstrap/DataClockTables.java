@@ -0,0 +1,57 @@
+/*
+ * DRD - Dynamic Data Race Detector for Java programs
+ *
+ * Copyright (C) 2002-2018 Devexperts LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devexperts.drd.bootstrap;
+
+/**
+ * Installs per-object tables of data clocks of instance fields, see {@link DRDProperties#dataClockTable}.
+ * Table is installed with CAS, so that concurrent first accesses to different fields of the same object
+ * don't lose clocks of each other. Generated accessors cache field offset in static synthetic field of owner class.
+ */
+public final class DataClockTables {
+    public static final String TABLE_FIELD = "$drd$dataClocks";
+    public static final String OFFSET_FIELD = "$drd$dataClocksOffset";
+
+    private DataClockTables() {
+    }
+
+    /**
+     * @param o instance of owner class or its subclass
+     * @param ownerName binary name of class, that declares table field
+     * @return offset of table field, that is declared by owner class
+     */
+    public static long getOffset(Object o, String ownerName) {
+        Class c = o.getClass();
+        while (!c.getName().equals(ownerName)) {
+            c = c.getSuperclass();
+        }
+        try {
+            return UnsafeHolder.UNSAFE.objectFieldOffset(c.getDeclaredField(TABLE_FIELD));
+        } catch (NoSuchFieldException e) {
+            throw new IllegalStateException("No " + TABLE_FIELD + " field in " + ownerName, e);
+        }
+    }
+
+    /**
+     * Installs new table of specified size, unless some table is already installed
+     */
+    public static void install(Object o, long offset, int size) {
+        UnsafeHolder.UNSAFE.compareAndSwapObject(o, offset, null, new IDataClock[size]);
+    }
+}
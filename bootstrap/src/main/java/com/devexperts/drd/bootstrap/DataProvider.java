@@ -21,6 +21,11 @@ package com.devexperts.drd.bootstrap;
 
 @SuppressWarnings("unused")
 public interface DataProvider {
+    /**
+     * Suffix of hidden fields, in which instrumented classes keep clocks of their volatile fields
+     */
+    public static final String VOLATILE_CLOCK_SUFFIX = "$vsc";
+
     /**
      * @param hbContractId hb contract id
      * @return composite key instance for specified happens-before contract
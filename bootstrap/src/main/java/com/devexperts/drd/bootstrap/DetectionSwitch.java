@@ -0,0 +1,182 @@
+/*
+ * DRD - Dynamic Data Race Detector for Java programs
+ *
+ * Copyright (C) 2002-2018 Devexperts LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devexperts.drd.bootstrap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runtime switch of race detection by scopes of instrumented code. Used by instrumented code, if
+ * {@link DRDProperties#runtimeSwitch} is set: methods of classes with detection switched off get
+ * {@link #DISABLED} status instead of guard status, so that their synchronization operations and calls are executed
+ * as is, and their field accesses are not processed at all.<br/>
+ * Rules are applied one by one until some of them matches class name, like scope rules of configuration. Each rule
+ * is a line "+prefix" (enable) or "-prefix" (disable) with prefix of internal or binary class name, or "*" for any
+ * class; empty lines and lines, starting with '#', are ignored. Detection is enabled for classes, that match no rule.
+ * <br/>
+ * Synchronization, that happened while detection was off, is unknown to DRD, so races between accesses made before
+ * switching it off and after switching it on again may be false.
+ */
+public final class DetectionSwitch {
+    /**
+     * Status of method of class with detection switched off. Differs from all guard states, so that such method
+     * executes every operation as if guard was hard-locked.
+     */
+    public static final int DISABLED = -2;
+
+    private static final String ALL = "*";
+    private static final byte UNKNOWN = 0;
+    private static final byte ENABLED = 1;
+    private static final byte OFF = 2;
+
+    /**
+     * Current rules. Rules are replaced as a whole, so readers never see prefixes of one version with decisions
+     * of another.
+     */
+    private static volatile Rules rules = new Rules(new String[0], new boolean[0], "");
+
+    private DetectionSwitch() {
+    }
+
+    /**
+     * @param ownerId id of class in {@link DRDRegistry}
+     * @return status of the method of this class: {@link #DISABLED} or actual guard status
+     */
+    public static int status(int ownerId) {
+        return isEnabled(ownerId) ? DRDEntryPoint.getInterceptor().status() : DISABLED;
+    }
+
+    /**
+     * @param ownerId id of class in {@link DRDRegistry}
+     */
+    public static boolean isEnabled(int ownerId) {
+        final Rules rules = DetectionSwitch.rules;
+        if (rules.allEnabled) return true;
+        final byte[] states = rules.states;
+        final byte state = ownerId < states.length ? states[ownerId] : UNKNOWN;
+        if (state != UNKNOWN) return state == ENABLED;
+        return resolve(ownerId, rules, states);
+    }
+
+    private static boolean resolve(int ownerId, Rules rules, byte[] states) {
+        final DRDRegistry registry = DRDEntryPoint.getRegistry();
+        if (registry == null) return true;
+        final String className = registry.getClassName(ownerId);
+        if (className == null) return true;
+        final boolean enabled = rules.isEnabled(className);
+        if (ownerId >= states.length) {
+            synchronized (rules) {
+                if (states != rules.states) return enabled;
+                states = Arrays.copyOf(states, Math.max(ownerId + 1, states.length * 2));
+                rules.states = states;
+            }
+        }
+        states[ownerId] = enabled ? ENABLED : OFF;
+        return enabled;
+    }
+
+    /**
+     * @param className internal or binary name of class
+     */
+    public static boolean isEnabled(String className) {
+        return rules.isEnabled(className);
+    }
+
+    /**
+     * @return current rules, one per line
+     */
+    public static synchronized String getRules() {
+        return rules.text;
+    }
+
+    /**
+     * Replaces all rules.
+     *
+     * @param rules rules, one per line
+     * @throws IllegalArgumentException if some rule is malformed; current rules are kept then
+     */
+    public static synchronized void setRules(String rules) {
+        final List<String> newPrefixes = new ArrayList<String>();
+        final List<Boolean> newEnables = new ArrayList<Boolean>();
+        final StringBuilder normalized = new StringBuilder();
+        for (String line : rules.split("\n")) {
+            line = line.trim();
+            if (line.length() == 0 || line.startsWith("#")) continue;
+            final char sign = line.charAt(0);
+            final String prefix = line.substring(1).trim();
+            if ((sign != '+' && sign != '-') || prefix.length() == 0) {
+                throw new IllegalArgumentException("Malformed detection switch rule '" + line +
+                        "': should be '+prefix' or '-prefix'");
+            }
+            //empty prefix matches any class
+            newPrefixes.add(ALL.equals(prefix) ? "" : prefix.replace('.', '/'));
+            newEnables.add(sign == '+');
+            normalized.append(sign).append(prefix).append('\n');
+        }
+        final boolean[] enables = new boolean[newEnables.size()];
+        for (int i = 0; i < enables.length; i++) {
+            enables[i] = newEnables.get(i);
+        }
+        final Rules newRules = new Rules(newPrefixes.toArray(new String[newPrefixes.size()]), enables,
+                normalized.toString());
+        DetectionSwitch.rules = newRules;
+        DRDLogger.log("Detection switch rules changed to:\n" + (newPrefixes.isEmpty() ? "(none)\n" : newRules.text));
+    }
+
+    /**
+     * Immutable set of rules together with cache of states of classes, resolved by these rules, so that states,
+     * resolved by old rules, never leak into new ones.
+     */
+    private static final class Rules {
+        private final String[] prefixes;
+        private final boolean[] enables;
+        /**
+         * True iff there are no rules, that disable anything: the fast path of
+         * {@link DetectionSwitch#isEnabled(int)}
+         */
+        private final boolean allEnabled;
+        private final String text;
+        /**
+         * Resolved states of classes by their ids. Racy writes are harmless, since the same state is resolved
+         * by everybody. Grows under lock of rules.
+         */
+        private volatile byte[] states = new byte[1024];
+
+        Rules(String[] prefixes, boolean[] enables, String text) {
+            this.prefixes = prefixes;
+            this.enables = enables;
+            this.text = text;
+            boolean allEnabled = true;
+            for (boolean enable : enables) {
+                allEnabled &= enable;
+            }
+            this.allEnabled = allEnabled;
+        }
+
+        boolean isEnabled(String className) {
+            final String name = className.replace('.', '/');
+            for (int i = 0; i < prefixes.length; i++) {
+                if (name.startsWith(prefixes[i])) return enables[i];
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * DRD - Dynamic Data Race Detector for Java programs
+ *
+ * Copyright (C) 2002-2018 Devexperts LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devexperts.drd.bootstrap;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+
+/**
+ * Weak reference to object component of composite key. When referent is collected, reference is enqueued to
+ * {@link #QUEUE}, so that clock of its key can be disposed without scanning all the keys.
+ */
+public class DisposableReference extends WeakReference<Object> {
+    public static final ReferenceQueue<Object> QUEUE = new ReferenceQueue<Object>();
+
+    /**
+     * Composite key, that holds this reference
+     */
+    public final WeakDisposable owner;
+
+    public DisposableReference(Object referent, WeakDisposable owner) {
+        super(referent, QUEUE);
+        this.owner = owner;
+    }
+}
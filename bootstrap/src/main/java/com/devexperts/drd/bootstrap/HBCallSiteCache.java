@@ -0,0 +1,113 @@
+/*
+ * DRD - Dynamic Data Race Detector for Java programs
+ *
+ * Copyright (C) 2002-2018 Devexperts LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devexperts.drd.bootstrap;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Inline caches of happens-before vertex matching, one per call site of possible vertex. Call site remembers
+ * several (receiver class, vertex) pairs, that it has seen, together with results of matching, so that repeated calls
+ * with the same receiver types don't reach {@link DataProvider#matchesToHBVertex}, which remains generic fallback.
+ * Call site, that has seen too many pairs, becomes megamorphic and always uses fallback.<br/>
+ * Call sites are identified by their location ids in {@link DRDRegistry}. Entries are immutable; arrays of entries
+ * are filled before they are published by ordered store, so that reader never sees partially filled array. Concurrent
+ * updates of the same call site are not synchronized: lost update only costs one more fallback call.
+ */
+public final class HBCallSiteCache {
+    private static final int CHUNK_BITS = 12;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int POLYMORPHIC_LIMIT = 8;
+    private static final Entry[] MEGAMORPHIC = new Entry[0];
+
+    private static volatile AtomicReferenceArray<Entry[]>[] chunks = newChunks(16);
+
+    private HBCallSiteCache() {
+    }
+
+    public static boolean matches(Class c, String methodName, int vertexId, int siteId) {
+        final AtomicReferenceArray<Entry[]> chunk = getChunk(siteId);
+        final int index = siteId & (CHUNK_SIZE - 1);
+        final Entry[] entries = chunk.get(index);
+        if (entries != null) {
+            for (Entry e : entries) {
+                if (e != null && e.c == c && e.vertexId == vertexId) return e.result;
+            }
+        }
+        final boolean result = DRDEntryPoint.getDataProvider().matchesToHBVertex(c, methodName, vertexId);
+        if (entries == null) {
+            chunk.lazySet(index, new Entry[]{new Entry(c, vertexId, result)});
+        } else if (entries != MEGAMORPHIC) {
+            if (entries.length < POLYMORPHIC_LIMIT) {
+                final Entry[] newEntries = new Entry[entries.length + 1];
+                System.arraycopy(entries, 0, newEntries, 0, entries.length);
+                newEntries[entries.length] = new Entry(c, vertexId, result);
+                //ordered store publishes filled array
+                chunk.lazySet(index, newEntries);
+            } else {
+                chunk.lazySet(index, MEGAMORPHIC);
+            }
+        }
+        return result;
+    }
+
+    private static AtomicReferenceArray<Entry[]> getChunk(int siteId) {
+        final int chunkIndex = siteId >>> CHUNK_BITS;
+        final AtomicReferenceArray<Entry[]>[] chunks = HBCallSiteCache.chunks;
+        if (chunkIndex < chunks.length) {
+            final AtomicReferenceArray<Entry[]> chunk = chunks[chunkIndex];
+            if (chunk != null) return chunk;
+        }
+        return createChunk(chunkIndex);
+    }
+
+    private static synchronized AtomicReferenceArray<Entry[]> createChunk(int chunkIndex) {
+        AtomicReferenceArray<Entry[]>[] chunks = HBCallSiteCache.chunks;
+        if (chunkIndex >= chunks.length) {
+            final AtomicReferenceArray<Entry[]>[] newChunks = newChunks(Math.max(chunkIndex + 1, chunks.length * 2));
+            System.arraycopy(chunks, 0, newChunks, 0, chunks.length);
+            chunks = newChunks;
+        }
+        AtomicReferenceArray<Entry[]> chunk = chunks[chunkIndex];
+        if (chunk == null) {
+            chunk = new AtomicReferenceArray<Entry[]>(CHUNK_SIZE);
+            chunks[chunkIndex] = chunk;
+        }
+        //volatile write publishes both new array and new chunk
+        HBCallSiteCache.chunks = chunks;
+        return chunk;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static AtomicReferenceArray<Entry[]>[] newChunks(int length) {
+        return new AtomicReferenceArray[length];
+    }
+
+    private static class Entry {
+        private final Class c;
+        private final int vertexId;
+        private final boolean result;
+
+        private Entry(Class c, int vertexId, boolean result) {
+            this.c = c;
+            this.vertexId = vertexId;
+            this.result = result;
+        }
+    }
+}
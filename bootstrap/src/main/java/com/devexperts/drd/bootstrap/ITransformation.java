@@ -29,4 +29,6 @@ public interface ITransformation {
     ICompositeKeysManager getCompositeKeysManager();
 
     IHBManager getHBManager();
+
+    String dumpStatistics();
 }
@@ -0,0 +1,148 @@
+/*
+ * DRD - Dynamic Data Race Detector for Java programs
+ *
+ * Copyright (C) 2002-2018 Devexperts LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devexperts.drd.bootstrap;
+
+import java.lang.instrument.Instrumentation;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Retransforms already loaded classes in batches of {@link DRDProperties#retransformBatchSize} classes per
+ * {@link Instrumentation#retransformClasses} call. Transformers are invoked by the thread, that requested
+ * retransformation, so batches are retransformed by {@link DRDProperties#retransformThreads} threads in parallel.
+ * If batch fails as a whole (e.g. because of single class, that can't be retransformed), its classes are
+ * retransformed one by one.
+ */
+class Retransformer {
+    private final Instrumentation ins;
+    private final int batchSize;
+    private final int threads;
+
+    Retransformer(Instrumentation ins) {
+        this.ins = ins;
+        this.batchSize = DRDProperties.retransformBatchSize;
+        this.threads = DRDProperties.retransformThreads;
+    }
+
+    /**
+     * @param phase   name of retransformation for logs
+     * @param classes classes to retransform; unmodifiable ones are skipped
+     * @return number of retransformed classes
+     */
+    int retransform(final String phase, List<Class> classes) {
+        final long start = System.currentTimeMillis();
+        final List<Class> modifiable = new ArrayList<Class>(classes.size());
+        for (Class c : classes) {
+            if (ins.isModifiableClass(c)) {
+                modifiable.add(c);
+            }
+        }
+        final int total = modifiable.size();
+        final int batches = (total + batchSize - 1) / batchSize;
+        DRDLogger.log(phase + ": retransforming " + total + " classes (" + (classes.size() - total) +
+                " unmodifiable skipped) in " + batches + " batches by " + threads + " threads");
+        final AtomicInteger done = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+        final List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(batches);
+        for (int i = 0; i < batches; i++) {
+            final int batchIndex = i + 1;
+            final List<Class> batch = modifiable.subList(i * batchSize, Math.min(total, (i + 1) * batchSize));
+            tasks.add(new Callable<Void>() {
+                public Void call() {
+                    final long batchStart = System.currentTimeMillis();
+                    final int batchFailed = retransformBatch(batch.toArray(new Class[batch.size()]));
+                    failed.addAndGet(batchFailed);
+                    DRDLogger.log(phase + ": batch " + batchIndex + "/" + batches + " of " + batch.size() +
+                            " classes done in " + (System.currentTimeMillis() - batchStart) + " ms" +
+                            (batchFailed > 0 ? ", " + batchFailed + " failed" : "") +
+                            " (" + done.addAndGet(batch.size()) + "/" + total + ")");
+                    return null;
+                }
+            });
+        }
+        if (threads == 1 || batches <= 1) {
+            for (Callable<Void> task : tasks) {
+                try {
+                    task.call();
+                } catch (Exception e) {
+                    DRDLogger.error(phase + ": retransformation failed", e);
+                }
+            }
+        } else {
+            runInParallel(phase, tasks);
+        }
+        DRDLogger.log(phase + ": " + (total - failed.get()) + " classes retransformed in " +
+                (System.currentTimeMillis() - start) + " ms" + (failed.get() > 0 ? ", " + failed.get() + " failed" : ""));
+        return total - failed.get();
+    }
+
+    private void runInParallel(final String phase, List<Callable<Void>> tasks) {
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger counter = new AtomicInteger();
+
+            public Thread newThread(Runnable r) {
+                final Thread t = new Thread(r, "DRD-Retransformer-" + counter.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        //threads are started before anything is retransformed, so that their start doesn't run half-transformed code
+        executor.prestartAllCoreThreads();
+        try {
+            for (Future<Void> f : executor.invokeAll(tasks)) {
+                try {
+                    f.get();
+                } catch (ExecutionException e) {
+                    DRDLogger.error(phase + ": retransformation failed", e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            DRDLogger.error(phase + ": retransformation interrupted", e);
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return number of classes, that failed to retransform
+     */
+    private int retransformBatch(Class[] batch) {
+        try {
+            ins.retransformClasses(batch);
+            return 0;
+        } catch (Throwable e) {
+            DRDLogger.debug("Batch of " + batch.length + " classes failed to retransform, retrying one by one: " + e);
+        }
+        int failed = 0;
+        for (Class c : batch) {
+            try {
+                ins.retransformClasses(c);
+            } catch (Throwable e) {
+                failed++;
+                DRDLogger.error("Failed to retransform " + c.getName(), e);
+            }
+        }
+        return failed;
+    }
+}
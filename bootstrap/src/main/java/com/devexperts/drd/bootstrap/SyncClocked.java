@@ -0,0 +1,35 @@
+/*
+ * DRD - Dynamic Data Race Detector for Java programs
+ *
+ * Copyright (C) 2002-2018 Devexperts LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devexperts.drd.bootstrap;
+
+/**
+ * Interface for classes, that keep clock of their monitor in hidden field, so that monitor operations don't look it
+ * up in weak identity map. Methods are generated by DRD transformer and should be called only by thread, that owns
+ * the monitor of object.
+ */
+@SuppressWarnings("UnusedDeclaration")
+public interface SyncClocked {
+    /**
+     * @return clock of monitor of this object or null, if it wasn't created yet
+     */
+    public ISyncClock $drd$getSyncClock();
+
+    public void $drd$setSyncClock(ISyncClock clock);
+}
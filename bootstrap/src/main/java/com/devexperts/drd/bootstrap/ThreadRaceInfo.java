@@ -20,10 +20,13 @@
 package com.devexperts.drd.bootstrap;
 
 public class ThreadRaceInfo extends RaceInfo {
-    public final Exception exception;
+    /**
+     * Id of stack trace of access, see {@link DRDRegistry#getStackTrace(int)}
+     */
+    public final int stackTraceId;
 
-    public ThreadRaceInfo(int location, Exception exception) {
+    public ThreadRaceInfo(int location, int stackTraceId) {
         super(location);
-        this.exception = exception;
+        this.stackTraceId = stackTraceId;
     }
 }
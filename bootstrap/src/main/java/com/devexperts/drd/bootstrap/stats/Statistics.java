@@ -29,4 +29,5 @@ public interface Statistics {
     void lockedSoft(String name);
     void lockedHard(String name);
     void transformed();
+    void confinedFields(int count);
 }
@@ -0,0 +1,54 @@
+/*
+ * DRD - Dynamic Data Race Detector for Java programs
+ *
+ * Copyright (C) 2002-2018 Devexperts LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devexperts.drd.bootstrap;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DataClockTablesTest {
+    @Test
+    public void testOffsetOfSuperclassTable() {
+        final Derived o = new Derived();
+        final long baseOffset = DataClockTables.getOffset(o, Base.class.getName());
+        final long derivedOffset = DataClockTables.getOffset(o, Derived.class.getName());
+        Assert.assertTrue(baseOffset != derivedOffset);
+        DataClockTables.install(o, baseOffset, 2);
+        Assert.assertEquals(2, ((Base) o).$drd$dataClocks.length);
+        Assert.assertNull(o.$drd$dataClocks);
+    }
+
+    @Test
+    public void testInstallKeepsExistingTable() {
+        final Base o = new Base();
+        final long offset = DataClockTables.getOffset(o, Base.class.getName());
+        DataClockTables.install(o, offset, 3);
+        final IDataClock[] table = o.$drd$dataClocks;
+        DataClockTables.install(o, offset, 3);
+        Assert.assertSame(table, o.$drd$dataClocks);
+    }
+
+    private static class Base {
+        volatile IDataClock[] $drd$dataClocks;
+    }
+
+    private static class Derived extends Base {
+        volatile IDataClock[] $drd$dataClocks;
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * DRD - Dynamic Data Race Detector for Java programs
+ *
+ * Copyright (C) 2002-2018 Devexperts LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devexperts.drd.bootstrap;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DetectionSwitchTest {
+    @After
+    public void tearDown() {
+        DetectionSwitch.setRules("");
+    }
+
+    @Test
+    public void testEnabledByDefault() {
+        assertTrue(DetectionSwitch.isEnabled("com/foo/Bar"));
+        assertTrue(DetectionSwitch.isEnabled(1));
+        assertEquals("", DetectionSwitch.getRules());
+    }
+
+    @Test
+    public void testFirstMatchWins() {
+        DetectionSwitch.setRules("# incident window\n+com.foo.Important\n\n-com/foo/\n");
+        assertTrue(DetectionSwitch.isEnabled("com/foo/Important"));
+        assertTrue(DetectionSwitch.isEnabled("com.foo.Important$Inner"));
+        assertFalse(DetectionSwitch.isEnabled("com/foo/Bar"));
+        assertFalse(DetectionSwitch.isEnabled("com.foo.bar.Baz"));
+        assertTrue(DetectionSwitch.isEnabled("com/foobar/Baz"));
+        assertEquals("+com.foo.Important\n-com/foo/\n", DetectionSwitch.getRules());
+    }
+
+    @Test
+    public void testAll() {
+        DetectionSwitch.setRules("+org/\n-*");
+        assertTrue(DetectionSwitch.isEnabled("org/Foo"));
+        assertFalse(DetectionSwitch.isEnabled("com/foo/Bar"));
+        DetectionSwitch.setRules("");
+        assertTrue(DetectionSwitch.isEnabled("com/foo/Bar"));
+    }
+
+    @Test
+    public void testMalformedRulesAreRejected() {
+        DetectionSwitch.setRules("-com/foo/");
+        for (String rules : new String[]{"com/foo/", "+", "-com/foo/\n*com/bar"}) {
+            try {
+                DetectionSwitch.setRules(rules);
+                fail("Rules '" + rules + "' should be rejected");
+            } catch (IllegalArgumentException expected) {
+                //expected
+            }
+        }
+        assertEquals("-com/foo/\n", DetectionSwitch.getRules());
+        assertFalse(DetectionSwitch.isEnabled("com/foo/Bar"));
+    }
+}
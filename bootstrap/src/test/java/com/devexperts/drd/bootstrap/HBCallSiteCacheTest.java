@@ -0,0 +1,102 @@
+/*
+ * DRD - Dynamic Data Race Detector for Java programs
+ *
+ * Copyright (C) 2002-2018 Devexperts LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devexperts.drd.bootstrap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class HBCallSiteCacheTest {
+    private final List<Class> fallbackCalls = new ArrayList<Class>();
+    private DataProvider oldProvider;
+
+    @Before
+    public void setUp() {
+        oldProvider = DRDEntryPoint.getDataProvider();
+        DRDEntryPoint.setDataProvider(new DataProvider() {
+            public AbstractWeakDisposable getWeakDisposableSample(int hbContractId) {
+                throw new UnsupportedOperationException();
+            }
+
+            public IDataClock createNewDataClock(int ownerId) {
+                throw new UnsupportedOperationException();
+            }
+
+            public boolean matchesToHBVertex(Class c, String methodName, int hbVertexId) {
+                fallbackCalls.add(c);
+                return c == String.class && hbVertexId == 1;
+            }
+
+            public ISyncClock getVolatileSyncClock(Object ref, int ownerId, int nameId) {
+                throw new UnsupportedOperationException();
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        DRDEntryPoint.setDataProvider(oldProvider);
+    }
+
+    @Test
+    public void testMonomorphic() {
+        final int site = 1;
+        for (int i = 0; i < 10; i++) {
+            assertTrue(HBCallSiteCache.matches(String.class, "get", 1, site));
+            assertFalse(HBCallSiteCache.matches(String.class, "get", 2, site));
+        }
+        assertEquals(2, fallbackCalls.size());
+    }
+
+    @Test
+    public void testPolymorphicAndMegamorphic() {
+        final int site = 2;
+        final Class[] classes = {String.class, Integer.class, Long.class, Object.class};
+        for (int i = 0; i < 10; i++) {
+            for (Class c : classes) {
+                assertEquals(c == String.class, HBCallSiteCache.matches(c, "get", 1, site));
+            }
+        }
+        assertEquals(classes.length, fallbackCalls.size());
+        //too many receivers: cache at site is given up, but results stay correct
+        final Class[] more = {Short.class, Byte.class, Double.class, Float.class, Character.class};
+        for (Class c : more) {
+            assertFalse(HBCallSiteCache.matches(c, "get", 1, site));
+        }
+        fallbackCalls.clear();
+        assertTrue(HBCallSiteCache.matches(String.class, "get", 1, site));
+        assertEquals(1, fallbackCalls.size());
+    }
+
+    @Test
+    public void testSitesAreIndependent() {
+        final int site = 3;
+        final int farSite = 1 << 20;
+        assertTrue(HBCallSiteCache.matches(String.class, "get", 1, site));
+        assertTrue(HBCallSiteCache.matches(String.class, "get", 1, farSite));
+        assertTrue(HBCallSiteCache.matches(String.class, "get", 1, farSite));
+        assertEquals(2, fallbackCalls.size());
+    }
+}
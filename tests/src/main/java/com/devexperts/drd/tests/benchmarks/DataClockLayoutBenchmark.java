@@ -0,0 +1,121 @@
+/*
+ * DRD - Dynamic Data Race Detector for Java programs
+ *
+ * Copyright (C) 2002-2018 Devexperts LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devexperts.drd.tests.benchmarks;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Compares memory footprint of data clock layouts. Should be launched under DRD twice, with
+ * <code>-Ddrd.data.clock.table=false</code> (one clock field per instrumented field) and
+ * <code>-Ddrd.data.clock.table=true</code> (lazy per-object clock table), e.g.:
+ * <pre>
+ * java -javaagent:drd_agent.jar -Ddrd.data.clock.table=true \
+ *      com.devexperts.drd.tests.benchmarks.DataClockLayoutBenchmark [objects] [shared percent]
+ * </pre>
+ * Creates given number of objects with several instrumented fields; given percent of them is accessed from
+ * another thread, others stay thread-confined and are never accessed after construction. Prints heap used per object
+ * before and after the accesses.
+ */
+public class DataClockLayoutBenchmark {
+    private static final int DEFAULT_OBJECTS = 1000000;
+    private static final int DEFAULT_SHARED_PERCENT = 1;
+
+    public static void main(String[] args) throws InterruptedException {
+        final int objects = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_OBJECTS;
+        final int sharedPercent = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_SHARED_PERCENT;
+        System.out.println("Launching data clock layout benchmark: data_clock_table = " +
+                System.getProperty("drd.data.clock.table", "false") + ", objects = " + objects +
+                ", shared = " + sharedPercent + "%");
+        //load class before it is accessed, so that its fields are instrumented
+        new Node().touch(0);
+        final long base = usedMemory();
+        final Node[] nodes = new Node[objects];
+        for (int i = 0; i < objects; i++) {
+            nodes[i] = new Node();
+        }
+        final long allocated = usedMemory();
+        report("allocated", allocated - base, objects);
+
+        final int step = sharedPercent <= 0 ? 0 : Math.max(1, 100 / sharedPercent);
+        final CountDownLatch done = new CountDownLatch(1);
+        final Thread worker = new Thread(new Runnable() {
+            public void run() {
+                if (step > 0) {
+                    for (int i = 0; i < nodes.length; i += step) {
+                        nodes[i].touch(i);
+                    }
+                }
+                done.countDown();
+            }
+        }, "DataClockLayoutBenchmark-worker");
+        worker.start();
+        done.await();
+        worker.join();
+        long checksum = 0;
+        if (step > 0) {
+            for (int i = 0; i < nodes.length; i += step) {
+                checksum += nodes[i].sum();
+            }
+        }
+        final long shared = usedMemory();
+        report("shared", shared - base, objects);
+        System.out.println("Checksum: " + checksum + ", objects alive: " + nodes.length);
+    }
+
+    private static void report(String phase, long bytes, int objects) {
+        System.out.println(String.format("%-10s heap used: %,d bytes, %.1f bytes per object",
+                phase, bytes, (double) bytes / objects));
+    }
+
+    private static long usedMemory() {
+        final Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        //several collections to get stable estimate
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+
+    //int and boolean fields are not instrumented, so longs and references are used
+    static class Node {
+        long a;
+        long b;
+        long c;
+        Object d;
+
+        void touch(long value) {
+            a = value;
+            b = value + 1;
+            c = value + 2;
+            d = this;
+        }
+
+        long sum() {
+            return a + b + c + (d == null ? 0 : 1);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * DRD - Dynamic Data Race Detector for Java programs
+ *
+ * Copyright (C) 2002-2018 Devexperts LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devexperts.drd.tests.benchmarks;
+
+/**
+ * Measures overhead of instrumentation on code, that consists of many small methods without synchronization and
+ * field accesses. Should be launched under DRD with <code>-Ddrd.lazy.guard.status=false</code> (guard status is
+ * obtained at the entrance of every instrumented method) and <code>-Ddrd.lazy.guard.status=true</code> (it is
+ * obtained only before the first instrumented instruction), and without DRD as a baseline, e.g.:
+ * <pre>
+ * java -javaagent:drd_agent.jar -Ddrd.lazy.guard.status=true \
+ *      com.devexperts.drd.tests.benchmarks.SmallMethodsBenchmark [iterations] [rounds]
+ * </pre>
+ * Prints time per call of small method for each round; first rounds include warmup.
+ */
+public class SmallMethodsBenchmark {
+    private static final int DEFAULT_ITERATIONS = 100000000;
+    private static final int DEFAULT_ROUNDS = 10;
+    //calls of small methods per iteration
+    private static final int CALLS = 5;
+
+    public static void main(String[] args) {
+        final int iterations = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ITERATIONS;
+        final int rounds = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_ROUNDS;
+        System.out.println("Launching small methods benchmark: lazy_guard_status = " +
+                System.getProperty("drd.lazy.guard.status", "true") + ", iterations = " + iterations +
+                ", rounds = " + rounds);
+        final Point p = new Point(3, 4);
+        long checksum = 0;
+        for (int round = 1; round <= rounds; round++) {
+            final long start = System.nanoTime();
+            checksum += run(p, iterations);
+            final long time = System.nanoTime() - start;
+            System.out.println(String.format("round %2d: %.2f ns per call", round, (double) time / iterations / CALLS));
+        }
+        System.out.println("Checksum: " + checksum);
+    }
+
+    private static long run(Point p, int iterations) {
+        long sum = 0;
+        for (int i = 0; i < iterations; i++) {
+            sum += p.scaled(i).manhattan() + mix(i);
+        }
+        return sum;
+    }
+
+    private static int mix(int x) {
+        return square(x) ^ (x >>> 3);
+    }
+
+    private static int square(int x) {
+        return x * x;
+    }
+
+    //final fields are not instrumented, so that only method calls are measured
+    static final class Point {
+        final int x;
+        final int y;
+
+        Point(int x, int y) {
+            this.x = x;
+            this.y = y;
+        }
+
+        Point scaled(int k) {
+            return new Point(x * k, y * k);
+        }
+
+        long manhattan() {
+            return abs(x) + abs(y);
+        }
+
+        private static int abs(int a) {
+            return a < 0 ? -a : a;
+        }
+    }
+}
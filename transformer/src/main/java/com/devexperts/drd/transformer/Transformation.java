@@ -20,6 +20,7 @@
 package com.devexperts.drd.transformer;
 
 import com.devexperts.drd.bootstrap.*;
+import com.devexperts.drd.transformer.config.InstrumentationScopeConfig;
 import com.devexperts.drd.transformer.config.hb.HBManager;
 import com.devexperts.drd.transformer.instrument.ClassInfoCache;
 import com.devexperts.drd.transformer.instrument.CompositeKeysManager;
@@ -67,4 +68,12 @@ public class Transformation implements ITransformation {
     public IHBManager getHBManager() {
         return HBManager.getInstance();
     }
+
+    /**
+     * @return transformation costs so far
+     */
+    public String dumpStatistics() {
+        final InstrumentationScopeConfig scopeConfig = InstrumentationScopeConfig.getInstance();
+        return scopeConfig == null ? "" : scopeConfig.dumpStatistics();
+    }
 }
@@ -26,6 +26,9 @@ import com.devexperts.drd.transformer.config.contract.OwnerNameMatcher;
 import com.devexperts.drd.transformer.config.contract.TargetMatcher;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class InstrumentationScopeConfig {
     private static InstrumentationScopeConfig INSTANCE;
@@ -42,8 +45,17 @@ public class InstrumentationScopeConfig {
     private final TargetMatcher skipForeignCalls;
     private final ScopeConfig instrScopeConfig;
     private final ScopeConfig raceDetectionScopeConfig;
-    private final Set<String> alwaysExclude = new HashSet<String>();
-    private final Set<String> excludeLoaded = new HashSet<String>();
+    private final List<String> excludeLoaded = new ArrayList<String>();
+    private volatile PrefixTrie excludeLoadedIndex = new PrefixTrie();
+    /**
+     * Memoized per-class decisions: scope rules are checked for every field access and call site, while the same
+     * classes are asked again and again
+     */
+    private final ConcurrentMap<String, Boolean> syncDecisions = new ConcurrentHashMap<String, Boolean>();
+    private final ConcurrentMap<String, Boolean> dataDecisions = new ConcurrentHashMap<String, Boolean>();
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong matchingNanos = new AtomicLong();
 
     private InstrumentationScopeConfig(XDRDConfig.InstrumentationScope instrumentationScope) {
         instrScopeConfig = new ScopeConfig(instrumentationScope.syncInterception.rules, instrumentationScope.syncInterception.defaultPolicy);
@@ -60,21 +72,51 @@ public class InstrumentationScopeConfig {
         DRDLogger.log(sb.append("\n").toString());
     }
 
-    public void addToExcludeList(Class[] classes) {
+    public synchronized void addToExcludeList(Class[] classes) {
         for (Class c : classes) {
             excludeLoaded.add(ConfigUtils.toInternalName(c.getName()));
         }
+        final PrefixTrie index = new PrefixTrie();
+        for (String name : excludeLoaded) {
+            index.add(name);
+        }
+        excludeLoadedIndex = index;
+        //sync decisions don't depend on excluded classes
+        dataDecisions.clear();
     }
 
     public boolean shouldInterceptSyncOperations(String className) {
-        return !ConfigUtils.containsByPrefix(alwaysExclude, className) &&
-                instrScopeConfig.shouldInclude(className);
+        return decide(syncDecisions, className, false);
     }
 
     public boolean shouldInterceptDataOperations(String className) {
-        return shouldInterceptSyncOperations(className) &&
-                !ConfigUtils.containsByPrefix(excludeLoaded, className) &&
-                raceDetectionScopeConfig.shouldInclude(className);
+        return decide(dataDecisions, className, true);
+    }
+
+    private boolean decide(ConcurrentMap<String, Boolean> decisions, String className, boolean data) {
+        lookups.incrementAndGet();
+        Boolean res = decisions.get(className);
+        if (res == null) {
+            final long start = System.nanoTime();
+            res = data ? instrScopeConfig.shouldInclude(className) &&
+                    !excludeLoadedIndex.matches(className) &&
+                    raceDetectionScopeConfig.shouldInclude(className) :
+                    instrScopeConfig.shouldInclude(className);
+            matchingNanos.addAndGet(System.nanoTime() - start);
+            misses.incrementAndGet();
+            decisions.put(className, res);
+        }
+        return res;
+    }
+
+    /**
+     * @return cost of scope rules matching so far
+     */
+    public String dumpStatistics() {
+        final long lookups = this.lookups.get();
+        final long misses = this.misses.get();
+        return "Scope matching: " + lookups + " lookups, " + (lookups - misses) + " cached, " + misses +
+                " matched against rules in " + matchingNanos.get() / 1000000 + " ms.";
     }
 
     public RaceDetectionType shouldDetectRacesOnField(String caller, String owner, String field) {
@@ -88,7 +130,7 @@ public class InstrumentationScopeConfig {
     }
 
     public boolean shouldDetectRacesOnMethodCall(String owner, String name) {
-        return !ConfigUtils.containsByPrefix(alwaysExclude, owner) && !shouldInterceptDataOperations(owner) && !skipForeignCalls.matches(owner, name);
+        return !shouldInterceptDataOperations(owner) && !skipForeignCalls.matches(owner, name);
     }
 
     private static class GroupTargetMatcher implements TargetMatcher {
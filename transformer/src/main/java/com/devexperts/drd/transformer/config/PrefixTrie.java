@@ -0,0 +1,137 @@
+/*
+ * DRD - Dynamic Data Race Detector for Java programs
+ *
+ * Copyright (C) 2002-2018 Devexperts LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devexperts.drd.transformer.config;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Ordered set of prefixes of internal class names, indexed by package segments ('/'-separated). Finds the first added
+ * prefix of a name in time proportional to the number of its segments instead of checking every prefix.<br/>
+ * Prefixes keep plain {@link String#startsWith} semantics: all segments of prefix but the last one should be equal
+ * to segments of the name, while the last one should be only the beginning of the corresponding segment (e.g.
+ * "com/foo/Bar" matches "com/foo/BarBaz" and "com/foo/" matches any class in "com/foo" and its subpackages).<br/>
+ * Not thread-safe for modification; should be filled before publication.
+ */
+class PrefixTrie {
+    private static final int[] EMPTY_ARRAY = new int[0];
+
+    private final Node root = new Node();
+    private int size;
+
+    /**
+     * @param prefix prefix to add
+     * @return index of added prefix, i.e. number of prefixes added before
+     */
+    int add(String prefix) {
+        Node node = root;
+        int from = 0;
+        int slash;
+        while ((slash = prefix.indexOf('/', from)) >= 0) {
+            node = node.child(prefix.substring(from, slash));
+            from = slash + 1;
+        }
+        node.addPartial(prefix.substring(from), size);
+        return size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @param s string to check
+     * @return index of the first added prefix of specified string, or -1 if there is no such prefix
+     */
+    int firstMatch(String s) {
+        int res = -1;
+        Node node = root;
+        int from = 0;
+        while (true) {
+            final int slash = s.indexOf('/', from);
+            final int end = slash < 0 ? s.length() : slash;
+            res = node.matchPartial(s, from, end, res);
+            if (slash < 0 || res == 0 || node.children == null) return res;
+            node = node.children.get(s.substring(from, end));
+            if (node == null) return res;
+            from = slash + 1;
+        }
+    }
+
+    boolean matches(String s) {
+        return firstMatch(s) >= 0;
+    }
+
+    private static class Node {
+        private Map<String, Node> children;
+        /**
+         * Last segments of prefixes, that end at this node, mapped to their first index
+         */
+        private Map<String, Integer> partials;
+        /**
+         * Distinct lengths of {@link #partials}, sorted
+         */
+        private int[] partialLengths = EMPTY_ARRAY;
+
+        Node child(String segment) {
+            if (children == null) {
+                children = new HashMap<String, Node>();
+            }
+            Node child = children.get(segment);
+            if (child == null) {
+                child = new Node();
+                children.put(segment, child);
+            }
+            return child;
+        }
+
+        void addPartial(String partial, int index) {
+            if (partials == null) {
+                partials = new HashMap<String, Integer>();
+            }
+            if (partials.containsKey(partial)) return;
+            partials.put(partial, index);
+            final int pos = Arrays.binarySearch(partialLengths, partial.length());
+            if (pos < 0) {
+                final int insert = -pos - 1;
+                final int[] lengths = new int[partialLengths.length + 1];
+                System.arraycopy(partialLengths, 0, lengths, 0, insert);
+                lengths[insert] = partial.length();
+                System.arraycopy(partialLengths, insert, lengths, insert + 1, partialLengths.length - insert);
+                partialLengths = lengths;
+            }
+        }
+
+        /**
+         * @return minimum of res and indices of partials, that are prefixes of segment s[from, end)
+         */
+        int matchPartial(String s, int from, int end, int res) {
+            for (int length : partialLengths) {
+                if (length > end - from) break;
+                final Integer index = partials.get(s.substring(from, from + length));
+                if (index != null && (res < 0 || index < res)) {
+                    res = index;
+                }
+            }
+            return res;
+        }
+    }
+}
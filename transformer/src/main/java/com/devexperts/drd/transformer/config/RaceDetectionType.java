@@ -20,5 +20,5 @@
 package com.devexperts.drd.transformer.config;
 
 public enum RaceDetectionType {
-    DETECT, IGNORE_SCOPE, IGNORE_RULE, IGNORE_CONSTRUCTOR, IGNORE_FINAL, IGNORE_ERROR
+    DETECT, IGNORE_SCOPE, IGNORE_RULE, IGNORE_CONSTRUCTOR, IGNORE_FINAL, IGNORE_ERROR, IGNORE_CONFINED
 }
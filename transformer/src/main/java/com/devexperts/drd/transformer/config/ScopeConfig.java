@@ -26,6 +26,10 @@ public class ScopeConfig {
     public enum RuleType {INCLUDE, EXCLUDE}
 
     private final List<Rule> rules;
+    /**
+     * Paths of {@link #rules} in the same order, so that index of the first match is index of the first matching rule
+     */
+    private final PrefixTrie index = new PrefixTrie();
     private final boolean includeByDefault;
 
     ScopeConfig(List<XDRDConfig.Rule> rules, String defaultPolicy) {
@@ -33,16 +37,16 @@ public class ScopeConfig {
         this.rules = new ArrayList<Rule>();
         if (rules != null) {
             for (XDRDConfig.Rule r : rules) {
-                this.rules.add(new Rule(ConfigUtils.toInternalName(r.path), parseRuleType(r.type)));
+                final Rule rule = new Rule(ConfigUtils.toInternalName(r.path), parseRuleType(r.type));
+                this.rules.add(rule);
+                index.add(Rule.ALL.equals(rule.path) ? "" : rule.path);
             }
         }
     }
 
     boolean shouldInclude(String s) {
-        for (Rule rule : rules) {
-            if (rule.matches(s)) return rule.type.equals(RuleType.INCLUDE);
-        }
-        return includeByDefault;
+        final int i = index.firstMatch(s);
+        return i < 0 ? includeByDefault : rules.get(i).type.equals(RuleType.INCLUDE);
     }
 
     private RuleType parseRuleType(String type) {
@@ -75,10 +79,6 @@ public class ScopeConfig {
             this.type = type;
         }
 
-        private boolean matches(String s) {
-            return ALL.equals(path) || s.startsWith(path);
-        }
-
         @Override
         public String toString() {
             return type.toString() + " path '" + path + "'";
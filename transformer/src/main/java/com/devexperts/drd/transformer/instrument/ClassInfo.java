@@ -34,10 +34,9 @@ public class ClassInfo {
 	private final String internalSuperName;
 	private final String[] internalInterfaceNames;
 
-	// created on first need
-	private String className;
-	private ClassInfo superClassInfo;
-	private ClassInfo[] interfaceInfos;
+	// created on first need, may be shared by concurrent transformations
+	private volatile ClassInfo superClassInfo;
+	private volatile ClassInfo[] interfaceInfos;
 
 	ClassInfo(int access, int version, String internalName, String internalSuperName, String[] internalInterfaceNames) {
 		this.access = access;
@@ -51,6 +50,10 @@ public class ClassInfo {
 		return internalName;
 	}
 
+	public String getInternalSuperName() {
+		return internalSuperName;
+	}
+
 	boolean isInterface() {
 		return (access & Opcodes.ACC_INTERFACE) != 0;
 	}
@@ -79,17 +82,20 @@ public class ClassInfo {
 
 	// Returns null infos inside if not found or failed to load
 	ClassInfo[] getInterfaceInfos(ClassInfoCache ciCache, ClassLoader loader) {
-		if (interfaceInfos == null) {
+		ClassInfo[] infos = interfaceInfos;
+		if (infos == null) {
 			if (internalInterfaceNames == null || internalInterfaceNames.length == 0)
-				interfaceInfos = EMPTY_INFOS;
+				infos = EMPTY_INFOS;
 			else {
 				int n = internalInterfaceNames.length;
-				interfaceInfos = new ClassInfo[n];
+				infos = new ClassInfo[n];
 				for (int i = 0; i < n; i++)
-					interfaceInfos[i] = ciCache.getOrBuildClassInfo(internalInterfaceNames[i], loader);
+					infos[i] = ciCache.getOrBuildClassInfo(internalInterfaceNames[i], loader);
 			}
+			// published only when filled
+			interfaceInfos = infos;
 		}
-		return interfaceInfos;
+		return infos;
 	}
 
 	// throws RuntimeException if not found or failed to load
@@ -24,54 +24,48 @@ import com.devexperts.drd.bootstrap.DRDLogger;
 import org.objectweb.asm.ClassReader;
 
 import java.io.InputStream;
-import java.util.*;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
 
 /**
  * Caches class info for each class loader. Reference to class loader is never explicitly stored and is
  * always passed in arguments, so that there is not strong references to it. They are cached using
- * weak references to make class loaders eligible for garbage collection despite this cache.
+ * weak references to make class loaders eligible for garbage collection despite this cache.<br/>
+ * Only lookup of class loader's map is synchronized; class infos are read from class loader resources in parallel,
+ * see {@link ClassInfoMap}.
  */
 public class ClassInfoCache {
-    // ClassLoader -> internalClassName -> ClassInfo
-	private WeakHashMap<ClassLoader, ClassInfoMap> classInfoCache = new WeakHashMap<ClassLoader, ClassInfoMap>();
+	// ClassLoader -> internalClassName -> ClassInfo
+	private final WeakHashMap<ClassLoader, ClassInfoMap> classInfoCache = new WeakHashMap<ClassLoader, ClassInfoMap>();
+	// bootstrap class loader's map, that is requested most often, is kept out of weak map
+	private final ClassInfoMap bootstrapClassInfoMap = new ClassInfoMap();
 
 	// Returns null if not found or failed to load
-	public synchronized ClassInfo getOrBuildClassInfo(String internalClassName, ClassLoader loader) {
-		ClassInfo classInfo = getOrInitClassInfoMap(loader).get(internalClassName);
-		if (classInfo != null)
-			return classInfo;
-		ClassInfoMap classInfoMap = classInfoCache.get(loader);
-		classInfo = buildClassInfo(internalClassName, loader);
-		if (classInfo != null)
-			classInfoMap.put(internalClassName, classInfo);
-		return classInfo;
+	public ClassInfo getOrBuildClassInfo(final String internalClassName, final ClassLoader loader) {
+		return getOrInitClassInfoMap(loader).getOrBuild(internalClassName, new Callable<ClassInfo>() {
+			public ClassInfo call() {
+				return buildClassInfo(internalClassName, loader);
+			}
+		});
 	}
 
 	// throws RuntimeException if not found or failed to load
-	public synchronized ClassInfo getOrBuildRequiredClassInfo(String internalClassName, ClassLoader loader) {
+	public ClassInfo getOrBuildRequiredClassInfo(String internalClassName, ClassLoader loader) {
 		ClassInfo classInfo = getOrBuildClassInfo(internalClassName, loader);
 		if (classInfo == null)
 			throw new ClassInfoNotLoadedException("Cannot load class information for " + internalClassName.replace('/', '.'));
 		return classInfo;
 	}
 
-	synchronized ClassInfoMap getOrInitClassInfoMap(ClassLoader loader) {
-		ClassInfoMap classInfoMap = classInfoCache.get(loader);
-		if (classInfoMap == null) {
-			// make sure we have parent loader's map first
-			if (loader != null)
-				getOrInitClassInfoMap(loader.getParent());
-			// at first time when class loader is discovered, tracked classes in this class loader are cached
-			classInfoCache.put(loader, classInfoMap = new ClassInfoMap());
-			classInfoMap.doneInit();
-		} else
-			try {
-				classInfoMap.waitInit();
-			} catch (InterruptedException e) {
-				DRDLogger.log("Interrupted while waiting to initialize tracking classes");
-				Thread.currentThread().interrupt();
-			}
-		return classInfoMap;
+	ClassInfoMap getOrInitClassInfoMap(ClassLoader loader) {
+		if (loader == null)
+			return bootstrapClassInfoMap;
+		synchronized (classInfoCache) {
+			ClassInfoMap classInfoMap = classInfoCache.get(loader);
+			if (classInfoMap == null)
+				classInfoCache.put(loader, classInfoMap = new ClassInfoMap());
+			return classInfoMap;
+		}
 	}
 
 	private ClassInfo buildClassInfo(String internalClassName, ClassLoader loader) {
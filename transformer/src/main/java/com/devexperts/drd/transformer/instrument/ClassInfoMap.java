@@ -19,32 +19,94 @@
 
 package com.devexperts.drd.transformer.instrument;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
+/**
+ * Class infos of a single class loader. Each class info is built at most once: concurrent requests of the same class
+ * wait for the same future, while different classes are built in parallel. Absent classes are not remembered,
+ * since they may be defined later. Reentrant request from the building thread itself (e.g. when reading resource
+ * loads and transforms some class) builds class info once more instead of waiting for itself.
+ */
 public class ClassInfoMap {
-	private final Map<String, ClassInfo> map = new HashMap<String, ClassInfo>();
+	private final ConcurrentMap<String, Future<ClassInfo>> map = new ConcurrentHashMap<String, Future<ClassInfo>>();
 
-	// make sure at most one thread does initialization
-	private Thread initTrackedClassesThread = Thread.currentThread();
+	// Returns null if not found or is being built
+	public ClassInfo get(String internalClassName) {
+		Future<ClassInfo> future = map.get(internalClassName);
+		return future == null || !future.isDone() ? null : getResult(future);
+	}
 
-	public synchronized void doneInit() {
-		initTrackedClassesThread = null;
-		notifyAll();
+	public void put(String internalClassName, ClassInfo classInfo) {
+		FutureTask<ClassInfo> future = new FutureTask<ClassInfo>(new Constant(classInfo));
+		future.run();
+		map.put(internalClassName, future);
 	}
 
-	public synchronized void waitInit() throws InterruptedException {
-		while (initTrackedClassesThread != null && initTrackedClassesThread != Thread.currentThread())
-			wait();
+	// Returns null if builder returned null
+	ClassInfo getOrBuild(String internalClassName, Callable<ClassInfo> builder) {
+		Future<ClassInfo> future = map.get(internalClassName);
+		if (future == null) {
+			BuildTask task = new BuildTask(builder);
+			future = map.putIfAbsent(internalClassName, task);
+			if (future == null) {
+				future = task;
+				task.run();
+			}
+		}
+		if (future instanceof BuildTask && ((BuildTask) future).builder == Thread.currentThread() && !future.isDone())
+			return getResult(new BuildTask(builder).runAndGet());
+		ClassInfo classInfo = getResult(future);
+		if (classInfo == null)
+			map.remove(internalClassName, future);
+		return classInfo;
 	}
 
-	public ClassInfo get(String internalClassName) {
-		return map.get(internalClassName);
+	private static ClassInfo getResult(Future<ClassInfo> future) {
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					return future.get();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		} catch (ExecutionException e) {
+			//builder handles its exceptions itself
+			throw new IllegalStateException(e.getCause());
+		} finally {
+			if (interrupted)
+				Thread.currentThread().interrupt();
+		}
 	}
 
-	public void put(String internalClassName, ClassInfo classInfo) {
-		map.put(internalClassName, classInfo);
+	private static class BuildTask extends FutureTask<ClassInfo> {
+		final Thread builder = Thread.currentThread();
+
+		BuildTask(Callable<ClassInfo> callable) {
+			super(callable);
+		}
+
+		BuildTask runAndGet() {
+			run();
+			return this;
+		}
 	}
 
-}
+	private static class Constant implements Callable<ClassInfo> {
+		private final ClassInfo classInfo;
 
+		Constant(ClassInfo classInfo) {
+			this.classInfo = classInfo;
+		}
+
+		public ClassInfo call() {
+			return classInfo;
+		}
+	}
+}
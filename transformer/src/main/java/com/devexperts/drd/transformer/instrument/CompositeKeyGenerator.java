@@ -21,6 +21,8 @@ package com.devexperts.drd.transformer.instrument;
 
 import com.devexperts.drd.bootstrap.CollectionUtils;
 import com.devexperts.drd.bootstrap.AbstractWeakDisposable;
+import com.devexperts.drd.bootstrap.DisposableReference;
+import com.devexperts.drd.bootstrap.WeakDisposable;
 import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.Label;
 import org.objectweb.asm.Type;
@@ -41,6 +43,9 @@ import static org.objectweb.asm.Type.*;
 public class CompositeKeyGenerator {
     private static final String FIELD_PREFIX = "field";
     private static final Type WEAK_REFERENCE_TYPE = getType(WeakReference.class);
+    private static final Type DISPOSABLE_REFERENCE_TYPE = getType(DisposableReference.class);
+    private static final Method DISPOSABLE_REFERENCE_INIT_METHOD = new Method(INIT_METHOD, VOID_TYPE,
+            new Type[]{OBJECT_TYPE, getType(WeakDisposable.class)});
     private static final Type UNSUPPORTED_OPERATION_EXCEPTION_TYPE = getType(UnsupportedOperationException.class);
     private static final String UNIQUE_SYNC_KEY = "uniqueSyncKey";
     private static final String OWNER_ID = "ownerId";
@@ -450,10 +455,11 @@ public class CompositeKeyGenerator {
                         mv.putField(ownerType, FIELD_PREFIX + key, type);
                     } else {
                         mv.loadThis();
-                        mv.newInstance(WEAK_REFERENCE_TYPE);
+                        mv.newInstance(DISPOSABLE_REFERENCE_TYPE);
                         mv.dup();
                         mv.loadArg(0);
-                        mv.invokeConstructor(WEAK_REFERENCE_TYPE, new Method(INIT_METHOD, VOID_TYPE, new Type[]{OBJECT_TYPE}));
+                        mv.loadThis();
+                        mv.invokeConstructor(DISPOSABLE_REFERENCE_TYPE, DISPOSABLE_REFERENCE_INIT_METHOD);
                         mv.putField(ownerType, FIELD_PREFIX + key, WEAK_REFERENCE_TYPE);
                     }
                     mv.loadThis();
@@ -673,6 +679,9 @@ public class CompositeKeyGenerator {
         copyMV.dup();
         copyMV.invokeConstructor(ownerType, new Method(INIT_METHOD, VOID_TYPE, EMPTY_TYPE_ARRAY));
         //stack: owner
+        final int copyLocal = copyMV.newLocal(ownerType);
+        copyMV.dup();
+        copyMV.storeLocal(copyLocal);
 
         copyMV.dup();
         copyMV.loadThis();
@@ -702,11 +711,12 @@ public class CompositeKeyGenerator {
                 copyMV.getField(sampleType, FIELD_PREFIX + i, fieldType);
                 copyMV.putField(ownerType, FIELD_PREFIX + i, fieldType);
             } else {
-                copyMV.newInstance(WEAK_REFERENCE_TYPE);
+                copyMV.newInstance(DISPOSABLE_REFERENCE_TYPE);
                 copyMV.dup();
                 copyMV.loadThis();
                 copyMV.getField(sampleType, FIELD_PREFIX + i, OBJECT_TYPE);
-                copyMV.invokeConstructor(WEAK_REFERENCE_TYPE, new Method(INIT_METHOD, VOID_TYPE, new Type[]{OBJECT_TYPE}));
+                copyMV.loadLocal(copyLocal);
+                copyMV.invokeConstructor(DISPOSABLE_REFERENCE_TYPE, DISPOSABLE_REFERENCE_INIT_METHOD);
                 copyMV.putField(ownerType, FIELD_PREFIX + i, WEAK_REFERENCE_TYPE);
             }
         }
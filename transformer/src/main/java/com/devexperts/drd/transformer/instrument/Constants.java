@@ -29,6 +29,7 @@ public class Constants {
     public static final String DRD_SYNTHETIC_CLASSES_PREFIX = "drd";
     public static final Type OBJECT_TYPE = Type.getType(Object.class);
     public static final String VC_SUFFIX = "$vc";
+    public static final String VOLATILE_CLOCK_SUFFIX = DataProvider.VOLATILE_CLOCK_SUFFIX;
     public static final String INIT_METHOD = "<init>";
     public static final String CLINIT_METHOD = "<clinit>";
     public static final String VOID_METHOD_DESCRIPTOR = Type.getMethodDescriptor(Type.VOID_TYPE, EMPTY_TYPE_ARRAY);
@@ -43,7 +44,22 @@ public class Constants {
     public static final Type DRDInterceptorType = Type.getType(DRDInterceptor.class);
     public static final Type DRDRegistryType = Type.getType(DRDRegistry.class);
     public static final Type DRDDataProviderType = Type.getType(DataProvider.class);
+    public static final Type HBCallSiteCacheType = Type.getType(HBCallSiteCache.class);
+    public static final Type DetectionSwitchType = Type.getType(DetectionSwitch.class);
     public static final Type ClockedType = Type.getType(Clocked.class);
+    public static final Type SyncClockedType = Type.getType(SyncClocked.class);
+    public static final String SYNC_CLOCK_FIELD = "$drd$syncClock";
+    public static final Method GET_SYNC_CLOCK_METHOD = new Method("$drd$getSyncClock", ISYNCCLOCK_TYPE, EMPTY_TYPE_ARRAY);
+    public static final Method SET_SYNC_CLOCK_METHOD = new Method("$drd$setSyncClock", Type.VOID_TYPE, new Type[]{ISYNCCLOCK_TYPE});
+    /**
+     * Per-object table of data clocks of instance fields, used instead of {@link #VC_SUFFIX} fields if
+     * {@link com.devexperts.drd.bootstrap.DRDProperties#dataClockTable} is set
+     */
+    public static final String DATA_CLOCK_TABLE_FIELD = DataClockTables.TABLE_FIELD;
+    public static final Type DATA_CLOCK_TABLE_TYPE = Type.getType(IDataClock[].class);
+    public static final String DATA_CLOCK_TABLE_OFFSET_FIELD = DataClockTables.OFFSET_FIELD;
+    public static final Type DataClockTablesType = Type.getType(DataClockTables.class);
+    public static final String DATA_CLOCK_ACCESSOR_SUFFIX = "$vca";
     public static final Type ABSTRACT_WEAK_DISPOSABLE_TYPE = Type.getType(AbstractWeakDisposable.class);
     public static final Type CLASSLOADER_TYPE = Type.getType(ClassLoader.class);
     public static final Type SYSTEM_TYPE = Type.getType(System.class);
@@ -55,4 +71,11 @@ public class Constants {
     public static final Method DRDInterceptorDie = new Method("beforeDying", Type.VOID_TYPE, EMPTY_TYPE_ARRAY);
     public static final Method LOAD_CLASS_METHOD = new Method("loadClass", CLASS_TYPE, new Type[]{STRING_TYPE});
     public static final Method LOAD_CLASS_METHOD_RESOLVE = new Method("loadClass", CLASS_TYPE, new Type[]{STRING_TYPE, Type.BOOLEAN_TYPE});
-}
\ No newline at end of file
+
+    /**
+     * @return static accessor of data clock of instance field, that is kept in {@link #DATA_CLOCK_TABLE_FIELD}
+     */
+    public static Method getDataClockAccessor(String fieldName) {
+        return new Method(fieldName + DATA_CLOCK_ACCESSOR_SUFFIX, IDATACLOCK_TYPE, new Type[]{OBJECT_TYPE});
+    }
+}
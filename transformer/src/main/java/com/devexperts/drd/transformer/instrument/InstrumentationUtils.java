@@ -66,6 +66,9 @@ public class InstrumentationUtils {
     public static final Method CREATE_NEW_DATA_CLOCK = new Method("createNewDataClock", Constants.IDATACLOCK_TYPE, new Type[]{INT_TYPE});
     public static final Method GET_WEAK_DISPOSABLE_SAMPLE = new Method("getWeakDisposableSample", Constants.ABSTRACT_WEAK_DISPOSABLE_TYPE, new Type[]{INT_TYPE});
     public static final Method MATCHES_TO_HB_VERTEX = new Method("matchesToHBVertex", Type.BOOLEAN_TYPE, new Type[]{Constants.CLASS_TYPE, Constants.STRING_TYPE, Type.INT_TYPE});
+    public static final Method SWITCH_STATUS = new Method("status", Type.INT_TYPE, new Type[]{Type.INT_TYPE});
+    public static final Method SWITCH_IS_ENABLED = new Method("isEnabled", Type.BOOLEAN_TYPE, new Type[]{Type.INT_TYPE});
+    public static final Method MATCHES_AT_CALL_SITE = new Method("matches", Type.BOOLEAN_TYPE, new Type[]{Constants.CLASS_TYPE, Constants.STRING_TYPE, Type.INT_TYPE, Type.INT_TYPE});
 
     private InstrumentationUtils() {
     }
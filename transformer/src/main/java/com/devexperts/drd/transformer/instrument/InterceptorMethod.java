@@ -36,6 +36,8 @@ public enum InterceptorMethod {
     MONITOR_ENTER(new Method("afterMonitorEnter", VOID_TYPE, new Type[]{OBJECT_TYPE, INT_TYPE, INT_TYPE, BOOLEAN_TYPE})),
     VOLATILE_READ(new Method("afterVolatileRead", VOID_TYPE, new Type[]{OBJECT_TYPE, INT_TYPE, INT_TYPE, INT_TYPE, INT_TYPE, BOOLEAN_TYPE})),
     VOLATILE_WRITE(new Method("beforeVolatileWrite", VOID_TYPE, new Type[]{OBJECT_TYPE, INT_TYPE, INT_TYPE, INT_TYPE, INT_TYPE, BOOLEAN_TYPE})),
+    VOLATILE_CLOCK_READ(new Method("afterVolatileClockRead", VOID_TYPE, new Type[]{ISYNCCLOCK_TYPE, INT_TYPE, INT_TYPE, BOOLEAN_TYPE})),
+    VOLATILE_CLOCK_WRITE(new Method("beforeVolatileClockWrite", VOID_TYPE, new Type[]{ISYNCCLOCK_TYPE, INT_TYPE, INT_TYPE, BOOLEAN_TYPE})),
     MANUAL_SYNC_SEND(new Method("beforeManualSyncSend", VOID_TYPE, new Type[]{ABSTRACT_WEAK_DISPOSABLE_TYPE, INT_TYPE, INT_TYPE, BOOLEAN_TYPE})),
     MANUAL_SYNC_RECEIVE(new Method("afterManualSyncReceive", VOID_TYPE, new Type[]{ABSTRACT_WEAK_DISPOSABLE_TYPE, INT_TYPE, INT_TYPE, BOOLEAN_TYPE})),
     MANUAL_SYNC_FULL(new Method("afterManualSyncFullHB", VOID_TYPE, new Type[]{ABSTRACT_WEAK_DISPOSABLE_TYPE, INT_TYPE, INT_TYPE, BOOLEAN_TYPE})),
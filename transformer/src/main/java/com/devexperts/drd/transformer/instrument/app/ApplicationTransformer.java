@@ -24,9 +24,12 @@ import com.devexperts.drd.bootstrap.DRDLogger;
 import com.devexperts.drd.transformer.config.DRDConfigManager;
 import com.devexperts.drd.transformer.config.InstrumentationScopeConfig;
 import com.devexperts.drd.transformer.instrument.CachingTransformer;
+import com.devexperts.drd.transformer.instrument.ClassInfo;
 import com.devexperts.drd.transformer.instrument.ClassInfoCache;
 import com.devexperts.drd.transformer.instrument.ClassVisitorFactory;
 import com.devexperts.drd.transformer.instrument.Constants;
+import com.devexperts.drd.transformer.instrument.cache.Journal;
+import com.devexperts.drd.transformer.instrument.cache.TransformationCache;
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.ClassWriter;
@@ -44,6 +47,7 @@ public class ApplicationTransformer extends CachingTransformer {
         }
     };
     private final ClassLoader transformerCL;
+    private final TransformationCache cache = TransformationCache.open();
 
     public ApplicationTransformer(ClassLoader transformerCL, ClassInfoCache ciCache) {
         super("ApplicationTransformer", ciCache);
@@ -53,6 +57,9 @@ public class ApplicationTransformer extends CachingTransformer {
     }
 
     public byte[] doTransform(ClassLoader loader, String className, byte[] classfileBuffer, boolean retransform) {
+        if (cache != null) {
+            cache.attach();
+        }
         if (className.startsWith("com/devexperts/drd/tests/examples/") && className.endsWith("TestRunner")) {
             DRDLogger.log("\n\n-------------------------------\nModel example: " + className + "\n------------------------------------\n");
         }
@@ -81,7 +88,9 @@ public class ApplicationTransformer extends CachingTransformer {
                 break;
             case DETECT_SYNC:
             case DETECT_RACES: //fall through
-                modifiedClassFileBuffer = transformApplicationClass(className, classfileBuffer, mode, loader);
+                modifiedClassFileBuffer = cache == null ?
+                        transformApplicationClass(className, classfileBuffer, mode, loader) :
+                        transformApplicationClassCached(className, classfileBuffer, mode, loader);
                 break;
             default:
                 throw new IllegalArgumentException("Unknown mode " + mode);
@@ -90,24 +99,44 @@ public class ApplicationTransformer extends CachingTransformer {
         return modifiedClassFileBuffer;
     }
 
-    private byte[] transformApplicationClass(String className, byte[] classfileBuffer, TransformationMode mode, ClassLoader cl) {
-        ClassReader cr = new ClassReader(classfileBuffer);
-        UsageAnalyzer analyzer = new UsageAnalyzer(mode == TransformationMode.DETECT_RACES);
-        cr.accept(analyzer, ClassReader.SKIP_FRAMES + ClassReader.SKIP_DEBUG);
-        if (TransformationMode.DETECT_RACES.equals(mode)) {
-            cr = new ClassReader(classfileBuffer);
-            ClassWriter suidCW = getClassWriter(cl, cr, analyzer.classVersion, className);
-            ClassVisitor suidV = new SerialVersionUIDAdder(suidCW);
-            cr.accept(suidV, ClassReader.EXPAND_FRAMES);
-            byte[] buffer2 = suidCW.toByteArray();
+    private byte[] transformApplicationClassCached(String className, byte[] classfileBuffer, TransformationMode mode, ClassLoader cl) {
+        final byte[] key = cache.key(className, classfileBuffer, mode.name());
+        byte[] res = cache.get(key, className);
+        if (res != null) {
+            DRDLogger.debug(className + " taken from transformation cache.");
+            return res;
+        }
+        final Journal journal = cache.begin();
+        try {
+            res = transformApplicationClass(className, classfileBuffer, mode, cl);
+        } finally {
+            cache.end(journal);
+        }
+        if (res != null) {
+            cache.put(key, className, journal, res);
+        }
+        return res;
+    }
 
-            cr = new ClassReader(buffer2);
+    /**
+     * Package-private for TransformBenchmark
+     */
+    byte[] transformApplicationClass(String className, byte[] classfileBuffer, TransformationMode mode, ClassLoader cl) {
+        final boolean detectRaces = TransformationMode.DETECT_RACES.equals(mode);
+        ClassReader cr = new ClassReader(classfileBuffer);
+        //read-only pre-scan: field accesses and confinement are known only after all methods are read, but are needed
+        //when class header is written; without race detection only declarations are needed
+        UsageAnalyzer analyzer = new UsageAnalyzer(detectRaces);
+        cr.accept(analyzer, detectRaces ? ClassReader.SKIP_FRAMES + ClassReader.SKIP_DEBUG : ClassReader.SKIP_CODE);
+        if (detectRaces) {
+            //single write: SerialVersionUIDAdder is upstream of GenerateClass, so it computes SUID from original members
             ClassWriter cw = getClassWriter(cl, cr, analyzer.classVersion, className);
-            cr.accept(new GenerateClass(cw, analyzer.fields), ClassReader.EXPAND_FRAMES);
+            final boolean clockedSuperclass = hasRaceDetectingSuperclass(cr.getSuperName(), cl);
+            cr.accept(new SerialVersionUIDAdder(new GenerateClass(cw, analyzer.fields, analyzer.volatileFields,
+                    clockedSuperclass)), ClassReader.EXPAND_FRAMES);
             DRDLogger.debug(className + " modified to detect sync events and races.");
             return cw.toByteArray();
         } else if (TransformationMode.DETECT_SYNC.equals(mode)) {
-            cr = new ClassReader(classfileBuffer);
             ClassWriter cw = getClassWriter(cl, cr, analyzer.classVersion, className);
             cr.accept(new ClassTransformer(cw, false), ClassReader.EXPAND_FRAMES);
             DRDLogger.debug(className + " modified to detect sync events.");
@@ -117,6 +146,23 @@ public class ApplicationTransformer extends CachingTransformer {
         }
     }
 
+    /**
+     * Superclass is usually transformed after its subclass, so this is decided by mode of superclass, not by result
+     * of its transformation. Superclass, that was loaded before agent, is retransformed without race detection,
+     * then its subclasses fall back to storing clocks outside of objects.
+     *
+     * @return true if some superclass is transformed to detect races, i.e. it already implements
+     * {@link com.devexperts.drd.bootstrap.Clocked} and {@link com.devexperts.drd.bootstrap.SyncClocked}
+     */
+    private boolean hasRaceDetectingSuperclass(String superName, ClassLoader cl) {
+        for (String name = superName; name != null; ) {
+            if (getMode(name) == TransformationMode.DETECT_RACES) return true;
+            final ClassInfo info = ciCache.getOrBuildClassInfo(name, cl);
+            if (info == null) return false;
+            name = info.getInternalSuperName();
+        }
+        return false;
+    }
 
     private TransformationMode getMode(String className) {
         if (className.equals("java/lang/Thread")) return TransformationMode.THREAD;
@@ -56,8 +56,16 @@ public class ClassTransformer extends ClassVisitor {
     public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
         MethodVisitor mv = super.visitMethod(access, name, desc, signature, exceptions);
         if (!Constants.CLINIT_METHOD.equals(name) && !Constants.INIT_METHOD.equals(name) && !isInterface && !isNative && mv != null) {
-            mv = new SynchronizationTransformer(new GeneratorAdapter(mv, access, name, desc), access, owner, name, detectRaces);
-            mv = new JSRInlinerAdapter(mv, access, name, desc, signature, exceptions);
+            final SynchronizationTransformer st =
+                    new SynchronizationTransformer(new GeneratorAdapter(mv, access, name, desc), access, owner, name, detectRaces);
+            //inliner buffers the whole method anyway, so it is scanned before being passed on
+            mv = new JSRInlinerAdapter(Opcodes.ASM5, st, access, name, desc, signature, exceptions) {
+                @Override
+                public void visitEnd() {
+                    st.prescan(instructions);
+                    super.visitEnd();
+                }
+            };
         }
         return mv;
     }
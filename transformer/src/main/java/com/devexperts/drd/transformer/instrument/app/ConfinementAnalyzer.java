@@ -0,0 +1,212 @@
+/*
+ * DRD - Dynamic Data Race Detector for Java programs
+ *
+ * Copyright (C) 2002-2018 Devexperts LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devexperts.drd.transformer.instrument.app;
+
+import com.devexperts.drd.transformer.instrument.Constants;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.VarInsnNode;
+import org.objectweb.asm.tree.analysis.Analyzer;
+import org.objectweb.asm.tree.analysis.AnalyzerException;
+import org.objectweb.asm.tree.analysis.Frame;
+import org.objectweb.asm.tree.analysis.SourceInterpreter;
+import org.objectweb.asm.tree.analysis.SourceValue;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Proves private fields of analyzed class, on which DRD can't detect any race, so that neither data clock nor interceptor
+ * calls are generated for them. Accesses from constructors and static initializers are ignored by DRD anyway
+ * (see {@link com.devexperts.drd.transformer.config.RaceDetectionType#IGNORE_CONSTRUCTOR}), so field is confined if
+ * <ul>
+ * <li>it is written only in constructors or static initializer: reads never race with each other, or</li>
+ * <li>it is accessed only in synchronized methods of its class: on receiver {@code this} for instance field
+ * and in static methods for static field, so that all accesses are ordered by the same monitor.</li>
+ * </ul>
+ * Only private fields are considered, since they can't be accessed directly from other classes. Nest-based access
+ * of Java 11 breaks this, so classes of newer versions are not analyzed.
+ */
+class ConfinementAnalyzer {
+    private static final int NESTMATES_VERSION = 55;
+
+    private final String className;
+    /**
+     * Candidate fields: name -> is static
+     */
+    private final Map<String, Boolean> candidates = new HashMap<String, Boolean>();
+    private final Set<String> writtenAfterInit = new HashSet<String>();
+    private final Set<String> accessedOutsideMonitor = new HashSet<String>();
+
+    ConfinementAnalyzer(String className) {
+        this.className = className;
+    }
+
+    static boolean isApplicable(int classVersion, int classAccess) {
+        return classVersion < NESTMATES_VERSION && (classAccess & Opcodes.ACC_INTERFACE) == 0;
+    }
+
+    void visitField(int access, String name) {
+        if ((access & Opcodes.ACC_PRIVATE) != 0 && (access & (Opcodes.ACC_FINAL | Opcodes.ACC_VOLATILE)) == 0) {
+            candidates.put(name, (access & Opcodes.ACC_STATIC) != 0);
+        }
+    }
+
+    MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions, MethodVisitor mv) {
+        if (Constants.INIT_METHOD.equals(name) || Constants.CLINIT_METHOD.equals(name)) {
+            return mv;
+        }
+        final boolean isStatic = (access & Opcodes.ACC_STATIC) != 0;
+        final boolean isSynchronized = (access & Opcodes.ACC_SYNCHRONIZED) != 0;
+        if (isSynchronized && !isStatic) {
+            return new SynchronizedMethodAnalyzer(access, name, desc, signature, exceptions, mv);
+        }
+        return new MethodAnalyzer(mv, isSynchronized && isStatic);
+    }
+
+    /**
+     * @return names of confined fields; should be called after the whole class was visited
+     */
+    Set<String> getConfinedFields() {
+        final Set<String> res = new HashSet<String>();
+        for (String name : candidates.keySet()) {
+            if (!writtenAfterInit.contains(name) || !accessedOutsideMonitor.contains(name)) {
+                res.add(name);
+            }
+        }
+        return res;
+    }
+
+    private boolean isCandidate(String owner, String name) {
+        return owner.equals(className) && candidates.containsKey(name);
+    }
+
+    private void access(int opcode, String name, boolean underMonitor) {
+        if (opcode == Opcodes.PUTFIELD || opcode == Opcodes.PUTSTATIC) {
+            writtenAfterInit.add(name);
+        }
+        if (!underMonitor) {
+            accessedOutsideMonitor.add(name);
+        }
+    }
+
+    /**
+     * Analyzes method, that is not synchronized on {@code this}: only static fields of static synchronized method are
+     * accessed under monitor of class.
+     */
+    private class MethodAnalyzer extends MethodVisitor {
+        private final boolean staticSynchronized;
+
+        MethodAnalyzer(MethodVisitor mv, boolean staticSynchronized) {
+            super(Opcodes.ASM5, mv);
+            this.staticSynchronized = staticSynchronized;
+        }
+
+        @Override
+        public void visitFieldInsn(int opcode, String owner, String name, String desc) {
+            if (isCandidate(owner, name)) {
+                access(opcode, name, staticSynchronized && candidates.get(name));
+            }
+            super.visitFieldInsn(opcode, owner, name, desc);
+        }
+    }
+
+    /**
+     * Analyzes synchronized instance method: instance field is accessed under monitor of {@code this} iff receiver
+     * of every access is loaded from local 0, that is never reassigned. Static fields are never under this monitor.
+     */
+    private class SynchronizedMethodAnalyzer extends MethodNode {
+        private final MethodVisitor next;
+
+        SynchronizedMethodAnalyzer(int access, String name, String desc, String signature, String[] exceptions, MethodVisitor next) {
+            super(Opcodes.ASM5, access, name, desc, signature, exceptions);
+            this.next = next;
+        }
+
+        @Override
+        public void visitEnd() {
+            super.visitEnd();
+            analyze();
+            if (next != null) {
+                accept(next);
+            }
+        }
+
+        private void analyze() {
+            boolean hasCandidates = false;
+            boolean thisReassigned = false;
+            for (AbstractInsnNode insn = instructions.getFirst(); insn != null; insn = insn.getNext()) {
+                if (insn instanceof FieldInsnNode) {
+                    hasCandidates |= isCandidate(((FieldInsnNode) insn).owner, ((FieldInsnNode) insn).name);
+                } else if (insn.getOpcode() == Opcodes.ASTORE && ((VarInsnNode) insn).var == 0) {
+                    thisReassigned = true;
+                }
+            }
+            if (!hasCandidates) return;
+            Frame<SourceValue>[] frames = null;
+            if (!thisReassigned) {
+                try {
+                    frames = new Analyzer<SourceValue>(new SourceInterpreter()).analyze(className, this);
+                } catch (AnalyzerException e) {
+                    //treat all accesses as unprotected
+                }
+            }
+            for (int i = 0; i < instructions.size(); i++) {
+                final AbstractInsnNode insn = instructions.get(i);
+                if (!(insn instanceof FieldInsnNode)) continue;
+                final FieldInsnNode fieldInsn = (FieldInsnNode) insn;
+                if (!isCandidate(fieldInsn.owner, fieldInsn.name)) continue;
+                access(fieldInsn.getOpcode(), fieldInsn.name, !candidates.get(fieldInsn.name) && frames != null &&
+                        isReceiverThis(frames, i, fieldInsn));
+            }
+        }
+
+        private boolean isReceiverThis(Frame<SourceValue>[] frames, int index, FieldInsnNode insn) {
+            final Frame<SourceValue> frame = frames[index];
+            if (frame == null) {
+                //unreachable code
+                return true;
+            }
+            final int depth = insn.getOpcode() == Opcodes.PUTFIELD ? 2 : 1;
+            return isThis(frames, frame.getStack(frame.getStackSize() - depth));
+        }
+
+        /**
+         * @return true if value is loaded from local 0, probably through DUP (e.g. for {@code this.field++})
+         */
+        private boolean isThis(Frame<SourceValue>[] frames, SourceValue value) {
+            if (value.insns.isEmpty()) return false;
+            for (AbstractInsnNode source : value.insns) {
+                if (source.getOpcode() == Opcodes.DUP) {
+                    final Frame<SourceValue> frame = frames[instructions.indexOf(source)];
+                    if (frame != null && !isThis(frames, frame.getStack(frame.getStackSize() - 1))) return false;
+                } else if (source.getOpcode() != Opcodes.ALOAD || ((VarInsnNode) source).var != 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -20,19 +20,51 @@
 package com.devexperts.drd.transformer.instrument.app;
 
 import com.devexperts.drd.bootstrap.DRDEntryPoint;
+import com.devexperts.drd.bootstrap.DRDProperties;
 import com.devexperts.drd.transformer.instrument.Constants;
+import com.devexperts.drd.transformer.instrument.InstrumentationUtils;
 import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.GeneratorAdapter;
+import org.objectweb.asm.commons.Method;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 import static org.objectweb.asm.Opcodes.*;
 
 public class GenerateClass extends ClassTransformer {
+    private static final Method GET_TABLE_OFFSET = new Method("getOffset", Type.LONG_TYPE,
+            new Type[]{Constants.OBJECT_TYPE, Constants.STRING_TYPE});
+    private static final Method INSTALL_TABLE = new Method("install", Type.VOID_TYPE,
+            new Type[]{Constants.OBJECT_TYPE, Type.LONG_TYPE, Type.INT_TYPE});
+
     private Map<String, Boolean> fields;
+    private Map<String, Boolean> volatileFields;
+    private String className;
+    /**
+     * True if some superclass is instrumented to detect races, so that it already has sync clock field and accessors
+     */
+    private final boolean clockedSuperclass;
+    /**
+     * True if class gets hidden field with clock of its monitor, see {@link com.devexperts.drd.bootstrap.SyncClocked}
+     */
+    private boolean addSyncClock;
+    /**
+     * Instance fields, whose data clocks are kept in per-object table, in order of their indices in table,
+     * see {@link DRDProperties#dataClockTable}
+     */
+    private final List<String> tableFields = new ArrayList<String>();
 
-    public GenerateClass(ClassVisitor cv, Map<String, Boolean> fields) {
+    public GenerateClass(ClassVisitor cv, Map<String, Boolean> fields, Map<String, Boolean> volatileFields,
+            boolean clockedSuperclass) {
         super(cv, true);
         this.fields = fields;
+        this.volatileFields = volatileFields;
+        this.clockedSuperclass = clockedSuperclass;
     }
 
     public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
@@ -40,29 +72,179 @@ public class GenerateClass extends ClassTransformer {
             super.visit(version, access, name, signature, superName, interfaces);
             return;
         }
-        boolean isAlreadyClocked = isAlreadyClocked(interfaces);
-        String[] newInterfaces;
-        if (interfaces == null) {
-            newInterfaces = new String[]{Constants.ClockedType.getInternalName()};
-        } else if (!isAlreadyClocked) {
-            newInterfaces = new String[interfaces.length + 1];
-            System.arraycopy(interfaces, 0, newInterfaces, 0, interfaces.length);
-            newInterfaces[newInterfaces.length - 1] = Constants.ClockedType.getInternalName();
-        } else {
-            newInterfaces = new String[interfaces.length];
-            System.arraycopy(interfaces, 0, newInterfaces, 0, interfaces.length);
+        className = name;
+        addSyncClock = DRDProperties.syncClockField && (access & ACC_INTERFACE) == 0 && !clockedSuperclass &&
+                !contains(interfaces, Constants.SyncClockedType.getInternalName());
+        String[] newInterfaces = interfaces == null ? new String[0] : interfaces;
+        if (!clockedSuperclass && !isAlreadyClocked(newInterfaces)) {
+            newInterfaces = add(newInterfaces, Constants.ClockedType.getInternalName());
+        }
+        if (addSyncClock) {
+            newInterfaces = add(newInterfaces, Constants.SyncClockedType.getInternalName());
         }
         super.visit(version, access, name, signature, superName, newInterfaces);
+        if (addSyncClock) {
+            //transient, so that serialized form of class isn't changed
+            super.visitField(ACC_PUBLIC | ACC_TRANSIENT | ACC_SYNTHETIC, Constants.SYNC_CLOCK_FIELD,
+                    Constants.ISYNCCLOCK_TYPE.getDescriptor(), null, null);
+        }
         if ((access & ACC_INTERFACE) == 0) {
             for (Map.Entry<String, Boolean> field : fields.entrySet()) {
-                if (!DRDEntryPoint.getRegistry().isFinal(DRDEntryPoint.getRegistry().registerClassName(name),
-                        DRDEntryPoint.getRegistry().registerFieldOrMethodName(field.getKey()))) {
+                final int ownerId = DRDEntryPoint.getRegistry().registerClassName(name);
+                final int nameId = DRDEntryPoint.getRegistry().registerFieldOrMethodName(field.getKey());
+                if (!DRDEntryPoint.getRegistry().isFinal(ownerId, nameId) && !DRDEntryPoint.getRegistry().isConfined(ownerId, nameId)) {
+                    if (DRDProperties.dataClockTable && !field.getValue()) {
+                        tableFields.add(field.getKey());
+                        continue;
+                    }
                     int accessVC = ACC_PUBLIC | ACC_VOLATILE;
                     accessVC |= field.getValue() ? ACC_STATIC : ACC_TRANSIENT;
                     super.visitField(accessVC, field.getKey() + Constants.VC_SUFFIX, Constants.IDATACLOCK_DESC, null, null);
                 }
             }
+            if (!tableFields.isEmpty()) {
+                super.visitField(ACC_PUBLIC | ACC_VOLATILE | ACC_TRANSIENT | ACC_SYNTHETIC, Constants.DATA_CLOCK_TABLE_FIELD,
+                        Constants.DATA_CLOCK_TABLE_TYPE.getDescriptor(), null, null);
+                super.visitField(ACC_PRIVATE | ACC_STATIC | ACC_VOLATILE | ACC_SYNTHETIC, Constants.DATA_CLOCK_TABLE_OFFSET_FIELD,
+                        Type.LONG_TYPE.getDescriptor(), null, null);
+            }
+            if (DRDProperties.volatileClockField) {
+                //companion fields are read directly by instrumented accesses, that know about them from registry,
+                //and via Unsafe by agent otherwise, see VolatileClockFields
+                final int ownerId = DRDEntryPoint.getRegistry().registerClassName(name);
+                for (Map.Entry<String, Boolean> field : volatileFields.entrySet()) {
+                    int accessVSC = ACC_PUBLIC | ACC_VOLATILE | ACC_SYNTHETIC;
+                    accessVSC |= field.getValue() ? ACC_STATIC : ACC_TRANSIENT;
+                    final String clockField = field.getKey() + Constants.VOLATILE_CLOCK_SUFFIX;
+                    super.visitField(accessVSC, clockField, Constants.ISYNCCLOCK_TYPE.getDescriptor(), null, null);
+                    DRDEntryPoint.getRegistry().registerUsualField(ownerId,
+                            DRDEntryPoint.getRegistry().registerFieldOrMethodName(clockField));
+                }
+            }
+        }
+    }
+
+    /**
+     * Generates accessors of sync clock field. They are written directly to class writer, bypassing instrumentation.
+     * Only the topmost class in hierarchy, that is instrumented to detect races, has the field; its subclasses
+     * inherit it together with accessors.
+     */
+    @Override
+    public void visitEnd() {
+        if (addSyncClock) {
+            final Type ownerType = Type.getObjectType(className);
+            final String clockDesc = Constants.ISYNCCLOCK_TYPE.getDescriptor();
+            MethodVisitor mv = cv.visitMethod(ACC_PUBLIC | ACC_SYNTHETIC, Constants.GET_SYNC_CLOCK_METHOD.getName(),
+                    Constants.GET_SYNC_CLOCK_METHOD.getDescriptor(), null, null);
+            mv.visitCode();
+            mv.visitVarInsn(ALOAD, 0);
+            mv.visitFieldInsn(GETFIELD, ownerType.getInternalName(), Constants.SYNC_CLOCK_FIELD, clockDesc);
+            mv.visitInsn(ARETURN);
+            mv.visitMaxs(1, 1);
+            mv.visitEnd();
+            mv = cv.visitMethod(ACC_PUBLIC | ACC_SYNTHETIC, Constants.SET_SYNC_CLOCK_METHOD.getName(),
+                    Constants.SET_SYNC_CLOCK_METHOD.getDescriptor(), null, null);
+            mv.visitCode();
+            mv.visitVarInsn(ALOAD, 0);
+            mv.visitVarInsn(ALOAD, 1);
+            mv.visitFieldInsn(PUTFIELD, ownerType.getInternalName(), Constants.SYNC_CLOCK_FIELD, clockDesc);
+            mv.visitInsn(RETURN);
+            mv.visitMaxs(2, 2);
+            mv.visitEnd();
         }
+        for (int i = 0; i < tableFields.size(); i++) {
+            generateDataClockAccessor(tableFields.get(i), i);
+        }
+        super.visitEnd();
+    }
+
+    /**
+     * Generates static accessor of data clock of instance field, that lazily creates both table and clock:
+     * <pre>
+     * {@code
+     * public static IDataClock field$vca(Object o) {
+     *     IDataClock[] table = ((Owner) o).$drd$dataClocks;
+     *     if (table == null) {
+     *         long offset = $drd$dataClocksOffset;
+     *         if (offset == 0) {
+     *             offset = DataClockTables.getOffset(o, "Owner");
+     *             $drd$dataClocksOffset = offset;
+     *         }
+     *         DataClockTables.install(o, offset, size);
+     *         table = ((Owner) o).$drd$dataClocks;
+     *     }
+     *     IDataClock clock = table[index];
+     *     if (clock == null) {
+     *         clock = DRDEntryPoint.getDataProvider().createNewDataClock(ownerId);
+     *         table[index] = clock;
+     *     }
+     *     return clock;
+     * }
+     * }
+     * </pre>
+     * Accessor is static with Object argument, so that it is resolved through class hierarchy exactly like the field itself.
+     * Table is installed with CAS, so that concurrent first accesses to different fields of the same object
+     * don't lose clocks of each other. Clock of a single field is created without CAS.
+     */
+    private void generateDataClockAccessor(String fieldName, int index) {
+        final Type ownerType = Type.getObjectType(className);
+        final Method accessor = Constants.getDataClockAccessor(fieldName);
+        final GeneratorAdapter mv = new GeneratorAdapter(ACC_PUBLIC | ACC_STATIC | ACC_SYNTHETIC, accessor,
+                cv.visitMethod(ACC_PUBLIC | ACC_STATIC | ACC_SYNTHETIC, accessor.getName(), accessor.getDescriptor(), null, null));
+        mv.visitCode();
+        final int owner = mv.newLocal(ownerType);
+        final int table = mv.newLocal(Constants.DATA_CLOCK_TABLE_TYPE);
+        final int clock = mv.newLocal(Constants.IDATACLOCK_TYPE);
+        final int offset = mv.newLocal(Type.LONG_TYPE);
+        mv.loadArg(0);
+        mv.checkCast(ownerType);
+        mv.storeLocal(owner);
+        mv.loadLocal(owner);
+        mv.getField(ownerType, Constants.DATA_CLOCK_TABLE_FIELD, Constants.DATA_CLOCK_TABLE_TYPE);
+        mv.storeLocal(table);
+        mv.loadLocal(table);
+        final Label tableExists = new Label();
+        mv.ifNonNull(tableExists);
+        mv.getStatic(ownerType, Constants.DATA_CLOCK_TABLE_OFFSET_FIELD, Type.LONG_TYPE);
+        mv.storeLocal(offset);
+        mv.loadLocal(offset);
+        mv.push(0L);
+        final Label offsetKnown = new Label();
+        mv.ifCmp(Type.LONG_TYPE, GeneratorAdapter.NE, offsetKnown);
+        mv.loadLocal(owner);
+        mv.push(ownerType.getClassName());
+        mv.invokeStatic(Constants.DataClockTablesType, GET_TABLE_OFFSET);
+        mv.storeLocal(offset);
+        mv.loadLocal(offset);
+        mv.putStatic(ownerType, Constants.DATA_CLOCK_TABLE_OFFSET_FIELD, Type.LONG_TYPE);
+        mv.mark(offsetKnown);
+        mv.loadLocal(owner);
+        mv.loadLocal(offset);
+        mv.push(tableFields.size());
+        mv.invokeStatic(Constants.DataClockTablesType, INSTALL_TABLE);
+        mv.loadLocal(owner);
+        mv.getField(ownerType, Constants.DATA_CLOCK_TABLE_FIELD, Constants.DATA_CLOCK_TABLE_TYPE);
+        mv.storeLocal(table);
+        mv.mark(tableExists);
+        mv.loadLocal(table);
+        mv.push(index);
+        mv.arrayLoad(Constants.IDATACLOCK_TYPE);
+        mv.storeLocal(clock);
+        mv.loadLocal(clock);
+        final Label clockExists = new Label();
+        mv.ifNonNull(clockExists);
+        InstrumentationUtils.pushDataProvider(mv);
+        mv.push(DRDEntryPoint.getRegistry().registerClassName(className));
+        mv.invokeInterface(Constants.DRDDataProviderType, InstrumentationUtils.CREATE_NEW_DATA_CLOCK);
+        mv.storeLocal(clock);
+        mv.loadLocal(table);
+        mv.push(index);
+        mv.loadLocal(clock);
+        mv.arrayStore(Constants.IDATACLOCK_TYPE);
+        mv.mark(clockExists);
+        mv.loadLocal(clock);
+        mv.returnValue();
+        mv.endMethod();
     }
 
     private static boolean isAlreadyClocked(String[] interfaces) {
@@ -71,4 +253,19 @@ public class GenerateClass extends ClassTransformer {
         }
         return false;
     }
+
+    private static boolean contains(String[] interfaces, String iface) {
+        if (interfaces == null) return false;
+        for (String s : interfaces) {
+            if (s.equals(iface)) return true;
+        }
+        return false;
+    }
+
+    private static String[] add(String[] interfaces, String iface) {
+        final String[] res = new String[interfaces.length + 1];
+        System.arraycopy(interfaces, 0, res, 0, interfaces.length);
+        res[interfaces.length] = iface;
+        return res;
+    }
 }
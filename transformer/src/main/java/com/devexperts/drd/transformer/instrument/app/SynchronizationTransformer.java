@@ -23,6 +23,7 @@ import com.devexperts.drd.agent.core.Guard;
 import com.devexperts.drd.bootstrap.DRDEntryPoint;
 import com.devexperts.drd.bootstrap.DRDProperties;
 import com.devexperts.drd.bootstrap.DRDRegistry;
+import com.devexperts.drd.bootstrap.DetectionSwitch;
 import com.devexperts.drd.transformer.config.InstrumentationScopeConfig;
 import com.devexperts.drd.transformer.config.RaceDetectionType;
 import com.devexperts.drd.transformer.config.hb.HBManager;
@@ -36,6 +37,10 @@ import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
 import org.objectweb.asm.commons.GeneratorAdapter;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.InsnList;
+import org.objectweb.asm.tree.MethodInsnNode;
 
 import java.util.List;
 
@@ -52,9 +57,16 @@ class SynchronizationTransformer extends MethodVisitor {
     private int line = -1;
     private int monitorOwner = -1;
     /**
-     * Lock status at the entrance of the method
+     * Lock status at the entrance of the method. If {@link DRDProperties#lazyGuardStatus} is set, it is
+     * {@link Guard#UNKNOWN} until the first instrumented instruction, so that methods, which don't execute any,
+     * don't pay for obtaining it
      */
     private int lockStatusVar = -1;
+    /**
+     * False if method has no instructions, that depend on lock status, see {@link #prescan}. Such methods get
+     * no lock status variable at all.
+     */
+    private boolean lockStatusNeeded = true;
     private int ownerId;
     private DRDRegistry registry = DRDEntryPoint.getRegistry();
 
@@ -73,12 +85,37 @@ class SynchronizationTransformer extends MethodVisitor {
         //this.transformer = new CountingTransformer(mv);
     }
 
+    /**
+     * Is called with buffered code of the method before it is visited, so that lock status variable is added only to
+     * methods, that need it
+     */
+    void prescan(InsnList instructions) {
+        boolean needed = isSynchronized;
+        for (AbstractInsnNode insn = instructions.getFirst(); insn != null && !needed; insn = insn.getNext()) {
+            if (insn instanceof MethodInsnNode) {
+                final MethodInsnNode call = (MethodInsnNode) insn;
+                needed = callNeedsLockStatus(call.getOpcode(), call.owner, call.name, call.desc);
+            } else if (insn instanceof FieldInsnNode) {
+                final FieldInsnNode field = (FieldInsnNode) insn;
+                needed = isVolatileAccess(field.owner, field.name);
+            } else {
+                needed = insn.getOpcode() == MONITORENTER || insn.getOpcode() == MONITOREXIT;
+            }
+        }
+        lockStatusNeeded = needed;
+    }
+
     public void visitCode() {
-        //save flag to local variable
-        InstrumentationUtils.pushInterceptor(mv);
-        InstrumentationUtils.invoke(mv, InterceptorMethod.STATUS);
-        lockStatusVar = mv.newLocal(Type.INT_TYPE);
-        mv.storeLocal(lockStatusVar, Type.INT_TYPE);
+        if (lockStatusNeeded) {
+            //save flag to local variable
+            if (DRDProperties.lazyGuardStatus) {
+                mv.push(Guard.UNKNOWN);
+            } else {
+                pushLockStatus();
+            }
+            lockStatusVar = mv.newLocal(Type.INT_TYPE);
+            mv.storeLocal(lockStatusVar, Type.INT_TYPE);
+        }
         if (isSynchronized) {
             executeIfNotInHB(new Processor() {
                 public void process() {
@@ -97,15 +134,7 @@ class SynchronizationTransformer extends MethodVisitor {
     }
 
     public void visitMethodInsn(final int opcode, final String owner, final String name, final String desc, final boolean itf) {
-        final int targetOwnerId = registry.registerClassName(owner);
-        if (registry.isEnum(targetOwnerId)) {
-            mv.visitMethodInsn(opcode, owner, name, desc, itf);
-            return;
-        }
-        final Type ownerType = Type.getObjectType(owner);
-        if (name.equals("clone") && ownerType.getSort() == Type.ARRAY && (ownerType.getElementType().getSort() != Type.OBJECT ||
-                registry.isEnum(registry.registerClassName(ownerType.getElementType().getInternalName())))) {
-            //Ignore call of Lcom/package/Enum;.clone() from com/package/Enum.values()
+        if (isIgnoredCall(owner, name)) {
             mv.visitMethodInsn(opcode, owner, name, desc, itf);
             return;
         }
@@ -115,7 +144,7 @@ class SynchronizationTransformer extends MethodVisitor {
             }
         };
         if (opcode == INVOKEVIRTUAL) {
-            if (name.equals("wait") && Constants.OBJECT_TYPE.getInternalName().equals(owner)) {
+            if (isWait(owner, name)) {
                 executeIfNotInHB(new Processor() {
                     public void process() {
                         transformer.processWait(desc, simpleCall);
@@ -130,7 +159,7 @@ class SynchronizationTransformer extends MethodVisitor {
                     }
                 });
                 return;
-            } else if (name.equals("join") && desc.equals(Constants.VOID_METHOD_DESCRIPTOR)) {
+            } else if (isJoin(name, desc)) {
                 executeIfNotInHB(new Processor() {
                     public void process() {
                         transformer.processJoin(simpleCall);
@@ -152,9 +181,14 @@ class SynchronizationTransformer extends MethodVisitor {
 
         final List<Integer> potentialVertices = HBManager.getInstance().getHbVerticesIds(name, desc);
         final boolean isPossibleVertex = potentialVertices != null && potentialVertices.size() > 0;
-        final boolean isForeignCall = !InstrumentationScopeConfig.getInstance().shouldInterceptDataOperations(owner);
+        final boolean isForeignCall = isForeignCall(owner);
         final boolean processForeignCall = isForeignCall && detectRaces && opcode != INVOKESPECIAL &&
                 InstrumentationScopeConfig.getInstance().shouldDetectRacesOnMethodCall(owner, name);
+        if (!isPossibleVertex && !isForeignCall) {
+            //processing, skipping and execution are the same, so lock status is not needed
+            mv.visitMethodInsn(opcode, owner, name, desc, itf);
+            return;
+        }
         executeIfNotInHB(new Processor() {
             public void process() {
                 final Runnable nonVertexCall = new Runnable() {
@@ -172,7 +206,7 @@ class SynchronizationTransformer extends MethodVisitor {
                     }
                 };
                 if (isPossibleVertex) {
-                    transformer.processPossibleVertex(potentialVertices, opcode, owner, name, desc, new Runnable() {
+                    transformer.processPossibleVertex(potentialVertices, opcode, owner, name, desc, line, new Runnable() {
                         public void run() {
                             lockSoft(true);
                             mv.visitMethodInsn(opcode, owner, name, desc, itf);
@@ -198,6 +232,49 @@ class SynchronizationTransformer extends MethodVisitor {
         });
     }
 
+    /**
+     * Calls of enums and cloning of arrays of primitives and enums are never instrumented
+     */
+    private boolean isIgnoredCall(String owner, String name) {
+        if (registry.isEnum(registry.registerClassName(owner))) return true;
+        final Type ownerType = Type.getObjectType(owner);
+        //Ignore call of Lcom/package/Enum;.clone() from com/package/Enum.values()
+        return name.equals("clone") && ownerType.getSort() == Type.ARRAY && (ownerType.getElementType().getSort() != Type.OBJECT ||
+                registry.isEnum(registry.registerClassName(ownerType.getElementType().getInternalName())));
+    }
+
+    private static boolean isWait(String owner, String name) {
+        return name.equals("wait") && Constants.OBJECT_TYPE.getInternalName().equals(owner);
+    }
+
+    private static boolean isJoin(String name, String desc) {
+        return name.equals("join") && desc.equals(Constants.VOID_METHOD_DESCRIPTOR);
+    }
+
+    private static boolean isForeignCall(String owner) {
+        return !InstrumentationScopeConfig.getInstance().shouldInterceptDataOperations(owner);
+    }
+
+    /**
+     * Should agree with {@link #visitMethodInsn}: false iff call is emitted without checking lock status
+     */
+    private boolean callNeedsLockStatus(int opcode, String owner, String name, String desc) {
+        if (isIgnoredCall(owner, name)) return false;
+        if (opcode == INVOKEVIRTUAL && (isWait(owner, name) || isJoin(name, desc))) return true;
+        final List<Integer> potentialVertices = HBManager.getInstance().getHbVerticesIds(name, desc);
+        return (potentialVertices != null && potentialVertices.size() > 0) || isForeignCall(owner);
+    }
+
+    /**
+     * Should agree with {@link #visitFieldInsn}: only accesses of volatile fields depend on lock status
+     */
+    private boolean isVolatileAccess(String owner, String name) {
+        final int targetOwnerId = registry.registerClassName(owner);
+        final int targetNameId = registry.registerFieldOrMethodName(name);
+        return !registry.isFinal(targetOwnerId, targetNameId) && !registry.isEnum(targetOwnerId) &&
+                registry.isVolatile(targetOwnerId, targetNameId);
+    }
+
     @Override
     public void visitLabel(Label label) {
         //complicated processing of monenter: see thread http://mail-archive.ow2.org/asm/2012-06/msg00020.html
@@ -298,7 +375,20 @@ class SynchronizationTransformer extends MethodVisitor {
             RaceDetectionType raceDetectionType = shouldDetectRacesOnField(owner, name);
             InstrumentationUtils.trackFieldAccess(raceDetectionType, mv);
             if (detectRaces && shouldDetectRacesOnField(owner, name) == RaceDetectionType.DETECT) {
-                transformer.processFieldAccess(opcode, owner, name, desc, line);
+                if (DRDProperties.runtimeSwitch) {
+                    Label disabled = mv.newLabel();
+                    Label done = mv.newLabel();
+                    mv.push(ownerId);
+                    mv.invokeStatic(Constants.DetectionSwitchType, InstrumentationUtils.SWITCH_IS_ENABLED);
+                    mv.ifZCmp(IFEQ, disabled);
+                    transformer.processFieldAccess(opcode, owner, name, desc, line);
+                    mv.goTo(done);
+                    mv.mark(disabled);
+                    mv.visitFieldInsn(opcode, owner, name, desc);
+                    mv.mark(done);
+                } else {
+                    transformer.processFieldAccess(opcode, owner, name, desc, line);
+                }
             } else {
                 transformer.skipFieldAccess();
                 mv.visitFieldInsn(opcode, owner, name, desc);
@@ -319,6 +409,9 @@ class SynchronizationTransformer extends MethodVisitor {
         if (targetOwnerId != ownerId && !registry.hasField(targetOwnerId, targetNameId)) {
             return RaceDetectionType.IGNORE_ERROR;
         }
+        if (registry.isConfined(targetOwnerId, targetNameId)) {
+            return RaceDetectionType.IGNORE_CONFINED;
+        }
         if (Constants.INIT_METHOD.equals(methodName) || Constants.CLINIT_METHOD.equals(methodName)) {
             return RaceDetectionType.IGNORE_CONSTRUCTOR;
         }
@@ -339,7 +432,7 @@ class SynchronizationTransformer extends MethodVisitor {
      *     call.process();
      * } else if ($currentLockStatusVar$ == 1) { //i.e. guard is soft locked
      *     call.skip();
-     * } else { //i.e. guard is hard locked
+     * } else { //i.e. guard is hard locked or detection is switched off
      *     call.execute();
      * }
      * }
@@ -352,6 +445,7 @@ class SynchronizationTransformer extends MethodVisitor {
         Label available = mv.newLabel();
         Label lockedSoft = mv.newLabel();
         Label done = mv.newLabel();
+        obtainLockStatus();
         mv.loadLocal(lockStatusVar, Type.INT_TYPE);
         mv.push(Guard.AVAILABLE);
         mv.ifICmp(IFEQ, available);
@@ -370,6 +464,49 @@ class SynchronizationTransformer extends MethodVisitor {
         mv.mark(done);
     }
 
+    /**
+     * Creates following code, if lock status is obtained lazily:
+     * <pre>
+     * {@code
+     * if ($currentLockStatusVar$ == UNKNOWN) {
+     *     $currentLockStatusVar$ = interceptor.status();
+     * }
+     * }
+     * </pre>
+     */
+    private void obtainLockStatus() {
+        if (lockStatusVar < 0) {
+            throw new IllegalStateException("No lock status variable in " + methodOwner + "." + methodName);
+        }
+        if (!DRDProperties.lazyGuardStatus) return;
+        Label known = mv.newLabel();
+        mv.loadLocal(lockStatusVar, Type.INT_TYPE);
+        mv.push(Guard.UNKNOWN);
+        mv.ifICmp(IFNE, known);
+        pushLockStatus();
+        mv.storeLocal(lockStatusVar, Type.INT_TYPE);
+        mv.mark(known);
+    }
+
+    /**
+     * STACK: EMPTY ---> status
+     * <br/>
+     * If {@link DRDProperties#runtimeSwitch} is set, status is {@link DetectionSwitch#DISABLED} while detection is
+     * switched off for the owner of the method, so that every operation is executed as if guard was hard-locked.
+     */
+    private void pushLockStatus() {
+        if (DRDProperties.runtimeSwitch) {
+            mv.push(ownerId);
+            mv.invokeStatic(Constants.DetectionSwitchType, InstrumentationUtils.SWITCH_STATUS);
+        } else {
+            InstrumentationUtils.pushInterceptor(mv);
+            InstrumentationUtils.invoke(mv, InterceptorMethod.STATUS);
+        }
+    }
+
+    /**
+     * Should be called only inside of {@link #executeIfNotInHB}, where lock status is already obtained
+     */
     private void lockSoft(boolean lock) {
         Label done = new Label();
         mv.loadLocal(lockStatusVar, Type.INT_TYPE);
@@ -20,6 +20,8 @@
 package com.devexperts.drd.transformer.instrument.app;
 
 import com.devexperts.drd.bootstrap.DRDEntryPoint;
+import com.devexperts.drd.bootstrap.DRDLogger;
+import com.devexperts.drd.bootstrap.DRDProperties;
 import com.devexperts.drd.bootstrap.DRDRegistry;
 import com.devexperts.drd.transformer.instrument.EmptyVisitor;
 import com.devexperts.drd.transformer.instrument.InstrumentationUtils;
@@ -28,20 +30,33 @@ import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
 
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 class UsageAnalyzer extends EmptyVisitor {
     final Map<String, Boolean> fields;
+    /**
+     * Volatile fields declared in class: name -> is static
+     */
+    final Map<String, Boolean> volatileFields;
+    /**
+     * Fields, on which no race can be detected, see {@link ConfinementAnalyzer}. They get neither clock nor instrumentation
+     */
+    final Set<String> confinedFields;
     int classVersion;
     private String className;
     private int ownerId;
     private boolean isInterface;
     private DRDRegistry registry = DRDEntryPoint.getRegistry();
     private boolean detectRaces;
+    private ConfinementAnalyzer confinementAnalyzer;
 
     UsageAnalyzer(boolean detectRaces) {
         this.detectRaces = detectRaces;
         fields = detectRaces ? new HashMap<String, Boolean>() : null;
+        volatileFields = detectRaces ? new HashMap<String, Boolean>() : null;
+        confinedFields = detectRaces ? new HashSet<String>() : null;
     }
 
     @Override
@@ -53,6 +68,9 @@ class UsageAnalyzer extends EmptyVisitor {
         }
         isInterface = ((access & Opcodes.ACC_INTERFACE) != 0);
         classVersion = version & InstrumentationUtils.MAJOR_VERSION_MASK;
+        if (detectRaces && DRDProperties.confinedFieldAnalysis && ConfinementAnalyzer.isApplicable(classVersion, access)) {
+            confinementAnalyzer = new ConfinementAnalyzer(className);
+        }
     }
 
     @Override
@@ -60,11 +78,17 @@ class UsageAnalyzer extends EmptyVisitor {
         if (detectRaces) {
             fields.put(name, (access & Opcodes.ACC_STATIC) != 0);
         }
+        if (confinementAnalyzer != null) {
+            confinementAnalyzer.visitField(access, name);
+        }
         final int fieldNameId = registry.registerFieldOrMethodName(name);
         if ((access & Opcodes.ACC_FINAL) != 0 || isInterface) {
             registry.registerFinalField(ownerId, fieldNameId);
         } else if ((access & Opcodes.ACC_VOLATILE) != 0) {
             registry.registerVolatileField(ownerId, fieldNameId);
+            if (detectRaces) {
+                volatileFields.put(name, (access & Opcodes.ACC_STATIC) != 0);
+            }
         } else {
             if (detectRaces) {
                 registry.registerUsualField(ownerId, fieldNameId);
@@ -75,7 +99,22 @@ class UsageAnalyzer extends EmptyVisitor {
 
     @Override
     public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
-        return detectRaces ? new MethodUsageAnalyzer(null) : null;
+        if (!detectRaces) return null;
+        return new MethodUsageAnalyzer(confinementAnalyzer == null ? null :
+                confinementAnalyzer.visitMethod(access, name, desc, signature, exceptions, null));
+    }
+
+    @Override
+    public void visitEnd() {
+        if (confinementAnalyzer == null) return;
+        for (String name : confinementAnalyzer.getConfinedFields()) {
+            confinedFields.add(name);
+            registry.registerConfinedField(ownerId, registry.registerFieldOrMethodName(name));
+            DRDLogger.debug("Field " + className + "." + name + " is confined, races on it won't be detected.");
+        }
+        if (!confinedFields.isEmpty()) {
+            DRDEntryPoint.getStatistics().confinedFields(confinedFields.size());
+        }
     }
 
     private class MethodUsageAnalyzer extends MethodVisitor {
@@ -88,6 +127,7 @@ class UsageAnalyzer extends EmptyVisitor {
             if (owner.equals(className)) {
                 fields.put(name, opcode == Opcodes.GETSTATIC || opcode == Opcodes.PUTSTATIC);
             }
+            super.visitFieldInsn(opcode, owner, name, desc);
         }
     }
 }
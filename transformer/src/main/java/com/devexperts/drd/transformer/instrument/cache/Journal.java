@@ -0,0 +1,163 @@
+/*
+ * DRD - Dynamic Data Race Detector for Java programs
+ *
+ * Copyright (C) 2002-2018 Devexperts LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devexperts.drd.transformer.instrument.cache;
+
+import com.devexperts.drd.bootstrap.DRDRegistry;
+
+import java.io.*;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Registry operations, performed during transformation of a single class. Transformed bytes depend on them: ids are
+ * pushed to the stack as constants, and answers of queries decide, what is instrumented. So cached bytes are valid
+ * only if the same operations give the same results in the current run, which is checked by {@link #replay}.
+ * Replay also repeats side effects of the transformation on registry. Repeated operations are recorded only once.
+ */
+public final class Journal {
+    static final byte CLASS_NAME = 1;
+    static final byte NAME = 2;
+    static final byte LOCATION = 3;
+    static final byte INSTRUMENTED_CLASS = 4;
+    static final byte IS_INSTRUMENTED = 5;
+    static final byte FINAL_FIELD = 6;
+    static final byte IS_FINAL = 7;
+    static final byte VOLATILE_FIELD = 8;
+    static final byte USUAL_FIELD = 9;
+    static final byte HAS_FIELD = 10;
+    static final byte IS_VOLATILE = 11;
+    static final byte CONFINED_FIELD = 12;
+    static final byte IS_CONFINED = 13;
+    static final byte ENUM = 14;
+    static final byte IS_ENUM = 15;
+
+    /**
+     * Journal of enclosing transformation on the same thread, if any
+     */
+    final Journal outer;
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+    private final DataOutputStream out = new DataOutputStream(bytes);
+    private final Set<String> recorded = new HashSet<String>();
+
+    Journal(Journal outer) {
+        this.outer = outer;
+    }
+
+    void record(byte op, String name, int id) {
+        if (recorded.add(op + " " + name)) {
+            try {
+                out.writeByte(op);
+                out.writeUTF(name);
+                out.writeInt(id);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    void record(byte op, int... args) {
+        final StringBuilder key = new StringBuilder().append(op);
+        for (int arg : args) {
+            key.append(' ').append(arg);
+        }
+        if (recorded.add(key.toString())) {
+            try {
+                out.writeByte(op);
+                for (int arg : args) {
+                    out.writeInt(arg);
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    byte[] toByteArray() {
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Repeats recorded operations on specified registry.
+     *
+     * @return true iff all operations gave the same results as recorded
+     */
+    static boolean replay(byte[] journal, DRDRegistry registry) {
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(journal));
+        try {
+            while (in.available() > 0) {
+                final byte op = in.readByte();
+                switch (op) {
+                    case CLASS_NAME:
+                        if (registry.registerClassName(in.readUTF()) != in.readInt()) return false;
+                        break;
+                    case NAME:
+                        if (registry.registerFieldOrMethodName(in.readUTF()) != in.readInt()) return false;
+                        break;
+                    case LOCATION:
+                        if (registry.registerLocation(in.readInt(), in.readInt(), in.readInt(), in.readInt(),
+                                in.readInt()) != in.readInt()) return false;
+                        break;
+                    case INSTRUMENTED_CLASS:
+                        registry.registerInstrumentedClass(in.readUTF());
+                        in.readInt();
+                        break;
+                    case IS_INSTRUMENTED:
+                        if (registry.isInstrumented(in.readInt()) != (in.readInt() != 0)) return false;
+                        break;
+                    case FINAL_FIELD:
+                        registry.registerFinalField(in.readInt(), in.readInt());
+                        break;
+                    case IS_FINAL:
+                        if (registry.isFinal(in.readInt(), in.readInt()) != (in.readInt() != 0)) return false;
+                        break;
+                    case VOLATILE_FIELD:
+                        registry.registerVolatileField(in.readInt(), in.readInt());
+                        break;
+                    case USUAL_FIELD:
+                        registry.registerUsualField(in.readInt(), in.readInt());
+                        break;
+                    case HAS_FIELD:
+                        if (registry.hasField(in.readInt(), in.readInt()) != (in.readInt() != 0)) return false;
+                        break;
+                    case IS_VOLATILE:
+                        if (registry.isVolatile(in.readInt(), in.readInt()) != (in.readInt() != 0)) return false;
+                        break;
+                    case CONFINED_FIELD:
+                        registry.registerConfinedField(in.readInt(), in.readInt());
+                        break;
+                    case IS_CONFINED:
+                        if (registry.isConfined(in.readInt(), in.readInt()) != (in.readInt() != 0)) return false;
+                        break;
+                    case ENUM:
+                        registry.registerEnum(in.readInt());
+                        break;
+                    case IS_ENUM:
+                        if (registry.isEnum(in.readInt()) != (in.readInt() != 0)) return false;
+                        break;
+                    default:
+                        return false;
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
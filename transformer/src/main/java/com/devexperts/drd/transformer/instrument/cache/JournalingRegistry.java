@@ -0,0 +1,222 @@
+/*
+ * DRD - Dynamic Data Race Detector for Java programs
+ *
+ * Copyright (C) 2002-2018 Devexperts LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devexperts.drd.transformer.instrument.cache;
+
+import com.devexperts.drd.bootstrap.DRDRegistry;
+import com.devexperts.drd.bootstrap.DataClockStats;
+import com.devexperts.drd.bootstrap.Location;
+import com.devexperts.drd.bootstrap.RaceHistory;
+
+import java.util.List;
+
+/**
+ * Registry, installed instead of the original one, when {@link TransformationCache} is enabled.
+ * Records operations, that transformation depends on, to the journal of current thread and logs new ids to
+ * {@link RegistryLog}. Operations, used only at runtime, are delegated as is.
+ */
+class JournalingRegistry implements DRDRegistry {
+    private final DRDRegistry delegate;
+    private final RegistryLog log;
+    private final ThreadLocal<Journal> journal = new ThreadLocal<Journal>();
+
+    JournalingRegistry(DRDRegistry delegate, RegistryLog log) {
+        this.delegate = delegate;
+        this.log = log;
+    }
+
+    Journal begin() {
+        final Journal res = new Journal(journal.get());
+        journal.set(res);
+        return res;
+    }
+
+    void end(Journal j) {
+        journal.set(j.outer);
+    }
+
+    public void registerThread(Thread thread) {
+        delegate.registerThread(thread);
+    }
+
+    public String getThreadName(long tid) {
+        return delegate.getThreadName(tid);
+    }
+
+    public int registerClassName(String className) {
+        final int id = delegate.registerClassName(className);
+        log.registered(Journal.CLASS_NAME, id, className);
+        final Journal j = journal.get();
+        if (j != null) {
+            j.record(Journal.CLASS_NAME, className, id);
+        }
+        return id;
+    }
+
+    public String getClassName(int id) {
+        return delegate.getClassName(id);
+    }
+
+    public int registerFieldOrMethodName(String name) {
+        final int id = delegate.registerFieldOrMethodName(name);
+        log.registered(Journal.NAME, id, name);
+        final Journal j = journal.get();
+        if (j != null) {
+            j.record(Journal.NAME, name, id);
+        }
+        return id;
+    }
+
+    public String getFieldOrMethodName(int id) {
+        return delegate.getFieldOrMethodName(id);
+    }
+
+    public int registerLocation(int targetOwnerId, int targetNameId, int callerOwnerId, int callerNameId, int line) {
+        final int id = delegate.registerLocation(targetOwnerId, targetNameId, callerOwnerId, callerNameId, line);
+        log.registered(Journal.LOCATION, id, new int[]{targetOwnerId, targetNameId, callerOwnerId, callerNameId, line});
+        final Journal j = journal.get();
+        if (j != null) {
+            j.record(Journal.LOCATION, targetOwnerId, targetNameId, callerOwnerId, callerNameId, line, id);
+        }
+        return id;
+    }
+
+    public Location getLocation(int id) {
+        return delegate.getLocation(id);
+    }
+
+    public int registerStackTrace(StackTraceElement[] stackTrace) {
+        return delegate.registerStackTrace(stackTrace);
+    }
+
+    public StackTraceElement[] getStackTrace(int id) {
+        return delegate.getStackTrace(id);
+    }
+
+    public void registerDataClock(int ownerId) {
+        delegate.registerDataClock(ownerId);
+    }
+
+    public void unregisterDataClock(int ownerId) {
+        delegate.unregisterDataClock(ownerId);
+    }
+
+    public void registerInstrumentedClass(String className) {
+        //registers class name through this registry, so that its id is logged
+        registerClassName(className);
+        delegate.registerInstrumentedClass(className);
+        final Journal j = journal.get();
+        if (j != null) {
+            j.record(Journal.INSTRUMENTED_CLASS, className, 0);
+        }
+    }
+
+    public boolean isInstrumented(int ownerId) {
+        final boolean res = delegate.isInstrumented(ownerId);
+        record(Journal.IS_INSTRUMENTED, ownerId, res);
+        return res;
+    }
+
+    public void registerFinalField(int ownerId, int fieldNameId) {
+        delegate.registerFinalField(ownerId, fieldNameId);
+        record(Journal.FINAL_FIELD, ownerId, fieldNameId);
+    }
+
+    public boolean isFinal(int ownerId, int fieldNameId) {
+        final boolean res = delegate.isFinal(ownerId, fieldNameId);
+        record(Journal.IS_FINAL, ownerId, fieldNameId, res);
+        return res;
+    }
+
+    public void registerVolatileField(int ownerId, int fieldNameId) {
+        delegate.registerVolatileField(ownerId, fieldNameId);
+        record(Journal.VOLATILE_FIELD, ownerId, fieldNameId);
+    }
+
+    public void registerUsualField(int ownerId, int fieldNameId) {
+        delegate.registerUsualField(ownerId, fieldNameId);
+        record(Journal.USUAL_FIELD, ownerId, fieldNameId);
+    }
+
+    public boolean hasField(int ownerId, int fieldNameId) {
+        final boolean res = delegate.hasField(ownerId, fieldNameId);
+        record(Journal.HAS_FIELD, ownerId, fieldNameId, res);
+        return res;
+    }
+
+    public boolean isVolatile(int ownerId, int fieldNameId) {
+        final boolean res = delegate.isVolatile(ownerId, fieldNameId);
+        record(Journal.IS_VOLATILE, ownerId, fieldNameId, res);
+        return res;
+    }
+
+    public void registerConfinedField(int ownerId, int fieldNameId) {
+        delegate.registerConfinedField(ownerId, fieldNameId);
+        record(Journal.CONFINED_FIELD, ownerId, fieldNameId);
+    }
+
+    public boolean isConfined(int ownerId, int fieldNameId) {
+        final boolean res = delegate.isConfined(ownerId, fieldNameId);
+        record(Journal.IS_CONFINED, ownerId, fieldNameId, res);
+        return res;
+    }
+
+    public void registerEnum(int ownerId) {
+        delegate.registerEnum(ownerId);
+        final Journal j = journal.get();
+        if (j != null) {
+            j.record(Journal.ENUM, ownerId);
+        }
+    }
+
+    public boolean isEnum(int ownerId) {
+        final boolean res = delegate.isEnum(ownerId);
+        record(Journal.IS_ENUM, ownerId, res);
+        return res;
+    }
+
+    public RaceHistory getRaceHistory() {
+        return delegate.getRaceHistory();
+    }
+
+    public List<DataClockStats> getDataClockHistogram() {
+        return delegate.getDataClockHistogram();
+    }
+
+    private void record(byte op, int ownerId, boolean res) {
+        final Journal j = journal.get();
+        if (j != null) {
+            j.record(op, ownerId, res ? 1 : 0);
+        }
+    }
+
+    private void record(byte op, int ownerId, int fieldNameId) {
+        final Journal j = journal.get();
+        if (j != null) {
+            j.record(op, ownerId, fieldNameId);
+        }
+    }
+
+    private void record(byte op, int ownerId, int fieldNameId, boolean res) {
+        final Journal j = journal.get();
+        if (j != null) {
+            j.record(op, ownerId, fieldNameId, res ? 1 : 0);
+        }
+    }
+}
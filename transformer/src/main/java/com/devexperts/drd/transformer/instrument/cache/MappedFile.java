@@ -0,0 +1,148 @@
+/*
+ * DRD - Dynamic Data Race Detector for Java programs
+ *
+ * Copyright (C) 2002-2018 Devexperts LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devexperts.drd.transformer.instrument.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Memory-mapped file of the cache with common header: magic, format version, fingerprint of DRD settings and configs
+ * and two header-specific longs. File is remapped with bigger size on growth; its size is limited by 2G.
+ * Needs external synchronization.
+ */
+class MappedFile {
+    static final int MAGIC = 0x44524443;
+    static final int FORMAT_VERSION = 2;
+    static final int HEADER_SIZE = 32;
+    private static final int FINGERPRINT_OFFSET = 8;
+    private static final int FIRST_OFFSET = 16;
+    private static final int SECOND_OFFSET = 24;
+
+    private final File file;
+    private final FileChannel channel;
+    private MappedByteBuffer buffer;
+
+    MappedFile(File file) throws IOException {
+        this.file = file;
+        channel = new RandomAccessFile(file, "rw").getChannel();
+    }
+
+    FileChannel getChannel() {
+        return channel;
+    }
+
+    /**
+     * Maps file and checks its header.
+     *
+     * @param minSize size of empty file
+     * @return true iff file has valid header and its contents are kept; otherwise it is reset and has empty header
+     */
+    boolean open(long fingerprint, int minSize) throws IOException {
+        final long size = channel.size();
+        if (size >= HEADER_SIZE && size <= Integer.MAX_VALUE) {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            if (buffer.getInt(0) == MAGIC && buffer.getInt(4) == FORMAT_VERSION &&
+                    buffer.getLong(FINGERPRINT_OFFSET) == fingerprint) {
+                return true;
+            }
+        }
+        reset(fingerprint, minSize);
+        return false;
+    }
+
+    void reset(long fingerprint, int size) throws IOException {
+        buffer = null;
+        channel.truncate(0);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        buffer.putLong(FIRST_OFFSET, 0);
+        buffer.putLong(SECOND_OFFSET, 0);
+        buffer.putLong(FINGERPRINT_OFFSET, fingerprint);
+        buffer.putInt(4, FORMAT_VERSION);
+        //magic is written last, so that partially written header is never valid
+        buffer.putInt(0, MAGIC);
+    }
+
+    /**
+     * @return false if file can't grow to specified size
+     */
+    boolean ensureCapacity(long size) throws IOException {
+        if (size <= buffer.capacity()) return true;
+        long newSize = buffer.capacity();
+        while (newSize < size) {
+            newSize *= 2;
+        }
+        newSize = Math.min(newSize, Integer.MAX_VALUE);
+        if (newSize < size) return false;
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, newSize);
+        return true;
+    }
+
+    MappedByteBuffer buffer() {
+        return buffer;
+    }
+
+    int capacity() {
+        return buffer.capacity();
+    }
+
+    long getFirst() {
+        return buffer.getLong(FIRST_OFFSET);
+    }
+
+    void setFirst(long value) {
+        buffer.putLong(FIRST_OFFSET, value);
+    }
+
+    long getSecond() {
+        return buffer.getLong(SECOND_OFFSET);
+    }
+
+    void setSecond(long value) {
+        buffer.putLong(SECOND_OFFSET, value);
+    }
+
+    byte[] get(int offset, int length) {
+        final byte[] res = new byte[length];
+        final ByteBuffer buffer = this.buffer.duplicate();
+        buffer.position(offset);
+        buffer.get(res);
+        return res;
+    }
+
+    void put(int offset, byte[] bytes) {
+        final ByteBuffer buffer = this.buffer.duplicate();
+        buffer.position(offset);
+        buffer.put(bytes);
+    }
+
+    void close() throws IOException {
+        buffer = null;
+        channel.close();
+    }
+
+    @Override
+    public String toString() {
+        return file.getPath();
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * DRD - Dynamic Data Race Detector for Java programs
+ *
+ * Copyright (C) 2002-2018 Devexperts LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devexperts.drd.transformer.instrument.cache;
+
+import com.devexperts.drd.bootstrap.DRDLogger;
+import com.devexperts.drd.bootstrap.DRDRegistry;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.Charset;
+import java.util.TreeMap;
+
+/**
+ * Persistent log of class names, field or method names and locations in order of their ids. It is replayed
+ * into registry before any transformation, so that everything, registered in previous runs, gets the same id
+ * regardless of class loading order, and ids in cached bytes remain valid. Ids, registered concurrently, may come
+ * out of order, so they are kept pending until all preceding ids are logged.<br/>
+ * Record is a kind, followed by name (length and UTF-8 bytes) or by 5 ints of location.
+ */
+class RegistryLog {
+    static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int INITIAL_SIZE = 1 << 20;
+    private static final byte[] KINDS = {Journal.CLASS_NAME, Journal.NAME, Journal.LOCATION};
+
+    private final MappedFile file;
+    /**
+     * Last logged id of each kind, indexed by kind - 1
+     */
+    private final int[] logged = new int[KINDS.length];
+    @SuppressWarnings("unchecked")
+    private final TreeMap<Integer, Object>[] pending = new TreeMap[KINDS.length];
+    private boolean failed;
+
+    RegistryLog(MappedFile file) {
+        this.file = file;
+        for (int i = 0; i < pending.length; i++) {
+            pending[i] = new TreeMap<Integer, Object>();
+        }
+    }
+
+    static int initialSize() {
+        return INITIAL_SIZE;
+    }
+
+    /**
+     * Registers logged names and locations in empty registry.
+     *
+     * @return false if some of them got id different from the logged one or log is corrupted
+     */
+    synchronized boolean preload(DRDRegistry registry) {
+        final MappedByteBuffer buffer = file.buffer();
+        final int end = (int) file.getFirst();
+        int position = MappedFile.HEADER_SIZE;
+        while (position < end) {
+            final byte kind = buffer.get(position++);
+            final int id;
+            switch (kind) {
+                case Journal.CLASS_NAME:
+                case Journal.NAME:
+                    if (position + 4 > end) return false;
+                    final int length = buffer.getInt(position);
+                    if (length < 0 || position + 4L + length > end) return false;
+                    final String name = new String(file.get(position + 4, length), UTF8);
+                    position += 4 + length;
+                    id = kind == Journal.CLASS_NAME ? registry.registerClassName(name) : registry.registerFieldOrMethodName(name);
+                    break;
+                case Journal.LOCATION:
+                    if (position + 20 > end) return false;
+                    id = registry.registerLocation(buffer.getInt(position), buffer.getInt(position + 4),
+                            buffer.getInt(position + 8), buffer.getInt(position + 12), buffer.getInt(position + 16));
+                    position += 20;
+                    break;
+                default:
+                    return false;
+            }
+            if (id != ++logged[kind - 1]) return false;
+        }
+        return true;
+    }
+
+    int size() {
+        return logged[0] + logged[1] + logged[2];
+    }
+
+    /**
+     * @param value name or int[5] location
+     */
+    synchronized void registered(byte kind, int id, Object value) {
+        final int k = kind - 1;
+        if (failed || id <= logged[k]) return;
+        pending[k].put(id, value);
+        Object next;
+        while ((next = pending[k].remove(logged[k] + 1)) != null) {
+            if (!append(kind, next)) {
+                failed = true;
+                return;
+            }
+            logged[k]++;
+        }
+    }
+
+    private boolean append(byte kind, Object value) {
+        try {
+            final int end = (int) file.getFirst();
+            if (kind == Journal.LOCATION) {
+                final int[] location = (int[]) value;
+                if (!file.ensureCapacity(end + 1L + 4 * location.length)) return fail(null);
+                final MappedByteBuffer buffer = file.buffer();
+                buffer.put(end, kind);
+                for (int i = 0; i < location.length; i++) {
+                    buffer.putInt(end + 1 + 4 * i, location[i]);
+                }
+                file.setFirst(end + 1 + 4 * location.length);
+            } else {
+                final byte[] name = ((String) value).getBytes(UTF8);
+                if (!file.ensureCapacity(end + 5L + name.length)) return fail(null);
+                final MappedByteBuffer buffer = file.buffer();
+                buffer.put(end, kind);
+                buffer.putInt(end + 1, name.length);
+                file.put(end + 5, name);
+                file.setFirst(end + 5 + name.length);
+            }
+            return true;
+        } catch (IOException e) {
+            return fail(e);
+        }
+    }
+
+    private boolean fail(IOException e) {
+        final String message = "Failed to log registered names to " + file + ", transformation cache would miss in next run";
+        if (e == null) {
+            DRDLogger.error(message + ": file is too large");
+        } else {
+            DRDLogger.error(message, e);
+        }
+        return false;
+    }
+}
@@ -0,0 +1,464 @@
+/*
+ * DRD - Dynamic Data Race Detector for Java programs
+ *
+ * Copyright (C) 2002-2018 Devexperts LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devexperts.drd.transformer.instrument.cache;
+
+import com.devexperts.drd.bootstrap.DRDEntryPoint;
+import com.devexperts.drd.bootstrap.DRDLogger;
+import com.devexperts.drd.bootstrap.DRDProperties;
+import com.devexperts.drd.bootstrap.DRDRegistry;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.MappedByteBuffer;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Persistent cache of transformed classes, that is reused across restarts of application. Enabled by
+ * <code>drd.transformation.cache.dir</code> property. Consists of three memory-mapped files:
+ * <ul>
+ * <li>data: entries, appended one after another; each entry contains digest of original class, its name,
+ * {@link Journal} of registry operations, transformed bytes and CRC32 of all that;</li>
+ * <li>index: open-addressing hash table of (digest prefix, data offset) pairs, so lookup is O(1);</li>
+ * <li>names: {@link RegistryLog}, which makes ids in cached bytes valid in the next run.</li>
+ * </ul>
+ * Entry is keyed by SHA-1 of class name, transformation mode and original bytes. Files are dropped, if they were
+ * written with another fingerprint, that covers agent version and jar, DRD settings, config files and class path.
+ * Cached bytes are used only if their checksum matches and replay of their journal gives the same results, otherwise
+ * class is transformed again. Files with inconsistent headers, e.g. truncated ones, are dropped as well.
+ * Hierarchy of other classes, used to compute stack map frames, is not verified: it is assumed to be unchanged
+ * while class path and JDK are the same.<br/>
+ * Files are locked, so cache directory can't be used by several processes at once.
+ */
+public class TransformationCache {
+    private static final String INDEX_FILE = "transformation-cache.idx";
+    private static final String DATA_FILE = "transformation-cache.dat";
+    private static final String NAMES_FILE = "transformation-cache.names";
+    private static final int INITIAL_INDEX_CAPACITY = 1 << 16;
+    private static final int SLOT_SIZE = 16;
+    private static final int INITIAL_DATA_SIZE = 1 << 24;
+    private static final int DIGEST_LENGTH = 20;
+
+    private final File dir;
+    private final long fingerprint;
+    /**
+     * Header longs are capacity and number of entries
+     */
+    private final MappedFile index;
+    /**
+     * First header long is end of data
+     */
+    private final MappedFile data;
+    private final MappedFile names;
+    private final RegistryLog log;
+    private final Thread statsHook;
+    private volatile JournalingRegistry registry;
+    private volatile boolean disabled;
+    private boolean full;
+    private long hits;
+    private long misses;
+    private long rejected;
+    private long stored;
+
+    /**
+     * @return cache in directory, specified in settings, or null if cache is disabled or can't be opened
+     */
+    public static TransformationCache open() {
+        final String dir = DRDProperties.getTransformationCacheDir();
+        if (dir == null || dir.length() == 0) return null;
+        try {
+            return new TransformationCache(new File(dir), fingerprint());
+        } catch (Exception e) {
+            DRDLogger.error("Failed to open transformation cache in " + dir + ", it is disabled", e);
+            return null;
+        }
+    }
+
+    TransformationCache(File dir, long fingerprint) throws IOException {
+        this.dir = dir;
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Failed to create directory " + dir);
+        }
+        index = new MappedFile(new File(dir, INDEX_FILE));
+        if (index.getChannel().tryLock() == null) {
+            throw new IOException("Cache is locked by another process");
+        }
+        data = new MappedFile(new File(dir, DATA_FILE));
+        names = new MappedFile(new File(dir, NAMES_FILE));
+        this.fingerprint = fingerprint;
+        //all files are checked and reset together
+        final boolean valid = index.open(fingerprint, indexSize(INITIAL_INDEX_CAPACITY)) &
+                data.open(fingerprint, INITIAL_DATA_SIZE) &
+                names.open(fingerprint, RegistryLog.initialSize()) && isConsistent();
+        if (!valid) {
+            reset();
+        }
+        log = new RegistryLog(names);
+        statsHook = new Thread(new Runnable() {
+            public void run() {
+                DRDLogger.log(TransformationCache.this.toString());
+            }
+        }, "DRD transformation cache stats");
+        Runtime.getRuntime().addShutdownHook(statsHook);
+        DRDLogger.log("Transformation cache opened in " + dir + (valid ? "" : " (reset)") + ": " +
+                index.getSecond() + " classes, " + (data.getFirst() >> 10) + " Kb.");
+    }
+
+    /**
+     * Preloads names and locations, known in previous runs, and installs journaling registry. Should be called
+     * before registry is used by transformer for the first time.
+     */
+    public void attach() {
+        if (registry == null && !disabled) {
+            attachImpl();
+        }
+    }
+
+    private synchronized void attachImpl() {
+        if (registry != null || disabled) return;
+        final DRDRegistry original = DRDEntryPoint.getRegistry();
+        if (!log.preload(original)) {
+            DRDLogger.error("Ids in transformation cache " + dir + " don't match registry, cache is dropped and disabled");
+            disabled = true;
+            try {
+                reset();
+            } catch (IOException e) {
+                DRDLogger.error("Failed to reset transformation cache", e);
+            }
+            return;
+        }
+        DRDLogger.log("Transformation cache preloaded " + log.size() + " names and locations.");
+        registry = new JournalingRegistry(original, log);
+        DRDEntryPoint.setRegistry(registry);
+    }
+
+    /**
+     * @return key of transformation of specified class in specified mode
+     */
+    public byte[] key(String className, byte[] classfileBuffer, String mode) {
+        final MessageDigest digest = sha1();
+        digest.update(className.getBytes(RegistryLog.UTF8));
+        digest.update((byte) 0);
+        digest.update(mode.getBytes(RegistryLog.UTF8));
+        digest.update((byte) 0);
+        digest.update(classfileBuffer);
+        return digest.digest();
+    }
+
+    /**
+     * Looks up cached bytes and replays their journal.
+     *
+     * @return transformed bytes or null if they are not cached or are not valid in the current run
+     */
+    public byte[] get(byte[] key, String className) {
+        final JournalingRegistry registry = this.registry;
+        if (registry == null) return null;
+        final byte[][] entry;
+        synchronized (this) {
+            final int offset = find(key);
+            if (offset < 0) {
+                misses++;
+                return null;
+            }
+            entry = readEntry(offset);
+            if (entry == null) {
+                rejected++;
+                return null;
+            }
+            if (!new String(entry[0], RegistryLog.UTF8).equals(className)) {
+                misses++;
+                return null;
+            }
+        }
+        final byte[] journal = entry[1];
+        final byte[] bytes = entry[2];
+        final boolean valid = Journal.replay(journal, registry);
+        synchronized (this) {
+            if (valid) {
+                hits++;
+            } else {
+                rejected++;
+            }
+        }
+        return valid ? bytes : null;
+    }
+
+    /**
+     * Starts recording of registry operations of transformation on current thread.
+     *
+     * @return journal, that should be passed to {@link #end} and {@link #put}, or null if cache is not attached
+     */
+    public Journal begin() {
+        final JournalingRegistry registry = this.registry;
+        return registry == null ? null : registry.begin();
+    }
+
+    public void end(Journal journal) {
+        if (journal != null) {
+            registry.end(journal);
+        }
+    }
+
+    public synchronized void put(byte[] key, String className, Journal journal, byte[] bytes) {
+        if (journal == null || full || disabled) return;
+        final byte[] name = className.getBytes(RegistryLog.UTF8);
+        final byte[] journalBytes = journal.toByteArray();
+        final long end = data.getFirst();
+        final long newEnd = end + DIGEST_LENGTH + 16 + name.length + journalBytes.length + bytes.length;
+        try {
+            if (!data.ensureCapacity(newEnd)) {
+                full = true;
+                DRDLogger.error("Transformation cache " + dir + " is full, new classes won't be cached");
+                return;
+            }
+            int position = (int) end;
+            final MappedByteBuffer buffer = data.buffer();
+            data.put(position, key);
+            position += DIGEST_LENGTH;
+            buffer.putInt(position, name.length);
+            data.put(position + 4, name);
+            position += 4 + name.length;
+            buffer.putInt(position, journalBytes.length);
+            data.put(position + 4, journalBytes);
+            position += 4 + journalBytes.length;
+            buffer.putInt(position, bytes.length);
+            data.put(position + 4, bytes);
+            position += 4 + bytes.length;
+            buffer.putInt(position, checksum(data.get((int) end, position - (int) end)));
+            //entry becomes visible only after it is completely written
+            data.setFirst(newEnd);
+            insert(key, (int) end);
+            stored++;
+        } catch (IOException e) {
+            full = true;
+            DRDLogger.error("Failed to write to transformation cache " + dir + ", new classes won't be cached", e);
+        }
+    }
+
+    /**
+     * @return offset of entry in data or -1 if not found
+     */
+    private int find(byte[] key) {
+        final long hash = hash(key);
+        final int mask = (int) index.getFirst() - 1;
+        final MappedByteBuffer buffer = index.buffer();
+        for (int i = (int) hash & mask; ; i = (i + 1) & mask) {
+            final int slot = MappedFile.HEADER_SIZE + i * SLOT_SIZE;
+            final long h = buffer.getLong(slot);
+            if (h == 0) return -1;
+            if (h == hash) {
+                final int offset = (int) buffer.getLong(slot + 8);
+                if (matches(key, offset)) return offset;
+            }
+        }
+    }
+
+    /**
+     * @return name, journal and transformed bytes of entry at specified offset, or null if entry runs past end of data
+     * or its checksum doesn't match
+     */
+    private byte[][] readEntry(int offset) {
+        final long end = data.getFirst();
+        final MappedByteBuffer buffer = data.buffer();
+        final byte[][] res = new byte[3][];
+        int position = offset + DIGEST_LENGTH;
+        for (int i = 0; i < res.length; i++) {
+            if (position + 4L > end) return null;
+            final int length = buffer.getInt(position);
+            if (length < 0 || position + 4L + length > end) return null;
+            res[i] = data.get(position + 4, length);
+            position += 4 + length;
+        }
+        if (position + 4L > end || buffer.getInt(position) != checksum(data.get(offset, position - offset))) return null;
+        return res;
+    }
+
+    private static int checksum(byte[] entry) {
+        final CRC32 crc = new CRC32();
+        crc.update(entry);
+        return (int) crc.getValue();
+    }
+
+    private boolean matches(byte[] key, int offset) {
+        return offset >= MappedFile.HEADER_SIZE && offset + DIGEST_LENGTH <= data.getFirst() &&
+                Arrays.equals(key, data.get(offset, DIGEST_LENGTH));
+    }
+
+    private void insert(byte[] key, int offset) throws IOException {
+        final long hash = hash(key);
+        final long capacity = index.getFirst();
+        final int mask = (int) capacity - 1;
+        final MappedByteBuffer buffer = index.buffer();
+        for (int i = (int) hash & mask; ; i = (i + 1) & mask) {
+            final int slot = MappedFile.HEADER_SIZE + i * SLOT_SIZE;
+            final long h = buffer.getLong(slot);
+            if (h == hash && matches(key, (int) buffer.getLong(slot + 8))) {
+                buffer.putLong(slot + 8, offset);
+                return;
+            }
+            if (h == 0) {
+                //hash is written last, so that slot never points to garbage
+                buffer.putLong(slot + 8, offset);
+                buffer.putLong(slot, hash);
+                final long count = index.getSecond() + 1;
+                index.setSecond(count);
+                if (count * 4 > capacity * 3) {
+                    rehash();
+                }
+                return;
+            }
+        }
+    }
+
+    private void rehash() throws IOException {
+        final int capacity = (int) index.getFirst();
+        final int newCapacity = capacity * 2;
+        //index grows before old slots are cleared, so that it is kept intact, if it can't grow
+        if (!index.ensureCapacity(indexSize(newCapacity))) {
+            throw new IOException("Index is too large");
+        }
+        final MappedByteBuffer buffer = index.buffer();
+        final long[] slots = new long[capacity * 2];
+        for (int i = 0; i < capacity; i++) {
+            final int slot = MappedFile.HEADER_SIZE + i * SLOT_SIZE;
+            slots[2 * i] = buffer.getLong(slot);
+            slots[2 * i + 1] = buffer.getLong(slot + 8);
+            buffer.putLong(slot, 0);
+        }
+        index.setFirst(newCapacity);
+        final int mask = newCapacity - 1;
+        for (int i = 0; i < capacity; i++) {
+            final long hash = slots[2 * i];
+            if (hash == 0) continue;
+            int j = (int) hash & mask;
+            while (buffer.getLong(MappedFile.HEADER_SIZE + j * SLOT_SIZE) != 0) {
+                j = (j + 1) & mask;
+            }
+            buffer.putLong(MappedFile.HEADER_SIZE + j * SLOT_SIZE + 8, slots[2 * i + 1]);
+            buffer.putLong(MappedFile.HEADER_SIZE + j * SLOT_SIZE, hash);
+        }
+    }
+
+    /**
+     * @return true iff headers of files agree with their sizes
+     */
+    private boolean isConsistent() {
+        final long capacity = index.getFirst();
+        return capacity >= INITIAL_INDEX_CAPACITY && Long.bitCount(capacity) == 1 &&
+                MappedFile.HEADER_SIZE + capacity * SLOT_SIZE <= index.capacity() &&
+                index.getSecond() >= 0 && index.getSecond() < capacity &&
+                data.getFirst() >= MappedFile.HEADER_SIZE && data.getFirst() <= data.capacity() &&
+                names.getFirst() >= MappedFile.HEADER_SIZE && names.getFirst() <= names.capacity();
+    }
+
+    private void reset() throws IOException {
+        index.reset(fingerprint, indexSize(INITIAL_INDEX_CAPACITY));
+        index.setFirst(INITIAL_INDEX_CAPACITY);
+        data.reset(fingerprint, INITIAL_DATA_SIZE);
+        data.setFirst(MappedFile.HEADER_SIZE);
+        names.reset(fingerprint, RegistryLog.initialSize());
+        names.setFirst(MappedFile.HEADER_SIZE);
+    }
+
+    private static int indexSize(int capacity) {
+        return MappedFile.HEADER_SIZE + capacity * SLOT_SIZE;
+    }
+
+    private static long hash(byte[] key) {
+        long res = 0;
+        for (int i = 0; i < 8; i++) {
+            res = (res << 8) | (key[i] & 0xff);
+        }
+        //zero marks empty slot
+        return res == 0 ? 1 : res;
+    }
+
+    private static MessageDigest sha1() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static long fingerprint() throws IOException {
+        return fingerprint(DRDEntryPoint.class.getPackage().getImplementationVersion());
+    }
+
+    static long fingerprint(String agentVersion) throws IOException {
+        final MessageDigest digest = sha1();
+        final StringBuilder sb = new StringBuilder();
+        sb.append(agentVersion).append('\n');
+        final CodeSource codeSource = DRDEntryPoint.class.getProtectionDomain().getCodeSource();
+        final URL location = codeSource == null ? null : codeSource.getLocation();
+        if (location != null && "file".equals(location.getProtocol())) {
+            final File jar = new File(location.getPath());
+            sb.append(jar.getPath()).append(' ').append(jar.length()).append(' ').append(jar.lastModified()).append('\n');
+        }
+        sb.append(System.getProperty("java.version")).append('\n');
+        sb.append(System.getProperty("java.class.path")).append('\n');
+        sb.append(DRDProperties.dumpAllSettings());
+        digest.update(sb.toString().getBytes(RegistryLog.UTF8));
+        final File[] configs = new File(DRDProperties.getConfigDir()).listFiles();
+        if (configs != null) {
+            Arrays.sort(configs);
+            final byte[] buffer = new byte[8192];
+            for (File config : configs) {
+                if (!config.isFile()) continue;
+                digest.update(config.getName().getBytes(RegistryLog.UTF8));
+                final InputStream in = new FileInputStream(config);
+                try {
+                    int read;
+                    while ((read = in.read(buffer)) > 0) {
+                        digest.update(buffer, 0, read);
+                    }
+                } finally {
+                    in.close();
+                }
+            }
+        }
+        return hash(digest.digest());
+    }
+
+    /**
+     * Releases lock of cache directory and closes files. Cache shouldn't be used afterwards.
+     */
+    synchronized void close() throws IOException {
+        disabled = true;
+        registry = null;
+        Runtime.getRuntime().removeShutdownHook(statsHook);
+        index.close();
+        data.close();
+        names.close();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "Transformation cache " + dir + ": hits = " + hits + ", misses = " + misses + ", rejected = " + rejected +
+                ", stored = " + stored + ", classes = " + index.getSecond() + ", size = " + (data.getFirst() >> 10) +
+                " Kb, names and locations = " + log.size() + (disabled ? " (disabled)" : "");
+    }
+}
@@ -36,6 +36,8 @@ import static org.objectweb.asm.Opcodes.*;
  */
 //TODO cleanup & merge with com.devexperts.drd.transformer.instrument.system.ClassLoadersDelegateUpInstrumentor
 public class ClassLoaderLoadSyntheticInstrumentor extends ClassVisitor {
+    private static final Type LINKAGE_ERROR_TYPE = Type.getType(LinkageError.class);
+
     public ClassLoaderLoadSyntheticInstrumentor(ClassVisitor cv) {
         super(Opcodes.ASM5, cv);
     }
@@ -85,7 +87,16 @@ public class ClassLoaderLoadSyntheticInstrumentor extends ClassVisitor {
                     new Method("loadClass", CLASS_TYPE, new Type[]{STRING_TYPE}));
             //STACK: class
             super.pop();
-            //TODO???
+            //STACK: empty
+            //loading of source class may have defined our class already, e.g. if its transformation required it
+            super.loadThis();
+            super.loadArg(0);
+            super.invokeVirtual(CLASSLOADER_TYPE, new Method("findLoadedClass", CLASS_TYPE, new Type[]{STRING_TYPE}));
+            //STACK: class
+            super.dup();
+            super.ifNonNull(loaded);
+            //STACK: class
+            super.pop();
             //STACK: empty
 
             //load our class
@@ -106,8 +117,10 @@ public class ClassLoaderLoadSyntheticInstrumentor extends ClassVisitor {
             super.push(0);
             super.swap();
             //STACK: <this> <className> <byte[]> 0 length
+            final Label defineStart = super.mark();
             super.invokeVirtual(CLASSLOADER_TYPE, new Method("defineClass", CLASS_TYPE, new Type[]{
                     STRING_TYPE, BYTE_ARRAY_TYPE, Type.INT_TYPE, Type.INT_TYPE}));
+            final Label defineEnd = super.mark();
             //STACK: <class>
             super.dup();
             super.loadThis();
@@ -115,6 +128,24 @@ public class ClassLoaderLoadSyntheticInstrumentor extends ClassVisitor {
             //STACK: <class> <this> <class>
             super.invokeVirtual(CLASSLOADER_TYPE, new Method("resolveClass", Type.VOID_TYPE, new Type[]{CLASS_TYPE}));
             //STACK: <class>
+            super.goTo(loaded);
+            //concurrent thread has defined our class after our check, because this branch is not guarded by class loading lock
+            super.catchException(defineStart, defineEnd, LINKAGE_ERROR_TYPE);
+            //STACK: <error>
+            super.loadThis();
+            super.loadArg(0);
+            super.invokeVirtual(CLASSLOADER_TYPE, new Method("findLoadedClass", CLASS_TYPE, new Type[]{STRING_TYPE}));
+            //STACK: <error> <class>
+            super.dup();
+            final Label definedConcurrently = super.newLabel();
+            super.ifNonNull(definedConcurrently);
+            super.pop();
+            super.throwException();
+            super.mark(definedConcurrently);
+            //STACK: <error> <class>
+            super.swap();
+            super.pop();
+            //STACK: <class>
             super.mark(loaded);
             //logClassLoading("Loaded ");
             super.returnValue();
@@ -67,8 +67,8 @@ public class CompositeTransformer implements MethodTransformer {
         main.skipJoin();
     }
 
-    public void processPossibleVertex(List<Integer> potentialVertices, int opcode, String owner, String name, String desc, Runnable callIfHB, Runnable callIfNotHB) {
-        main.processPossibleVertex(potentialVertices, opcode, owner, name, desc, callIfHB, callIfNotHB);
+    public void processPossibleVertex(List<Integer> potentialVertices, int opcode, String owner, String name, String desc, int line, Runnable callIfHB, Runnable callIfNotHB) {
+        main.processPossibleVertex(potentialVertices, opcode, owner, name, desc, line, callIfHB, callIfNotHB);
     }
 
     public void skipPossibleVertex() {
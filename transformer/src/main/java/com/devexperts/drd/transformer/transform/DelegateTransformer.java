@@ -60,8 +60,8 @@ public class DelegateTransformer implements MethodTransformer {
         delegate.skipJoin();
     }
 
-    public void processPossibleVertex(List<Integer> potentialVertices, int opcode, String owner, String name, String desc, Runnable callIfHB, Runnable callIfNotHB) {
-        delegate.processPossibleVertex(potentialVertices, opcode, owner, name, desc, callIfHB, callIfNotHB);
+    public void processPossibleVertex(List<Integer> potentialVertices, int opcode, String owner, String name, String desc, int line, Runnable callIfHB, Runnable callIfNotHB) {
+        delegate.processPossibleVertex(potentialVertices, opcode, owner, name, desc, line, callIfHB, callIfNotHB);
     }
 
     public void skipPossibleVertex() {
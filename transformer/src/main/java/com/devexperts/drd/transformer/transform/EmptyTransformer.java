@@ -54,7 +54,7 @@ public class EmptyTransformer implements MethodTransformer {
 
     }
 
-    public void processPossibleVertex(List<Integer> potentialVertices, int opcode, String owner, String name, String desc, Runnable callIfHB, Runnable callIfNotHB) {
+    public void processPossibleVertex(List<Integer> potentialVertices, int opcode, String owner, String name, String desc, int line, Runnable callIfHB, Runnable callIfNotHB) {
 
     }
 
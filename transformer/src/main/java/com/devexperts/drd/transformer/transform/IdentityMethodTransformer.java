@@ -44,9 +44,9 @@ public class IdentityMethodTransformer extends DelegateTransformer {
         super.processJoin(call);
     }
 
-    public void processPossibleVertex(List<Integer> potentialVertices, int opcode, String owner, String name, String desc, Runnable callIfHB, Runnable callIfNotHB) {
+    public void processPossibleVertex(List<Integer> potentialVertices, int opcode, String owner, String name, String desc, int line, Runnable callIfHB, Runnable callIfNotHB) {
         callIfNotHB.run();
-        super.processPossibleVertex(potentialVertices, opcode, owner, name, desc, callIfHB, callIfNotHB);
+        super.processPossibleVertex(potentialVertices, opcode, owner, name, desc, line, callIfHB, callIfNotHB);
     }
 
     public void processForeignCall(int opcode, String owner, String name, String desc, int line, Runnable call) {
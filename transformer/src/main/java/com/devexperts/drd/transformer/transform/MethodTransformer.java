@@ -108,10 +108,11 @@ public interface MethodTransformer {
      *                          {@link Type#getInternalName() getInternalName}).
      * @param name              the method's name.
      * @param desc              the method's descriptor (see {@link Type Type}).
+     * @param line              instruction line number (identifies call site)
      * @param callIfHB          wrapped callback that actually would execute target method if it is a vertex
      * @param callIfNotHB       wrapped callback that actually would execute target method if it is not a vertex
      */
-    void processPossibleVertex(List<Integer> potentialVertices, int opcode, String owner, String name, String desc, Runnable callIfHB, Runnable callIfNotHB);
+    void processPossibleVertex(List<Integer> potentialVertices, int opcode, String owner, String name, String desc, int line, Runnable callIfHB, Runnable callIfNotHB);
 
     /**
      * Executed when target method call is possible happens-before vertex and should be skipped
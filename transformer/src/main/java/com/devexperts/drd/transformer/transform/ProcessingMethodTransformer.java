@@ -119,11 +119,13 @@ public class ProcessingMethodTransformer extends DelegateTransformer {
         super.processJoin(call);
     }
 
-    public void processPossibleVertex(List<Integer> potentialVertices, int opcode, String owner, String name, String desc, Runnable callIfHB, Runnable callIfNotHB) {
+    public void processPossibleVertex(List<Integer> potentialVertices, int opcode, String owner, String name, String desc, int line, Runnable callIfHB, Runnable callIfNotHB) {
         //STACK: ?owner? ?args?
         final Type ownerType = Type.getObjectType(owner);
         final int targetOwnerId = registry.registerClassName(owner);
         final int targetNameId = registry.registerFieldOrMethodName(name);
+        final int siteId = DRDProperties.hbInlineCache ?
+                registry.registerLocation(targetOwnerId, targetNameId, ownerId, nameId, line) : -1;
         //STACK: ?owner? ?args?
         Type[] args = Type.getArgumentTypes(desc);
         int[] locals = InstrumentationUtils.storeArgsToLocals(mv, desc);
@@ -147,7 +149,7 @@ public class ProcessingMethodTransformer extends DelegateTransformer {
             final HBVertex vertex = HBManager.getInstance().getHappensBeforeVertex(vertexId);
             if (vertex.getType() == SynchronizationPointType.SEND) {
                 Label notHbContractLabel = mv.newLabel();
-                performCheck(opcode, vertex, ownerType, ownerLocal, name);
+                performCheck(opcode, vertex, ownerType, ownerLocal, name, siteId);
                 //STACK: boolean
                 mv.ifZCmp(IFEQ, notHbContractLabel);
                 //STACK: empty
@@ -158,7 +160,7 @@ public class ProcessingMethodTransformer extends DelegateTransformer {
                 //TODO SEND vertices always return TRUE???
                 mv.mark(notHbContractLabel);
             } else {
-                performCheck(opcode, vertex, ownerType, ownerLocal, name);
+                performCheck(opcode, vertex, ownerType, ownerLocal, name, siteId);
                 int local = mv.newLocal(Type.BOOLEAN_TYPE);
                 receiveVertices.add(local);
                 Label notHbContractLabel = mv.newLabel();
@@ -227,7 +229,7 @@ public class ProcessingMethodTransformer extends DelegateTransformer {
             }
         }
         mv.mark(notRealHB);
-        super.processPossibleVertex(potentialVertices, opcode, owner, name, desc, callIfHB, callIfNotHB);
+        super.processPossibleVertex(potentialVertices, opcode, owner, name, desc, line, callIfHB, callIfNotHB);
     }
 
     public void processForeignCall(int opcode, String owner, String name, String desc, int line, Runnable call) {
@@ -297,7 +299,9 @@ public class ProcessingMethodTransformer extends DelegateTransformer {
     public void processVolatile(int opcode, String owner, String name, String desc) {
         final Type ownerType = Type.getObjectType(owner);
         final Type fieldType = Type.getType(desc);
-        if (opcode == Opcodes.PUTSTATIC) {
+        if (hasVolatileClockField(owner, name)) {
+            processVolatileWithClockField(opcode, owner, name, desc);
+        } else if (opcode == Opcodes.PUTSTATIC) {
             volatileWriteStatic(owner, name);
             mv.visitFieldInsn(opcode, owner, name, desc); //source instruction
         } else if (opcode == Opcodes.PUTFIELD) {
@@ -346,6 +350,11 @@ public class ProcessingMethodTransformer extends DelegateTransformer {
 				  super.processFieldAccess(opcode, owner, name, desc, line);
 				  return;
 			  }
+        if (DRDProperties.dataClockTable && (opcode == GETFIELD || opcode == PUTFIELD)) {
+            processFieldAccessWithTable(opcode, ownerType, fieldType, name, desc, locationId);
+            super.processFieldAccess(opcode, owner, name, desc, line);
+            return;
+        }
         switch (opcode) {
             case GETFIELD:
                 //stack: ..., owner
@@ -437,10 +446,52 @@ public class ProcessingMethodTransformer extends DelegateTransformer {
     }
 
     /**
-     * STACK: ..., --> ..., boolean
+     * Instance field access, when data clocks are kept in lazily created per-object table: clock is obtained via
+     * static accessor, generated by {@link com.devexperts.drd.transformer.instrument.app.GenerateClass}.
      */
-    private void performCheck(int opcode, HBVertex vertex, Type ownerType, int ownerLocal, String name) {
-        InstrumentationUtils.pushDataProvider(mv);
+    private void processFieldAccessWithTable(int opcode, Type ownerType, Type fieldType, String name, String desc, int locationId) {
+        final String owner = ownerType.getInternalName();
+        final Method accessor = Constants.getDataClockAccessor(name);
+        if (opcode == GETFIELD) {
+            //stack: ..., owner
+            mv.dup();
+            mv.visitFieldInsn(opcode, owner, name, desc); //source instruction
+            //stack: ..., owner, return_value
+            mv.swap(ownerType, fieldType);
+            //stack: ..., return_value, owner
+            mv.invokeStatic(ownerType, accessor);
+            //stack: ..., return_value, clock
+            fieldOperationOnClock(owner, name, locationId, InterceptorMethod.FIELD_READ);
+            //stack: ..., return_value
+        } else {
+            //stack: ..., owner, value
+            mv.swap(ownerType, fieldType);
+            //stack: ..., value, owner
+            mv.dup();
+            mv.invokeStatic(ownerType, accessor);
+            //stack: ..., value, owner, clock
+            final int clockLocal = mv.newLocal(Constants.IDATACLOCK_TYPE);
+            mv.storeLocal(clockLocal);
+            //stack: ..., value, owner
+            mv.swap(fieldType, ownerType);
+            //stack: ..., owner, value
+            mv.visitFieldInsn(opcode, owner, name, desc); //source instruction
+            //stack: ...
+            mv.loadLocal(clockLocal);
+            fieldOperationOnClock(owner, name, locationId, InterceptorMethod.FIELD_WRITE);
+        }
+    }
+
+    /**
+     * STACK: EMPTY ---> boolean
+     *
+     * @param siteId location id of call site for its inline cache in {@link com.devexperts.drd.bootstrap.HBCallSiteCache},
+     *               or -1 to use {@link com.devexperts.drd.bootstrap.DataProvider} directly
+     */
+    private void performCheck(int opcode, HBVertex vertex, Type ownerType, int ownerLocal, String name, int siteId) {
+        if (siteId < 0) {
+            InstrumentationUtils.pushDataProvider(mv);
+        }
         if (opcode == INVOKESTATIC) {
             mv.push(ownerType);
         } else {
@@ -449,7 +500,12 @@ public class ProcessingMethodTransformer extends DelegateTransformer {
         }
         mv.push(name);
         mv.push(vertex.getId());
-        mv.invokeInterface(Constants.DRDDataProviderType, InstrumentationUtils.MATCHES_TO_HB_VERTEX);
+        if (siteId < 0) {
+            mv.invokeInterface(Constants.DRDDataProviderType, InstrumentationUtils.MATCHES_TO_HB_VERTEX);
+        } else {
+            mv.push(siteId);
+            mv.invokeStatic(Constants.HBCallSiteCacheType, InstrumentationUtils.MATCHES_AT_CALL_SITE);
+        }
     }
 
     private void processManualSynchronization(HBVertex vertex, Type[] args, int[] locals, int ownerLocal, int ownerId, int nameId) {
@@ -526,6 +582,13 @@ public class ProcessingMethodTransformer extends DelegateTransformer {
 
     private void fieldOperation(String owner, String name, int locationId, InterceptorMethod method) {
         mv.getField(Type.getObjectType(owner), name + Constants.VC_SUFFIX, Constants.IDATACLOCK_TYPE);
+        fieldOperationOnClock(owner, name, locationId, method);
+    }
+
+    /**
+     * STACK: ..., clock -> ...
+     */
+    private void fieldOperationOnClock(String owner, String name, int locationId, InterceptorMethod method) {
         InstrumentationUtils.pushInterceptor(mv);
         mv.swap();
         mv.push(locationId);
@@ -770,6 +833,109 @@ public class ProcessingMethodTransformer extends DelegateTransformer {
         volatileOperation(owner, name, InterceptorMethod.VOLATILE_WRITE);
     }
 
+    /**
+     * @return true if owner declares companion field with clock of volatile field, see
+     * {@link com.devexperts.drd.transformer.instrument.app.GenerateClass}
+     */
+    private boolean hasVolatileClockField(String owner, String name) {
+        if (!DRDProperties.volatileClockField) return false;
+        final int targetOwnerId = registry.registerClassName(owner);
+        return registry.hasField(targetOwnerId, registry.registerFieldOrMethodName(name + Constants.VOLATILE_CLOCK_SUFFIX));
+    }
+
+    /**
+     * Reads clock of volatile field from its companion field. If clock isn't created yet, falls back to
+     * {@link InterceptorMethod#VOLATILE_READ} or {@link InterceptorMethod#VOLATILE_WRITE}, that create it.
+     */
+    private void processVolatileWithClockField(int opcode, String owner, String name, String desc) {
+        final Type ownerType = Type.getObjectType(owner);
+        final Type fieldType = Type.getType(desc);
+        final String clockField = name + Constants.VOLATILE_CLOCK_SUFFIX;
+        final Label noClock = new Label();
+        final Label done = new Label();
+        switch (opcode) {
+            case PUTSTATIC:
+                //stack: ..., value
+                mv.getStatic(ownerType, clockField, Constants.ISYNCCLOCK_TYPE);
+                mv.dup();
+                mv.ifNull(noClock);
+                volatileClockOperation(InterceptorMethod.VOLATILE_CLOCK_WRITE);
+                mv.goTo(done);
+                mv.mark(noClock);
+                mv.pop();
+                volatileWriteStatic(owner, name);
+                mv.mark(done);
+                mv.visitFieldInsn(opcode, owner, name, desc); //source instruction
+                break;
+            case PUTFIELD:
+                //stack: ..., owner, value
+                mv.swap(ownerType, fieldType);
+                mv.dup();
+                mv.getField(ownerType, clockField, Constants.ISYNCCLOCK_TYPE);
+                mv.dup();
+                mv.ifNull(noClock);
+                //stack: ..., value, owner, clock
+                volatileClockOperation(InterceptorMethod.VOLATILE_CLOCK_WRITE);
+                mv.goTo(done);
+                mv.mark(noClock);
+                mv.pop();
+                volatileWrite(owner, name);
+                mv.mark(done);
+                //stack: ..., value, owner
+                mv.swap(fieldType, ownerType);
+                mv.visitFieldInsn(opcode, owner, name, desc); //source instruction
+                break;
+            case GETSTATIC:
+                mv.visitFieldInsn(opcode, owner, name, desc); //source instruction
+                //stack: ..., value
+                mv.getStatic(ownerType, clockField, Constants.ISYNCCLOCK_TYPE);
+                mv.dup();
+                mv.ifNull(noClock);
+                volatileClockOperation(InterceptorMethod.VOLATILE_CLOCK_READ);
+                mv.goTo(done);
+                mv.mark(noClock);
+                mv.pop();
+                volatileReadStatic(owner, name);
+                mv.mark(done);
+                break;
+            case GETFIELD:
+                //stack: ..., owner
+                mv.dup();
+                mv.visitFieldInsn(opcode, owner, name, desc); //source instruction
+                mv.swap(ownerType, fieldType);
+                //stack: ..., value, owner
+                mv.dup();
+                mv.getField(ownerType, clockField, Constants.ISYNCCLOCK_TYPE);
+                mv.dup();
+                mv.ifNull(noClock);
+                //stack: ..., value, owner, clock
+                mv.swap();
+                mv.pop();
+                volatileClockOperation(InterceptorMethod.VOLATILE_CLOCK_READ);
+                mv.goTo(done);
+                mv.mark(noClock);
+                mv.pop();
+                volatileRead(owner, name);
+                mv.mark(done);
+                //stack: ..., value
+                break;
+            default:
+                throw new IllegalStateException("Unexpected opcode " + opcode + " in visitFieldInsn method");
+        }
+    }
+
+    /**
+     * STACK: ..., clock -> ...
+     */
+    private void volatileClockOperation(InterceptorMethod method) {
+        InstrumentationUtils.pushInterceptor(mv);
+        mv.swap();
+        mv.push(ownerId);
+        mv.push(nameId);
+        mv.push(DRDProperties.soutEnabled);
+        InstrumentationUtils.invoke(mv, method);
+    }
+
     private void volatileOperation(String owner, String name, InterceptorMethod method) {
         int targetOwnerId = registry.registerClassName(owner);
         int targetNameId = registry.registerFieldOrMethodName(name);
@@ -72,7 +72,7 @@ public class TrackingMethodTransformer implements MethodTransformer {
         track(Counters.JOIN, Processing.IGNORED, description, mv);
     }
 
-    public void processPossibleVertex(List<Integer> potentialVertices, int opcode, String owner, String name, String desc, Runnable callIfHB, Runnable callIfNotHB) {
+    public void processPossibleVertex(List<Integer> potentialVertices, int opcode, String owner, String name, String desc, int line, Runnable callIfHB, Runnable callIfNotHB) {
         track(Counters.CONTRACT_SYNC, Processing.PROCESSED, description, mv);
     }
 
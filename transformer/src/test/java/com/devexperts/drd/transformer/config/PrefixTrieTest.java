@@ -0,0 +1,103 @@
+/*
+ * DRD - Dynamic Data Race Detector for Java programs
+ *
+ * Copyright (C) 2002-2018 Devexperts LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devexperts.drd.transformer.config;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class PrefixTrieTest {
+    @Test
+    public void testFirstMatchWins() {
+        final PrefixTrie trie = trie("com/foo/Bar", "com/foo/", "com/", "");
+        Assert.assertEquals(0, trie.firstMatch("com/foo/Bar"));
+        Assert.assertEquals(0, trie.firstMatch("com/foo/BarBaz"));
+        Assert.assertEquals(0, trie.firstMatch("com/foo/Bar$1"));
+        Assert.assertEquals(1, trie.firstMatch("com/foo/Baz"));
+        Assert.assertEquals(1, trie.firstMatch("com/foo/bar/Bar"));
+        Assert.assertEquals(2, trie.firstMatch("com/foo"));
+        Assert.assertEquals(2, trie.firstMatch("com/fooBar/Baz"));
+        Assert.assertEquals(3, trie.firstMatch("org/Foo"));
+        Assert.assertEquals(3, trie.firstMatch(""));
+    }
+
+    @Test
+    public void testPartialSegments() {
+        final PrefixTrie trie = trie("java/util/concurrent", "java/lang/Str", "sun/");
+        Assert.assertEquals(0, trie.firstMatch("java/util/concurrent/locks/Lock"));
+        Assert.assertEquals(0, trie.firstMatch("java/util/concurrentX"));
+        Assert.assertEquals(-1, trie.firstMatch("java/util/HashMap"));
+        Assert.assertEquals(1, trie.firstMatch("java/lang/String"));
+        Assert.assertEquals(-1, trie.firstMatch("java/lang/St"));
+        Assert.assertEquals(-1, trie.firstMatch("java/lang/Object"));
+        Assert.assertEquals(2, trie.firstMatch("sun/misc/Unsafe"));
+        Assert.assertEquals(-1, trie.firstMatch("sun"));
+        Assert.assertFalse(trie.matches("sunx/Foo"));
+        Assert.assertTrue(trie("").matches(""));
+        Assert.assertFalse(new PrefixTrie().matches("java/lang/Object"));
+    }
+
+    @Test
+    public void testEquivalentToLinearScan() {
+        final String[] segments = {"a", "ab", "abc", "b", "", "a$1"};
+        final Random rnd = new Random(20);
+        for (int iteration = 0; iteration < 200; iteration++) {
+            final String[] prefixes = new String[1 + rnd.nextInt(20)];
+            for (int i = 0; i < prefixes.length; i++) {
+                prefixes[i] = randomName(rnd, segments, i % 3 == 0 ? "/" : "");
+            }
+            final PrefixTrie trie = trie(prefixes);
+            Assert.assertEquals(prefixes.length, trie.size());
+            for (int i = 0; i < 100; i++) {
+                final String name = randomName(rnd, segments, "");
+                Assert.assertEquals(Arrays.toString(prefixes) + " " + name,
+                        linearFirstMatch(Arrays.asList(prefixes), name), trie.firstMatch(name));
+            }
+        }
+    }
+
+    private static String randomName(Random rnd, String[] segments, String suffix) {
+        final StringBuilder sb = new StringBuilder();
+        final int n = rnd.nextInt(4);
+        for (int i = 0; i < n; i++) {
+            if (i > 0) sb.append('/');
+            sb.append(segments[rnd.nextInt(segments.length)]);
+        }
+        return sb.append(suffix).toString();
+    }
+
+    private static int linearFirstMatch(List<String> prefixes, String s) {
+        for (int i = 0; i < prefixes.size(); i++) {
+            if (s.startsWith(prefixes.get(i))) return i;
+        }
+        return -1;
+    }
+
+    private static PrefixTrie trie(String... prefixes) {
+        final PrefixTrie trie = new PrefixTrie();
+        for (String prefix : prefixes) {
+            trie.add(prefix);
+        }
+        return trie;
+    }
+}
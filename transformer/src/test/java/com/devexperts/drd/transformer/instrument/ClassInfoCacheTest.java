@@ -0,0 +1,111 @@
+/*
+ * DRD - Dynamic Data Race Detector for Java programs
+ *
+ * Copyright (C) 2002-2018 Devexperts LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devexperts.drd.transformer.instrument;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+//uses only classes of this module: bundled ASM may fail to read classes of newer JDK
+public class ClassInfoCacheTest {
+    private static final String PREFIX = "com/devexperts/drd/transformer/";
+    private static final String[] CLASSES = {PREFIX + "instrument/ClassInfoCacheTest",
+            PREFIX + "instrument/ClassInfoCacheTest$Shape", PREFIX + "instrument/ClassInfoCacheTest$Base",
+            PREFIX + "instrument/ClassInfoCacheTest$Derived", PREFIX + "instrument/app/ConfinementAnalyzerTest",
+            PREFIX + "config/ContractTest", PREFIX + "config/PrefixTrieTest"};
+
+    @Test
+    public void testConcurrentRequestsShareClassInfo() throws InterruptedException {
+        final ClassInfoCache cache = new ClassInfoCache();
+        final ClassLoader loader = getClass().getClassLoader();
+        final int threads = 8;
+        final ClassInfo[][] results = new ClassInfo[threads][CLASSES.length];
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        final List<Thread> list = new ArrayList<Thread>();
+        for (int t = 0; t < threads; t++) {
+            final int index = t;
+            final Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 0; i < CLASSES.length; i++) {
+                            results[index][i] = cache.getOrBuildRequiredClassInfo(CLASSES[i], loader);
+                        }
+                    } catch (Throwable e) {
+                        error.set(e);
+                    }
+                }
+            });
+            thread.start();
+            list.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : list) {
+            thread.join();
+        }
+        Assert.assertNull(error.get());
+        for (int i = 0; i < CLASSES.length; i++) {
+            Assert.assertEquals(CLASSES[i], results[0][i].getInternalName());
+            for (int t = 1; t < threads; t++) {
+                Assert.assertSame(results[0][i], results[t][i]);
+            }
+        }
+    }
+
+    @Test
+    public void testAssignability() {
+        final ClassInfoCache cache = new ClassInfoCache();
+        final ClassLoader loader = getClass().getClassLoader();
+        //hierarchy walk ends at java/lang/Object, which is put in advance instead of reading it from JDK
+        cache.getOrInitClassInfoMap(null).put("java/lang/Object", new ClassInfo(0, 50, "java/lang/Object", null, null));
+        final ClassInfo shape = cache.getOrBuildRequiredClassInfo(CLASSES[1], loader);
+        final ClassInfo base = cache.getOrBuildRequiredClassInfo(CLASSES[2], loader);
+        final ClassInfo derived = cache.getOrBuildRequiredClassInfo(CLASSES[3], loader);
+        Assert.assertTrue(shape.isInterface());
+        Assert.assertEquals(CLASSES[2], derived.getInternalSuperName());
+        Assert.assertTrue(base.isAssignableFrom(derived, cache, loader));
+        Assert.assertTrue(shape.isAssignableFrom(derived, cache, loader));
+        Assert.assertFalse(derived.isAssignableFrom(base, cache, loader));
+    }
+
+    @Test
+    public void testAbsentClassIsNotCached() {
+        final ClassInfoCache cache = new ClassInfoCache();
+        final ClassLoader loader = getClass().getClassLoader();
+        Assert.assertNull(cache.getOrBuildClassInfo("com/devexperts/drd/NoSuchClass", loader));
+        final ClassInfo info = new ClassInfo(0, 50, "com/devexperts/drd/NoSuchClass", "java/lang/Object", null);
+        cache.getOrInitClassInfoMap(loader).put("com/devexperts/drd/NoSuchClass", info);
+        Assert.assertSame(info, cache.getOrBuildClassInfo("com/devexperts/drd/NoSuchClass", loader));
+    }
+
+    private interface Shape {
+    }
+
+    private static class Base implements Shape {
+    }
+
+    private static class Derived extends Base {
+    }
+}
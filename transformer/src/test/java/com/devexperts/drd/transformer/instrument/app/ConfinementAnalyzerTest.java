@@ -0,0 +1,119 @@
+/*
+ * DRD - Dynamic Data Race Detector for Java programs
+ *
+ * Copyright (C) 2002-2018 Devexperts LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devexperts.drd.transformer.instrument.app;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+public class ConfinementAnalyzerTest {
+    @Test
+    public void testConfinedFields() throws IOException {
+        final String className = Sample.class.getName().replace('.', '/');
+        final ConfinementAnalyzer analyzer = new ConfinementAnalyzer(className);
+        final InputStream in = getClass().getResourceAsStream("/" + className + ".class");
+        try {
+            new ClassReader(in).accept(new ClassVisitor(Opcodes.ASM5) {
+                @Override
+                public FieldVisitor visitField(int access, String name, String desc, String signature, Object value) {
+                    analyzer.visitField(access, name);
+                    return null;
+                }
+
+                @Override
+                public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+                    return analyzer.visitMethod(access, name, desc, signature, exceptions, null);
+                }
+            }, ClassReader.SKIP_FRAMES + ClassReader.SKIP_DEBUG);
+        } finally {
+            in.close();
+        }
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("initOnly", "guarded", "staticGuarded")), analyzer.getConfinedFields());
+    }
+
+    @Test
+    public void testApplicability() {
+        Assert.assertTrue(ConfinementAnalyzer.isApplicable(Opcodes.V1_8, Opcodes.ACC_PUBLIC));
+        Assert.assertFalse(ConfinementAnalyzer.isApplicable(Opcodes.V1_8, Opcodes.ACC_INTERFACE));
+        Assert.assertFalse(ConfinementAnalyzer.isApplicable(55, Opcodes.ACC_PUBLIC));
+    }
+
+    @SuppressWarnings("UnusedDeclaration")
+    private static class Sample {
+        private static long staticGuarded;
+        private long initOnly;
+        private long guarded;
+        private long racy;
+        private long foreign;
+        private long sharedStatic;
+        public long exposed;
+
+        Sample() {
+            initOnly = 1;
+            racy = 1;
+        }
+
+        long getInitOnly() {
+            return initOnly;
+        }
+
+        synchronized void incGuarded() {
+            guarded++;
+        }
+
+        synchronized long getGuarded() {
+            return guarded;
+        }
+
+        void setRacy(long value) {
+            racy = value;
+        }
+
+        long getRacy() {
+            return racy;
+        }
+
+        synchronized void copyTo(Sample other) {
+            other.foreign = foreign;
+        }
+
+        static synchronized void incStatic() {
+            staticGuarded++;
+        }
+
+        static synchronized void setShared(Sample s) {
+            s.sharedStatic++;
+        }
+
+        void setExposed(long value) {
+            exposed = value;
+        }
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * DRD - Dynamic Data Race Detector for Java programs
+ *
+ * Copyright (C) 2002-2018 Devexperts LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devexperts.drd.transformer.instrument.cache;
+
+import com.devexperts.drd.agent.AccessHistoryImpl;
+import com.devexperts.drd.agent.DRDRegistryImpl;
+import com.devexperts.drd.bootstrap.DRDEntryPoint;
+import com.devexperts.drd.bootstrap.DRDRegistry;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class TransformationCacheTest {
+    private static final long FINGERPRINT = 1;
+    private static final String MODE = "test";
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private File dir;
+    private TransformationCache cache;
+    private DRDRegistry originalRegistry;
+
+    @Before
+    public void setUp() {
+        dir = new File(folder.getRoot(), "cache");
+        originalRegistry = DRDEntryPoint.getRegistry();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (cache != null) {
+            cache.close();
+        }
+        DRDEntryPoint.setRegistry(originalRegistry);
+    }
+
+    @Test
+    public void testHitAfterReopen() throws IOException {
+        reopen(FINGERPRINT);
+        final int id = put("com/foo/A");
+        Assert.assertArrayEquals(transformed("com/foo/A"), get("com/foo/A"));
+        Assert.assertNull(get("com/foo/B"));
+        reopen(FINGERPRINT);
+        //names are preloaded with the same ids, so journal replays successfully
+        Assert.assertEquals(id, DRDEntryPoint.getRegistry().registerClassName("com/foo/A"));
+        Assert.assertArrayEquals(transformed("com/foo/A"), get("com/foo/A"));
+        Assert.assertNull(get("com/foo/B"));
+    }
+
+    @Test
+    public void testRehashUnderLoad() throws Exception {
+        reopen(FINGERPRINT);
+        final int threads = 3;
+        //more than 3/4 of initial index capacity
+        final int perThread = 20000;
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        final List<Thread> list = new ArrayList<Thread>();
+        for (int t = 0; t < threads; t++) {
+            final int index = t;
+            final Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        for (int i = 0; i < perThread; i++) {
+                            put(className(index, i));
+                            if (i % 7 == 0) {
+                                Assert.assertArrayEquals(transformed(className(index, i / 2)), get(className(index, i / 2)));
+                            }
+                        }
+                    } catch (Throwable e) {
+                        error.compareAndSet(null, e);
+                    }
+                }
+            });
+            thread.start();
+            list.add(thread);
+        }
+        for (Thread thread : list) {
+            thread.join();
+        }
+        Assert.assertNull(error.get());
+        assertAllCached(threads, perThread);
+        reopen(FINGERPRINT);
+        assertAllCached(threads, perThread);
+    }
+
+    @Test
+    public void testResetOnFingerprintChange() throws IOException {
+        reopen(FINGERPRINT);
+        put("com/foo/A");
+        reopen(FINGERPRINT + 1);
+        Assert.assertNull(get("com/foo/A"));
+        put("com/foo/B");
+        //files were reset, so previous fingerprint doesn't bring old entries back
+        reopen(FINGERPRINT);
+        Assert.assertNull(get("com/foo/A"));
+        Assert.assertNull(get("com/foo/B"));
+    }
+
+    @Test
+    public void testFingerprintCoversAgentVersion() throws IOException {
+        Assert.assertEquals(TransformationCache.fingerprint("0.7.2"), TransformationCache.fingerprint("0.7.2"));
+        Assert.assertFalse(TransformationCache.fingerprint("0.7.2") == TransformationCache.fingerprint("0.7.3"));
+    }
+
+    @Test
+    public void testResetOnFormatVersionChange() throws IOException {
+        reopen(FINGERPRINT);
+        put("com/foo/A");
+        cache.close();
+        cache = null;
+        final RandomAccessFile file = new RandomAccessFile(new File(dir, "transformation-cache.dat"), "rw");
+        try {
+            file.seek(4);
+            file.writeInt(MappedFile.FORMAT_VERSION - 1);
+        } finally {
+            file.close();
+        }
+        reopen(FINGERPRINT);
+        Assert.assertNull(get("com/foo/A"));
+    }
+
+    @Test
+    public void testCorruptEntryIsRejected() throws IOException {
+        reopen(FINGERPRINT);
+        put("com/foo/A");
+        put("com/foo/B");
+        cache.close();
+        cache = null;
+        //flip a byte in the middle of the first entry, right after its digest and name length
+        final RandomAccessFile file = new RandomAccessFile(new File(dir, "transformation-cache.dat"), "rw");
+        try {
+            final long position = MappedFile.HEADER_SIZE + 20 + 4 + 2;
+            file.seek(position);
+            final int b = file.read();
+            file.seek(position);
+            file.write(b ^ 0xff);
+        } finally {
+            file.close();
+        }
+        reopen(FINGERPRINT);
+        Assert.assertNull(get("com/foo/A"));
+        Assert.assertArrayEquals(transformed("com/foo/B"), get("com/foo/B"));
+        Assert.assertTrue(cache.toString().contains("rejected = 1"));
+    }
+
+    @Test
+    public void testTruncatedDataIsDropped() throws IOException {
+        reopen(FINGERPRINT);
+        put("com/foo/A");
+        cache.close();
+        cache = null;
+        final RandomAccessFile file = new RandomAccessFile(new File(dir, "transformation-cache.dat"), "rw");
+        try {
+            file.setLength(MappedFile.HEADER_SIZE + 10);
+        } finally {
+            file.close();
+        }
+        reopen(FINGERPRINT);
+        Assert.assertNull(get("com/foo/A"));
+        put("com/foo/A");
+        Assert.assertArrayEquals(transformed("com/foo/A"), get("com/foo/A"));
+    }
+
+    @Test
+    public void testTruncatedNamesLogIsRejected() throws IOException {
+        reopen(FINGERPRINT);
+        put("com/foo/A");
+        cache.close();
+        cache = null;
+        //end of names log points into the middle of its last record
+        final RandomAccessFile file = new RandomAccessFile(new File(dir, "transformation-cache.names"), "rw");
+        try {
+            file.seek(16);
+            final long end = file.readLong();
+            file.seek(16);
+            file.writeLong(end - 2);
+        } finally {
+            file.close();
+        }
+        reopen(FINGERPRINT);
+        Assert.assertNull(get("com/foo/A"));
+        Assert.assertTrue(cache.toString().contains("(disabled)"));
+    }
+
+    @Test
+    public void testTruncatedOrCorruptJournalIsRejected() {
+        final DRDRegistry registry = new DRDRegistryImpl(new AccessHistoryImpl());
+        final int id = registry.registerClassName("com/foo/A");
+        final Journal journal = new Journal(null);
+        journal.record(Journal.CLASS_NAME, "com/foo/A", id);
+        //prefix of whole records is a valid journal, it is rejected by checksum of cache entry
+        final int firstRecordLength = journal.toByteArray().length;
+        journal.record(Journal.IS_ENUM, id, 0);
+        final byte[] bytes = journal.toByteArray();
+        Assert.assertTrue(Journal.replay(bytes, registry));
+        for (int length = 1; length < bytes.length; length++) {
+            if (length != firstRecordLength) {
+                Assert.assertFalse(Journal.replay(Arrays.copyOf(bytes, length), registry));
+            }
+        }
+        final byte[] corrupt = bytes.clone();
+        corrupt[0] = 100;
+        Assert.assertFalse(Journal.replay(corrupt, registry));
+    }
+
+    private void reopen(long fingerprint) throws IOException {
+        if (cache != null) {
+            cache.close();
+        }
+        DRDEntryPoint.setRegistry(new DRDRegistryImpl(new AccessHistoryImpl()));
+        cache = new TransformationCache(dir, fingerprint);
+        cache.attach();
+    }
+
+    /**
+     * Emulates transformation of class, that registers its name
+     *
+     * @return id of class name
+     */
+    private int put(String className) {
+        final Journal journal = cache.begin();
+        final int id;
+        try {
+            id = DRDEntryPoint.getRegistry().registerClassName(className);
+        } finally {
+            cache.end(journal);
+        }
+        cache.put(key(className), className, journal, transformed(className));
+        return id;
+    }
+
+    private byte[] get(String className) {
+        return cache.get(key(className), className);
+    }
+
+    private byte[] key(String className) {
+        return cache.key(className, className.getBytes(RegistryLog.UTF8), MODE);
+    }
+
+    private void assertAllCached(int threads, int perThread) {
+        for (int t = 0; t < threads; t++) {
+            for (int i = 0; i < perThread; i++) {
+                Assert.assertArrayEquals(transformed(className(t, i)), get(className(t, i)));
+            }
+        }
+    }
+
+    private static String className(int thread, int i) {
+        return "com/foo/C" + thread + "_" + i;
+    }
+
+    private static byte[] transformed(String className) {
+        return ("transformed " + className).getBytes(RegistryLog.UTF8);
+    }
+}